@@ -25,6 +25,13 @@ const formatIsoTimestamp = (value?: string) => {
   return new Date(value).toLocaleString();
 };
 
+const formatPercentiles = (p50?: number, p95?: number, p99?: number) => {
+  if (p50 === undefined || p50 < 0) {
+    return '-';
+  }
+  return `${p50}/${p95}/${p99}ms`;
+};
+
 const getStateTone = (state: CircuitState) => {
   switch (state) {
     case 'CLOSED':
@@ -424,6 +431,15 @@ export const CircuitBreakerSettingsPanel: React.FC<CircuitBreakerSettingsPanelPr
                                       <div className="text-xs text-gray-500 dark:text-gray-400">
                                         err {(cb.errorRate * 100).toFixed(1)}% · slow {(cb.slowRate * 100).toFixed(1)}% · latency {cb.latencyEmaMs?.toFixed(0) || 0}ms
                                       </div>
+                                      <div className="text-xs text-gray-500 dark:text-gray-400">
+                                        p50/p95/p99 {formatPercentiles(cb.latencyP50Ms, cb.latencyP95Ms, cb.latencyP99Ms)} · ttft {formatPercentiles(cb.ttftP50Ms, cb.ttftP95Ms, cb.ttftP99Ms)}
+                                      </div>
+                                      <div className="text-xs text-gray-500 dark:text-gray-400">
+                                        output {cb.outputTokensPerSecondP50 !== undefined && cb.outputTokensPerSecondP50 >= 0 ? `${cb.outputTokensPerSecondP50} tok/s` : '-'} · chunk gap {cb.chunkGapP50Ms !== undefined && cb.chunkGapP50Ms >= 0 ? `${cb.chunkGapP50Ms}/${cb.chunkGapP99Ms}ms` : '-'}
+                                      </div>
+                                      <div className="text-xs text-gray-500 dark:text-gray-400">
+                                        quota req {cb.upstreamRequestsRemaining !== undefined && cb.upstreamRequestsRemaining >= 0 ? cb.upstreamRequestsRemaining : '-'} · tok {cb.upstreamTokensRemaining !== undefined && cb.upstreamTokensRemaining >= 0 ? cb.upstreamTokensRemaining : '-'}{cb.upstreamCooldownUntil && cb.upstreamCooldownUntil > Date.now() ? ` · retry-after ${Math.ceil((cb.upstreamCooldownUntil - Date.now()) / 1000)}s` : ''}
+                                      </div>
                                       <div className="text-xs text-gray-500 dark:text-gray-400">
                                         window {cb.windowTotalCount || 0} · bulkhead rejected {cb.bulkheadRejectedCount}
                                       </div>
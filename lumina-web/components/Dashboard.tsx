@@ -31,6 +31,7 @@ import {
   dashboardService,
   HealthHeatmapData,
   ObservabilityCacheMetric,
+  ObservabilityPromptCacheMetric,
   ProviderStats,
 } from '../services/dashboardService';
 import { CircuitBreakerStatus, DashboardOverview } from '../types';
@@ -425,6 +426,12 @@ export const Dashboard: React.FC = () => {
     selection: {
       saprSelections: 0,
       roundRobinSelections: 0,
+      affinitySelections: 0,
+      p2cSelections: 0,
+      costSelections: 0,
+      costSpills: 0,
+      fallbackFromAffinity: 0,
+      fallbackFromCost: 0,
       fallbackToRoundRobin: 0,
       skippedExcluded: 0,
       skippedCircuitOpen: 0,
@@ -441,6 +448,7 @@ export const Dashboard: React.FC = () => {
       avgFlushMs: 0,
     },
     caches: [],
+    promptCaches: [],
     providers: [],
   };
 
@@ -658,6 +666,37 @@ export const Dashboard: React.FC = () => {
               </tbody>
             </table>
           </div>
+
+          <h3 className="text-base font-semibold text-gray-900 dark:text-white mt-8 mb-5 flex items-center gap-2">
+            <Database size={18} className="text-gray-400" />
+            {t('dashboard.observability.promptCache.title')}
+          </h3>
+          <div className="overflow-x-auto">
+            <table className="w-full text-sm">
+              <thead className="text-xs uppercase tracking-wider text-gray-500 dark:text-gray-400">
+                <tr>
+                  <th className="text-left py-3">{t('dashboard.observability.promptCache.columns.mode')}</th>
+                  <th className="text-right py-3">{t('dashboard.observability.promptCache.columns.hitRate')}</th>
+                  <th className="text-right py-3">{t('dashboard.observability.promptCache.columns.requests')}</th>
+                  <th className="text-right py-3">{t('dashboard.observability.promptCache.columns.cacheReadTokens')}</th>
+                  <th className="text-right py-3">{t('dashboard.observability.promptCache.columns.inputTokens')}</th>
+                </tr>
+              </thead>
+              <tbody className="divide-y divide-gray-100 dark:divide-gray-800">
+                {runtime.promptCaches.map((metric: ObservabilityPromptCacheMetric) => (
+                  <tr key={metric.mode}>
+                    <td className="py-4 font-medium text-gray-900 dark:text-white">
+                      {t(`dashboard.observability.promptCache.modes.${metric.mode}`)}
+                    </td>
+                    <td className="py-4 text-right text-gray-700 dark:text-gray-300">{formatPercent(metric.hitRate)}</td>
+                    <td className="py-4 text-right text-gray-500 dark:text-gray-400">{formatNumber(metric.requests)}</td>
+                    <td className="py-4 text-right text-gray-500 dark:text-gray-400">{formatNumber(metric.cacheReadTokens)}</td>
+                    <td className="py-4 text-right text-gray-500 dark:text-gray-400">{formatNumber(metric.inputTokens)}</td>
+                  </tr>
+                ))}
+              </tbody>
+            </table>
+          </div>
         </div>
 
         <div className="space-y-6">
@@ -673,6 +712,30 @@ export const Dashboard: React.FC = () => {
                   label: t('dashboard.observability.routing.items.roundRobinSelections'),
                   value: runtime.selection.roundRobinSelections,
                 },
+                {
+                  label: t('dashboard.observability.routing.items.affinitySelections'),
+                  value: runtime.selection.affinitySelections,
+                },
+                {
+                  label: t('dashboard.observability.routing.items.p2cSelections'),
+                  value: runtime.selection.p2cSelections,
+                },
+                {
+                  label: t('dashboard.observability.routing.items.costSelections'),
+                  value: runtime.selection.costSelections,
+                },
+                {
+                  label: t('dashboard.observability.routing.items.costSpills'),
+                  value: runtime.selection.costSpills,
+                },
+                {
+                  label: t('dashboard.observability.routing.items.fallbackFromAffinity'),
+                  value: runtime.selection.fallbackFromAffinity,
+                },
+                {
+                  label: t('dashboard.observability.routing.items.fallbackFromCost'),
+                  value: runtime.selection.fallbackFromCost,
+                },
                 {
                   label: t('dashboard.observability.routing.items.fallbackToRoundRobin'),
                   value: runtime.selection.fallbackToRoundRobin,
@@ -1,6 +1,6 @@
 import React, { useState, useEffect } from 'react';
 import { Group, LoadBalanceMode, Provider } from '../types';
-import { Layers, Shuffle, ArrowRightLeft, Scale, PlayCircle, Plus, Settings2, Trash2, X, Save, Check, ChevronDown, ChevronRight, AlertTriangle, Loader2, Search, Activity, Target, Clock } from 'lucide-react';
+import { Layers, Shuffle, ArrowRightLeft, Scale, PlayCircle, Plus, Settings2, Trash2, X, Save, Check, ChevronDown, ChevronRight, AlertTriangle, Loader2, Search, Activity, Target, Clock, Pin, GitFork, Coins } from 'lucide-react';
 import { useLanguage } from './LanguageContext';
 import { groupService } from '../services/groupService';
 import { providerService } from '../services/providerService';
@@ -84,6 +84,9 @@ export const Groups: React.FC = () => {
         case LoadBalanceMode.WEIGHTED: return <Scale size={14} />;
         case LoadBalanceMode.FAILOVER: return <PlayCircle size={14} />;
         case LoadBalanceMode.SAPR: return <Activity size={14} />;
+        case LoadBalanceMode.AFFINITY: return <Pin size={14} />;
+        case LoadBalanceMode.P2C: return <GitFork size={14} />;
+        case LoadBalanceMode.COST: return <Coins size={14} />;
         default: return <Layers size={14} />;
     }
   };
@@ -95,6 +98,9 @@ export const Groups: React.FC = () => {
         case LoadBalanceMode.WEIGHTED: return 'text-purple-600 bg-purple-50 dark:bg-purple-900/30 border-purple-100 dark:border-purple-900/50';
         case LoadBalanceMode.FAILOVER: return 'text-red-600 bg-red-50 dark:bg-red-900/30 border-red-100 dark:border-red-900/50';
         case LoadBalanceMode.SAPR: return 'text-emerald-600 bg-emerald-50 dark:bg-emerald-900/30 border-emerald-100 dark:border-emerald-900/50';
+        case LoadBalanceMode.AFFINITY: return 'text-indigo-600 bg-indigo-50 dark:bg-indigo-900/30 border-indigo-100 dark:border-indigo-900/50';
+        case LoadBalanceMode.P2C: return 'text-cyan-600 bg-cyan-50 dark:bg-cyan-900/30 border-cyan-100 dark:border-cyan-900/50';
+        case LoadBalanceMode.COST: return 'text-amber-600 bg-amber-50 dark:bg-amber-900/30 border-amber-100 dark:border-amber-900/50';
         default: return 'text-gray-600 bg-gray-50';
     }
   };
@@ -106,6 +112,9 @@ export const Groups: React.FC = () => {
         case LoadBalanceMode.FAILOVER: return t('groups.modes.failover');
         case LoadBalanceMode.WEIGHTED: return t('groups.modes.weighted');
         case LoadBalanceMode.SAPR: return t('groups.modes.sapr');
+        case LoadBalanceMode.AFFINITY: return t('groups.modes.affinity');
+        case LoadBalanceMode.P2C: return t('groups.modes.p2c');
+        case LoadBalanceMode.COST: return t('groups.modes.cost');
         default: return mode;
     }
   };
@@ -428,7 +437,7 @@ export const Groups: React.FC = () => {
                             onChange={(e) => setFormData({...formData, mode: e.target.value as LoadBalanceMode})}
                             className="block w-full rounded-xl border-gray-200 dark:border-gray-700 shadow-sm focus:border-black dark:focus:border-white focus:ring-black dark:focus:ring-white text-sm py-2.5 px-3 bg-gray-50 dark:bg-gray-900 dark:text-white transition-all appearance-none"
                         >
-                            {[LoadBalanceMode.SAPR, LoadBalanceMode.ROUND_ROBIN].map((mode) => (
+                            {[LoadBalanceMode.SAPR, LoadBalanceMode.ROUND_ROBIN, LoadBalanceMode.AFFINITY, LoadBalanceMode.P2C, LoadBalanceMode.COST].map((mode) => (
                                 <option key={mode} value={mode}>{getModeLabel(mode)}</option>
                             ))}
                         </select>
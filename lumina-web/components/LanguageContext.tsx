@@ -198,11 +198,34 @@ const translations = {
             model_price: '模型价格'
           }
         },
+        promptCache: {
+          title: '上游 Prompt Cache（按负载均衡模式）',
+          columns: {
+            mode: '模式',
+            hitRate: '命中率',
+            requests: '请求数',
+            cacheReadTokens: '缓存读取 Token',
+            inputTokens: '输入 Token'
+          },
+          modes: {
+            round_robin: '轮询',
+            sapr: 'SAPR',
+            affinity: '前缀亲和',
+            p2c: '最少在途',
+            cost: '成本优先'
+          }
+        },
         routing: {
           title: '路由与切换',
           items: {
             saprSelections: 'SAPR 选择',
             roundRobinSelections: '轮询选择',
+            affinitySelections: '亲和选择',
+            p2cSelections: 'P2C 选择',
+            fallbackFromAffinity: '亲和回退到 SAPR',
+            costSelections: '成本优先选择',
+            costSpills: '成本溢出到更贵渠道',
+            fallbackFromCost: '成本无候选满足 SLO',
             fallbackToRoundRobin: '降级到轮询',
             failoverAttempts: 'Failover 尝试',
             failoverDepthAvg: '平均切换深度'
@@ -314,7 +337,10 @@ const translations = {
         random: '随机 (Random)',
         failover: '故障转移 (Failover)',
         weighted: '加权 (Weighted)',
-        sapr: '自适应 (SAPR)'
+        sapr: '自适应 (SAPR)',
+        affinity: '前缀亲和 (Affinity)',
+        p2c: '最少在途 (P2C)',
+        cost: '成本优先 (Cost)'
       }
     },
     pricing: {
@@ -398,7 +424,9 @@ const translations = {
         duration: '总耗时',
         cache: '缓存命中',
         requestIp: '请求 IP',
-        protocolConversion: '协议转换'
+        protocolConversion: '协议转换',
+        responseSource: '响应来源',
+        firstTokenTimeout: '首包超时'
       }
     },
     settings: {
@@ -747,11 +775,34 @@ const translations = {
             model_price: 'Model Price'
           }
         },
+        promptCache: {
+          title: 'Upstream Prompt Cache by Balance Mode',
+          columns: {
+            mode: 'Mode',
+            hitRate: 'Hit Rate',
+            requests: 'Requests',
+            cacheReadTokens: 'Cache Read Tokens',
+            inputTokens: 'Input Tokens'
+          },
+          modes: {
+            round_robin: 'Round Robin',
+            sapr: 'SAPR',
+            affinity: 'Prefix Affinity',
+            p2c: 'Least Outstanding',
+            cost: 'Cost Optimized'
+          }
+        },
         routing: {
           title: 'Routing & Failover',
           items: {
             saprSelections: 'SAPR Selections',
             roundRobinSelections: 'Round-Robin Selections',
+            affinitySelections: 'Affinity Selections',
+            p2cSelections: 'P2C Selections',
+            fallbackFromAffinity: 'Affinity Fallback to SAPR',
+            costSelections: 'Cost Selections',
+            costSpills: 'Cost Spills to Pricier',
+            fallbackFromCost: 'Cost SLO Fallback to SAPR',
             fallbackToRoundRobin: 'Fallback to Round-Robin',
             failoverAttempts: 'Failover Attempts',
             failoverDepthAvg: 'Avg Failover Depth'
@@ -863,7 +914,10 @@ const translations = {
         random: 'Random',
         failover: 'Failover',
         weighted: 'Weighted',
-        sapr: 'SAPR'
+        sapr: 'SAPR',
+        affinity: 'Prefix Affinity',
+        p2c: 'Least Outstanding (P2C)',
+        cost: 'Cost Optimized (SLO)'
       }
     },
     pricing: {
@@ -947,7 +1001,9 @@ const translations = {
         duration: 'Duration',
         cache: 'Cache Hit',
         requestIp: 'Request IP',
-        protocolConversion: 'Protocol Conversion'
+        protocolConversion: 'Protocol Conversion',
+        responseSource: 'Response Source',
+        firstTokenTimeout: 'First Token Timeout'
       }
     },
     settings: {
@@ -579,6 +579,12 @@ export const Logs: React.FC = () => {
                                         <span className="text-xs font-bold text-gray-900 dark:text-white bg-gray-100 dark:bg-gray-800 px-2.5 py-1 rounded-md">{selectedLog.protocolConversion}</span>
                                     </div>
                                     )}
+                                    {selectedLog.responseSource && (
+                                    <div className="flex justify-between">
+                                        <span className="text-sm font-medium text-gray-500 dark:text-gray-400">{t('logs.detail.responseSource')}</span>
+                                        <span className="text-xs font-bold text-gray-900 dark:text-white bg-gray-100 dark:bg-gray-800 px-2.5 py-1 rounded-md">{selectedLog.responseSource}</span>
+                                    </div>
+                                    )}
                                 </div>
                             </div>
 
@@ -593,6 +599,12 @@ export const Logs: React.FC = () => {
                                         <span className="text-sm font-medium text-gray-500 dark:text-gray-400">{t('logs.detail.duration')}</span>
                                         <span className="text-sm font-mono font-semibold text-gray-700 dark:text-gray-300">{selectedLog.totalTimeMs} ms</span>
                                     </div>
+                                    {selectedLog.firstTokenTimeoutMs != null && (
+                                    <div className="flex justify-between">
+                                        <span className="text-sm font-medium text-gray-500 dark:text-gray-400">{t('logs.detail.firstTokenTimeout')}</span>
+                                        <span className="text-sm font-mono font-semibold text-gray-700 dark:text-gray-300">{selectedLog.firstTokenTimeoutMs} ms</span>
+                                    </div>
+                                    )}
                                     <div className="flex justify-between items-start">
                                         <span className="text-sm font-medium text-gray-500 dark:text-gray-400">{t('logs.table.tokens')}</span>
                                         <div className="text-right">
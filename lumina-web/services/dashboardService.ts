@@ -44,6 +44,12 @@ export interface ObservabilityOverview {
 export interface ObservabilitySelection {
   saprSelections: number;
   roundRobinSelections: number;
+  affinitySelections: number;
+  p2cSelections: number;
+  costSelections: number;
+  costSpills: number;
+  fallbackFromAffinity: number;
+  fallbackFromCost: number;
   fallbackToRoundRobin: number;
   skippedExcluded: number;
   skippedCircuitOpen: number;
@@ -71,11 +77,21 @@ export interface ObservabilityCacheMetric {
   avgLoadMs: number;
 }
 
+export interface ObservabilityPromptCacheMetric {
+  mode: string;
+  requests: number;
+  hits: number;
+  hitRate: number;
+  inputTokens: number;
+  cacheReadTokens: number;
+}
+
 export interface DashboardObservability {
   overview: ObservabilityOverview;
   selection: ObservabilitySelection;
   logPipeline: ObservabilityLogPipeline;
   caches: ObservabilityCacheMetric[];
+  promptCaches: ObservabilityPromptCacheMetric[];
   providers: CircuitBreakerStatus[];
 }
 
@@ -161,6 +177,12 @@ export const dashboardService = {
       selection: {
         saprSelections: 0,
         roundRobinSelections: 0,
+        affinitySelections: 0,
+        p2cSelections: 0,
+        costSelections: 0,
+        costSpills: 0,
+        fallbackFromAffinity: 0,
+        fallbackFromCost: 0,
         fallbackToRoundRobin: 0,
         skippedExcluded: 0,
         skippedCircuitOpen: 0,
@@ -177,6 +199,7 @@ export const dashboardService = {
         avgFlushMs: 0,
       },
       caches: [],
+      promptCaches: [],
       providers: [],
     };
   },
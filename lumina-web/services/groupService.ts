@@ -30,6 +30,9 @@ const MODE_MAP_TO_FRONTEND: Record<number, LoadBalanceMode> = {
   3: LoadBalanceMode.WEIGHTED,
   4: LoadBalanceMode.FAILOVER,
   5: LoadBalanceMode.SAPR,
+  6: LoadBalanceMode.AFFINITY,
+  7: LoadBalanceMode.P2C,
+  8: LoadBalanceMode.COST,
 };
 
 const MODE_MAP_TO_BACKEND: Record<string, number> = {
@@ -38,6 +41,9 @@ const MODE_MAP_TO_BACKEND: Record<string, number> = {
   [LoadBalanceMode.WEIGHTED]: 3,
   [LoadBalanceMode.FAILOVER]: 4,
   [LoadBalanceMode.SAPR]: 5,
+  [LoadBalanceMode.AFFINITY]: 6,
+  [LoadBalanceMode.P2C]: 7,
+  [LoadBalanceMode.COST]: 8,
 };
 
 export interface GroupPageResponse {
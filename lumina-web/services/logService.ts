@@ -40,6 +40,8 @@ export interface LogDetailMeta {
   errorMessage?: string;
   requestIp?: string;
   protocolConversion?: string;
+  responseSource?: string;
+  firstTokenTimeoutMs?: number;
   createdAt: string;
 }
 
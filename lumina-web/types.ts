@@ -5,6 +5,9 @@ export enum LoadBalanceMode {
   FAILOVER = 'Failover',
   WEIGHTED = 'Weighted',
   SAPR = 'SAPR',
+  AFFINITY = 'Affinity',
+  P2C = 'P2C',
+  COST = 'Cost',
 }
 
 export enum ProviderType {
@@ -160,6 +163,18 @@ export interface CircuitBreakerStatus {
   openAttempt?: number;
   score: number;
   latencyEmaMs?: number;
+  latencyP50Ms?: number;
+  latencyP95Ms?: number;
+  latencyP99Ms?: number;
+  ttftP50Ms?: number;
+  ttftP95Ms?: number;
+  ttftP99Ms?: number;
+  chunkGapP50Ms?: number;
+  chunkGapP99Ms?: number;
+  outputTokensPerSecondP50?: number;
+  upstreamRequestsRemaining?: number;
+  upstreamTokensRemaining?: number;
+  upstreamCooldownUntil?: number;
   successRateEma?: number;
   errorRate: number;
   slowRate: number;
@@ -0,0 +1,67 @@
+package com.lumina.cache;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 响应缓存条目
+ *
+ * 非流式响应保存响应体 JSON；流式响应按原始分片保存 SSE 事件及其相对首个事件的时间偏移，
+ * 回放时保持原有的分片边界。来源 Provider 与模型用于命中时的请求日志和统计归属。
+ */
+@Data
+public class CachedResponse {
+
+    private String key;
+    private boolean stream;
+    private String body;
+    private List<Chunk> chunks = new ArrayList<>();
+
+    private Long providerId;
+    private String providerName;
+    private String actualModel;
+
+    /** 原请求的首包和总耗时 */
+    private int firstTokenMs;
+    private int totalTimeMs;
+
+    private long createdAt;
+    private long expiresAt;
+
+    @JsonIgnore
+    public boolean isExpired(long now) {
+        return now >= expiresAt;
+    }
+
+    /**
+     * 估算占用的字符数，用于内存容量限制
+     */
+    @JsonIgnore
+    public long weight() {
+        long weight = body != null ? body.length() : 0;
+        for (Chunk chunk : chunks) {
+            weight += (chunk.getData() != null ? chunk.getData().length() : 0)
+                    + (chunk.getEvent() != null ? chunk.getEvent().length() : 0) + 16;
+        }
+        return weight + 128;
+    }
+
+    @Data
+    public static class Chunk {
+        private String event;
+        private String data;
+        /** 相对首个事件的毫秒偏移 */
+        private long offsetMs;
+
+        public static Chunk of(String event, String data, long offsetMs) {
+            Chunk chunk = new Chunk();
+            chunk.setEvent(event);
+            chunk.setData(data);
+            chunk.setOffsetMs(offsetMs);
+            return chunk;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.lumina.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lumina.config.LuminaProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * 上游响应缓存
+ *
+ * 内存层：按访问顺序的 LRU，条目数和总字符数有上限；容量已满时用 TinyLFU 做准入，
+ * 新条目的访问频率不高于待淘汰条目时不进入内存，避免一次性请求把热点挤出去。
+ * 磁盘层（可选）：每个条目一个 JSON 文件，写入和读取都在 boundedElastic 线程执行，
+ * 内存未命中时回查磁盘并提升到内存；过期和超出数量上限的文件由定时任务清理。
+ */
+@Slf4j
+@Component
+public class ResponseCache {
+
+    private final LuminaProperties.ResponseCache properties;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final FrequencySketch sketch;
+    private final long maxWeight;
+    private final long maxEntryWeight;
+    private final Path diskDirectory;
+    private long weight;
+
+    public ResponseCache(LuminaProperties luminaProperties, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.properties = luminaProperties.getResponseCache();
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.sketch = new FrequencySketch(Math.max(1, properties.getMaxEntries()));
+        this.maxWeight = properties.getMaxMemoryMb() * 1024L * 1024L;
+        this.maxEntryWeight = properties.getMaxEntryKb() * 1024L;
+        this.diskDirectory = properties.getDisk().isEnabled() ? Paths.get(properties.getDisk().getDirectory()) : null;
+
+        Gauge.builder("lumina_response_cache_entries", this, ResponseCache::size)
+                .description("Number of responses held in the in-memory response cache")
+                .register(meterRegistry);
+        Gauge.builder("lumina_response_cache_weight", this, ResponseCache::weight)
+                .description("Approximate characters held in the in-memory response cache")
+                .register(meterRegistry);
+    }
+
+    public long ttlMs() {
+        return properties.getTtlSeconds() * 1000L;
+    }
+
+    /**
+     * 查找缓存，内存未命中且启用磁盘层时异步回查磁盘
+     */
+    public Mono<CachedResponse> get(String key) {
+        CachedResponse cached = getFromMemory(key);
+        if (cached != null) {
+            recordLookup("memory", "hit");
+            return Mono.just(cached);
+        }
+        if (diskDirectory == null) {
+            recordLookup("memory", "miss");
+            return Mono.empty();
+        }
+        return Mono.fromCallable(() -> readFromDisk(key))
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnNext(entry -> {
+                    recordLookup("disk", "hit");
+                    putInMemory(entry);
+                })
+                .switchIfEmpty(Mono.fromRunnable(() -> recordLookup("disk", "miss")));
+    }
+
+    public void put(CachedResponse entry) {
+        if (entry.weight() > maxEntryWeight) {
+            meterRegistry.counter("lumina_response_cache_rejections_total", "reason", "too_large").increment();
+            return;
+        }
+        putInMemory(entry);
+        if (diskDirectory != null) {
+            Schedulers.boundedElastic().schedule(() -> writeToDisk(entry));
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+
+    private synchronized CachedResponse getFromMemory(String key) {
+        sketch.increment(key);
+        CachedResponse entry = entries.get(key);
+        if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+            removeEntry(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private synchronized void putInMemory(CachedResponse entry) {
+        String key = entry.getKey();
+        removeEntry(key);
+        long entryWeight = entry.weight();
+        Iterator<Map.Entry<String, CachedResponse>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()
+                && (entries.size() >= properties.getMaxEntries() || weight + entryWeight > maxWeight)) {
+            CachedResponse victim = iterator.next().getValue();
+            boolean victimExpired = victim.isExpired(System.currentTimeMillis());
+            if (!victimExpired && sketch.frequency(key) <= sketch.frequency(victim.getKey())) {
+                meterRegistry.counter("lumina_response_cache_rejections_total", "reason", "admission").increment();
+                return;
+            }
+            iterator.remove();
+            weight -= victim.weight();
+            meterRegistry.counter("lumina_response_cache_evictions_total").increment();
+        }
+        entries.put(key, entry);
+        weight += entryWeight;
+    }
+
+    private void removeEntry(String key) {
+        CachedResponse removed = entries.remove(key);
+        if (removed != null) {
+            weight -= removed.weight();
+        }
+    }
+
+    private CachedResponse readFromDisk(String key) {
+        Path file = diskDirectory.resolve(key + ".json");
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            CachedResponse entry = objectMapper.readValue(file.toFile(), CachedResponse.class);
+            if (entry.isExpired(System.currentTimeMillis())) {
+                Files.deleteIfExists(file);
+                return null;
+            }
+            return entry;
+        } catch (IOException e) {
+            log.warn("读取响应缓存文件失败，已丢弃: file={}, error={}", file, e.getMessage());
+            deleteQuietly(file);
+            return null;
+        }
+    }
+
+    private void writeToDisk(CachedResponse entry) {
+        try {
+            Files.createDirectories(diskDirectory);
+            Path target = diskDirectory.resolve(entry.getKey() + ".json");
+            Path temp = diskDirectory.resolve(entry.getKey() + ".tmp");
+            objectMapper.writeValue(temp.toFile(), entry);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            log.warn("写入响应缓存文件失败: key={}, error={}", entry.getKey(), e.getMessage());
+        }
+    }
+
+    /**
+     * 清理过期条目；磁盘层按文件修改时间判断过期，并按数量上限删除最旧的文件
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void cleanup() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            entries.values().removeIf(entry -> {
+                if (entry.isExpired(now)) {
+                    weight -= entry.weight();
+                    return true;
+                }
+                return false;
+            });
+        }
+        if (diskDirectory == null || !Files.isDirectory(diskDirectory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(diskDirectory)) {
+            List<Path> alive = files
+                    .filter(file -> file.getFileName().toString().endsWith(".json"))
+                    .filter(file -> {
+                        if (lastModified(file) + ttlMs() <= now) {
+                            deleteQuietly(file);
+                            return false;
+                        }
+                        return true;
+                    })
+                    .sorted(Comparator.comparingLong(ResponseCache::lastModified))
+                    .toList();
+            int excess = alive.size() - properties.getDisk().getMaxEntries();
+            for (int i = 0; i < excess; i++) {
+                deleteQuietly(alive.get(i));
+            }
+        } catch (IOException e) {
+            log.warn("清理响应缓存目录失败: {}", e.getMessage());
+        }
+    }
+
+    private void recordLookup(String tier, String result) {
+        meterRegistry.counter("lumina_response_cache_lookups_total", "tier", tier, "result", result).increment();
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+        }
+    }
+}
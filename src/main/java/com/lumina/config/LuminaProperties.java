@@ -4,6 +4,11 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 @Data
 @Component
 @ConfigurationProperties(prefix = "lumina")
@@ -59,6 +64,56 @@ public class LuminaProperties {
      */
     private Failover failover = new Failover();
 
+    /**
+     * 对冲请求配置
+     */
+    private Hedging hedging = new Hedging();
+
+    /**
+     * 流式首包竞速配置
+     */
+    private Racing racing = new Racing();
+
+    /**
+     * 相同在途请求合并配置
+     */
+    private Coalescing coalescing = new Coalescing();
+
+    /**
+     * 响应缓存配置
+     */
+    private ResponseCache responseCache = new ResponseCache();
+
+    /**
+     * Provider 自适应并发上限配置
+     */
+    private AdaptiveConcurrency adaptiveConcurrency = new AdaptiveConcurrency();
+
+    /**
+     * Provider 自适应首包超时配置
+     */
+    private AdaptiveTimeout adaptiveTimeout = new AdaptiveTimeout();
+
+    /**
+     * 舱壁全满时的公平排队配置
+     */
+    private FairQueue fairQueue = new FairQueue();
+
+    /**
+     * 成本优先负载均衡（balance_mode=8）配置
+     */
+    private CostRouting costRouting = new CostRouting();
+
+    /**
+     * 上游限流头（retry-after / x-ratelimit-* / anthropic-ratelimit-*）感知配置
+     */
+    private UpstreamRateLimit upstreamRateLimit = new UpstreamRateLimit();
+
+    /**
+     * 请求级截止时间预算配置
+     */
+    private Deadline deadline = new Deadline();
+
     @Data
     public static class Proxy {
         private String url;
@@ -82,7 +137,18 @@ public class LuminaProperties {
     @Data
     public static class RateLimit {
         private boolean enabled = false;
+        /** API Key 未单独配置 rate_limit_rpm 时的默认每分钟请求数 */
         private int requestsPerMinute = 1000;
+        /** 令牌桶容量，以秒计的突发量（容量 = 每秒速率 × burstSeconds） */
+        private int burstSeconds = 10;
+        /** 每次从 Redis 租借的最大令牌数 */
+        private int leaseSize = 20;
+        /** 本地租约有效期，过期未用完的令牌作废 */
+        private long leaseTtlMs = 1000;
+        /** API Key 未单独配置 tpm_limit 时的默认每分钟 token 数，0 表示不限制 */
+        private long tokensPerMinute = 0;
+        /** 模型分组的每分钟 token 数限制，key 为分组名 */
+        private Map<String, Long> groupTokensPerMinute = new HashMap<>();
     }
 
     @Data
@@ -128,6 +194,8 @@ public class LuminaProperties {
         private int batchSize = 100;
         private int flushIntervalMs = 500;
         private double successPayloadSampleRate = 1.0;
+        /** 单个请求最多保留的响应字符数（头尾各一半，中间截断） */
+        private int responseCaptureMaxChars = 64 * 1024;
     }
 
     @Data
@@ -135,5 +203,143 @@ public class LuminaProperties {
         private int topK = 3;
         private double softmaxT = 10.0;
         private double halfOpenWeightFactor = 0.5;
+        /** 流式首包之后上游中断时，带上已输出内容到其他 Provider 续写 */
+        private boolean streamContinuation = true;
+        /** 亲和模式（balance_mode=6）下，除 system/tools 外参与前缀哈希的开头非系统消息条数 */
+        private int affinityPrefixMessages = 1;
+    }
+
+    @Data
+    public static class Hedging {
+        /** 启用对冲的模型分组名（仅非流式请求） */
+        private Set<String> groups = new HashSet<>();
+        /** 主请求超过 Provider 该分位延迟仍未返回时，向次优 Provider 发出对冲请求 */
+        private double latencyPercentile = 0.95;
+        /** 对冲等待时间下限 */
+        private long minDelayMs = 200;
+        /** 延迟样本不足时不对冲 */
+        private int minSamples = 20;
+    }
+
+    @Data
+    public static class Racing {
+        /** 启用首包竞速的模型分组及其预算比例（0.2 表示额外上游流量不超过请求量的 20%） */
+        private Map<String, Double> groupBudgets = new HashMap<>();
+        /** 预算最多累积的竞速次数 */
+        private int maxBurst = 10;
+    }
+
+    @Data
+    public static class Coalescing {
+        /** 启用合并的模型分组名（仅 temperature=0 的非流式请求） */
+        private Set<String> groups = new HashSet<>();
+    }
+
+    @Data
+    public static class ResponseCache {
+        /** 启用响应缓存的模型分组名 */
+        private Set<String> groups = new HashSet<>();
+        /** 启用响应缓存的 API Key，缓存只在该 Key 自己的请求之间复用 */
+        private Set<String> apiKeys = new HashSet<>();
+        private long ttlSeconds = 3600;
+        private int maxEntries = 10000;
+        private int maxMemoryMb = 64;
+        /** 超过该大小的响应不缓存 */
+        private int maxEntryKb = 1024;
+        /** 流式命中按原始分片间隔的倍数回放，0 表示不等待 */
+        private double replayPacing = 0;
+        private Disk disk = new Disk();
+
+        @Data
+        public static class Disk {
+            private boolean enabled = false;
+            private String directory = "./data/response-cache";
+            private int maxEntries = 100000;
+        }
+    }
+
+    @Data
+    public static class AdaptiveConcurrency {
+        /** 启用后 maxConcurrentRequestsPerProvider 只作为初始上限，之后按 RTT 和 429/超时自动调整 */
+        private boolean enabled = false;
+        private int minLimit = 4;
+        private int maxLimit = 500;
+        /** 短期 RTT 不超过长期 RTT 的该倍数时视为上游未排队，允许上调 */
+        private double tolerance = 1.5;
+        /** 每次调整向目标值移动的比例 */
+        private double smoothing = 0.2;
+        /** 短期 / 长期 RTT EMA 的样本窗口 */
+        private int shortWindow = 10;
+        private int longWindow = 600;
+        /** 429 或超时时的乘性下调比例 */
+        private double backoffRatio = 0.9;
+    }
+
+    @Data
+    public static class AdaptiveTimeout {
+        /** 启用后按各 Provider 近期首包延迟 p99 学习首包超时，分组 firstTokenTimeout 只作为上限 */
+        private boolean enabled = false;
+        /** p99 的放大系数 */
+        private double factor = 3.0;
+        /** 学习到的超时下限 */
+        private long minTimeoutMs = 3_000;
+        /** 参与学习的最少样本数，样本不足时使用分组静态超时 */
+        private int minSamples = 50;
+    }
+
+    @Data
+    public static class FairQueue {
+        /** 启用排队的模型分组名：分组内 Provider 舱壁全满时请求排队等待，而不是立即 Failover 直至失败 */
+        private Set<String> groups = new HashSet<>();
+        /** 每个分组最多排队的请求数，超出时直接失败 */
+        private int maxQueueSize = 200;
+        /** 单个请求最长排队时间 */
+        private long maxWaitMs = 10_000;
+        /** API Key 的排队权重，未配置时为 1 */
+        private Map<String, Double> apiKeyWeights = new HashMap<>();
+    }
+
+    @Data
+    public static class CostRouting {
+        /** 默认 SLO：近期 p95 延迟上限（流式请求按首包延迟），超出时溢出到更贵的 Provider */
+        private long maxP95LatencyMs = 10_000;
+        /** 默认 SLO：滑动窗口错误率上限 */
+        private double maxErrorRate = 0.1;
+        /** 参与 SLO 判断的最少延迟样本数，样本不足时只看错误率 */
+        private int minSamples = 20;
+        /** 按分组名覆盖 SLO */
+        private Map<String, Slo> groups = new HashMap<>();
+        /** 按 Provider 名称设置价格倍率（同一模型不同渠道的加价或折扣），未配置时为 1 */
+        private Map<String, Double> priceMultipliers = new HashMap<>();
+        /** Provider 还没有历史输出长度时假设的输出 token 数 */
+        private int defaultOutputTokens = 500;
+    }
+
+    @Data
+    public static class UpstreamRateLimit {
+        /** 是否解析上游限流头：配额耗尽或处于 retry-after 冷却期的 Provider 在选路时跳过 */
+        private boolean enabled = true;
+        /** 剩余配额比例低于该值时开始降低选择概率 */
+        private double lowWatermark = 0.1;
+        /** retry-after 冷却时间上限，避免异常的超长 retry-after 让 Provider 长期不可用 */
+        private long maxCooldownMs = 300_000;
+    }
+
+    @Data
+    public static class Deadline {
+        /** 默认预算（毫秒），0 表示不限；客户端可通过 X-Lumina-Timeout-Ms 请求头指定更短的预算 */
+        private long defaultMs = 0;
+        /** 按分组名覆盖预算 */
+        private Map<String, Long> groups = new HashMap<>();
+        /** 剩余预算低于该值时不再发起新的尝试 */
+        private long minAttemptMs = 1_000;
+        /** 按延迟中位数判断 Provider 能否在剩余预算内完成所需的最少样本数 */
+        private int minSamples = 20;
+    }
+
+    @Data
+    public static class Slo {
+        private Long maxP95LatencyMs;
+        private Double maxErrorRate;
     }
 }
@@ -1,11 +1,15 @@
 package com.lumina.controller;
 
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.lumina.dto.PassthroughStreamBody;
 import com.lumina.service.RelayService;
 import com.lumina.service.TokenCountService;
+import com.lumina.service.impl.AbstractRequestExecutor;
+import com.lumina.service.impl.ResponseCacheHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
@@ -36,6 +40,56 @@ public class RelayController {
         return remoteAddress != null ? remoteAddress.getAddress().getHostAddress() : "unknown";
     }
 
+    /**
+     * 丢弃客户端在查询串里伪造的 _lumina_* 内部参数，这些参数只能由网关自己写入
+     */
+    private void stripInternalParams(Map<String, String> allParams) {
+        allParams.keySet().removeIf(key -> key.startsWith("_lumina_"));
+    }
+
+    /**
+     * 请求头 X-Lumina-Cache 以内部参数传给 Relay：true 要求缓存非确定性请求，false 跳过缓存
+     */
+    private void applyCacheDirective(ServerWebExchange exchange, Map<String, String> allParams) {
+        String directive = exchange.getRequest().getHeaders().getFirst("X-Lumina-Cache");
+        if (directive != null && !directive.isBlank()) {
+            allParams.put(ResponseCacheHandler.INTERNAL_CACHE_DIRECTIVE_PARAM, directive.trim());
+        }
+    }
+
+    /**
+     * 请求头 X-Lumina-Timeout-Ms 换算成绝对截止时间，所有 Failover 尝试共享这一预算
+     */
+    private void applyDeadline(ServerWebExchange exchange, Map<String, String> allParams) {
+        String timeout = exchange.getRequest().getHeaders().getFirst("X-Lumina-Timeout-Ms");
+        if (timeout == null || timeout.isBlank()) {
+            return;
+        }
+        try {
+            long budgetMs = Long.parseLong(timeout.trim());
+            if (budgetMs > 0) {
+                allParams.put(AbstractRequestExecutor.INTERNAL_DEADLINE_PARAM,
+                        String.valueOf(System.currentTimeMillis() + budgetMs));
+            }
+        } catch (NumberFormatException ignored) {
+        }
+    }
+
+    /**
+     * 透传流式响应直接写出上游字节并逐块 flush；其余响应交给默认的消息写出器
+     */
+    private Mono<ResponseEntity<?>> writePassthrough(Mono<ResponseEntity<?>> result, ServerWebExchange exchange) {
+        return result.flatMap(entity -> {
+            if (!(entity.getBody() instanceof PassthroughStreamBody body)) {
+                return Mono.just(entity);
+            }
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(entity.getStatusCode());
+            response.getHeaders().putAll(entity.getHeaders());
+            return response.writeAndFlushWith(body.buffers().map(Mono::just)).then(Mono.empty());
+        });
+    }
+
     @GetMapping("/v1/models")
     public Mono<ResponseEntity<?>> models() {
         return relayService.models();
@@ -47,8 +101,11 @@ public class RelayController {
             @RequestParam Map<String, String> allParams,
             ServerWebExchange exchange) {
         String apiKey = exchange.getAttribute("API_KEY");
+        stripInternalParams(allParams);
         allParams.put("_lumina_request_ip", extractClientIp(exchange));
-        return relayService.relay("anthropic_messages", params, allParams, apiKey);
+        applyDeadline(exchange, allParams);
+        applyCacheDirective(exchange, allParams);
+        return writePassthrough(relayService.relay("anthropic_messages", params, allParams, apiKey), exchange);
     }
 
 
@@ -61,8 +118,11 @@ public class RelayController {
             @RequestParam Map<String, String> allParams,
             ServerWebExchange exchange) {
         String apiKey = exchange.getAttribute("API_KEY");
+        stripInternalParams(allParams);
         allParams.put("_lumina_request_ip", extractClientIp(exchange));
-        return relayService.relay("openai_chat_completions", params, allParams, apiKey);
+        applyDeadline(exchange, allParams);
+        applyCacheDirective(exchange, allParams);
+        return writePassthrough(relayService.relay("openai_chat_completions", params, allParams, apiKey), exchange);
     }
 
     @PostMapping(
@@ -74,8 +134,11 @@ public class RelayController {
             @RequestParam Map<String, String> allParams,
             ServerWebExchange exchange) {
         String apiKey = exchange.getAttribute("API_KEY");
+        stripInternalParams(allParams);
         allParams.put("_lumina_request_ip", extractClientIp(exchange));
-        return relayService.relay("openai_responses", params, allParams, apiKey);
+        applyDeadline(exchange, allParams);
+        applyCacheDirective(exchange, allParams);
+        return writePassthrough(relayService.relay("openai_responses", params, allParams, apiKey), exchange);
     }
 
     @PostMapping(
@@ -87,7 +150,10 @@ public class RelayController {
             @RequestParam Map<String, String> allParams,
             ServerWebExchange exchange) {
         String apiKey = exchange.getAttribute("API_KEY");
+        stripInternalParams(allParams);
         allParams.put("_lumina_request_ip", extractClientIp(exchange));
+        applyDeadline(exchange, allParams);
+        applyCacheDirective(exchange, allParams);
         return relayService.relay("openai_images_generations", params, allParams, apiKey);
     }
 
@@ -101,7 +167,9 @@ public class RelayController {
             @RequestParam Map<String, String> allParams,
             ServerWebExchange exchange) {
         String apiKey = exchange.getAttribute("API_KEY");
+        stripInternalParams(allParams);
         allParams.put("_lumina_request_ip", extractClientIp(exchange));
+        applyDeadline(exchange, allParams);
         return relayService.relay("gemini_models", modelAction, params, allParams, apiKey);
     }
 
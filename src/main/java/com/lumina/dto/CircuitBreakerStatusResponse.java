@@ -30,6 +30,22 @@ public class CircuitBreakerStatusResponse {
     // 统计信息
     private double score;
     private double latencyEmaMs;
+    // 最近 1~2 分钟成功请求的延迟分位数（毫秒），没有样本时为 -1
+    private long latencyP50Ms;
+    private long latencyP95Ms;
+    private long latencyP99Ms;
+    // 流式请求首包延迟分位数（毫秒），没有样本时为 -1
+    private long ttftP50Ms;
+    private long ttftP95Ms;
+    private long ttftP99Ms;
+    // 流式相邻分片间隔分位数（毫秒）与输出速度中位数（token/s），没有样本时为 -1
+    private long chunkGapP50Ms;
+    private long chunkGapP99Ms;
+    private long outputTokensPerSecondP50;
+    // 上游限流头给出的剩余请求数 / token 数（未知时为 -1）与 retry-after 冷却截止时间
+    private long upstreamRequestsRemaining;
+    private long upstreamTokensRemaining;
+    private long upstreamCooldownUntil;
     private double successRateEma;
     private double errorRate;
     private double slowRate;
@@ -13,6 +13,7 @@ public class DashboardObservabilityDto {
     private Selection selection;
     private LogPipeline logPipeline;
     private List<CacheMetric> caches;
+    private List<PromptCacheMetric> promptCaches;
     private List<CircuitBreakerStatusResponse> providers;
 
     @Data
@@ -35,6 +36,12 @@ public class DashboardObservabilityDto {
     public static class Selection {
         private long saprSelections;
         private long roundRobinSelections;
+        private long affinitySelections;
+        private long p2cSelections;
+        private long costSelections;
+        private long costSpills;
+        private long fallbackFromAffinity;
+        private long fallbackFromCost;
         private long fallbackToRoundRobin;
         private long skippedExcluded;
         private long skippedCircuitOpen;
@@ -65,4 +72,18 @@ public class DashboardObservabilityDto {
         private double hitRate;
         private double avgLoadMs;
     }
+
+    /**
+     * 按负载均衡模式统计的上游 prompt cache 命中情况
+     */
+    @Data
+    @Builder
+    public static class PromptCacheMetric {
+        private String mode;
+        private long requests;
+        private long hits;
+        private double hitRate;
+        private long inputTokens;
+        private long cacheReadTokens;
+    }
 }
@@ -1,6 +1,8 @@
 package com.lumina.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.lumina.config.OverrideCircuitBreakerConfig;
+import com.lumina.state.RoutingPlan;
 import lombok.Data;
 
 import java.util.List;
@@ -23,4 +25,10 @@ public class ModelGroupConfig {
      * 可覆盖全局配置的部分或全部参数
      */
     private OverrideCircuitBreakerConfig circuitBreakerConfig;
+
+    /**
+     * 预编译路由计划，随分组配置一起缓存
+     */
+    @JsonIgnore
+    private volatile RoutingPlan routingPlan;
 }
@@ -0,0 +1,11 @@
+package com.lumina.dto;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+
+/**
+ * 透传流式响应体
+ * 上游 SSE 字节原样转发给客户端，由控制器直接写出，不经过 ServerSentEvent 编解码
+ */
+public record PassthroughStreamBody(Flux<DataBuffer> buffers) {
+}
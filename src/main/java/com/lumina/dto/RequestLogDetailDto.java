@@ -31,5 +31,7 @@ public class RequestLogDetailDto {
     private Integer retryCount;
     private String requestIp;
     private String protocolConversion;
+    private String responseSource;
+    private Integer firstTokenTimeoutMs;
     private LocalDateTime createdAt;
 }
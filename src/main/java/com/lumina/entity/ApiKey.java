@@ -15,6 +15,8 @@ public class ApiKey {
     private Boolean isEnabled;
     private Long expiredAt;
     private BigDecimal maxAmount;
+    private Integer rateLimitRpm;
+    private Long tpmLimit;
     private String supportedModels;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
@@ -36,5 +36,7 @@ public class RequestLog {
     private String apiKey;
     private String requestIp;
     private String protocolConversion;
+    private String responseSource;
+    private Integer firstTokenTimeoutMs;
     private LocalDateTime createdAt;
 }
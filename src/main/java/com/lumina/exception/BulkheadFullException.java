@@ -1,8 +1,8 @@
 package com.lumina.exception;
 
 /**
- * 并发舱壁满异常（阶段2预留）
- * 当 Provider 的并发请求数达到上限时抛出
+ * 并发舱壁满异常
+ * 启用排队的分组内所有可用 Provider 的并发请求数都达到上限时抛出，排队超时后返回给调用方
  */
 public class BulkheadFullException extends RuntimeException {
 
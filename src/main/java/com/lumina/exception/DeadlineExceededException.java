@@ -0,0 +1,25 @@
+package com.lumina.exception;
+
+/**
+ * 请求级截止时间预算耗尽异常
+ * 剩余预算不足以完成下一次 Failover 尝试时抛出，不再向上游发起请求
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    private final int attemptCount;
+    private final long remainingMs;
+
+    public DeadlineExceededException(int attemptCount, long remainingMs) {
+        super(String.format("请求截止时间预算已耗尽: 已尝试 %d 次, 剩余 %dms", attemptCount, Math.max(remainingMs, 0)));
+        this.attemptCount = attemptCount;
+        this.remainingMs = remainingMs;
+    }
+
+    public int getAttemptCount() {
+        return attemptCount;
+    }
+
+    public long getRemainingMs() {
+        return remainingMs;
+    }
+}
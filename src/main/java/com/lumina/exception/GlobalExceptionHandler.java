@@ -29,6 +29,22 @@ public class GlobalExceptionHandler {
                 .body(ApiResponse.error(503, "所有可用节点已尝试，服务暂时不可用"));
     }
 
+    @ExceptionHandler(DeadlineExceededException.class)
+    public ResponseEntity<ApiResponse<Void>> handleDeadlineExceededException(DeadlineExceededException ex) {
+        log.warn("Request deadline exceeded: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(ApiResponse.error(504, "请求截止时间已到，未能在预算内完成"));
+    }
+
+    @ExceptionHandler(TokenRateLimitExceededException.class)
+    public ResponseEntity<ApiResponse<Void>> handleTokenRateLimitExceededException(TokenRateLimitExceededException ex) {
+        log.warn("Token rate limit exceeded: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(ApiResponse.error(429, "Rate limit reached for tokens"));
+    }
+
     @ExceptionHandler(WebExchangeBindException.class)
     public ResponseEntity<ApiResponse<Map<String, String>>> handleValidationExceptions(
             WebExchangeBindException ex) {
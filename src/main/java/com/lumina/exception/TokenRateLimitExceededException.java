@@ -0,0 +1,25 @@
+package com.lumina.exception;
+
+/**
+ * TPM 限流异常
+ * 当 API Key 或模型分组的每分钟 token 额度不足以容纳本次请求时抛出
+ */
+public class TokenRateLimitExceededException extends RuntimeException {
+
+    private final String scope;
+    private final long estimatedTokens;
+
+    public TokenRateLimitExceededException(String scope, long estimatedTokens) {
+        super(String.format("Token 限流: scope=%s, 预估 %d tokens", scope, estimatedTokens));
+        this.scope = scope;
+        this.estimatedTokens = estimatedTokens;
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    public long getEstimatedTokens() {
+        return estimatedTokens;
+    }
+}
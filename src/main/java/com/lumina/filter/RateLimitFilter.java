@@ -1,10 +1,10 @@
 package com.lumina.filter;
 
 import com.lumina.config.LuminaProperties;
+import com.lumina.ratelimit.ApiKeyRateLimiter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.annotation.Order;
-import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
@@ -14,8 +14,6 @@ import org.springframework.web.server.WebFilterChain;
 import reactor.core.publisher.Mono;
 
 import java.nio.charset.StandardCharsets;
-import java.time.Duration;
-import java.time.Instant;
 
 @Slf4j
 @Component
@@ -26,7 +24,7 @@ public class RateLimitFilter implements WebFilter {
     private LuminaProperties luminaProperties;
 
     @Autowired
-    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+    private ApiKeyRateLimiter apiKeyRateLimiter;
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
@@ -44,32 +42,17 @@ public class RateLimitFilter implements WebFilter {
             return chain.filter(exchange);
         }
 
-        int limit = luminaProperties.getRateLimit().getRequestsPerMinute();
-        if (limit <= 0) {
-            return chain.filter(exchange);
-        }
-
-        long currentMinute = Instant.now().getEpochSecond() / 60;
-        String redisKey = "rate_limit:" + apiKey + ":" + currentMinute;
-
-        return reactiveStringRedisTemplate.opsForValue().increment(redisKey)
-                .flatMap(count -> {
-                    if (count == 1) {
-                        return reactiveStringRedisTemplate.expire(redisKey, Duration.ofSeconds(60))
-                                .thenReturn(count);
-                    }
-                    return Mono.just(count);
-                })
-                .flatMap(count -> {
-                    if (count > limit) {
-                        log.warn("Rate limit exceeded for API key. Limit: {}, Count: {}", limit, count);
-                        return tooManyRequests(exchange);
-                    }
-                    return chain.filter(exchange);
-                })
+        return apiKeyRateLimiter.tryAcquire(apiKey)
                 .onErrorResume(e -> {
                     log.error("Error during rate limiting check", e);
                     // Fallback to allow request if Redis fails
+                    return Mono.just(true);
+                })
+                .flatMap(allowed -> {
+                    if (!allowed) {
+                        log.warn("Rate limit exceeded for API key");
+                        return tooManyRequests(exchange);
+                    }
                     return chain.filter(exchange);
                 });
     }
@@ -14,14 +14,26 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * 请求日志写入器
+ *
+ * 所有 JDBC 操作都在单线程 executor 中执行，调用方（Reactor Netty 事件循环）只做内存操作：
+ * - recordStart: PROCESSING 初始记录进入 pendingStarts，等待下次 flush 批量插入
+ * - submit: 最终态进入队列；若对应的初始记录尚未落库，则直接合并为一次插入
+ */
 @Slf4j
 @Component
 public class LogWriter {
@@ -32,6 +44,10 @@ public class LogWriter {
     private final StatsAccumulator statsAccumulator;
     private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
     private final LongAdder droppedLogs = new LongAdder();
+    private final LongAdder mergedStarts = new LongAdder();
+    private final LongAdder droppedStarts = new LongAdder();
+    private final ConcurrentHashMap<String, RequestLog> pendingStarts = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingStartCount = new AtomicInteger(0);
     private final DistributionSummary batchSizeSummary;
     private final Timer flushTimer;
 
@@ -60,6 +76,15 @@ public class LogWriter {
         Gauge.builder("lumina_log_dropped_total", droppedLogs, LongAdder::sum)
                 .description("Total number of request logs dropped because the queue was full")
                 .register(meterRegistry);
+        Gauge.builder("lumina_log_pending_starts", pendingStartCount, AtomicInteger::get)
+                .description("Current number of PROCESSING start records waiting to be inserted")
+                .register(meterRegistry);
+        Gauge.builder("lumina_log_start_merged_total", mergedStarts, LongAdder::sum)
+                .description("Total number of start records merged into the final log insert")
+                .register(meterRegistry);
+        Gauge.builder("lumina_log_start_dropped_total", droppedStarts, LongAdder::sum)
+                .description("Total number of start records skipped because the pending buffer was full")
+                .register(meterRegistry);
         executor.scheduleWithFixedDelay(
                 this::flushSafely,
                 loggingProperties.getFlushIntervalMs(),
@@ -68,12 +93,22 @@ public class LogWriter {
         );
     }
 
+    /**
+     * 登记 PROCESSING 初始记录（仅内存操作，不访问数据库）
+     */
     public void recordStart(RequestLogContext ctx) {
         try {
             RequestLog logEntry = convert(ctx, false);
-            logEntry.setRequestContent(null);
-            logEntry.setResponseContent(null);
-            requestLogService.save(logEntry);
+            if (logEntry.getId() == null) {
+                return;
+            }
+            if (pendingStartCount.get() >= loggingProperties.getQueueCapacity()) {
+                droppedStarts.increment();
+                return;
+            }
+            if (pendingStarts.putIfAbsent(logEntry.getId(), logEntry) == null) {
+                pendingStartCount.incrementAndGet();
+            }
         } catch (Exception e) {
             log.error("初始化请求日志失败: requestId={}, provider={}, model={}",
                     ctx.getRequestId(), ctx.getProviderName(), ctx.getRequestModel(), e);
@@ -82,14 +117,24 @@ public class LogWriter {
 
     public void submit(RequestLogContext ctx) {
         RequestLog logEntry = convert(ctx, true);
+        if (logEntry.getId() != null && pendingStarts.remove(logEntry.getId()) != null) {
+            // 初始记录尚未落库，最终态直接作为一次插入写入
+            pendingStartCount.decrementAndGet();
+            mergedStarts.increment();
+        }
         if (queue == null) {
             writeFinalLogImmediately(logEntry);
             return;
         }
         if (!queue.offer(logEntry)) {
             meterRegistry.counter("lumina_log_queue_full_events_total").increment();
-            log.warn("请求日志最终态队列已满，切换为同步更新: requestId={}", logEntry.getRequestId());
-            writeFinalLogImmediately(logEntry);
+            log.warn("请求日志最终态队列已满，切换为写入线程单条更新: requestId={}", logEntry.getRequestId());
+            // 仍在写入线程执行，保证调用方（事件循环）不触达 JDBC，且与初始记录插入串行
+            try {
+                executor.execute(() -> writeFinalLogImmediately(logEntry));
+            } catch (RejectedExecutionException e) {
+                writeFinalLogImmediately(logEntry);
+            }
         }
     }
 
@@ -110,6 +155,11 @@ public class LogWriter {
 
     private void flushSafely() {
         flushTimer.record(() -> {
+            try {
+                flushPendingStarts();
+            } catch (Exception e) {
+                log.error("批量写入请求初始日志失败", e);
+            }
             try {
                 flushBatch();
             } catch (Exception e) {
@@ -118,7 +168,33 @@ public class LogWriter {
         });
     }
 
-    private void flushBatch() {
+    /**
+     * 批量插入仍未完成的请求初始记录。
+     * 必须先于同一轮的最终态写入执行，保证最终态更新时初始记录已存在。
+     */
+    void flushPendingStarts() {
+        if (pendingStarts.isEmpty()) {
+            return;
+        }
+
+        List<RequestLog> batch = new ArrayList<>(Math.min(pendingStarts.size(), loggingProperties.getBatchSize()));
+        Iterator<Map.Entry<String, RequestLog>> iterator = pendingStarts.entrySet().iterator();
+        while (iterator.hasNext() && batch.size() < loggingProperties.getBatchSize()) {
+            Map.Entry<String, RequestLog> entry = iterator.next();
+            // 与 submit 竞争同一条记录时，只有 remove 成功的一方负责写入
+            if (pendingStarts.remove(entry.getKey(), entry.getValue())) {
+                pendingStartCount.decrementAndGet();
+                batch.add(entry.getValue());
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        requestLogService.saveBatchLogs(batch);
+    }
+
+    void flushBatch() {
         if (queue == null || queue.isEmpty()) {
             return;
         }
@@ -165,9 +241,11 @@ public class LogWriter {
         logEntry.setApiKey(ctx.getApiKey());
         logEntry.setRequestIp(ctx.getRequestIp());
         logEntry.setProtocolConversion(ctx.getProtocolConversion());
+        logEntry.setResponseSource(ctx.getResponseSource());
+        logEntry.setFirstTokenTimeoutMs(ctx.getFirstTokenTimeoutMs());
 
         boolean keepPayloads = includePayloads && shouldKeepPayloads(ctx);
-        logEntry.setRequestContent(keepPayloads ? ctx.getRequestContent() : null);
+        logEntry.setRequestContent(keepPayloads ? ctx.resolveRequestContent() : null);
         logEntry.setResponseContent(keepPayloads ? ctx.getResponseContent() : null);
 
         return logEntry;
@@ -177,18 +255,37 @@ public class LogWriter {
         if (!"SUCCESS".equalsIgnoreCase(ctx.getStatus())) {
             return true;
         }
-        return ThreadLocalRandom.current().nextDouble() < loggingProperties.getSuccessPayloadSampleRate();
+        return ctx.isPayloadSampled();
+    }
+
+    /**
+     * 请求开始时决定成功请求是否保留载荷，未采样的请求不再缓存响应内容
+     */
+    public boolean samplePayloads() {
+        double rate = loggingProperties.getSuccessPayloadSampleRate();
+        return rate >= 1.0 || ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    /**
+     * 按采样结果创建响应采集器
+     */
+    public ResponseCapture newResponseCapture(boolean sampled) {
+        return sampled
+                ? ResponseCapture.bounded(loggingProperties.getResponseCaptureMaxChars())
+                : ResponseCapture.disabled();
     }
 
     @PreDestroy
     public void shutdown() {
         executor.shutdown();
         try {
-            flushBatch();
             if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
                 executor.shutdownNow();
             }
 
+            while (!pendingStarts.isEmpty()) {
+                flushPendingStarts();
+            }
             while (queue != null && !queue.isEmpty()) {
                 flushBatch();
             }
@@ -1,5 +1,6 @@
 package com.lumina.logging;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import lombok.Data;
 import java.math.BigDecimal;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -41,13 +42,44 @@ public class RequestLogContext {
     private Integer retryCount = 0;
 
     private String requestContent;
+    /** 上游请求体引用，仅在决定保留载荷时才紧凑序列化为 requestContent */
+    private JsonNode requestNode;
     private String responseContent;
 
     private String apiKey;
     private String requestIp;
     private String protocolConversion;
+    /** TPM 预扣记录，成功时按真实 token 数结算 */
+    private String tokenReservationId;
+    /** 响应来源，null 表示来自上游 Provider */
+    private String responseSource;
+    /** 本次尝试实际使用的首包超时（毫秒），启用自适应超时时可能小于分组配置 */
+    private Integer firstTokenTimeoutMs;
+    /** 请求级截止时间（epoch 毫秒），单次尝试的超时不超过剩余预算 */
+    private Long deadlineAt;
+    /** 作为合并请求的领头请求时的合并键 */
+    private String coalesceKey;
+    /** 可缓存请求的缓存键，成功时把来源 Provider 交给响应缓存 */
+    private String cacheKey;
+    /** 本次请求使用的负载均衡模式，用于按模式统计上游 prompt cache 命中 */
+    private String routingMode;
+
+    /** 本次尝试的 Provider 运行态 ID，流式成功后据此记录输出速度 */
+    private String providerStateId;
 
     private AtomicBoolean firstTokenArrived = new AtomicBoolean(false);
     private AtomicBoolean logSubmitted = new AtomicBoolean(false);
-    private StringBuilder responseBuffer = new StringBuilder();
+    /** 请求开始时决定的成功请求载荷采样结果，未采样时不缓存响应内容 */
+    private boolean payloadSampled = true;
+    private ResponseCapture responseCapture = ResponseCapture.bounded(ResponseCapture.DEFAULT_MAX_CHARS);
+
+    /**
+     * 获取请求内容，首次调用时才序列化
+     */
+    public String resolveRequestContent() {
+        if (requestContent == null && requestNode != null) {
+            requestContent = requestNode.toString();
+        }
+        return requestContent;
+    }
 }
@@ -0,0 +1,115 @@
+package com.lumina.logging;
+
+/**
+ * 有界响应内容采集
+ *
+ * 保留前 headLimit 个字符和最后 tailLimit 个字符，中间部分只计数，
+ * 输出时插入截断标记。未被采样的请求使用 {@link #disabled()}，只统计长度不保存内容。
+ * 同一请求的 chunk 按顺序到达，不需要额外同步。
+ */
+public final class ResponseCapture {
+
+    public static final int DEFAULT_MAX_CHARS = 64 * 1024;
+
+    private final int headLimit;
+    private final int tailLimit;
+    private final StringBuilder head;
+    private final char[] tail;
+    private int tailStart;
+    private int tailLength;
+    private long totalChars;
+
+    private ResponseCapture(int headLimit, int tailLimit) {
+        this.headLimit = headLimit;
+        this.tailLimit = tailLimit;
+        this.head = headLimit > 0 ? new StringBuilder(Math.min(headLimit, 1024)) : null;
+        this.tail = new char[tailLimit];
+    }
+
+    /**
+     * @param maxChars 最多保留的字符数，头尾各占一半；小于等于 0 时等同于 {@link #disabled()}
+     */
+    public static ResponseCapture bounded(int maxChars) {
+        if (maxChars <= 0) {
+            return disabled();
+        }
+        int headLimit = (maxChars + 1) / 2;
+        return new ResponseCapture(headLimit, maxChars - headLimit);
+    }
+
+    public static ResponseCapture disabled() {
+        return new ResponseCapture(0, 0);
+    }
+
+    public boolean isEnabled() {
+        return head != null;
+    }
+
+    public void append(String data) {
+        if (data == null) {
+            return;
+        }
+        int length = data.length();
+        totalChars += length;
+        if (head == null) {
+            return;
+        }
+
+        int offset = 0;
+        int headRoom = headLimit - head.length();
+        if (headRoom > 0) {
+            int take = Math.min(headRoom, length);
+            head.append(data, 0, take);
+            offset = take;
+        }
+        if (offset < length && tailLimit > 0) {
+            appendTail(data, offset, length);
+        }
+    }
+
+    private void appendTail(String data, int from, int to) {
+        // 只有最后 tailLimit 个字符可能留在尾部
+        int start = Math.max(from, to - tailLimit);
+        for (int i = start; i < to; i++) {
+            int index = (tailStart + tailLength) % tailLimit;
+            tail[index] = data.charAt(i);
+            if (tailLength < tailLimit) {
+                tailLength++;
+            } else {
+                tailStart = (tailStart + 1) % tailLimit;
+            }
+        }
+    }
+
+    /**
+     * 已接收的字符总数（包括被截断和未采样的部分）
+     */
+    public long getTotalChars() {
+        return totalChars;
+    }
+
+    /**
+     * 采集到的内容；未采样时返回 null
+     */
+    public String content() {
+        if (head == null) {
+            return null;
+        }
+        long omitted = totalChars - head.length() - tailLength;
+        StringBuilder sb = new StringBuilder(head.length() + tailLength + (omitted > 0 ? 48 : 0));
+        sb.append(head);
+        if (omitted > 0) {
+            sb.append("\n...[truncated ").append(omitted).append(" chars]...\n");
+        }
+        for (int i = 0; i < tailLength; i++) {
+            sb.append(tail[(tailStart + i) % tailLimit]);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        String content = content();
+        return content != null ? content : "";
+    }
+}
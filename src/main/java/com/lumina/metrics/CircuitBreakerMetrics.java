@@ -28,6 +28,10 @@ import java.util.concurrent.ConcurrentHashMap;
  * - lumina_bulkhead_rejected_total: 被拒绝的请求总数
  * - lumina_provider_score: Provider 评分
  * - lumina_latency_ema_ms: 延迟 EMA
+ * - lumina_latency_percentile_ms: 总延迟 / 首包延迟分位数 (kind=total|ttft, quantile=0.5|0.95|0.99)
+ * - lumina_stream_chunk_gap_ms: 流式相邻分片间隔分位数 (quantile=0.5|0.99)
+ * - lumina_output_tokens_per_second: 流式输出速度中位数
+ * - lumina_upstream_quota_remaining: 上游限流头给出的剩余配额 (kind=requests|tokens，未知时为 -1)
  */
 @Slf4j
 @Component
@@ -132,6 +136,20 @@ public class CircuitBreakerMetrics {
                 .description("Maximum concurrent requests")
                 .register(meterRegistry);
 
+        // 自适应并发上限及其 RTT 估计（未启用时为 0）
+        Gauge.builder("lumina_concurrency_limit", state, s -> s.getConcurrencyLimit().getLimit())
+                .tags(tags)
+                .description("Adaptive concurrency limit")
+                .register(meterRegistry);
+        Gauge.builder("lumina_concurrency_rtt_ms", state, s -> s.getConcurrencyLimit().getShortRttMs())
+                .tags(tags.and("window", "short"))
+                .description("Short-term RTT estimate used by the adaptive concurrency limit")
+                .register(meterRegistry);
+        Gauge.builder("lumina_concurrency_rtt_ms", state, s -> s.getConcurrencyLimit().getLongRttMs())
+                .tags(tags.and("window", "long"))
+                .description("Long-term RTT estimate used by the adaptive concurrency limit")
+                .register(meterRegistry);
+
         // 被拒绝的请求总数
         Gauge.builder("lumina_bulkhead_rejected_total", state, s -> s.getBulkhead().getRejectedCount())
                 .tags(tags)
@@ -150,6 +168,40 @@ public class CircuitBreakerMetrics {
                 .description("Latency exponential moving average in milliseconds")
                 .register(meterRegistry);
 
+        // 延迟分位数（最近 1~2 分钟，没有样本时为 -1）
+        for (String quantile : new String[]{"0.5", "0.95", "0.99"}) {
+            double q = Double.parseDouble(quantile);
+            Gauge.builder("lumina_latency_percentile_ms", state, s -> s.getLatencyHistogram().percentile(q))
+                    .tags(tags.and("kind", "total", "quantile", quantile))
+                    .description("Successful request latency percentile in milliseconds")
+                    .register(meterRegistry);
+            Gauge.builder("lumina_latency_percentile_ms", state, s -> s.getTtftHistogram().percentile(q))
+                    .tags(tags.and("kind", "ttft", "quantile", quantile))
+                    .description("Streaming time-to-first-token percentile in milliseconds")
+                    .register(meterRegistry);
+        }
+
+        // 流式相邻分片间隔与输出速度（没有样本时为 -1）
+        for (String quantile : new String[]{"0.5", "0.99"}) {
+            double q = Double.parseDouble(quantile);
+            Gauge.builder("lumina_stream_chunk_gap_ms", state, s -> s.getChunkGapHistogram().percentile(q))
+                    .tags(tags.and("quantile", quantile))
+                    .description("Gap between consecutive streaming chunks in milliseconds")
+                    .register(meterRegistry);
+        }
+        Gauge.builder("lumina_output_tokens_per_second", state, s -> s.getOutputThroughputHistogram().percentile(0.5))
+                .tags(tags.and("quantile", "0.5"))
+                .description("Streaming output tokens per second after the first token")
+                .register(meterRegistry);
+        Gauge.builder("lumina_upstream_quota_remaining", state, s -> s.getQuota().getRequestRemaining())
+                .tags(tags.and("kind", "requests"))
+                .description("Remaining upstream requests reported by rate limit headers")
+                .register(meterRegistry);
+        Gauge.builder("lumina_upstream_quota_remaining", state, s -> s.getQuota().getTokenRemaining())
+                .tags(tags.and("kind", "tokens"))
+                .description("Remaining upstream tokens reported by rate limit headers")
+                .register(meterRegistry);
+
         // 总请求数
         Gauge.builder("lumina_total_requests", state, s -> s.getTotalRequests().get())
                 .tags(tags)
@@ -1,9 +1,13 @@
 package com.lumina.metrics;
 
+import com.lumina.state.FairWaitQueue;
 import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.TimeUnit;
+
 @Component
 public class RelayMetrics {
 
@@ -25,6 +29,31 @@ public class RelayMetrics {
         meterRegistry.counter("lumina_provider_skipped_total", "reason", reason).increment();
     }
 
+    public void recordAffinityFallback() {
+        meterRegistry.counter("lumina_provider_fallback_total", "strategy", "sapr").increment();
+    }
+
+    /**
+     * 成本模式的选择结果：cheapest 选中最便宜的候选，spill 因 SLO 或舱壁溢出到更贵的候选，sapr 无候选满足 SLO
+     */
+    public void recordCostRouting(String result) {
+        meterRegistry.counter("lumina_cost_routing_total", "result", result).increment();
+    }
+
+    /**
+     * 上游 retry-after 冷却期内的失败，不计入熔断器
+     */
+    public void recordUpstreamCooldown(String providerId) {
+        meterRegistry.counter("lumina_upstream_cooldown_failures_total", "provider_id", providerId).increment();
+    }
+
+    /**
+     * 剩余截止时间预算不足，放弃后续尝试
+     */
+    public void recordDeadlineExceeded(boolean stream) {
+        meterRegistry.counter("lumina_deadline_exceeded_total", "stream", Boolean.toString(stream)).increment();
+    }
+
     public void recordFallbackToRoundRobin() {
         meterRegistry.counter("lumina_provider_fallback_total", "strategy", "round_robin").increment();
     }
@@ -64,6 +93,64 @@ public class RelayMetrics {
                 .increment();
     }
 
+    public void recordHedge(String outcome) {
+        meterRegistry.counter("lumina_hedge_total", "outcome", outcome).increment();
+    }
+
+    public void recordStreamRace(String outcome) {
+        meterRegistry.counter("lumina_stream_race_total", "outcome", outcome).increment();
+    }
+
+    public void recordCoalesced() {
+        meterRegistry.counter("lumina_coalesced_requests_total").increment();
+    }
+
+    /**
+     * 按负载均衡模式记录上游 prompt cache 命中情况（响应 usage 中有缓存读取 token 即视为命中）
+     */
+    public void recordPromptCache(String mode, Integer inputTokens, Integer cacheReadTokens) {
+        int cached = cacheReadTokens != null ? cacheReadTokens : 0;
+        meterRegistry.counter("lumina_prompt_cache_requests_total",
+                "mode", mode,
+                "result", cached > 0 ? "hit" : "miss")
+                .increment();
+        meterRegistry.counter("lumina_prompt_cache_tokens_total", "mode", mode, "kind", "cache_read")
+                .increment(cached);
+        meterRegistry.counter("lumina_prompt_cache_tokens_total", "mode", mode, "kind", "input")
+                .increment(inputTokens != null ? inputTokens : 0);
+    }
+
+    /**
+     * 记录自适应并发上限的调整
+     * @param change 上限变化方向，0 表示未变化
+     */
+    public void recordConcurrencyLimitChange(String providerId, int change, String reason) {
+        if (change == 0) {
+            return;
+        }
+        meterRegistry.counter("lumina_concurrency_limit_adjustments_total",
+                "provider_id", providerId,
+                "direction", change > 0 ? "increase" : "decrease",
+                "reason", reason)
+                .increment();
+    }
+
+    public void registerFairQueue(String group, FairWaitQueue queue) {
+        Gauge.builder("lumina_fair_queue_depth", queue, FairWaitQueue::size)
+                .tag("group", group)
+                .description("Requests waiting for provider capacity")
+                .register(meterRegistry);
+    }
+
+    public void recordFairQueueWait(String group, String outcome, long waitNanos) {
+        meterRegistry.timer("lumina_fair_queue_wait", "group", group, "outcome", outcome)
+                .record(waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordFairQueueRejected(String group) {
+        meterRegistry.counter("lumina_fair_queue_rejected_total", "group", group).increment();
+    }
+
     public void recordFailoverDepth(int depth) {
         failoverDepthSummary.record(Math.max(0, depth));
     }
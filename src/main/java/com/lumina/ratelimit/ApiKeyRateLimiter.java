@@ -0,0 +1,97 @@
+package com.lumina.ratelimit;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.lumina.config.LuminaProperties;
+import com.lumina.entity.ApiKey;
+import com.lumina.mapper.ApiKeyMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * API Key 请求限流（本地令牌 + Redis 租约）
+ *
+ * Redis 中每个 Key 一个令牌桶（GCRA 等价：按速率连续补充，容量为 burstSeconds 秒的量），
+ * 各节点一次租借一批令牌在本地扣减，只有本地令牌耗尽或即将耗尽时才访问 Redis，
+ * Redis 调用量与节点数成正比而不是与请求数成正比。
+ * 连续补充避免了固定分钟窗口在边界处的 2 倍突发。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ApiKeyRateLimiter {
+
+    private static final String REDIS_PREFIX = "rate_limit:";
+
+    private final LuminaProperties luminaProperties;
+    private final TokenLeaseClient tokenLeaseClient;
+    private final ApiKeyMapper apiKeyMapper;
+
+    private final Map<String, LeasedTokenBucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * 申请一个请求许可；本地有租约令牌时同步返回
+     */
+    public Mono<Boolean> tryAcquire(String apiKey) {
+        LeasedTokenBucket bucket = buckets.get(apiKey);
+        if (bucket != null) {
+            return tryAcquire(apiKey, bucket);
+        }
+        return Mono.fromCallable(() -> resolveLimit(apiKey))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(limit -> tryAcquire(apiKey, buckets.computeIfAbsent(apiKey, k -> newBucket(limit))));
+    }
+
+    /**
+     * API Key 配置变更后丢弃本地桶（未用完的租约随之作废），下次请求重新读取限额
+     */
+    public void invalidateAll() {
+        buckets.clear();
+    }
+
+    private Mono<Boolean> tryAcquire(String apiKey, LeasedTokenBucket bucket) {
+        if (bucket.isUnlimited()) {
+            return Mono.just(true);
+        }
+
+        String redisKey = REDIS_PREFIX + apiKey;
+        long remaining = bucket.take(1, System.currentTimeMillis());
+        if (remaining >= 0) {
+            if (remaining <= bucket.lowWatermark()) {
+                // 提前续租，下一批请求不必等待 Redis
+                tokenLeaseClient.lease(redisKey, bucket, 1).subscribe(v -> { },
+                        e -> log.debug("Rate limit lease prefetch failed: {}", e.getMessage()));
+            }
+            return Mono.just(true);
+        }
+
+        return tokenLeaseClient.lease(redisKey, bucket, 1)
+                .then(Mono.fromSupplier(() -> bucket.take(1, System.currentTimeMillis()) >= 0));
+    }
+
+    private int resolveLimit(String apiKey) {
+        ApiKey key = apiKeyMapper.selectOne(new LambdaQueryWrapper<ApiKey>()
+                .select(ApiKey::getRateLimitRpm)
+                .eq(ApiKey::getApiKey, apiKey));
+        if (key != null && key.getRateLimitRpm() != null) {
+            return key.getRateLimitRpm();
+        }
+        return luminaProperties.getRateLimit().getRequestsPerMinute();
+    }
+
+    private LeasedTokenBucket newBucket(int limitPerMinute) {
+        LuminaProperties.RateLimit config = luminaProperties.getRateLimit();
+        if (limitPerMinute <= 0) {
+            return LeasedTokenBucket.unlimited();
+        }
+        long capacity = (long) Math.max(1, Math.ceil(limitPerMinute * Math.max(1, config.getBurstSeconds()) / 60.0));
+        // 单次租借不超过容量的 1/4，避免一个节点囤积整个桶
+        long leaseSize = Math.max(1, Math.min(config.getLeaseSize(), capacity / 4));
+        return new LeasedTokenBucket(limitPerMinute, capacity, leaseSize);
+    }
+}
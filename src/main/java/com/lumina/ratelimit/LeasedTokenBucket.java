@@ -0,0 +1,99 @@
+package com.lumina.ratelimit;
+
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 节点本地持有的租约令牌
+ *
+ * 令牌从 Redis 中的共享令牌桶批量租借，本地扣减；租约过期后剩余令牌作废，
+ * 避免空闲节点长期占用集群额度。结算时允许余额为负，负债由下一次租借偿还。
+ */
+public final class LeasedTokenBucket {
+
+    final long limitPerMinute;
+    final long capacity;
+    final long leaseSize;
+    final AtomicReference<Mono<Void>> inflight = new AtomicReference<>();
+
+    private final AtomicLong tokens = new AtomicLong();
+    private volatile long leaseExpiresAt;
+
+    /**
+     * @param limitPerMinute 每分钟补充量，小于等于 0 表示不限制
+     * @param capacity       Redis 令牌桶容量
+     * @param leaseSize      单次租借的令牌数
+     */
+    public LeasedTokenBucket(long limitPerMinute, long capacity, long leaseSize) {
+        this.limitPerMinute = limitPerMinute;
+        this.capacity = capacity;
+        this.leaseSize = leaseSize;
+    }
+
+    public static LeasedTokenBucket unlimited() {
+        return new LeasedTokenBucket(0, 0, 0);
+    }
+
+    public boolean isUnlimited() {
+        return limitPerMinute <= 0;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    long lowWatermark() {
+        return leaseSize / 4;
+    }
+
+    long available(long now) {
+        long current = tokens.get();
+        return now > leaseExpiresAt ? Math.min(current, 0) : current;
+    }
+
+    /**
+     * 扣减 amount 个令牌，返回剩余数量；本地令牌不足时不扣减并返回 -1
+     */
+    long take(long amount, long now) {
+        if (now > leaseExpiresAt) {
+            expire();
+            return -1;
+        }
+        while (true) {
+            long current = tokens.get();
+            if (current < amount || current <= 0) {
+                return -1;
+            }
+            if (tokens.compareAndSet(current, current - amount)) {
+                return current - amount;
+            }
+        }
+    }
+
+    void grant(long granted, long expiresAt, long now) {
+        if (granted <= 0) {
+            return;
+        }
+        if (now > leaseExpiresAt) {
+            expire();
+        }
+        tokens.addAndGet(granted);
+        leaseExpiresAt = expiresAt;
+    }
+
+    /**
+     * 结算修正：正数退还令牌，负数补扣（可以扣成负数）
+     */
+    void adjust(long delta) {
+        if (delta != 0) {
+            tokens.addAndGet(delta);
+        }
+    }
+
+    private void expire() {
+        // 只丢弃多余的令牌，负债保留
+        tokens.updateAndGet(current -> Math.min(current, 0));
+    }
+}
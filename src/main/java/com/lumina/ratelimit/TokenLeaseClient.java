@@ -0,0 +1,92 @@
+package com.lumina.ratelimit;
+
+import com.lumina.config.LuminaProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 从 Redis 共享令牌桶租借令牌
+ *
+ * Redis 中的令牌桶按速率连续补充（GCRA 等价），容量由调用方决定；
+ * 同一个本地桶同时只有一个租借请求，并发的等待方共享结果。
+ */
+@Component
+@RequiredArgsConstructor
+public class TokenLeaseClient {
+
+    /**
+     * KEYS[1] 令牌桶；ARGV: 每毫秒补充速率、容量、申请数量、过期毫秒数
+     * 使用 Redis 服务器时间，避免节点间时钟偏差。返回实际租借到的令牌数。
+     */
+    private static final RedisScript<Long> LEASE_SCRIPT = RedisScript.of("""
+            local rate = tonumber(ARGV[1])
+            local capacity = tonumber(ARGV[2])
+            local requested = tonumber(ARGV[3])
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local tokens = tonumber(redis.call('HGET', KEYS[1], 't'))
+            local ts = tonumber(redis.call('HGET', KEYS[1], 'ts'))
+            if tokens == nil or ts == nil then
+                tokens = capacity
+                ts = now
+            end
+            if now > ts then
+                tokens = math.min(capacity, tokens + (now - ts) * rate)
+                ts = now
+            end
+            local granted = math.min(requested, math.floor(tokens))
+            tokens = tokens - granted
+            redis.call('HSET', KEYS[1], 't', tostring(tokens), 'ts', tostring(ts))
+            redis.call('PEXPIRE', KEYS[1], ARGV[4])
+            return granted
+            """, Long.class);
+
+    private final LuminaProperties luminaProperties;
+    private final ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    /**
+     * 为本地桶租借至少 amount 个令牌（不少于一个批次）
+     */
+    public Mono<Void> lease(String redisKey, LeasedTokenBucket bucket, long amount) {
+        Mono<Void> inflight = bucket.inflight.get();
+        if (inflight != null) {
+            return inflight;
+        }
+
+        long requested = Math.min(bucket.capacity, Math.max(amount, bucket.leaseSize));
+        AtomicReference<Mono<Void>> self = new AtomicReference<>();
+        Mono<Void> created = requestLease(redisKey, bucket, requested)
+                .doOnNext(granted -> {
+                    long now = System.currentTimeMillis();
+                    bucket.grant(granted, now + luminaProperties.getRateLimit().getLeaseTtlMs(), now);
+                })
+                .then()
+                .doFinally(signal -> bucket.inflight.compareAndSet(self.get(), null))
+                .cache();
+        self.set(created);
+
+        if (!bucket.inflight.compareAndSet(null, created)) {
+            Mono<Void> existing = bucket.inflight.get();
+            return existing != null ? existing : created;
+        }
+        return created;
+    }
+
+    protected Mono<Long> requestLease(String redisKey, LeasedTokenBucket bucket, long requested) {
+        long ttlMs = Math.max(60_000L, bucket.capacity * 60_000L / bucket.limitPerMinute);
+        return reactiveStringRedisTemplate.execute(LEASE_SCRIPT,
+                        List.of(redisKey),
+                        List.of(Double.toString(bucket.limitPerMinute / 60_000.0),
+                                Long.toString(bucket.capacity),
+                                Long.toString(requested),
+                                Long.toString(ttlMs)))
+                .next()
+                .defaultIfEmpty(0L);
+    }
+}
@@ -0,0 +1,217 @@
+package com.lumina.ratelimit;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.lumina.config.LuminaProperties;
+import com.lumina.entity.ApiKey;
+import com.lumina.exception.TokenRateLimitExceededException;
+import com.lumina.mapper.ApiKeyMapper;
+import com.lumina.service.TokenCountService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 每分钟 token 数限流（API Key 维度 + 模型分组维度）
+ *
+ * 转发前用 {@link TokenCountService} 估算输入 token 并预扣，
+ * 执行器在 recordSuccess 时按上游返回的真实 input/output token 结算差额，
+ * 请求最终失败时退还预扣。令牌同样从 Redis 共享令牌桶批量租借，本地扣减。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TokenRateLimiter {
+
+    private static final String KEY_PREFIX = "tpm_limit:key:";
+    private static final String GROUP_PREFIX = "tpm_limit:group:";
+    private static final long RESERVATION_MAX_AGE_MS = 30 * 60_000L;
+
+    private final LuminaProperties luminaProperties;
+    private final TokenLeaseClient tokenLeaseClient;
+    private final ApiKeyMapper apiKeyMapper;
+    private final TokenCountService tokenCountService;
+
+    private final Map<String, LeasedTokenBucket> keyBuckets = new ConcurrentHashMap<>();
+    private final Map<String, LeasedTokenBucket> groupBuckets = new ConcurrentHashMap<>();
+    private final Map<String, TokenReservation> reservations = new ConcurrentHashMap<>();
+
+    /**
+     * 预扣本次请求的估算 token；超出限额时返回 {@link TokenRateLimitExceededException}
+     */
+    public Mono<TokenReservation> reserve(String apiKey, String groupName, JsonNode params) {
+        if (!luminaProperties.getRateLimit().isEnabled()) {
+            return Mono.just(TokenReservation.NONE);
+        }
+
+        return keyBucket(apiKey)
+                .flatMap(keyBucket -> {
+                    LeasedTokenBucket groupBucket = groupBucket(groupName);
+                    if (keyBucket.isUnlimited() && groupBucket.isUnlimited()) {
+                        return Mono.just(TokenReservation.NONE);
+                    }
+                    return Mono.fromCallable(() -> (long) tokenCountService.countTokens(groupName, params))
+                            .subscribeOn(Schedulers.boundedElastic())
+                            .flatMap(estimate -> charge(apiKey, groupName, keyBucket, groupBucket, estimate));
+                })
+                .onErrorResume(e -> !(e instanceof TokenRateLimitExceededException), e -> {
+                    log.error("Error during token rate limiting check", e);
+                    // Fallback to allow request if Redis fails
+                    return Mono.just(TokenReservation.NONE);
+                });
+    }
+
+    /**
+     * 按真实 token 数结算（执行器 recordSuccess 时调用）
+     */
+    public void settle(String reservationId, long actualTokens) {
+        if (reservationId == null) {
+            return;
+        }
+        TokenReservation reservation = reservations.get(reservationId);
+        if (reservation != null) {
+            reservation.settle(actualTokens);
+        }
+    }
+
+    /**
+     * 请求结束时调用；未结算的预扣全额退还
+     */
+    public void release(String reservationId) {
+        if (reservationId == null) {
+            return;
+        }
+        TokenReservation reservation = reservations.remove(reservationId);
+        if (reservation != null) {
+            reservation.refund();
+        }
+    }
+
+    /**
+     * API Key 配置变更后丢弃本地桶，下次请求重新读取限额
+     */
+    public void invalidateAll() {
+        keyBuckets.clear();
+    }
+
+    /**
+     * 兜底清理没有走到 release 的预扣记录（例如响应体从未被订阅）
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void evictStaleReservations() {
+        long cutoff = System.currentTimeMillis() - RESERVATION_MAX_AGE_MS;
+        reservations.values().removeIf(reservation -> {
+            if (reservation.getCreatedAt() < cutoff) {
+                reservation.refund();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private Mono<TokenReservation> charge(String apiKey, String groupName,
+                                          LeasedTokenBucket keyBucket, LeasedTokenBucket groupBucket,
+                                          long estimate) {
+        // 至少预扣 1 个，已经欠账的 Key 不能靠估算为 0 的请求绕过限流
+        long keyAmount = Math.min(Math.max(1, estimate), keyBucket.getCapacity());
+        long groupAmount = Math.min(Math.max(1, estimate), groupBucket.getCapacity());
+
+        return acquire(KEY_PREFIX + apiKey, keyBucket, keyAmount)
+                .flatMap(keyGranted -> {
+                    if (!keyGranted) {
+                        return Mono.error(new TokenRateLimitExceededException("api_key", estimate));
+                    }
+                    return acquire(GROUP_PREFIX + groupName, groupBucket, groupAmount)
+                            .flatMap(groupGranted -> {
+                                if (!groupGranted) {
+                                    keyBucket.adjust(keyAmount);
+                                    return Mono.error(new TokenRateLimitExceededException("model_group", estimate));
+                                }
+                                List<TokenReservation.Charge> charges = new ArrayList<>(2);
+                                if (!keyBucket.isUnlimited()) {
+                                    charges.add(new TokenReservation.Charge(keyBucket, keyAmount));
+                                }
+                                if (!groupBucket.isUnlimited()) {
+                                    charges.add(new TokenReservation.Charge(groupBucket, groupAmount));
+                                }
+                                TokenReservation reservation = new TokenReservation(
+                                        UUID.randomUUID().toString(), estimate, charges);
+                                reservations.put(reservation.getId(), reservation);
+                                return Mono.just(reservation);
+                            });
+                });
+    }
+
+    /**
+     * 从本地桶扣减；不足时租借差额，并发租借被合并时最多再租一次
+     */
+    private Mono<Boolean> acquire(String redisKey, LeasedTokenBucket bucket, long amount) {
+        if (bucket.isUnlimited() || amount <= 0) {
+            return Mono.just(true);
+        }
+        if (bucket.take(amount, System.currentTimeMillis()) >= 0) {
+            return Mono.just(true);
+        }
+        return leaseAndTake(redisKey, bucket, amount)
+                .flatMap(granted -> granted ? Mono.just(true) : leaseAndTake(redisKey, bucket, amount));
+    }
+
+    private Mono<Boolean> leaseAndTake(String redisKey, LeasedTokenBucket bucket, long amount) {
+        long missing = amount - bucket.available(System.currentTimeMillis());
+        return tokenLeaseClient.lease(redisKey, bucket, missing)
+                .then(Mono.fromSupplier(() -> bucket.take(amount, System.currentTimeMillis()) >= 0));
+    }
+
+    private Mono<LeasedTokenBucket> keyBucket(String apiKey) {
+        if (apiKey == null) {
+            return Mono.just(LeasedTokenBucket.unlimited());
+        }
+        LeasedTokenBucket bucket = keyBuckets.get(apiKey);
+        if (bucket != null) {
+            return Mono.just(bucket);
+        }
+        return Mono.fromCallable(() -> resolveKeyLimit(apiKey))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(limit -> keyBuckets.computeIfAbsent(apiKey, k -> newBucket(limit)));
+    }
+
+    private LeasedTokenBucket groupBucket(String groupName) {
+        Long limit = luminaProperties.getRateLimit().getGroupTokensPerMinute().get(groupName);
+        if (limit == null || limit <= 0) {
+            return LeasedTokenBucket.unlimited();
+        }
+        LeasedTokenBucket bucket = groupBuckets.get(groupName);
+        if (bucket != null && bucket.limitPerMinute == limit) {
+            return bucket;
+        }
+        return groupBuckets.compute(groupName, (k, existing) ->
+                existing != null && existing.limitPerMinute == limit ? existing : newBucket(limit));
+    }
+
+    private long resolveKeyLimit(String apiKey) {
+        ApiKey key = apiKeyMapper.selectOne(new LambdaQueryWrapper<ApiKey>()
+                .select(ApiKey::getTpmLimit)
+                .eq(ApiKey::getApiKey, apiKey));
+        if (key != null && key.getTpmLimit() != null) {
+            return key.getTpmLimit();
+        }
+        return luminaProperties.getRateLimit().getTokensPerMinute();
+    }
+
+    private static LeasedTokenBucket newBucket(long limitPerMinute) {
+        if (limitPerMinute <= 0) {
+            return LeasedTokenBucket.unlimited();
+        }
+        // TPM 桶容量为一分钟的量，保证单个大上下文请求也能通过；单次租借 1/20
+        return new LeasedTokenBucket(limitPerMinute, limitPerMinute, Math.max(1, limitPerMinute / 20));
+    }
+}
@@ -0,0 +1,68 @@
+package com.lumina.ratelimit;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 一次请求预扣的 TPM 令牌
+ *
+ * 转发前按估算值预扣，成功后按实际 token 数结算差额；请求最终失败时全额退还。
+ */
+public final class TokenReservation {
+
+    static final TokenReservation NONE = new TokenReservation(null, 0, List.of());
+
+    private final String id;
+    private final long estimate;
+    private final List<Charge> charges;
+    private final long createdAt = System.currentTimeMillis();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    TokenReservation(String id, long estimate, List<Charge> charges) {
+        this.id = id;
+        this.estimate = estimate;
+        this.charges = charges;
+    }
+
+    /**
+     * 预扣记录 ID，通过内部参数传给执行器；未预扣时为 null
+     */
+    public String getId() {
+        return id;
+    }
+
+    public long getEstimate() {
+        return estimate;
+    }
+
+    long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * 按实际 token 数结算；上游未返回 usage 时保留预扣值
+     */
+    void settle(long actualTokens) {
+        if (!closed.compareAndSet(false, true) || actualTokens <= 0) {
+            return;
+        }
+        for (Charge charge : charges) {
+            charge.bucket().adjust(charge.amount() - actualTokens);
+        }
+    }
+
+    /**
+     * 未结算时全额退还
+     */
+    void refund() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        for (Charge charge : charges) {
+            charge.bucket().adjust(charge.amount());
+        }
+    }
+
+    record Charge(LeasedTokenBucket bucket, long amount) {
+    }
+}
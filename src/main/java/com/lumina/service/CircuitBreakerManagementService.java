@@ -212,6 +212,9 @@ public class CircuitBreakerManagementService {
 
     private CircuitBreakerStatusResponse buildStatusResponse(ProviderRuntimeState state, ResolvedConfigBinding resolvedConfig) {
         ProviderBulkhead bulkhead = state.getBulkhead();
+        long[] latency = state.getLatencyHistogram().percentiles(0.5, 0.95, 0.99);
+        long[] ttft = state.getTtftHistogram().percentiles(0.5, 0.95, 0.99);
+        long[] chunkGap = state.getChunkGapHistogram().percentiles(0.5, 0.99);
 
         CircuitBreakerStatusResponse base = CircuitBreakerStatusResponse.builder()
                 .providerId(state.getProviderId())
@@ -227,6 +230,18 @@ public class CircuitBreakerManagementService {
                 .openAttempt(state.getOpenAttempt())
                 .score(state.getScore())
                 .latencyEmaMs(state.getLatencyEmaMs())
+                .latencyP50Ms(latency[0])
+                .latencyP95Ms(latency[1])
+                .latencyP99Ms(latency[2])
+                .ttftP50Ms(ttft[0])
+                .ttftP95Ms(ttft[1])
+                .ttftP99Ms(ttft[2])
+                .chunkGapP50Ms(chunkGap[0])
+                .chunkGapP99Ms(chunkGap[1])
+                .outputTokensPerSecondP50(state.getOutputThroughputHistogram().percentile(0.5))
+                .upstreamRequestsRemaining(state.getQuota().getRequestRemaining())
+                .upstreamTokensRemaining(state.getQuota().getTokenRemaining())
+                .upstreamCooldownUntil(state.getQuota().getCooldownUntil())
                 .successRateEma(state.getSuccessRateEma())
                 .errorRate(state.getWindowErrorRate())
                 .slowRate(state.getWindowSlowRate())
@@ -379,10 +394,7 @@ public class CircuitBreakerManagementService {
     }
 
     private String generateProviderId(ModelGroupConfigItem item) {
-        return String.format("%s_%s_%s",
-                item.getBaseUrl(),
-                item.getApiKey() != null ? item.getApiKey().hashCode() : "null",
-                item.getModelName());
+        return RoutingPlanCompiler.providerIdOf(item);
     }
 
     private record ConfigBinding(String groupName, EffectiveCircuitBreakerConfig effectiveConfig) {}
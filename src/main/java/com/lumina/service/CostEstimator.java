@@ -0,0 +1,62 @@
+package com.lumina.service;
+
+import com.lumina.config.LuminaProperties;
+import com.lumina.entity.LlmModel;
+import com.lumina.state.ProviderRuntimeState;
+import com.lumina.state.RoutingTarget;
+import com.lumina.state.TokenEstimate;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+
+/**
+ * 成本模式下预估单次请求在各 Provider 上的费用
+ *
+ * 输入 token 取路由前的本地分词结果，输出 token 取该 Provider 历史输出长度的 EMA（不超过请求声明的上限），
+ * 价格来自 Provider 模型在 llm_models 中的单价，再乘以按 Provider 名称配置的价格倍率。
+ * 只用于候选之间比较，不考虑 prompt cache 折扣。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CostEstimator {
+
+    private final LlmModelService llmModelService;
+    private final LuminaProperties luminaProperties;
+
+    /**
+     * @return 预估费用；模型没有价格信息时返回 {@link Double#POSITIVE_INFINITY}，排在有价格的候选之后
+     */
+    public double estimate(RoutingTarget target, TokenEstimate tokens) {
+        LlmModel model;
+        try {
+            model = llmModelService.findLatestByModelName(target.getItem().getModelName());
+        } catch (Exception e) {
+            log.warn("查询模型价格失败: model={}, error={}", target.getItem().getModelName(), e.getMessage());
+            return Double.POSITIVE_INFINITY;
+        }
+        if (model == null || (model.getInputPrice() == null && model.getOutputPrice() == null)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double cost = (price(model.getInputPrice()) * tokens.inputTokens()
+                + price(model.getOutputPrice()) * expectedOutputTokens(target.getState(), tokens)) / 1_000_000;
+        return cost * luminaProperties.getCostRouting().getPriceMultipliers()
+                .getOrDefault(target.getItem().getProviderName(), 1.0);
+    }
+
+    /**
+     * 预期输出 token 数：Provider 历史输出长度，没有历史时取默认值，均不超过请求声明的上限
+     */
+    long expectedOutputTokens(ProviderRuntimeState state, TokenEstimate tokens) {
+        double history = state.getOutputTokensEma();
+        long expected = history > 0 ? Math.round(history) : luminaProperties.getCostRouting().getDefaultOutputTokens();
+        Integer max = tokens.maxOutputTokens();
+        return max != null && max > 0 ? Math.min(expected, max) : expected;
+    }
+
+    private static double price(BigDecimal pricePerMillionTokens) {
+        return pricePerMillionTokens != null ? pricePerMillionTokens.doubleValue() : 0.0;
+    }
+}
@@ -12,6 +12,7 @@ import com.lumina.entity.StatsHourly;
 import com.lumina.mapper.DashboardMapper;
 import com.lumina.mapper.StatsDailyMapper;
 import com.lumina.mapper.StatsHourlyMapper;
+import com.lumina.state.BalanceMode;
 import com.lumina.stats.StatsRedisReader;
 import com.lumina.stats.StatsRedisReader.StatsSnapshot;
 import io.micrometer.core.instrument.Counter;
@@ -28,6 +29,7 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
@@ -432,6 +434,12 @@ public class DashboardService {
 
         long saprSelections = counterCount("lumina_provider_selection_total", "strategy", "sapr");
         long roundRobinSelections = counterCount("lumina_provider_selection_total", "strategy", "round_robin");
+        long affinitySelections = counterCount("lumina_provider_selection_total", "strategy", "affinity");
+        long p2cSelections = counterCount("lumina_provider_selection_total", "strategy", "p2c");
+        long costSelections = counterCount("lumina_provider_selection_total", "strategy", "cost");
+        long costSpills = counterCount("lumina_cost_routing_total", "result", "spill");
+        long fallbackFromAffinity = counterCount("lumina_provider_fallback_total", "strategy", "sapr");
+        long fallbackFromCost = counterCount("lumina_cost_routing_total", "result", "sapr");
         long fallbackToRoundRobin = counterCount("lumina_provider_fallback_total", "strategy", "round_robin");
         long skippedExcluded = counterCount("lumina_provider_skipped_total", "reason", "excluded");
         long skippedCircuitOpen = counterCount("lumina_provider_skipped_total", "reason", "circuit_open");
@@ -473,6 +481,12 @@ public class DashboardService {
                 .selection(DashboardObservabilityDto.Selection.builder()
                         .saprSelections(saprSelections)
                         .roundRobinSelections(roundRobinSelections)
+                        .affinitySelections(affinitySelections)
+                        .p2cSelections(p2cSelections)
+                        .costSelections(costSelections)
+                        .costSpills(costSpills)
+                        .fallbackFromAffinity(fallbackFromAffinity)
+                        .fallbackFromCost(fallbackFromCost)
                         .fallbackToRoundRobin(fallbackToRoundRobin)
                         .skippedExcluded(skippedExcluded)
                         .skippedCircuitOpen(skippedCircuitOpen)
@@ -489,6 +503,7 @@ public class DashboardService {
                         .avgFlushMs(logFlushAvgMs)
                         .build())
                 .caches(caches)
+                .promptCaches(Arrays.stream(BalanceMode.values()).map(this::buildPromptCacheMetric).toList())
                 .providers(providers)
                 .build();
     }
@@ -570,6 +585,20 @@ public class DashboardService {
                 .build();
     }
 
+    private DashboardObservabilityDto.PromptCacheMetric buildPromptCacheMetric(BalanceMode mode) {
+        String name = mode.getMetricName();
+        long hits = counterCount("lumina_prompt_cache_requests_total", "mode", name, "result", "hit");
+        long requests = counterCount("lumina_prompt_cache_requests_total", "mode", name);
+        return DashboardObservabilityDto.PromptCacheMetric.builder()
+                .mode(name)
+                .requests(requests)
+                .hits(hits)
+                .hitRate(ratio(hits, requests))
+                .inputTokens(counterCount("lumina_prompt_cache_tokens_total", "mode", name, "kind", "input"))
+                .cacheReadTokens(counterCount("lumina_prompt_cache_tokens_total", "mode", name, "kind", "cache_read"))
+                .build();
+    }
+
     private long counterCount(String name, String... tags) {
         return Math.round(meterRegistry.find(name).tags(tags).counters().stream()
                 .mapToDouble(Counter::count)
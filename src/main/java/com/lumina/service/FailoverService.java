@@ -3,48 +3,69 @@ package com.lumina.service;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.lumina.config.CircuitBreakerConfigResolver;
 import com.lumina.config.EffectiveCircuitBreakerConfig;
+import com.lumina.config.LuminaProperties;
 import com.lumina.dto.ModelGroupConfig;
-import com.lumina.dto.ModelGroupConfigItem;
 import com.lumina.exception.BulkheadFullException;
+import com.lumina.exception.DeadlineExceededException;
 import com.lumina.exception.MaxFailoverExceededException;
 import com.lumina.metrics.RelayMetrics;
 import com.lumina.state.*;
+import com.lumina.util.StreamContentDetector;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClientRequestException;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Exceptions;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.context.Context;
 
 import javax.net.ssl.SSLException;
 import java.net.ConnectException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.nio.channels.UnresolvedAddressException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class FailoverService {
 
+    /**
+     * 首包竞速时写入每一方订阅上下文的标记（AtomicBoolean），落败一方被取消前置为 true，
+     * 执行器据此把这次取消记为落败，而不是客户端断开
+     */
+    public static final String STREAM_RACE_LOST_KEY = "lumina.streamRaceLost";
+
     private final ProviderStateRegistry providerStateRegistry;
     private final ProviderScoreCalculator scoreCalculator;
     private final CircuitBreaker circuitBreaker;
     private final CircuitBreakerConfigResolver configResolver;
     private final RelayMetrics relayMetrics;
-    private final com.lumina.config.LuminaProperties luminaProperties;
+    private final LuminaProperties luminaProperties;
+    private final RoutingPlanCompiler routingPlanCompiler;
+    private final CostEstimator costEstimator;
 
-    private final ConcurrentHashMap<String, AtomicInteger> roundRobinCounters = new ConcurrentHashMap<>();
+    private final Map<String, RaceBudget> raceBudgets = new ConcurrentHashMap<>();
+    private final Map<String, FairWaitQueue> waitQueues = new ConcurrentHashMap<>();
+    /** 分组最近一次排队时的路由计划，舱壁释放时据此找出需要唤醒的分组 */
+    private final Map<String, RoutingPlan> waitQueuePlans = new ConcurrentHashMap<>();
 
     /**
      * 根据异常分类错误类型
@@ -114,124 +135,400 @@ public class FailoverService {
     }
 
     /**
-     * 解析 Provider 的生效配置
+     * 解析 Provider 的生效配置（优先使用路由计划中的预解析结果）
      */
-    private EffectiveCircuitBreakerConfig resolveConfig(ModelGroupConfig group, ModelGroupConfigItem item, int requestHash) {
-        String providerId = generateProviderId(item);
+    private EffectiveCircuitBreakerConfig resolveConfig(ModelGroupConfig group, RoutingTarget target, int requestHash) {
+        EffectiveCircuitBreakerConfig precompiled = target.getBreakerConfig();
+        if (precompiled != null) {
+            return precompiled;
+        }
         return configResolver.resolve(
                 group.getId(),
                 group.getCircuitBreakerConfig(),
-                providerId,
-                item.getCircuitBreakerConfig(),
+                target.getProviderId(),
+                target.getItem().getCircuitBreakerConfig(),
                 requestHash
         );
     }
 
-    public ModelGroupConfigItem selectAvailableProvider(ModelGroupConfig modelGroupConfig) {
+    public RoutingTarget selectAvailableProvider(ModelGroupConfig modelGroupConfig) {
         return selectAvailableProvider(modelGroupConfig, java.util.Collections.emptySet(), 0);
     }
 
-    public ModelGroupConfigItem selectAvailableProvider(ModelGroupConfig modelGroupConfig, Set<String> excludeIds) {
+    public RoutingTarget selectAvailableProvider(ModelGroupConfig modelGroupConfig, Set<String> excludeIds) {
         return selectAvailableProvider(modelGroupConfig, excludeIds, 0);
     }
 
-    public ModelGroupConfigItem selectAvailableProvider(ModelGroupConfig modelGroupConfig, Set<String> excludeIds, int requestHash) {
+    public RoutingTarget selectAvailableProvider(ModelGroupConfig modelGroupConfig, Set<String> excludeIds, int requestHash) {
+        return selectAvailableProvider(modelGroupConfig, routingPlanCompiler.planFor(modelGroupConfig), excludeIds,
+                new RouteContext(requestHash, null, null, null, 0));
+    }
+
+    private RoutingTarget selectAvailableProvider(ModelGroupConfig modelGroupConfig, RoutingPlan plan,
+                                                  Set<String> excludeIds, RouteContext route) {
         // 轮询模式：直接轮询，不做熔断过滤
         if (isRoundRobinMode(modelGroupConfig)) {
-            return selectByRoundRobin(modelGroupConfig.getItems(), excludeIds, modelGroupConfig.getId());
+            return selectByRoundRobin(plan, excludeIds);
+        }
+
+        // 亲和模式：相同提示词前缀固定到同一 Provider，不可用时退回 SAPR
+        if (route.affinityHash() != null && BalanceMode.of(modelGroupConfig.getBalanceMode()) == BalanceMode.AFFINITY) {
+            RoutingTarget pinned = selectByAffinity(modelGroupConfig, plan, excludeIds, route);
+            if (pinned != null) {
+                return pinned;
+            }
         }
 
         // SAPR 模式（默认）
-        // 1. 过滤可用 Provider
-        List<ModelGroupConfigItem> available = modelGroupConfig.getItems()
-                .stream()
-                .filter(item -> {
-                    String id = generateProviderId(item);
-                    if (excludeIds.contains(id)) {
-                        relayMetrics.recordProviderSkipped("excluded");
-                        return false;
-                    }
-                    ProviderRuntimeState stats = providerStateRegistry.get(id);
-                    if (stats.getProviderName() == null) {
-                        stats.setProviderName(item.getProviderName());
-                    }
-                    if (stats.getModelName() == null) {
-                        stats.setModelName(item.getModelName());
-                    }
-                    // 使用解析后的配置判断是否允许请求
-                    EffectiveCircuitBreakerConfig effectiveConfig = resolveConfig(modelGroupConfig, item, requestHash);
-                    boolean allowed = circuitBreaker.allowRequest(stats, effectiveConfig);
-                    if (!allowed) {
-                        relayMetrics.recordProviderSkipped("circuit_" + stats.getCircuitState().name().toLowerCase());
-                    }
-                    return allowed;
-                })
-                .toList();
+        // 1. 过滤可用 Provider，同时计算 selection score（健康分 + weight 先验）
+        int size = plan.size();
+        RoutingTarget[] available = new RoutingTarget[size];
+        double[] scores = new double[size];
+        int count = 0;
+        // 启用排队的分组跳过舱壁已满的 Provider，全部满时由调用方排队等待
+        boolean queueing = waitQueue(modelGroupConfig) != null;
+        long remainingMs = route.remainingMs(System.currentTimeMillis());
+        boolean overBudget = false;
+        RoutingTarget saturated = null;
+        for (int i = 0; i < size; i++) {
+            RoutingTarget target = plan.get(i);
+            if (excludeIds.contains(target.getProviderId())) {
+                relayMetrics.recordProviderSkipped("excluded");
+                continue;
+            }
+            ProviderRuntimeState stats = target.getState();
+            // 使用解析后的配置判断是否允许请求
+            EffectiveCircuitBreakerConfig effectiveConfig = resolveConfig(modelGroupConfig, target, route.requestHash());
+            if (queueing && stats.getBulkhead().getCurrentConcurrent() >= concurrencyLimit(stats, effectiveConfig)) {
+                relayMetrics.recordProviderSkipped("bulkhead_full");
+                saturated = target;
+                continue;
+            }
+            if (isRateLimited(stats)) {
+                relayMetrics.recordProviderSkipped("rate_limited");
+                continue;
+            }
+            if (exceedsBudget(stats, remainingMs)) {
+                relayMetrics.recordProviderSkipped("deadline");
+                overBudget = true;
+                continue;
+            }
+            if (!circuitBreaker.allowRequest(stats, effectiveConfig)) {
+                relayMetrics.recordProviderSkipped("circuit_" + stats.getCircuitState().name().toLowerCase());
+                continue;
+            }
+            available[count] = target;
+            scores[count] = getSelectionScore(target);
+            count++;
+        }
 
-        if (available.isEmpty()) {
+        if (count == 0 && saturated != null) {
+            ProviderBulkhead bulkhead = saturated.getState().getBulkhead();
+            throw new BulkheadFullException(saturated.getProviderId(), bulkhead.getCurrentConcurrent(),
+                    bulkhead.getMaxConcurrent());
+        }
+
+        if (count == 0 && overBudget) {
+            // 剩余 Provider 都无法在截止时间内完成，不再用轮询保底浪费上游容量
+            throw new DeadlineExceededException(excludeIds.size(), remainingMs);
+        }
+
+        if (count == 0) {
             // 保底：降级到轮询，忽略 excludeIds，所有 Provider 都参与轮询
             log.warn("Group {} 所有 Provider 熔断或不可用，降级到轮询保底策略", modelGroupConfig.getId());
             relayMetrics.recordFallbackToRoundRobin();
-            return selectByRoundRobin(modelGroupConfig.getItems(), Collections.emptySet(), modelGroupConfig.getId());
+            return selectByRoundRobin(plan, Collections.emptySet());
+        }
+
+        BalanceMode mode = BalanceMode.of(modelGroupConfig.getBalanceMode());
+        if (mode == BalanceMode.P2C) {
+            return selectByTwoChoices(available, scores, count);
+        }
+        if (mode == BalanceMode.COST && route.tokens() != null) {
+            RoutingTarget cheapest = selectByCost(modelGroupConfig, available, scores, count, route);
+            if (cheapest != null) {
+                return cheapest;
+            }
         }
 
         relayMetrics.recordSelection("sapr");
 
-        // 2. 按 selection score 降序排序（健康分 + weight 先验）
-        List<ModelGroupConfigItem> sorted = available.stream()
-                .sorted((a, b) -> {
-                    double sa = getSelectionScore(a);
-                    double sb = getSelectionScore(b);
-                    return Double.compare(sb, sa);
-                })
-                .toList();
+        // 2. 按 selection score 降序取 Top-K（K 很小，直接选择排序前 K 位）
+        int topKSize = Math.min(luminaProperties.getFailover().getTopK(), count);
+        for (int i = 0; i < topKSize; i++) {
+            int best = i;
+            for (int j = i + 1; j < count; j++) {
+                if (scores[j] > scores[best]) {
+                    best = j;
+                }
+            }
+            if (best != i) {
+                RoutingTarget t = available[i];
+                available[i] = available[best];
+                available[best] = t;
+                double s = scores[i];
+                scores[i] = scores[best];
+                scores[best] = s;
+            }
+        }
+
+        // 3. 计算 Softmax 权重
+        double softmaxT = luminaProperties.getFailover().getSoftmaxT();
+        double sum = 0.0;
+        for (int i = 0; i < topKSize; i++) {
+            scores[i] = Math.exp(scores[i] / softmaxT);
+            sum += scores[i];
+        }
+
+        // 4. 按权重随机选择
+        double r = ThreadLocalRandom.current().nextDouble() * sum;
+        double acc = 0.0;
+
+        for (int i = 0; i < topKSize; i++) {
+            acc += scores[i];
+            if (r <= acc) {
+                return available[i];
+            }
+        }
+
+        return available[0];
+    }
+
+    /**
+     * 加权 rendezvous 哈希选择 Provider：每个候选按 -weight / ln(hash(前缀, providerId)) 打分取最高，
+     * Provider 增减时只有原本落在该 Provider 上的前缀会迁移
+     *
+     * @return 所有候选都被排除、熔断或隔离舱已满时返回 null
+     */
+    private RoutingTarget selectByAffinity(ModelGroupConfig modelGroupConfig, RoutingPlan plan,
+                                           Set<String> excludeIds, RouteContext route) {
+        RoutingTarget best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        long remainingMs = route.remainingMs(System.currentTimeMillis());
+        for (int i = 0; i < plan.size(); i++) {
+            RoutingTarget target = plan.get(i);
+            if (excludeIds.contains(target.getProviderId())) {
+                continue;
+            }
+            double score = rendezvousScore(route.affinityHash(), target);
+            if (score <= bestScore) {
+                continue;
+            }
+            ProviderRuntimeState stats = target.getState();
+            EffectiveCircuitBreakerConfig effectiveConfig = resolveConfig(modelGroupConfig, target, route.requestHash());
+            if (isRateLimited(stats) || exceedsBudget(stats, remainingMs) || !circuitBreaker.allowRequest(stats, effectiveConfig)
+                    || stats.getBulkhead().getCurrentConcurrent() >= concurrencyLimit(stats, effectiveConfig)) {
+                continue;
+            }
+            best = target;
+            bestScore = score;
+        }
+        if (best == null) {
+            relayMetrics.recordAffinityFallback();
+            return null;
+        }
+        relayMetrics.recordSelection(BalanceMode.AFFINITY.getMetricName());
+        return best;
+    }
 
-        // 3. 取 Top-K
-        int topKSize = Math.min(luminaProperties.getFailover().getTopK(), sorted.size());
-        List<ModelGroupConfigItem> topK = sorted.subList(0, topKSize);
+    /**
+     * 成本优先：在满足分组 SLO 且舱壁未满的候选中选预估费用最低的一个，费用相近（1% 以内）时取健康分更高的。
+     * 更便宜的候选因 SLO 不达标或舱壁已满被跳过时记为溢出；没有候选满足 SLO 时返回 null，由 SAPR 兜底
+     */
+    private RoutingTarget selectByCost(ModelGroupConfig modelGroupConfig, RoutingTarget[] available, double[] scores,
+                                       int count, RouteContext route) {
+        LuminaProperties.CostRouting properties = luminaProperties.getCostRouting();
+        LuminaProperties.Slo slo = properties.getGroups().get(modelGroupConfig.getName());
+        long maxP95LatencyMs = slo != null && slo.getMaxP95LatencyMs() != null
+                ? slo.getMaxP95LatencyMs() : properties.getMaxP95LatencyMs();
+        double maxErrorRate = slo != null && slo.getMaxErrorRate() != null
+                ? slo.getMaxErrorRate() : properties.getMaxErrorRate();
+
+        // 先找出满足 SLO 且有余量的最低成本，与它相差 1% 以内的 Provider 视为同价，按评分择优
+        double[] costs = new double[count];
+        boolean[] eligible = new boolean[count];
+        double cheapestCost = Double.POSITIVE_INFINITY;
+        double minEligibleCost = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            RoutingTarget target = available[i];
+            double cost = costEstimator.estimate(target, route.tokens());
+            costs[i] = cost;
+            cheapestCost = Math.min(cheapestCost, cost);
+            ProviderRuntimeState stats = target.getState();
+            if (!meetsSlo(stats, route.tokens().stream(), maxP95LatencyMs, maxErrorRate, properties.getMinSamples())) {
+                continue;
+            }
+            EffectiveCircuitBreakerConfig effectiveConfig = resolveConfig(modelGroupConfig, target, route.requestHash());
+            if (stats.getBulkhead().getCurrentConcurrent() >= concurrencyLimit(stats, effectiveConfig)) {
+                continue;
+            }
+            eligible[i] = true;
+            minEligibleCost = Math.min(minEligibleCost, cost);
+        }
 
-        // 4. 计算 Softmax 权重
-        double[] weights = new double[topK.size()];
+        RoutingTarget best = null;
+        double bestCost = Double.POSITIVE_INFINITY;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            if (!eligible[i]) {
+                continue;
+            }
+            boolean tie = costs[i] == minEligibleCost || costs[i] - minEligibleCost <= minEligibleCost * 0.01;
+            if (tie && (best == null || scores[i] > bestScore)) {
+                best = available[i];
+                bestCost = costs[i];
+                bestScore = scores[i];
+            }
+        }
+        if (best == null) {
+            relayMetrics.recordCostRouting("sapr");
+            return null;
+        }
+        relayMetrics.recordSelection(BalanceMode.COST.getMetricName());
+        relayMetrics.recordCostRouting(bestCost > cheapestCost * 1.01 ? "spill" : "cheapest");
+        return best;
+    }
+
+    /**
+     * 近期错误率和 p95 延迟（流式请求按首包延迟）是否满足 SLO；样本不足的指标不参与判断
+     */
+    private static boolean meetsSlo(ProviderRuntimeState stats, boolean stream, long maxP95LatencyMs,
+                                    double maxErrorRate, int minSamples) {
+        if (stats.getWindowTotalCount() >= minSamples && stats.getWindowErrorRate() > maxErrorRate) {
+            return false;
+        }
+        LatencyHistogram latency = stream ? stats.getTtftHistogram() : stats.getLatencyHistogram();
+        return latency.count() < minSamples || latency.percentile(0.95) <= maxP95LatencyMs;
+    }
+
+    /**
+     * Power of two choices：按 Softmax 健康权重不放回抽取两个候选，取 (在途请求数 + 1) / weight 更小的一个，
+     * 负载相同时取健康分更高的一个。避免所有请求都涌向 EMA 略好的同一个 Provider
+     */
+    private RoutingTarget selectByTwoChoices(RoutingTarget[] available, double[] scores, int count) {
+        relayMetrics.recordSelection(BalanceMode.P2C.getMetricName());
+        if (count == 1) {
+            return available[0];
+        }
+        double softmaxT = luminaProperties.getFailover().getSoftmaxT();
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, scores[i]);
+        }
+        double[] weights = new double[count];
         double sum = 0.0;
+        for (int i = 0; i < count; i++) {
+            weights[i] = Math.exp((scores[i] - max) / softmaxT);
+            sum += weights[i];
+        }
+        int first = sampleIndex(weights, sum, -1);
+        int second = sampleIndex(weights, sum - weights[first], first);
 
-        for (int i = 0; i < topK.size(); i++) {
-            double score = getSelectionScore(topK.get(i));
-            double w = Math.exp(score / luminaProperties.getFailover().getSoftmaxT());
-            weights[i] = w;
-            sum += w;
+        double firstLoad = normalizedLoad(available[first]);
+        double secondLoad = normalizedLoad(available[second]);
+        if (firstLoad != secondLoad) {
+            return firstLoad < secondLoad ? available[first] : available[second];
         }
+        return scores[first] >= scores[second] ? available[first] : available[second];
+    }
 
-        // 5. 按权重随机选择
+    private static int sampleIndex(double[] weights, double sum, int skip) {
         double r = ThreadLocalRandom.current().nextDouble() * sum;
         double acc = 0.0;
-
-        for (int i = 0; i < topK.size(); i++) {
+        int last = -1;
+        for (int i = 0; i < weights.length; i++) {
+            if (i == skip) {
+                continue;
+            }
             acc += weights[i];
+            last = i;
             if (r <= acc) {
-                return topK.get(i);
+                return i;
             }
         }
+        return last;
+    }
+
+    private static double normalizedLoad(RoutingTarget target) {
+        return (target.getState().getBulkhead().getCurrentConcurrent() + 1.0) / target.getWeight();
+    }
+
+    static double rendezvousScore(long affinityHash, RoutingTarget target) {
+        long h = mix64(affinityHash ^ mix64(target.getProviderId().hashCode()));
+        // 取高 53 位映射到 (0, 1)
+        double u = ((h >>> 11) + 0.5) / (double) (1L << 53);
+        return -target.getWeight() / Math.log(u);
+    }
 
-        return topK.get(0);
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * 本次尝试的并发上限：启用自适应并发时取 Provider 当前的自适应上限，否则为静态配置值
+     */
+    private int concurrencyLimit(ProviderRuntimeState state, EffectiveCircuitBreakerConfig effectiveConfig) {
+        int configured = effectiveConfig.getMaxConcurrentRequestsPerProvider();
+        LuminaProperties.AdaptiveConcurrency adaptive = luminaProperties.getAdaptiveConcurrency();
+        return adaptive.isEnabled() ? state.getConcurrencyLimit().limit(configured, adaptive) : configured;
+    }
+
+    private void onConcurrencySample(ProviderRuntimeState state, long rttMs, int inFlight) {
+        LuminaProperties.AdaptiveConcurrency adaptive = luminaProperties.getAdaptiveConcurrency();
+        if (adaptive.isEnabled()) {
+            int change = state.getConcurrencyLimit().onSample(rttMs, inFlight, adaptive);
+            relayMetrics.recordConcurrencyLimitChange(state.getProviderId(), change, "gradient");
+        }
+    }
+
+    /**
+     * 上游给出 retry-after 时按其精确冷却（选路阶段跳过），不再叠加熔断器的指数退避
+     */
+    private void onBreakerFailure(ProviderRuntimeState state, FailureType failureType,
+                                  EffectiveCircuitBreakerConfig effectiveConfig) {
+        if (luminaProperties.getUpstreamRateLimit().isEnabled()
+                && state.getQuota().isCoolingDown(System.currentTimeMillis())) {
+            relayMetrics.recordUpstreamCooldown(state.getProviderId());
+            return;
+        }
+        circuitBreaker.onFailure(state, failureType, effectiveConfig);
+    }
+
+    private void onConcurrencyOverload(ProviderRuntimeState state, FailureType failureType) {
+        LuminaProperties.AdaptiveConcurrency adaptive = luminaProperties.getAdaptiveConcurrency();
+        if (adaptive.isEnabled() && (failureType == FailureType.HTTP_429 || failureType == FailureType.TIMEOUT)) {
+            int change = state.getConcurrencyLimit().onOverload(adaptive);
+            relayMetrics.recordConcurrencyLimitChange(state.getProviderId(), change, failureType.name().toLowerCase());
+        }
     }
 
     /**
      * 轮询策略选择 Provider
      */
-    private ModelGroupConfigItem selectByRoundRobin(List<ModelGroupConfigItem> items, Set<String> excludeIds, String groupId) {
-        List<ModelGroupConfigItem> candidates = items.stream()
-                .filter(item -> !excludeIds.contains(generateProviderId(item)))
-                .toList();
+    private RoutingTarget selectByRoundRobin(RoutingPlan plan, Set<String> excludeIds) {
+        int size = plan.size();
+        int candidates = 0;
+        for (int i = 0; i < size; i++) {
+            if (!excludeIds.contains(plan.get(i).getProviderId())) {
+                candidates++;
+            }
+        }
 
-        if (candidates.isEmpty()) {
+        if (candidates == 0) {
             throw new RuntimeException("所有 Provider 已尝试过，轮询无可用候选");
         }
 
-        String key = groupId != null ? groupId : "default";
-        AtomicInteger counter = roundRobinCounters.computeIfAbsent(key, k -> new AtomicInteger(0));
-        int index = Math.abs(counter.getAndIncrement() % candidates.size());
+        int index = Math.abs(plan.getRoundRobinCounter().getAndIncrement() % candidates);
         relayMetrics.recordSelection("round_robin");
-        return candidates.get(index);
+        for (int i = 0; i < size; i++) {
+            RoutingTarget target = plan.get(i);
+            if (!excludeIds.contains(target.getProviderId()) && index-- == 0) {
+                return target;
+            }
+        }
+        throw new RuntimeException("所有 Provider 已尝试过，轮询无可用候选");
     }
 
     private double getEffectiveScore(ProviderRuntimeState state) {
@@ -242,35 +539,113 @@ public class FailoverService {
         return score;
     }
 
-    private double getSelectionScore(ModelGroupConfigItem item) {
-        ProviderRuntimeState state = providerStateRegistry.get(generateProviderId(item));
-        double score = getEffectiveScore(state);
-        int configuredWeight = Math.max(1, item.getWeight() == null ? 1 : item.getWeight());
-        return score + luminaProperties.getFailover().getSoftmaxT() * Math.log(configuredWeight);
+    private double getSelectionScore(RoutingTarget target) {
+        double score = getEffectiveScore(target.getState());
+        double softmaxT = luminaProperties.getFailover().getSoftmaxT();
+        return score + softmaxT * (target.getLogWeight() + quotaLogFactor(target.getState()));
+    }
+
+    /**
+     * 剩余预算不足以完成一次尝试时返回异常，不再发起新的上游请求
+     */
+    private DeadlineExceededException checkDeadline(RouteContext route, int attemptCount, boolean stream) {
+        if (!route.hasDeadline()) {
+            return null;
+        }
+        long remainingMs = route.remainingMs(System.currentTimeMillis());
+        if (remainingMs >= luminaProperties.getDeadline().getMinAttemptMs()) {
+            return null;
+        }
+        relayMetrics.recordDeadlineExceeded(stream);
+        relayMetrics.recordFailoverDepth(attemptCount);
+        return new DeadlineExceededException(attemptCount, remainingMs);
+    }
+
+    /**
+     * Provider 近期首包（没有流式样本时取总延迟）中位数已超过剩余预算，这次尝试大概率无法按时完成
+     */
+    private boolean exceedsBudget(ProviderRuntimeState state, long remainingMs) {
+        if (remainingMs == Long.MAX_VALUE) {
+            return false;
+        }
+        int minSamples = luminaProperties.getDeadline().getMinSamples();
+        LatencyHistogram histogram = state.getTtftHistogram().count() >= minSamples
+                ? state.getTtftHistogram() : state.getLatencyHistogram();
+        return histogram.count() >= minSamples && histogram.percentile(0.5) > remainingMs;
+    }
+
+    /**
+     * 本次尝试的超时是否被请求截止时间截短
+     */
+    private static boolean isBudgetLimited(RouteContext route, Integer timeoutMs, long nowMs) {
+        long configured = timeoutMs != null && timeoutMs > 0 ? timeoutMs : Long.MAX_VALUE;
+        return route.hasDeadline() && route.remainingMs(nowMs) < configured;
+    }
+
+    /**
+     * 被截止时间截短的尝试超时，是调用方预算不足而非 Provider 故障，不计入评分和熔断
+     */
+    private static boolean isBudgetTimeout(boolean budgetLimited, FailureType failureType) {
+        return budgetLimited && failureType == FailureType.TIMEOUT;
+    }
+
+    /**
+     * 上游配额已耗尽或处于 retry-after 冷却期：在上游返回 429 之前跳过
+     */
+    private boolean isRateLimited(ProviderRuntimeState state) {
+        return luminaProperties.getUpstreamRateLimit().isEnabled()
+                && state.getQuota().isExhausted(System.currentTimeMillis());
+    }
+
+    /**
+     * 剩余配额低于水位线时按比例降低 Softmax 权重（以对数形式叠加在 weight 先验上），水位线以上不影响
+     */
+    private double quotaLogFactor(ProviderRuntimeState state) {
+        LuminaProperties.UpstreamRateLimit config = luminaProperties.getUpstreamRateLimit();
+        if (!config.isEnabled() || config.getLowWatermark() <= 0) {
+            return 0.0;
+        }
+        double fraction = state.getQuota().remainingFraction(System.currentTimeMillis());
+        if (fraction >= config.getLowWatermark()) {
+            return 0.0;
+        }
+        return Math.log(Math.max(fraction, 1e-3) / config.getLowWatermark());
     }
 
     public Mono<ObjectNode> executeWithFailoverMono(
-            java.util.function.Function<ModelGroupConfigItem, Mono<ObjectNode>> callFunction,
+            java.util.function.Function<RoutingTarget, Mono<ObjectNode>> callFunction,
             ModelGroupConfig group,
             Integer timeoutMs
     ) {
-        // 生成请求哈希用于灰度一致性
-        int requestHash = ThreadLocalRandom.current().nextInt();
-        return executeWithFailoverMono(callFunction, group, new HashSet<>(), timeoutMs, 0, requestHash);
+        return executeWithFailoverMono(callFunction, group, timeoutMs, RouteContext.random());
+    }
+
+    /**
+     * @param route 路由上下文，亲和模式下携带提示词前缀哈希
+     */
+    public Mono<ObjectNode> executeWithFailoverMono(
+            java.util.function.Function<RoutingTarget, Mono<ObjectNode>> callFunction,
+            ModelGroupConfig group,
+            Integer timeoutMs,
+            RouteContext route
+    ) {
+        // 对冲请求与主请求的 Failover 链会并发写入 tried
+        return executeWithFailoverMono(callFunction, group, ConcurrentHashMap.newKeySet(), timeoutMs, 0, route,
+                new QueueTicket());
     }
 
     private Mono<ObjectNode> executeWithFailoverMono(
-            java.util.function.Function<ModelGroupConfigItem, Mono<ObjectNode>> callFunction,
+            java.util.function.Function<RoutingTarget, Mono<ObjectNode>> callFunction,
             ModelGroupConfig group,
             Set<String> tried,
             Integer timeoutMs,
             int attemptCount,
-            int requestHash
+            RouteContext route,
+            QueueTicket queueTicket
     ) {
-        // 解析 Group 级别配置获取 maxFailoverAttempts
-        EffectiveCircuitBreakerConfig groupConfig = configResolver.resolve(
-                group.getId(), group.getCircuitBreakerConfig());
-        boolean updateHealthState = shouldUpdateHealthState(group);
+        // Group 级别配置（maxFailoverAttempts）已在路由计划中预解析
+        RoutingPlan plan = routingPlanCompiler.planFor(group);
+        EffectiveCircuitBreakerConfig groupConfig = plan.getGroupConfig();
 
         // 检查 Failover 次数限制
         if (attemptCount >= groupConfig.getMaxFailoverAttempts()) {
@@ -278,56 +653,105 @@ public class FailoverService {
             relayMetrics.recordFailoverDepth(attemptCount);
             return Mono.error(new MaxFailoverExceededException(attemptCount, groupConfig.getMaxFailoverAttempts()));
         }
+        DeadlineExceededException expired = checkDeadline(route, attemptCount, false);
+        if (expired != null) {
+            return Mono.error(expired);
+        }
 
-        ModelGroupConfigItem item;
+        RoutingTarget target;
         try {
-            item = selectAvailableProvider(group, tried, requestHash);
+            target = selectAvailableProvider(group, plan, tried, route);
+        } catch (BulkheadFullException e) {
+            Mono<Void> wait = awaitCapacity(group, plan, tried, route, queueTicket, e);
+            if (wait == null) {
+                relayMetrics.recordNoProviderAvailable(false);
+                relayMetrics.recordFailoverDepth(attemptCount);
+                return Mono.error(e);
+            }
+            return wait.then(Mono.defer(() ->
+                    executeWithFailoverMono(callFunction, group, tried, timeoutMs, attemptCount, route, queueTicket)));
         } catch (Exception e) {
             relayMetrics.recordNoProviderAvailable(false);
             relayMetrics.recordFailoverDepth(attemptCount);
             return Mono.error(e);
         }
 
-        String providerId = generateProviderId(item);
+        String providerId = target.getProviderId();
         tried.add(providerId);
-        ProviderRuntimeState state = providerStateRegistry.get(providerId);
-        if (state.getProviderName() == null) {
-            state.setProviderName(item.getProviderName());
-        }
-        if (state.getModelName() == null) {
-            state.setModelName(item.getModelName());
-        }
+        ProviderRuntimeState state = target.getState();
 
         // 解析 Provider 级别的生效配置
-        EffectiveCircuitBreakerConfig effectiveConfig = resolveConfig(group, item, requestHash);
+        EffectiveCircuitBreakerConfig effectiveConfig = resolveConfig(group, target, route.requestHash());
 
         log.debug("尝试使用Provider(非流式): {}, 当前评分: {}, 尝试次数: {}, 配置来源: {}",
                 providerId, state.getScore(), attemptCount + 1, effectiveConfig.getSourceLevel());
 
         // 检查并发舱壁
         ProviderBulkhead bulkhead = state.getBulkhead();
-        bulkhead.setMaxConcurrent(effectiveConfig.getMaxConcurrentRequestsPerProvider());
+        bulkhead.setMaxConcurrent(concurrencyLimit(state, effectiveConfig));
         if (!bulkhead.tryAcquire()) {
             log.warn("Provider {} 并发已满，当前: {}/{}, 尝试 Failover",
                     providerId, bulkhead.getCurrentConcurrent(), bulkhead.getMaxConcurrent());
             relayMetrics.recordBulkheadRejection(false);
             relayMetrics.recordFailoverAttempt(false, attemptCount + 1);
-            return executeWithFailoverMono(callFunction, group, tried, timeoutMs, attemptCount + 1, requestHash);
+            return executeWithFailoverMono(callFunction, group, tried, timeoutMs, attemptCount + 1, route, queueTicket);
+        }
+
+        Mono<ObjectNode> primary = callProvider(callFunction, group, target, effectiveConfig, timeoutMs, attemptCount, route)
+                .onErrorResume(error -> {
+                    FailureType failureType = classifyError(error);
+                    if (!failureType.shouldFailover()) {
+                        log.debug("错误类型 {} 不触发 Failover，直接返回错误", failureType);
+                        relayMetrics.recordFailoverDepth(attemptCount);
+                        return Mono.error(error);
+                    }
+
+                    relayMetrics.recordFailoverSwitch(false, "before_response", failureType.name().toLowerCase());
+                    relayMetrics.recordFailoverAttempt(false, attemptCount + 1);
+                    return executeWithFailoverMono(callFunction, group, tried, timeoutMs, attemptCount + 1, route, queueTicket);
+                });
+
+        long hedgeDelayMs = attemptCount == 0 ? resolveHedgeDelay(group, state, timeoutMs) : -1;
+        if (hedgeDelayMs < 0) {
+            return primary;
         }
+        return withHedge(primary, callFunction, group, plan, tried, timeoutMs, route, hedgeDelayMs);
+    }
+
+    /**
+     * 单次 Provider 调用：负责释放已获取的舱壁配额并更新健康状态，错误原样抛出
+     */
+    private Mono<ObjectNode> callProvider(
+            java.util.function.Function<RoutingTarget, Mono<ObjectNode>> callFunction,
+            ModelGroupConfig group,
+            RoutingTarget target,
+            EffectiveCircuitBreakerConfig effectiveConfig,
+            Integer timeoutMs,
+            int attemptCount,
+            RouteContext route
+    ) {
+        String providerId = target.getProviderId();
+        ProviderRuntimeState state = target.getState();
+        ProviderBulkhead bulkhead = state.getBulkhead();
+        boolean updateHealthState = shouldUpdateHealthState(group);
 
         long startTime = System.currentTimeMillis();
+        int inFlight = bulkhead.getCurrentConcurrent();
+        boolean budgetLimited = isBudgetLimited(route, timeoutMs, startTime);
         java.util.concurrent.atomic.AtomicBoolean bulkheadReleased = new java.util.concurrent.atomic.AtomicBoolean(false);
         Runnable releaseBulkhead = () -> {
             if (bulkheadReleased.compareAndSet(false, true)) {
                 bulkhead.release();
+                signalWaiters(providerId);
             }
         };
-        Mono<ObjectNode> result = callFunction.apply(item);
+        Mono<ObjectNode> result = callFunction.apply(target);
 
         return result
                 .doOnSuccess(response -> {
                     releaseBulkhead.run();
                     long duration = System.currentTimeMillis() - startTime;
+                    onConcurrencySample(state, duration, inFlight);
                     if (updateHealthState) {
                         scoreCalculator.update(state, FailureType.SUCCESS, duration);
                         circuitBreaker.onSuccess(state, effectiveConfig);
@@ -336,9 +760,8 @@ public class FailoverService {
                     log.debug("Provider {} 调用成功，耗时: {}ms, 健康状态更新: {}, 当前评分: {}",
                             providerId, duration, updateHealthState, state.getScore());
                 })
-                .doOnError(error -> releaseBulkhead.run())
-                .doOnCancel(releaseBulkhead)
-                .onErrorResume(error -> {
+                .doOnError(error -> {
+                    releaseBulkhead.run();
                     long duration = System.currentTimeMillis() - startTime;
                     FailureType failureType = classifyError(error);
 
@@ -352,104 +775,331 @@ public class FailoverService {
                         log.warn("Provider {} 调用失败: {} (类型: {}), 耗时: {}ms, 上游响应: {}",
                                 providerId, error.getMessage(), failureType, duration, responseBody);
                     }
+                    onConcurrencyOverload(state, failureType);
 
-                    if (updateHealthState) {
+                    if (updateHealthState && !isBudgetTimeout(budgetLimited, failureType)) {
                         scoreCalculator.update(state, failureType, duration);
-                        circuitBreaker.onFailure(state, failureType, effectiveConfig);
+                        onBreakerFailure(state, failureType, effectiveConfig);
                     }
+                })
+                .doOnCancel(releaseBulkhead);
+    }
 
-                    if (!failureType.shouldFailover()) {
-                        log.debug("错误类型 {} 不触发 Failover，直接返回错误", failureType);
-                        relayMetrics.recordFailoverDepth(attemptCount);
-                        return Mono.error(error);
+    /**
+     * 对冲请求：主请求在 hedgeDelayMs 内未返回时，向另一个 Provider 再发一次，先返回结果的一方胜出，
+     * 另一方被取消并释放舱壁。对冲请求只发一次，失败不再 Failover（主请求的 Failover 链不受影响）。
+     */
+    private Mono<ObjectNode> withHedge(
+            Mono<ObjectNode> primary,
+            java.util.function.Function<RoutingTarget, Mono<ObjectNode>> callFunction,
+            ModelGroupConfig group,
+            RoutingPlan plan,
+            Set<String> tried,
+            Integer timeoutMs,
+            RouteContext route,
+            long hedgeDelayMs
+    ) {
+        java.util.concurrent.atomic.AtomicBoolean primaryDone = new java.util.concurrent.atomic.AtomicBoolean(false);
+        java.util.concurrent.atomic.AtomicBoolean hedgeLaunched = new java.util.concurrent.atomic.AtomicBoolean(false);
+        java.util.concurrent.atomic.AtomicBoolean hedgeWon = new java.util.concurrent.atomic.AtomicBoolean(false);
+        Sinks.Empty<Void> primaryTerminated = Sinks.empty();
+
+        // 主请求先结束（包括不触发 Failover 的快速失败）时立即结束等待，错误不必等满对冲延迟才返回
+        Mono<ObjectNode> hedge = Mono.delay(Duration.ofMillis(hedgeDelayMs))
+                .takeUntilOther(primaryTerminated.asMono())
+                .flatMap(tick -> {
+                    if (primaryDone.get()) {
+                        return Mono.<ObjectNode>empty();
+                    }
+                    RoutingTarget target;
+                    try {
+                        target = selectAvailableProvider(group, plan, tried, route);
+                    } catch (Exception e) {
+                        return Mono.<ObjectNode>empty();
+                    }
+                    // 全部熔断时的轮询保底会忽略 tried，可能选回已经在用的 Provider
+                    if (!tried.add(target.getProviderId())) {
+                        return Mono.<ObjectNode>empty();
+                    }
+                    EffectiveCircuitBreakerConfig effectiveConfig = resolveConfig(group, target, route.requestHash());
+                    ProviderBulkhead bulkhead = target.getState().getBulkhead();
+                    bulkhead.setMaxConcurrent(concurrencyLimit(target.getState(), effectiveConfig));
+                    if (!bulkhead.tryAcquire()) {
+                        relayMetrics.recordBulkheadRejection(false);
+                        return Mono.<ObjectNode>empty();
                     }
 
-                    relayMetrics.recordFailoverSwitch(false, "before_response", failureType.name().toLowerCase());
-                    relayMetrics.recordFailoverAttempt(false, attemptCount + 1);
-                    return executeWithFailoverMono(callFunction, group, tried, timeoutMs, attemptCount + 1, requestHash);
+                    hedgeLaunched.set(true);
+                    relayMetrics.recordHedge("launched");
+                    log.debug("主请求 {}ms 未返回，发出对冲请求: {}", hedgeDelayMs, target.getProviderId());
+                    return callProvider(callFunction, group, target, effectiveConfig, timeoutMs, 1, route)
+                            .doOnNext(response -> hedgeWon.set(true));
+                });
+
+        return Mono.firstWithValue(primary.doFinally(signal -> {
+                    primaryDone.set(true);
+                    primaryTerminated.tryEmitEmpty();
+                }), hedge)
+                .doOnSuccess(response -> {
+                    if (hedgeLaunched.get()) {
+                        relayMetrics.recordHedge(hedgeWon.get() ? "hedge_won" : "primary_won");
+                    }
+                })
+                // 双方都没有结果时，还原主请求的错误（未发出的对冲以空结果计）
+                .onErrorResume(NoSuchElementException.class, e -> {
+                    Throwable error = unwrapRaceError(e);
+                    return error == e ? Mono.empty() : Mono.error(error);
                 });
     }
 
+    /**
+     * 对冲等待时间：当前 Provider 成功延迟的分位值；分组未启用、样本不足或超过超时时间时返回 -1
+     */
+    private long resolveHedgeDelay(ModelGroupConfig group, ProviderRuntimeState state, Integer timeoutMs) {
+        LuminaProperties.Hedging hedging = luminaProperties.getHedging();
+        if (group == null || !hedging.getGroups().contains(group.getName())) {
+            return -1;
+        }
+        LatencyHistogram histogram = state.getLatencyHistogram();
+        if (histogram.count() < hedging.getMinSamples()) {
+            return -1;
+        }
+        long delay = Math.max(hedging.getMinDelayMs(), histogram.percentile(hedging.getLatencyPercentile()));
+        if (timeoutMs != null && timeoutMs > 0 && delay >= timeoutMs) {
+            return -1;
+        }
+        return delay;
+    }
+
     public Flux<ServerSentEvent<String>> executeWithFailoverFlux(
-            java.util.function.Function<ModelGroupConfigItem, Flux<ServerSentEvent<String>>> callFunction,
+            java.util.function.Function<RoutingTarget, Flux<ServerSentEvent<String>>> callFunction,
             ModelGroupConfig group,
             Integer timeoutMs
     ) {
-        int requestHash = ThreadLocalRandom.current().nextInt();
-        return executeWithFailoverFlux(callFunction, group, new HashSet<>(), timeoutMs, 0, requestHash);
+        return executeWithFailoverFlux(callFunction, group, timeoutMs,
+                data -> ServerSentEvent.<String>builder().data(data).build());
+    }
+
+    /**
+     * 流式 Failover（通用元素类型，透传模式下元素为原始 DataBuffer）
+     * @param errorEventFactory 中途失败时将错误 JSON 包装为下游元素
+     */
+    public <T> Flux<T> executeWithFailoverFlux(
+            java.util.function.Function<RoutingTarget, Flux<T>> callFunction,
+            ModelGroupConfig group,
+            Integer timeoutMs,
+            java.util.function.Function<String, T> errorEventFactory
+    ) {
+        return executeWithFailoverFlux(callFunction, group, timeoutMs, errorEventFactory, RouteContext.random());
+    }
+
+    public <T> Flux<T> executeWithFailoverFlux(
+            java.util.function.Function<RoutingTarget, Flux<T>> callFunction,
+            ModelGroupConfig group,
+            Integer timeoutMs,
+            java.util.function.Function<String, T> errorEventFactory,
+            RouteContext route
+    ) {
+        return executeWithFailoverFlux(callFunction, group, new HashSet<>(), timeoutMs, 0, route, new QueueTicket(),
+                errorEventFactory, null);
+    }
+
+    /**
+     * 流式 Failover（支持首包之后的中途续写）
+     * @param resumer 中途失败时构造续写调用，为 null 时与普通流式 Failover 一致
+     */
+    public Flux<ServerSentEvent<String>> executeWithFailoverFlux(
+            java.util.function.Function<RoutingTarget, Flux<ServerSentEvent<String>>> callFunction,
+            ModelGroupConfig group,
+            Integer timeoutMs,
+            StreamResumer<ServerSentEvent<String>> resumer
+    ) {
+        return executeWithFailoverFlux(callFunction, group, timeoutMs, resumer, RouteContext.random());
+    }
+
+    public Flux<ServerSentEvent<String>> executeWithFailoverFlux(
+            java.util.function.Function<RoutingTarget, Flux<ServerSentEvent<String>>> callFunction,
+            ModelGroupConfig group,
+            Integer timeoutMs,
+            StreamResumer<ServerSentEvent<String>> resumer,
+            RouteContext route
+    ) {
+        StreamResumer<ServerSentEvent<String>> effectiveResumer =
+                luminaProperties.getFailover().isStreamContinuation() ? resumer : null;
+        return executeWithFailoverFlux(callFunction, group, new HashSet<>(), timeoutMs, 0, route, new QueueTicket(),
+                data -> ServerSentEvent.<String>builder().data(data).build(), effectiveResumer);
     }
 
-    private Flux<ServerSentEvent<String>> executeWithFailoverFlux(
-            java.util.function.Function<ModelGroupConfigItem, Flux<ServerSentEvent<String>>> callFunction,
+    private <T> Flux<T> executeWithFailoverFlux(
+            java.util.function.Function<RoutingTarget, Flux<T>> callFunction,
             ModelGroupConfig group,
             Set<String> tried,
             Integer timeoutMs,
             int attemptCount,
-            int requestHash
+            RouteContext route,
+            QueueTicket queueTicket,
+            java.util.function.Function<String, T> errorEventFactory,
+            StreamResumer<T> resumer
     ) {
-        EffectiveCircuitBreakerConfig groupConfig = configResolver.resolve(
-                group.getId(), group.getCircuitBreakerConfig());
-        boolean updateHealthState = shouldUpdateHealthState(group);
+        RoutingPlan plan = routingPlanCompiler.planFor(group);
+        EffectiveCircuitBreakerConfig groupConfig = plan.getGroupConfig();
 
         if (attemptCount >= groupConfig.getMaxFailoverAttempts()) {
             relayMetrics.recordMaxFailoverExceeded(true);
             relayMetrics.recordFailoverDepth(attemptCount);
             return Flux.error(new MaxFailoverExceededException(attemptCount, groupConfig.getMaxFailoverAttempts()));
         }
+        DeadlineExceededException expired = checkDeadline(route, attemptCount, true);
+        if (expired != null) {
+            return Flux.error(expired);
+        }
 
-        ModelGroupConfigItem item;
+        RoutingTarget target;
         try {
-            item = selectAvailableProvider(group, tried, requestHash);
+            target = selectAvailableProvider(group, plan, tried, route);
+        } catch (BulkheadFullException e) {
+            Mono<Void> wait = awaitCapacity(group, plan, tried, route, queueTicket, e);
+            if (wait == null) {
+                relayMetrics.recordNoProviderAvailable(true);
+                relayMetrics.recordFailoverDepth(attemptCount);
+                return Flux.error(e);
+            }
+            return wait.thenMany(Flux.defer(() -> executeWithFailoverFlux(
+                    callFunction, group, tried, timeoutMs, attemptCount, route, queueTicket, errorEventFactory, resumer)));
         } catch (Exception e) {
             relayMetrics.recordNoProviderAvailable(true);
             relayMetrics.recordFailoverDepth(attemptCount);
             return Flux.error(e);
         }
 
-        String providerId = generateProviderId(item);
+        String providerId = target.getProviderId();
         tried.add(providerId);
-        ProviderRuntimeState state = providerStateRegistry.get(providerId);
-        if (state.getProviderName() == null) {
-            state.setProviderName(item.getProviderName());
-        }
-        if (state.getModelName() == null) {
-            state.setModelName(item.getModelName());
-        }
+        ProviderRuntimeState state = target.getState();
 
-        EffectiveCircuitBreakerConfig effectiveConfig = resolveConfig(group, item, requestHash);
+        EffectiveCircuitBreakerConfig effectiveConfig = resolveConfig(group, target, route.requestHash());
 
         log.debug("尝试使用Provider(流式): {}, 当前评分: {}, 尝试次数: {}, 配置来源: {}",
                 providerId, state.getScore(), attemptCount + 1, effectiveConfig.getSourceLevel());
 
         ProviderBulkhead bulkhead = state.getBulkhead();
-        bulkhead.setMaxConcurrent(effectiveConfig.getMaxConcurrentRequestsPerProvider());
+        bulkhead.setMaxConcurrent(concurrencyLimit(state, effectiveConfig));
         if (!bulkhead.tryAcquire()) {
             log.warn("Provider {} 并发已满，当前: {}/{}, 尝试 Failover",
                     providerId, bulkhead.getCurrentConcurrent(), bulkhead.getMaxConcurrent());
             relayMetrics.recordBulkheadRejection(true);
             relayMetrics.recordFailoverAttempt(true, attemptCount + 1);
-            return executeWithFailoverFlux(callFunction, group, tried, timeoutMs, attemptCount + 1, requestHash);
+            return executeWithFailoverFlux(callFunction, group, tried, timeoutMs, attemptCount + 1, route, queueTicket, errorEventFactory, resumer);
+        }
+
+        Flux<T> upstream = streamProvider(callFunction, group, target, effectiveConfig, timeoutMs, attemptCount, route);
+        int attemptsUsed = 1;
+        if (attemptCount == 0) {
+            Flux<T> raced = raceFirstChunk(upstream, callFunction, group, plan, tried, timeoutMs, route);
+            if (raced != null) {
+                upstream = raced;
+                attemptsUsed = 2;
+            }
         }
 
+        int nextAttempt = attemptCount + attemptsUsed;
+        java.util.concurrent.atomic.AtomicBoolean firstChunk = new java.util.concurrent.atomic.AtomicBoolean(true);
+
+        return upstream
+                .doOnNext(event -> {
+                    firstChunk.compareAndSet(true, false);
+                    if (resumer != null) {
+                        resumer.onDelivered(event);
+                    }
+                })
+                .onErrorResume(raceError -> {
+                    Throwable error = unwrapRaceError(raceError);
+                    FailureType failureType = classifyError(error);
+
+                    if (firstChunk.get()) {
+                        if (!failureType.shouldFailover()) {
+                            log.debug("错误类型 {} 不触发 Failover，直接返回错误", failureType);
+                            relayMetrics.recordFailoverDepth(attemptCount);
+                            return Flux.error(error);
+                        }
+
+                        relayMetrics.recordFailoverSwitch(true, "first_chunk", failureType.name().toLowerCase());
+                        relayMetrics.recordFailoverAttempt(true, nextAttempt);
+                        return executeWithFailoverFlux(callFunction, group, tried, timeoutMs, nextAttempt, route, queueTicket, errorEventFactory, resumer);
+                    } else {
+                        // 中断传输的降级提示
+                        String errorMessage = "{\"error\": {\"message\": \"网关传输中途发生网络异常中断，请稍后重试。\"}}";
+                        java.util.function.Function<RoutingTarget, Flux<T>> resumeFunction =
+                                resumer != null && failureType.shouldFailover() ? resumer.resume() : null;
+                        if (resumeFunction != null) {
+                            relayMetrics.recordFailoverSwitch(true, "mid_stream", failureType.name().toLowerCase());
+                            relayMetrics.recordFailoverAttempt(true, nextAttempt);
+                            // 续写在首包前失败时客户端流已经开始，仍需补发降级提示
+                            java.util.concurrent.atomic.AtomicBoolean resumed = new java.util.concurrent.atomic.AtomicBoolean(false);
+                            return executeWithFailoverFlux(resumeFunction, group, tried, timeoutMs, nextAttempt, route, queueTicket, errorEventFactory, resumer)
+                                    .doOnNext(event -> resumed.set(true))
+                                    .onErrorResume(resumeError -> resumed.get()
+                                            ? Flux.error(resumeError)
+                                            : Flux.just(errorEventFactory.apply(errorMessage)).concatWith(Flux.error(resumeError)));
+                        }
+                        relayMetrics.recordFailoverDepth(attemptCount);
+                        return Flux.just(errorEventFactory.apply(errorMessage))
+                                .concatWith(Flux.error(error));
+                    }
+                });
+    }
+
+    /**
+     * 单次 Provider 流式调用：负责释放已获取的舱壁配额、更新健康状态并记录失败日志，错误原样抛出
+     */
+    private <T> Flux<T> streamProvider(
+            java.util.function.Function<RoutingTarget, Flux<T>> callFunction,
+            ModelGroupConfig group,
+            RoutingTarget target,
+            EffectiveCircuitBreakerConfig effectiveConfig,
+            Integer timeoutMs,
+            int attemptCount,
+            RouteContext route
+    ) {
+        String providerId = target.getProviderId();
+        ProviderRuntimeState state = target.getState();
+        ProviderBulkhead bulkhead = state.getBulkhead();
+        boolean updateHealthState = shouldUpdateHealthState(group);
+
         long startTime = System.currentTimeMillis();
+        int inFlight = bulkhead.getCurrentConcurrent();
+        boolean budgetLimited = isBudgetLimited(route, timeoutMs, startTime);
         java.util.concurrent.atomic.AtomicBoolean firstChunk = new java.util.concurrent.atomic.AtomicBoolean(true);
+        java.util.concurrent.atomic.AtomicLong ttftMs = new java.util.concurrent.atomic.AtomicLong(-1);
+        java.util.concurrent.atomic.AtomicLong lastChunkAt = new java.util.concurrent.atomic.AtomicLong();
         java.util.concurrent.atomic.AtomicBoolean bulkheadReleased = new java.util.concurrent.atomic.AtomicBoolean(false);
 
         Runnable releaseBulkhead = () -> {
             if (bulkheadReleased.compareAndSet(false, true)) {
                 bulkhead.release();
+                signalWaiters(providerId);
             }
         };
 
-        Flux<ServerSentEvent<String>> result = callFunction.apply(item);
+        Flux<T> result = callFunction.apply(target);
 
         return result
-                .doOnNext(event -> firstChunk.compareAndSet(true, false))
+                .doOnNext(event -> {
+                    // 流式请求以首包延迟作为 RTT，总时长主要取决于输出长度；之后记录相邻分片的间隔
+                    // （透传的原始 DataBuffer 不对应 SSE 事件，间隔由执行器按事件记录）
+                    long now = System.currentTimeMillis();
+                    if (firstChunk.compareAndSet(true, false)) {
+                        ttftMs.set(now - startTime);
+                        onConcurrencySample(state, ttftMs.get(), inFlight);
+                    } else if (!(event instanceof DataBuffer)) {
+                        state.getChunkGapHistogram().record(now - lastChunkAt.get());
+                    }
+                    lastChunkAt.set(now);
+                })
                 .doOnComplete(() -> {
                     releaseBulkhead.run();
                     long duration = System.currentTimeMillis() - startTime;
                     if (updateHealthState) {
-                        scoreCalculator.update(state, FailureType.SUCCESS, duration);
+                        scoreCalculator.update(state, FailureType.SUCCESS, duration, ttftMs.get());
                         circuitBreaker.onSuccess(state, effectiveConfig);
                     }
                     relayMetrics.recordFailoverDepth(attemptCount);
@@ -457,7 +1107,7 @@ public class FailoverService {
                             providerId, duration, updateHealthState, state.getScore());
                 })
                 .doOnCancel(releaseBulkhead)
-                .onErrorResume(error -> {
+                .doOnError(error -> {
                     releaseBulkhead.run();
                     long duration = System.currentTimeMillis() - startTime;
                     FailureType failureType = classifyError(error);
@@ -473,43 +1123,257 @@ public class FailoverService {
                             log.warn("Provider {} 流式调用首包失败: {} (类型: {}), 耗时: {}ms, 上游响应: {}",
                                     providerId, error.getMessage(), failureType, duration, responseBody);
                         }
-
-                        if (updateHealthState) {
-                            scoreCalculator.update(state, failureType, duration);
-                            circuitBreaker.onFailure(state, failureType, effectiveConfig);
-                        }
-
-                        if (!failureType.shouldFailover()) {
-                            log.debug("错误类型 {} 不触发 Failover，直接返回错误", failureType);
-                            relayMetrics.recordFailoverDepth(attemptCount);
-                            return Flux.error(error);
-                        }
-
-                        relayMetrics.recordFailoverSwitch(true, "first_chunk", failureType.name().toLowerCase());
-                        relayMetrics.recordFailoverAttempt(true, attemptCount + 1);
-                        return executeWithFailoverFlux(callFunction, group, tried, timeoutMs, attemptCount + 1, requestHash);
+                        onConcurrencyOverload(state, failureType);
                     } else {
                         log.error("Provider {} 流式传输中途失败: {} (类型: {})", providerId, error.getMessage(), failureType);
-                        if (updateHealthState) {
-                            scoreCalculator.update(state, failureType, duration);
-                            circuitBreaker.onFailure(state, failureType, effectiveConfig);
-                        }
-                        relayMetrics.recordFailoverDepth(attemptCount);
-                        // 中断传输的降级提示
-                        String errorMessage = "{\"error\": {\"message\": \"网关传输中途发生网络异常中断，请稍后重试。\"}}";
-                        return Flux.just(ServerSentEvent.<String>builder()
-                                .data(errorMessage)
-                                .build())
-                                .concatWith(Flux.error(error));
+                    }
+
+                    if (updateHealthState && !isBudgetTimeout(budgetLimited, failureType)) {
+                        scoreCalculator.update(state, failureType, duration, ttftMs.get());
+                        onBreakerFailure(state, failureType, effectiveConfig);
                     }
                 });
     }
 
-    private String generateProviderId(ModelGroupConfigItem item) {
-        return String.format("%s_%s_%s",
-                item.getBaseUrl(),
-                item.getApiKey() != null ? item.getApiKey().hashCode() : "null",
-                item.getModelName());
+    /**
+     * 首包竞速：同时向次优 Provider 建立流，先发出携带输出内容的分片的一方胜出，另一方立即取消并释放舱壁和暂存的分片。
+     * 额外的上游请求受分组预算限制；分组未启用、预算不足或没有可用的第二个 Provider 时返回 null。
+     */
+    private <T> Flux<T> raceFirstChunk(
+            Flux<T> primary,
+            java.util.function.Function<RoutingTarget, Flux<T>> callFunction,
+            ModelGroupConfig group,
+            RoutingPlan plan,
+            Set<String> tried,
+            Integer timeoutMs,
+            RouteContext route
+    ) {
+        RaceBudget budget = raceBudget(group);
+        if (budget == null) {
+            return null;
+        }
+        budget.deposit();
+
+        RoutingTarget target;
+        try {
+            target = selectAvailableProvider(group, plan, tried, route);
+        } catch (Exception e) {
+            return null;
+        }
+        // 全部熔断时的轮询保底会忽略 tried，可能选回主请求的 Provider
+        if (tried.contains(target.getProviderId())) {
+            return null;
+        }
+        // 先占舱壁再扣预算，舱壁已满时不消耗竞速预算
+        EffectiveCircuitBreakerConfig effectiveConfig = resolveConfig(group, target, route.requestHash());
+        ProviderBulkhead bulkhead = target.getState().getBulkhead();
+        bulkhead.setMaxConcurrent(concurrencyLimit(target.getState(), effectiveConfig));
+        if (!bulkhead.tryAcquire()) {
+            relayMetrics.recordBulkheadRejection(true);
+            return null;
+        }
+        if (!budget.tryWithdraw()) {
+            bulkhead.release();
+            relayMetrics.recordStreamRace("budget_exhausted");
+            return null;
+        }
+        tried.add(target.getProviderId());
+
+        relayMetrics.recordStreamRace("started");
+        log.debug("流式首包竞速: 同时请求 Provider {}", target.getProviderId());
+
+        java.util.concurrent.atomic.AtomicReference<String> winner = new java.util.concurrent.atomic.AtomicReference<>();
+        java.util.concurrent.atomic.AtomicBoolean primaryLost = new java.util.concurrent.atomic.AtomicBoolean(false);
+        java.util.concurrent.atomic.AtomicBoolean secondaryLost = new java.util.concurrent.atomic.AtomicBoolean(false);
+        Sinks.Empty<Void> secondaryDone = Sinks.empty();
+        Flux<T> secondary = streamProvider(callFunction, group, target, effectiveConfig, timeoutMs, 1, route)
+                .doFinally(signal -> secondaryDone.tryEmitEmpty());
+        // 胜者的首个分片先于 firstWithValue 取消另一方到达，落败标记在取消传到执行器之前已经置位
+        return Flux.firstWithValue(
+                        holdUntilContent(primary.contextWrite(Context.of(STREAM_RACE_LOST_KEY, primaryLost)),
+                                secondaryDone.asMono()).doOnNext(chunks -> {
+                            if (winner.compareAndSet(null, "primary_won")) {
+                                secondaryLost.set(true);
+                                relayMetrics.recordStreamRace("primary_won");
+                            }
+                        }),
+                        holdUntilContent(secondary.contextWrite(Context.of(STREAM_RACE_LOST_KEY, secondaryLost)),
+                                null).doOnNext(chunks -> {
+                            if (winner.compareAndSet(null, "secondary_won")) {
+                                primaryLost.set(true);
+                                relayMetrics.recordStreamRace("secondary_won");
+                            }
+                        }))
+                .doOnDiscard(List.class, FailoverService::releaseChunks)
+                .concatMapIterable(chunks -> chunks);
+    }
+
+    /**
+     * 竞速的一方：携带输出内容的分片到达前暂存之前的分片（角色声明、保活、错误帧等），到达后连同暂存一次发出，之后逐个发出。
+     * 流在没有内容时结束：flushAfter 不为空则等它完成后发出暂存（另一方也没有内容时由这一方胜出），否则直接结束不参与竞速。
+     * 暂存未发出的 DataBuffer 在取消、失败或丢弃时释放。
+     */
+    private static <T> Flux<List<T>> holdUntilContent(Flux<T> source, Mono<Void> flushAfter) {
+        return Flux.defer(() -> {
+            StreamContentDetector detector = new StreamContentDetector();
+            List<T> held = new ArrayList<>();
+            boolean[] open = {false};
+            Flux<List<T>> gated = source.handle((chunk, sink) -> {
+                if (open[0]) {
+                    sink.next(List.of(chunk));
+                    return;
+                }
+                held.add(chunk);
+                if (detector.carriesContent(chunk)) {
+                    open[0] = true;
+                    sink.next(drain(held));
+                }
+            });
+            Mono<List<T>> tail = Mono.defer(() -> open[0] || held.isEmpty() || flushAfter == null
+                    ? Mono.empty()
+                    : flushAfter.then(Mono.fromSupplier(() -> drain(held))));
+            return gated.concatWith(tail)
+                    .doFinally(signal -> releaseChunks(drain(held)));
+        });
+    }
+
+    private static <T> List<T> drain(List<T> held) {
+        List<T> drained = new ArrayList<>(held);
+        held.clear();
+        return drained;
+    }
+
+    private static void releaseChunks(List<?> chunks) {
+        for (Object chunk : chunks) {
+            if (chunk instanceof DataBuffer buffer) {
+                DataBufferUtils.release(buffer);
+            }
+        }
+    }
+
+    /**
+     * 分组内 Provider 舱壁全满时加入公平等待队列。同一请求的多次排队共用一个排队位置和等待截止时间：
+     * 被唤醒后没抢到配额的请求以原来的位置重新入队，不会排到后来者之后，也不会重新计时。
+     * @return 分组未启用排队、队列已满或排队时间已用完时返回 null
+     */
+    private Mono<Void> awaitCapacity(ModelGroupConfig group, RoutingPlan plan, Set<String> tried, RouteContext route,
+                                     QueueTicket queueTicket, BulkheadFullException saturated) {
+        FairWaitQueue queue = waitQueue(group);
+        if (queue == null) {
+            return null;
+        }
+        waitQueuePlans.put(group.getName(), plan);
+        LuminaProperties.FairQueue properties = luminaProperties.getFairQueue();
+        FairWaitQueue.Waiter waiter = queueTicket.waiter;
+        if (waiter == null) {
+            // 排队时间不超过剩余预算，留出至少一次尝试的时间
+            long maxWaitMs = Math.min(properties.getMaxWaitMs(),
+                    route.remainingMs(System.currentTimeMillis()) - luminaProperties.getDeadline().getMinAttemptMs());
+            if (maxWaitMs <= 0) {
+                return null;
+            }
+            double weight = route.tenant() != null ? properties.getApiKeyWeights().getOrDefault(route.tenant(), 1.0) : 1.0;
+            waiter = queue.enqueue(route.tenant(), weight, properties.getMaxQueueSize(), Duration.ofMillis(maxWaitMs));
+            if (waiter == null) {
+                relayMetrics.recordFairQueueRejected(group.getName());
+                return null;
+            }
+            queueTicket.waiter = waiter;
+            queueTicket.startNanos = System.nanoTime();
+        } else if (!waiter.requeue()) {
+            relayMetrics.recordFairQueueWait(group.getName(), "timeout", System.nanoTime() - queueTicket.startNanos);
+            return null;
+        }
+        log.debug("Group {} Provider 舱壁全满，请求进入排队，当前队列长度: {}", group.getName(), queue.size());
+        if (hasHeadroom(plan, tried)) {
+            // 选路之后、入队之前已有配额释放，这次释放的唤醒信号已经错过
+            queue.signal();
+        }
+        long startNanos = queueTicket.startNanos;
+        return waiter.await(() -> saturated)
+                .doOnSuccess(v -> relayMetrics.recordFairQueueWait(group.getName(), "admitted", System.nanoTime() - startNanos))
+                .doOnError(e -> relayMetrics.recordFairQueueWait(group.getName(), "timeout", System.nanoTime() - startNanos));
+    }
+
+    private static boolean hasHeadroom(RoutingPlan plan, Set<String> tried) {
+        for (int i = 0; i < plan.size(); i++) {
+            RoutingTarget target = plan.get(i);
+            ProviderRuntimeState state = target.getState();
+            if (!tried.contains(target.getProviderId())
+                    && state.getCircuitState() == CircuitState.CLOSED
+                    && !state.getBulkhead().isFull()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Provider 释放舱壁配额时唤醒所有路由计划包含该 Provider 的分组队列（同一 Provider 可能被多个分组共用）
+     */
+    private void signalWaiters(String providerId) {
+        if (waitQueues.isEmpty()) {
+            return;
+        }
+        waitQueuePlans.forEach((groupName, plan) -> {
+            FairWaitQueue queue = waitQueues.get(groupName);
+            if (queue != null && queue.size() > 0 && containsProvider(plan, providerId)) {
+                queue.signal();
+            }
+        });
+    }
+
+    private static boolean containsProvider(RoutingPlan plan, String providerId) {
+        for (int i = 0; i < plan.size(); i++) {
+            if (plan.get(i).getProviderId().equals(providerId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private FairWaitQueue waitQueue(ModelGroupConfig group) {
+        if (group == null || group.getName() == null
+                || !luminaProperties.getFairQueue().getGroups().contains(group.getName())) {
+            return null;
+        }
+        return waitQueues.computeIfAbsent(group.getName(), name -> {
+            FairWaitQueue queue = new FairWaitQueue();
+            relayMetrics.registerFairQueue(name, queue);
+            return queue;
+        });
+    }
+
+    private RaceBudget raceBudget(ModelGroupConfig group) {
+        if (group == null || group.getName() == null) {
+            return null;
+        }
+        LuminaProperties.Racing racing = luminaProperties.getRacing();
+        Double ratio = racing.getGroupBudgets().get(group.getName());
+        if (ratio == null || ratio <= 0) {
+            return null;
+        }
+        RaceBudget budget = raceBudgets.get(group.getName());
+        if (budget != null && budget.getRatio() == ratio) {
+            return budget;
+        }
+        return raceBudgets.compute(group.getName(), (k, existing) ->
+                existing != null && existing.getRatio() == ratio ? existing : new RaceBudget(ratio, racing.getMaxBurst()));
+    }
+
+    /**
+     * 对冲/竞速双方都没有结果时，Reactor 抛出 NoSuchElementException 并附带各方错误，还原主请求的错误
+     */
+    private static Throwable unwrapRaceError(Throwable error) {
+        if (!(error instanceof NoSuchElementException)) {
+            return error;
+        }
+        for (Throwable cause : Exceptions.unwrapMultiple(error.getCause())) {
+            if (!(cause instanceof NoSuchElementException)) {
+                return cause;
+            }
+        }
+        return error;
     }
 
     private boolean shouldUpdateHealthState(ModelGroupConfig group) {
@@ -517,6 +1381,14 @@ public class FailoverService {
     }
 
     private boolean isRoundRobinMode(ModelGroupConfig group) {
-        return group != null && Integer.valueOf(1).equals(group.getBalanceMode());
+        return group != null && BalanceMode.of(group.getBalanceMode()) == BalanceMode.ROUND_ROBIN;
+    }
+
+    /**
+     * 单个请求在公平队列中的排队状态，Failover 的各次尝试共用
+     */
+    private static final class QueueTicket {
+        private FairWaitQueue.Waiter waiter;
+        private long startNanos;
     }
 }
@@ -2,6 +2,7 @@ package com.lumina.service;
 
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.lumina.dto.ModelGroupConfigItem;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.codec.ServerSentEvent;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -13,7 +14,7 @@ public interface LlmRequestExecutor {
     boolean supports(String type);
 
     Mono<ObjectNode> executeNormal(
-            ObjectNode request,
+            UpstreamRequest request,
             ModelGroupConfigItem provider,
             Map<String, String> queryParams,
             String modelAction,
@@ -22,11 +23,31 @@ public interface LlmRequestExecutor {
     );
 
     Flux<ServerSentEvent<String>> executeStream(
-            ObjectNode request,
+            UpstreamRequest request,
             ModelGroupConfigItem provider,
             Map<String, String> queryParams,
             String modelAction,
             String type,
             Integer timeoutMs
     );
-}
\ No newline at end of file
+
+    /**
+     * 是否支持同协议流式透传（上游 SSE 字节原样转发）
+     */
+    default boolean supportsPassthrough(String type) {
+        return false;
+    }
+
+    /**
+     * 同协议流式透传：返回上游原始 DataBuffer，用量和首包时间由字节级旁路解析
+     */
+    default Flux<DataBuffer> executeStreamPassthrough(
+            UpstreamRequest request,
+            ModelGroupConfigItem provider,
+            Map<String, String> queryParams,
+            String type,
+            Integer timeoutMs
+    ) {
+        return Flux.error(new UnsupportedOperationException("不支持流式透传的请求类型: " + type));
+    }
+}
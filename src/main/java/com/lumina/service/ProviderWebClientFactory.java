@@ -1,10 +1,14 @@
 package com.lumina.service;
 
+import com.lumina.config.LuminaProperties;
 import com.lumina.converter.ProtocolType;
 import com.lumina.dto.ModelGroupConfigItem;
+import com.lumina.state.ProviderRuntimeState;
+import com.lumina.state.ProviderStateRegistry;
 import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 
 import java.util.concurrent.ConcurrentHashMap;
@@ -14,11 +18,21 @@ public class ProviderWebClientFactory {
 
     private static final int MAX_CLIENTS = 512;
 
+    /**
+     * 请求属性：本次请求所属的 Provider 运行态 ID，响应的限流头据此记入对应 Provider 的配额模型
+     */
+    public static final String PROVIDER_STATE_ATTRIBUTE = "lumina.providerState";
+
     private final WebClient.Builder webClientBuilder;
+    private final ProviderStateRegistry providerStateRegistry;
+    private final LuminaProperties luminaProperties;
     private final ConcurrentHashMap<String, WebClient> clients = new ConcurrentHashMap<>();
 
-    public ProviderWebClientFactory(WebClient.Builder webClientBuilder) {
+    public ProviderWebClientFactory(WebClient.Builder webClientBuilder, ProviderStateRegistry providerStateRegistry,
+                                    LuminaProperties luminaProperties) {
         this.webClientBuilder = webClientBuilder;
+        this.providerStateRegistry = providerStateRegistry;
+        this.luminaProperties = luminaProperties;
     }
 
     public WebClient getClient(ModelGroupConfigItem provider) {
@@ -31,7 +45,10 @@ public class ProviderWebClientFactory {
 
         return clients.computeIfAbsent(key, ignored -> {
             WebClient.Builder builder = webClientBuilder.clone()
-                    .baseUrl(provider.getBaseUrl());
+                    .baseUrl(provider.getBaseUrl())
+                    .filter((request, next) -> next.exchange(request)
+                            .doOnNext(response -> request.attribute(PROVIDER_STATE_ATTRIBUTE)
+                                    .ifPresent(providerId -> observeRateLimit((String) providerId, response))));
 
             if (StringUtils.hasText(provider.getApiKey())) {
                 if (protocolType == ProtocolType.ANTHROPIC) {
@@ -46,6 +63,21 @@ public class ProviderWebClientFactory {
         });
     }
 
+    /**
+     * 把响应的限流头记入 Provider 配额模型，所有状态码都要看：429/503 带 retry-after，成功响应带剩余配额
+     */
+    private void observeRateLimit(String providerId, ClientResponse response) {
+        LuminaProperties.UpstreamRateLimit config = luminaProperties.getUpstreamRateLimit();
+        if (!config.isEnabled()) {
+            return;
+        }
+        ProviderRuntimeState state = providerStateRegistry.getIfExists(providerId);
+        if (state != null) {
+            state.getQuota().observe(response.headers().asHttpHeaders(), response.statusCode().value(),
+                    System.currentTimeMillis(), config.getMaxCooldownMs());
+        }
+    }
+
     public void invalidateAll() {
         clients.clear();
     }
@@ -0,0 +1,26 @@
+package com.lumina.service;
+
+import com.lumina.state.RoutingTarget;
+import reactor.core.publisher.Flux;
+
+import java.util.function.Function;
+
+/**
+ * 流式中途失败后的续写
+ *
+ * FailoverService 把已经发给客户端的元素依次交给 {@link #onDelivered}，
+ * 首包之后上游中断时调用 {@link #resume()}，用返回的调用函数在其他 Provider 上接着生成，
+ * 新输出拼接到同一个客户端流中。
+ */
+public interface StreamResumer<T> {
+
+    /**
+     * 观察已发给客户端的元素
+     */
+    void onDelivered(T element);
+
+    /**
+     * 构造续写调用；已完成、包含无法续写的内容（如工具调用）时返回 null
+     */
+    Function<RoutingTarget, Flux<T>> resume();
+}
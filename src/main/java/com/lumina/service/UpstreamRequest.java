@@ -0,0 +1,78 @@
+package com.lumina.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * 上游请求体视图（只读）
+ *
+ * 多次 Failover 尝试共享同一份请求树，Provider 差异（model 重命名、thinking 开关等）
+ * 通过顶层字段覆盖实现：只浅拷贝顶层字段引用，messages 等大子树不复制。
+ * 序列化结果在实例上缓存，同一协议、同一模型的后续尝试直接复用字节。
+ */
+public final class UpstreamRequest {
+
+    private final ObjectNode body;
+    private volatile byte[] serialized;
+
+    private UpstreamRequest(ObjectNode body) {
+        this.body = body;
+    }
+
+    public static UpstreamRequest of(ObjectNode body) {
+        return new UpstreamRequest(body);
+    }
+
+    /**
+     * 请求树；调用方不得修改，需要修改时使用 {@link #withField}
+     */
+    public ObjectNode body() {
+        return body;
+    }
+
+    /**
+     * 覆盖一个顶层字段，返回新的视图；原请求树不受影响
+     */
+    public UpstreamRequest withField(String name, JsonNode value) {
+        if (value != null && value.equals(body.get(name))) {
+            return this;
+        }
+        return new UpstreamRequest(overlay(body, name, value));
+    }
+
+    /**
+     * 使用新的请求树（与当前相同时复用当前实例及其序列化缓存）
+     */
+    public UpstreamRequest withBody(ObjectNode newBody) {
+        return newBody == body ? this : new UpstreamRequest(newBody);
+    }
+
+    /**
+     * 紧凑序列化后的请求字节，首次调用时生成
+     */
+    public byte[] bytes(ObjectMapper objectMapper) {
+        byte[] bytes = serialized;
+        if (bytes == null) {
+            try {
+                bytes = objectMapper.writeValueAsBytes(body);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("序列化上游请求失败", e);
+            }
+            serialized = bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * 顶层浅拷贝并覆盖字段，子树按引用共享
+     */
+    public static ObjectNode overlay(ObjectNode source, String name, JsonNode value) {
+        ObjectNode copy = JsonNodeFactory.instance.objectNode();
+        copy.setAll(source);
+        copy.set(name, value);
+        return copy;
+    }
+}
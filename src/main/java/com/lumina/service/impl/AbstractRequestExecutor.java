@@ -1,6 +1,8 @@
 package com.lumina.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -9,20 +11,32 @@ import com.lumina.entity.LlmModel;
 import com.lumina.config.LuminaProperties;
 import com.lumina.logging.LogWriter;
 import com.lumina.logging.RequestLogContext;
+import com.lumina.metrics.RelayMetrics;
+import com.lumina.ratelimit.TokenRateLimiter;
+import com.lumina.service.FailoverService;
 import com.lumina.service.LlmModelService;
 import com.lumina.service.LlmRequestExecutor;
 import com.lumina.service.ProviderWebClientFactory;
+import com.lumina.state.AdaptiveTimeout;
+import com.lumina.state.ProviderRuntimeState;
+import com.lumina.state.ProviderStateRegistry;
 import com.lumina.util.CostCalculator;
 import com.lumina.util.SnowflakeIdGenerator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 
+import java.io.IOException;
 import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 @Slf4j
 public abstract class AbstractRequestExecutor implements LlmRequestExecutor {
@@ -42,6 +56,21 @@ public abstract class AbstractRequestExecutor implements LlmRequestExecutor {
     @Autowired
     protected LuminaProperties luminaProperties;
 
+    @Autowired(required = false)
+    protected TokenRateLimiter tokenRateLimiter;
+
+    @Autowired(required = false)
+    protected RequestCoalescer requestCoalescer;
+
+    @Autowired(required = false)
+    protected ResponseCacheHandler responseCacheHandler;
+
+    @Autowired(required = false)
+    protected RelayMetrics relayMetrics;
+
+    @Autowired(required = false)
+    protected ProviderStateRegistry providerStateRegistry;
+
     protected final ObjectMapper objectMapper = new ObjectMapper();
 
     protected RequestLogContext createLogContext(ObjectNode request, ModelGroupConfigItem provider, String type, boolean stream) {
@@ -60,11 +89,19 @@ public abstract class AbstractRequestExecutor implements LlmRequestExecutor {
         ctx.setStream(stream);
         ctx.setRequestModel(resolveRequestModel(request, provider, queryParams));
         ctx.setActualModel(provider.getModelName());
-        ctx.setRequestContent(request.toPrettyString());
+        ctx.setRequestNode(request);
+        ctx.setPayloadSampled(logWriter.samplePayloads());
+        ctx.setResponseCapture(logWriter.newResponseCapture(ctx.isPayloadSampled()));
         if (queryParams != null) {
             ctx.setApiKey(queryParams.get("_lumina_api_key"));
             ctx.setRequestIp(queryParams.get("_lumina_request_ip"));
             ctx.setProtocolConversion(queryParams.get("_lumina_protocol_conversion"));
+            ctx.setTokenReservationId(queryParams.get(INTERNAL_TOKEN_RESERVATION_PARAM));
+            ctx.setCoalesceKey(queryParams.get(RequestCoalescer.INTERNAL_COALESCE_KEY_PARAM));
+            ctx.setCacheKey(queryParams.get(ResponseCacheHandler.INTERNAL_CACHE_KEY_PARAM));
+            ctx.setRoutingMode(queryParams.get(INTERNAL_ROUTING_MODE_PARAM));
+            ctx.setProviderStateId(queryParams.get(INTERNAL_PROVIDER_STATE_PARAM));
+            ctx.setDeadlineAt(parseDeadline(queryParams.get(INTERNAL_DEADLINE_PARAM)));
         }
         logWriter.recordStart(ctx);
         return ctx;
@@ -72,6 +109,10 @@ public abstract class AbstractRequestExecutor implements LlmRequestExecutor {
 
     protected static final String INTERNAL_API_KEY_PARAM = "_lumina_api_key";
     protected static final String INTERNAL_REQUEST_MODEL_PARAM = "_lumina_request_model";
+    public static final String INTERNAL_TOKEN_RESERVATION_PARAM = "_lumina_token_reservation";
+    public static final String INTERNAL_ROUTING_MODE_PARAM = "_lumina_routing_mode";
+    public static final String INTERNAL_PROVIDER_STATE_PARAM = "_lumina_provider_state";
+    public static final String INTERNAL_DEADLINE_PARAM = "_lumina_deadline";
 
     private String resolveRequestModel(ObjectNode request, ModelGroupConfigItem provider, Map<String, String> queryParams) {
         if (queryParams != null) {
@@ -103,10 +144,14 @@ public abstract class AbstractRequestExecutor implements LlmRequestExecutor {
         if (node == null) return;
 
         // 提取 model 字段作为 actualModel
-        if (!node.findValuesAsText("model").isEmpty()) {
-            ctx.setActualModel(node.findValuesAsText("model").get(0));
-        } else if (!node.findValuesAsText("modelVersion").isEmpty()) {
-            ctx.setActualModel(node.findValuesAsText("modelVersion").get(0));
+        List<String> models = node.findValuesAsText("model");
+        if (!models.isEmpty()) {
+            ctx.setActualModel(models.get(0));
+        } else {
+            List<String> modelVersions = node.findValuesAsText("modelVersion");
+            if (!modelVersions.isEmpty()) {
+                ctx.setActualModel(modelVersions.get(0));
+            }
         }
 
         // 1. 处理标准的 "usage" 字段 (OpenAI, Anthropic message_delta, Anthropic normal)
@@ -121,16 +166,7 @@ public abstract class AbstractRequestExecutor implements LlmRequestExecutor {
 
         // 3. 处理 Gemini 的 "usageMetadata" 字段
         if (node.has("usageMetadata")) {
-            JsonNode usage = node.get("usageMetadata");
-            if (usage.has("promptTokenCount") && (ctx.getInputTokens() == null || ctx.getInputTokens() == 0)) {
-                ctx.setInputTokens(usage.get("promptTokenCount").asInt());
-            }
-            if (usage.has("candidatesTokenCount") && (ctx.getOutputTokens() == null || ctx.getOutputTokens() == 0)) {
-                ctx.setOutputTokens(usage.get("candidatesTokenCount").asInt());
-            }
-            if (usage.has("cachedContentTokenCount")) {
-                ctx.setCacheReadTokens(usage.get("cachedContentTokenCount").asInt());
-            }
+            parseUsageMetadata(ctx, node.get("usageMetadata"));
         }
 
         // 4. 处理 OpenAI /v1/responses 中的 nested usage
@@ -139,6 +175,92 @@ public abstract class AbstractRequestExecutor implements LlmRequestExecutor {
         }
     }
 
+    /**
+     * 处理流式 chunk 的用量信息。
+     * 只有首个 chunk（取 model）和可能携带用量的 chunk（OpenAI 末包、Anthropic message_start/message_delta、
+     * Responses response.completed、Gemini usageMetadata）才会解析；解析时用流式 parser 只看顶层字段，
+     * 其余子树直接跳过，不构建完整 JSON 树。
+     */
+    protected void handleStreamUsage(RequestLogContext ctx, String data, boolean firstChunk) {
+        if (data == null || (!firstChunk && !mayCarryUsage(data))) {
+            return;
+        }
+        try (JsonParser parser = objectMapper.createParser(data)) {
+            extractStreamUsage(ctx, parser);
+        } catch (Exception ignored) {
+        }
+    }
+
+    private void extractStreamUsage(RequestLogContext ctx, JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return;
+        }
+        String model = null;
+        String nestedModel = null;
+        String modelVersion = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "model" -> model = value == JsonToken.VALUE_STRING ? parser.getText() : model;
+                case "modelVersion" -> modelVersion = value == JsonToken.VALUE_STRING ? parser.getText() : modelVersion;
+                case "usage" -> {
+                    if (value == JsonToken.START_OBJECT) {
+                        parseUsageNode(ctx, parser.readValueAsTree());
+                    }
+                }
+                case "usageMetadata" -> {
+                    if (value == JsonToken.START_OBJECT) {
+                        parseUsageMetadata(ctx, parser.readValueAsTree());
+                    }
+                }
+                // Anthropic message_start / Responses response.* 把 model 和 usage 放在下一层
+                case "message", "response" -> {
+                    if (value == JsonToken.START_OBJECT) {
+                        String found = extractNestedUsage(ctx, parser);
+                        nestedModel = nestedModel == null ? found : nestedModel;
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        if (model != null) {
+            ctx.setActualModel(model);
+        } else if (nestedModel != null) {
+            ctx.setActualModel(nestedModel);
+        } else if (modelVersion != null) {
+            ctx.setActualModel(modelVersion);
+        }
+    }
+
+    private String extractNestedUsage(RequestLogContext ctx, JsonParser parser) throws IOException {
+        String model = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("model".equals(field) && value == JsonToken.VALUE_STRING) {
+                model = parser.getText();
+            } else if ("usage".equals(field) && value == JsonToken.START_OBJECT) {
+                parseUsageNode(ctx, parser.readValueAsTree());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return model;
+    }
+
+    private void parseUsageMetadata(RequestLogContext ctx, JsonNode usage) {
+        if (usage.has("promptTokenCount") && (ctx.getInputTokens() == null || ctx.getInputTokens() == 0)) {
+            ctx.setInputTokens(usage.get("promptTokenCount").asInt());
+        }
+        if (usage.has("candidatesTokenCount") && (ctx.getOutputTokens() == null || ctx.getOutputTokens() == 0)) {
+            ctx.setOutputTokens(usage.get("candidatesTokenCount").asInt());
+        }
+        if (usage.has("cachedContentTokenCount")) {
+            ctx.setCacheReadTokens(usage.get("cachedContentTokenCount").asInt());
+        }
+    }
+
     private void parseUsageNode(RequestLogContext ctx, JsonNode usage) {
         // 兼容旧版 OpenAI 字段
         if (usage.has("prompt_tokens") && (ctx.getInputTokens() == null || ctx.getInputTokens() == 0)) {
@@ -219,12 +341,49 @@ public abstract class AbstractRequestExecutor implements LlmRequestExecutor {
         ctx.setTotalTimeMs((int) ((System.nanoTime() - ctx.getStartNano()) / 1_000_000));
         ctx.setResponseContent(content);
         calculateCost(ctx);
+        settleTokenReservation(ctx);
+        if (requestCoalescer != null && ctx.getCoalesceKey() != null) {
+            requestCoalescer.onLeaderSuccess(ctx);
+        }
+        if (responseCacheHandler != null && ctx.getCacheKey() != null) {
+            responseCacheHandler.onUpstreamSuccess(ctx);
+        }
+        if (relayMetrics != null && ctx.getRoutingMode() != null) {
+            relayMetrics.recordPromptCache(ctx.getRoutingMode(), ctx.getInputTokens(), ctx.getCacheReadTokens());
+        }
+        recordProviderOutput(ctx);
         logWriter.submit(ctx);
     }
 
+    /**
+     * 按本次尝试的 Provider 记录输出长度（成本模式预估费用），流式响应另按首包之后的耗时记录输出速度（评分）
+     */
+    private void recordProviderOutput(RequestLogContext ctx) {
+        if (providerStateRegistry == null || ctx.getProviderStateId() == null || ctx.getOutputTokens() == null) {
+            return;
+        }
+        ProviderRuntimeState state = providerStateRegistry.getIfExists(ctx.getProviderStateId());
+        if (state == null) {
+            return;
+        }
+        state.recordOutputTokens(ctx.getOutputTokens());
+        if (Boolean.TRUE.equals(ctx.getStream()) && ctx.getFirstTokenMs() != null) {
+            state.recordOutputThroughput(ctx.getOutputTokens(), ctx.getTotalTimeMs() - ctx.getFirstTokenMs());
+        }
+    }
+
+    private void settleTokenReservation(RequestLogContext ctx) {
+        if (tokenRateLimiter == null || ctx.getTokenReservationId() == null) {
+            return;
+        }
+        long input = ctx.getInputTokens() != null ? ctx.getInputTokens() : 0;
+        long output = ctx.getOutputTokens() != null ? ctx.getOutputTokens() : 0;
+        tokenRateLimiter.settle(ctx.getTokenReservationId(), input + output);
+    }
+
     protected void recordStreamCancel(RequestLogContext ctx) {
-        if (ctx.getFirstTokenArrived().get() || ctx.getResponseBuffer().length() > 0) {
-            recordSuccess(ctx, ctx.getResponseBuffer().toString());
+        if (ctx.getFirstTokenArrived().get() || ctx.getResponseCapture().getTotalChars() > 0) {
+            recordSuccess(ctx, ctx.getResponseCapture().content());
             return;
         }
 
@@ -238,6 +397,50 @@ public abstract class AbstractRequestExecutor implements LlmRequestExecutor {
         logWriter.submit(ctx);
     }
 
+    /**
+     * 非流式请求在上游返回前被取消（客户端断开，或对冲请求中落败的一方）
+     */
+    protected void recordCancel(RequestLogContext ctx) {
+        recordCancelled(ctx, "Request cancelled before upstream response completed");
+    }
+
+    /**
+     * 首包竞速中落败的流：已收到的角色声明或保活分片不算成功，不结算 TPM 预扣，也不回写输出速度、合并和缓存
+     */
+    protected void recordRaceLoss(RequestLogContext ctx) {
+        recordCancelled(ctx, "Stream cancelled after losing first chunk race");
+    }
+
+    private void recordCancelled(RequestLogContext ctx, String message) {
+        if (!markLogSubmitted(ctx)) {
+            return;
+        }
+        ctx.setStatus("FAIL");
+        ctx.setErrorStage("CANCELLED");
+        ctx.setErrorMessage(message);
+        ctx.setTotalTimeMs((int) ((System.nanoTime() - ctx.getStartNano()) / 1_000_000));
+        logWriter.submit(ctx);
+    }
+
+    /**
+     * 流被取消时记录日志：订阅上下文带有首包竞速落败标记时记为落败，否则按客户端取消处理
+     */
+    protected <T> Flux<T> logStreamCancel(Flux<T> stream, RequestLogContext ctx) {
+        return stream.transformDeferredContextual((flux, context) -> {
+            AtomicBoolean raceLost = context.getOrDefault(FailoverService.STREAM_RACE_LOST_KEY, null);
+            return flux.doFinally(signalType -> {
+                if (signalType != SignalType.CANCEL) {
+                    return;
+                }
+                if (raceLost != null && raceLost.get()) {
+                    recordRaceLoss(ctx);
+                } else {
+                    recordStreamCancel(ctx);
+                }
+            });
+        });
+    }
+
     private boolean markLogSubmitted(RequestLogContext ctx) {
         return ctx.getLogSubmitted().compareAndSet(false, true);
     }
@@ -246,11 +449,111 @@ public abstract class AbstractRequestExecutor implements LlmRequestExecutor {
         return providerWebClientFactory.getClient(provider);
     }
 
+    /**
+     * 把 Provider 运行态 ID 挂到上游请求属性上，供 WebClient 过滤器把响应限流头记入对应 Provider
+     */
+    protected Consumer<Map<String, Object>> providerStateAttribute(Map<String, String> queryParams) {
+        String providerId = queryParams != null ? queryParams.get(INTERNAL_PROVIDER_STATE_PARAM) : null;
+        return attributes -> {
+            if (providerId != null) {
+                attributes.put(ProviderWebClientFactory.PROVIDER_STATE_ATTRIBUTE, providerId);
+            }
+        };
+    }
+
     protected void appendResponseChunk(RequestLogContext ctx, String data) {
         if (data == null) {
             return;
         }
-        ctx.getResponseBuffer().append(data);
+        ctx.getResponseCapture().append(data);
+    }
+
+    /**
+     * 为透传的上游字节流挂载旁路解析：首包时间、响应内容和用量从 data 行提取，字节本身原样转发。
+     * 失败时不向流中补写任何帧，错误交由故障转移判断是否可以切换供应商。
+     */
+    protected Flux<DataBuffer> tapPassthroughStream(Flux<DataBuffer> upstream, RequestLogContext ctx,
+                                                    Integer timeoutMs) {
+        Runnable recordEventGap = eventGapRecorder(ctx);
+        SseDataTap tap = new SseDataTap(new SseDataTap.Listener() {
+            @Override
+            public void onData(String data) {
+                recordEventGap.run();
+                boolean first = markFirstToken(ctx);
+                appendResponseChunk(ctx, data);
+                handleStreamUsage(ctx, data, first);
+            }
+
+            @Override
+            public void onDone() {
+                recordEventGap.run();
+                markFirstToken(ctx);
+                recordSuccess(ctx, ctx.getResponseCapture().content());
+            }
+        });
+
+        return applyTimeout(upstream, ctx, timeoutMs)
+                .doOnNext(tap::accept)
+                .doOnError(err -> recordError(ctx, err))
+                .doOnComplete(() -> recordSuccess(ctx, ctx.getResponseCapture().content()))
+                .transform(stream -> logStreamCancel(stream, ctx));
+    }
+
+    /**
+     * 透传流的分片间隔按 SSE 事件记录：原始字节按 TCP 分段到达，一个 DataBuffer 可能含多个事件或半个事件，
+     * 按 DataBuffer 记录会让间隔和解码路径不可比
+     */
+    private Runnable eventGapRecorder(RequestLogContext ctx) {
+        ProviderRuntimeState state = providerStateRegistry != null && ctx.getProviderStateId() != null
+                ? providerStateRegistry.getIfExists(ctx.getProviderStateId())
+                : null;
+        if (state == null) {
+            return () -> {
+            };
+        }
+        long[] lastEventAt = {-1};
+        return () -> {
+            long now = System.currentTimeMillis();
+            if (lastEventAt[0] >= 0) {
+                state.getChunkGapHistogram().record(now - lastEventAt[0]);
+            }
+            lastEventAt[0] = now;
+        };
+    }
+
+    protected boolean markFirstToken(RequestLogContext ctx) {
+        if (ctx.getFirstTokenArrived().compareAndSet(false, true)) {
+            ctx.setFirstTokenMs((int) ((System.nanoTime() - ctx.getStartNano()) / 1_000_000));
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean mayCarryUsage(String data) {
+        int index = data.indexOf("\"usage\"");
+        if (index < 0) {
+            index = data.indexOf("\"usageMetadata\"");
+        }
+        return index >= 0 && !data.startsWith("null", skipColonAndSpaces(data, data.indexOf('"', index + 1) + 1));
+    }
+
+    private static int skipColonAndSpaces(String data, int from) {
+        int i = from;
+        while (i < data.length() && (data.charAt(i) == ':' || data.charAt(i) == ' ')) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * 非流式响应内容：未采样时不序列化，采样时按上限截断
+     */
+    protected String captureResponse(RequestLogContext ctx, JsonNode response) {
+        if (response == null || !ctx.getResponseCapture().isEnabled()) {
+            return null;
+        }
+        ctx.getResponseCapture().append(response.toString());
+        return ctx.getResponseCapture().content();
     }
 
     /**
@@ -264,12 +567,60 @@ public abstract class AbstractRequestExecutor implements LlmRequestExecutor {
     }
 
     /**
-     * 应用超时到 Flux，如果 timeoutMs 有效
+     * 按本次尝试的首包超时应用到 Mono（非流式请求的首包即完整响应）
      */
-    protected <T> Flux<T> applyTimeout(Flux<T> flux, Integer timeoutMs) {
-        if (timeoutMs != null && timeoutMs > 0) {
-            return flux.timeout(Duration.ofMillis(timeoutMs));
+    protected <T> Mono<T> applyTimeout(Mono<T> mono, RequestLogContext ctx, Integer timeoutMs) {
+        return applyTimeout(mono, firstTokenTimeout(ctx, timeoutMs));
+    }
+
+    /**
+     * 应用超时到 Flux：首个元素使用本次尝试的首包超时，之后的元素间隔仍使用分组配置的超时；
+     * 有请求截止时间时每个间隔都不超过剩余预算，流在截止时间到达时中断
+     */
+    protected <T> Flux<T> applyTimeout(Flux<T> flux, RequestLogContext ctx, Integer timeoutMs) {
+        Integer firstTimeoutMs = firstTokenTimeout(ctx, timeoutMs);
+        if (firstTimeoutMs == null || firstTimeoutMs <= 0) {
+            return flux;
+        }
+        Long deadlineAt = ctx.getDeadlineAt();
+        Long gapMs = timeoutMs != null && timeoutMs > 0 ? Long.valueOf(timeoutMs) : null;
+        if (deadlineAt == null) {
+            Duration next = gapMs != null ? Duration.ofMillis(gapMs) : null;
+            return flux.timeout(Mono.delay(Duration.ofMillis(firstTimeoutMs)),
+                    item -> next != null ? Mono.delay(next) : Mono.never());
+        }
+        return flux.timeout(Mono.delay(Duration.ofMillis(firstTimeoutMs)), item -> {
+            long remainingMs = Math.max(1, deadlineAt - System.currentTimeMillis());
+            return Mono.delay(Duration.ofMillis(gapMs != null ? Math.min(gapMs, remainingMs) : remainingMs));
+        });
+    }
+
+    /**
+     * 本次尝试的首包超时：启用自适应超时时按 Provider 近期延迟分布学习，分组配置作为上限；
+     * 有请求截止时间时不超过剩余预算。结果记入请求日志
+     */
+    private Integer firstTokenTimeout(RequestLogContext ctx, Integer timeoutMs) {
+        ProviderRuntimeState state = providerStateRegistry != null && ctx.getProviderStateId() != null
+                ? providerStateRegistry.getIfExists(ctx.getProviderStateId()) : null;
+        Integer resolved = AdaptiveTimeout.resolve(state, timeoutMs, Boolean.TRUE.equals(ctx.getStream()),
+                luminaProperties.getAdaptiveTimeout());
+        if (ctx.getDeadlineAt() != null) {
+            long remainingMs = Math.max(1, ctx.getDeadlineAt() - System.currentTimeMillis());
+            resolved = resolved != null && resolved > 0 ? (int) Math.min(resolved, remainingMs)
+                    : (int) Math.min(remainingMs, Integer.MAX_VALUE);
+        }
+        ctx.setFirstTokenTimeoutMs(resolved);
+        return resolved;
+    }
+
+    private static Long parseDeadline(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return null;
         }
-        return flux;
     }
 }
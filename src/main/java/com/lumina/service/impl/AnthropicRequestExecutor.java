@@ -3,14 +3,16 @@ package com.lumina.service.impl;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.lumina.dto.ModelGroupConfigItem;
 import com.lumina.logging.RequestLogContext;
+import com.lumina.service.UpstreamRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.SignalType;
 
 import java.util.Map;
 
@@ -24,8 +26,8 @@ public class AnthropicRequestExecutor extends AbstractRequestExecutor {
     }
 
     @Override
-    public Mono<ObjectNode> executeNormal(ObjectNode request, ModelGroupConfigItem provider, Map<String, String> queryParams, String modelAction, String type, Integer timeoutMs) {
-        RequestLogContext ctx = createLogContext(request, provider, type, false, queryParams);
+    public Mono<ObjectNode> executeNormal(UpstreamRequest request, ModelGroupConfigItem provider, Map<String, String> queryParams, String modelAction, String type, Integer timeoutMs) {
+        RequestLogContext ctx = createLogContext(request.body(), provider, type, false, queryParams);
         Mono<ObjectNode> result = createWebClient(provider).post()
                 .uri(uriBuilder -> {
                     uriBuilder.path("/v1/messages");
@@ -34,55 +36,66 @@ public class AnthropicRequestExecutor extends AbstractRequestExecutor {
                 })
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON)
-                .bodyValue(request)
+                .bodyValue(request.bytes(objectMapper))
+                .attributes(providerStateAttribute(queryParams))
                 .retrieve()
                 .bodyToMono(ObjectNode.class);
 
-        return applyTimeout(result, timeoutMs)
+        return applyTimeout(result, ctx, timeoutMs)
                 .doOnNext(resp -> {
                     handleUsage(ctx, resp);
-                    recordSuccess(ctx, resp.toString());
+                    recordSuccess(ctx, captureResponse(ctx, resp));
                 })
-                .doOnError(err -> recordError(ctx, err));
+                .doOnError(err -> recordError(ctx, err))
+                .doOnCancel(() -> recordCancel(ctx));
     }
 
     @Override
-    public Flux<ServerSentEvent<String>> executeStream(ObjectNode request, ModelGroupConfigItem provider, Map<String, String> queryParams, String modelAction, String type, Integer timeoutMs) {
+    public Flux<ServerSentEvent<String>> executeStream(UpstreamRequest request, ModelGroupConfigItem provider, Map<String, String> queryParams, String modelAction, String type, Integer timeoutMs) {
         log.debug("Anthropic stream request: provider={}, model={}", provider.getProviderName(), provider.getModelName());
-        RequestLogContext ctx = createLogContext(request, provider, type, true, queryParams);
-        Flux<ServerSentEvent<String>> result = createWebClient(provider).post()
-                .uri(uriBuilder -> {
-                    uriBuilder.path("/v1/messages");
-                    applyQueryParams(uriBuilder, queryParams);
-                    return uriBuilder.build();
-                })
-                .contentType(MediaType.APPLICATION_JSON)
-                .accept(MediaType.TEXT_EVENT_STREAM)
-                .bodyValue(request)
-                .retrieve()
+        RequestLogContext ctx = createLogContext(request.body(), provider, type, true, queryParams);
+        Flux<ServerSentEvent<String>> result = streamRequest(request, provider, queryParams)
                 .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<String>>() {
                 });
 
-        return applyTimeout(result, timeoutMs)
+        return applyTimeout(result, ctx, timeoutMs)
                 .doOnNext(event -> {
                     String data = event.data();
                     if (data == null) return;
-                    if (ctx.getFirstTokenArrived().compareAndSet(false, true)) {
-                        ctx.setFirstTokenMs((int) ((System.nanoTime() - ctx.getStartNano()) / 1_000_000));
-                    }
+                    boolean first = markFirstToken(ctx);
                     appendResponseChunk(ctx, data);
-
-                    try {
-                        handleUsage(ctx, objectMapper.readTree(data));
-                    } catch (Exception ignored) {
-                    }
+                    handleStreamUsage(ctx, data, first);
                 })
                 .doOnError(err -> recordError(ctx, err))
-                .doOnComplete(() -> recordSuccess(ctx, ctx.getResponseBuffer().toString()))
-                .doFinally(signalType -> {
-                    if (signalType == SignalType.CANCEL) {
-                        recordStreamCancel(ctx);
-                    }
-                });
+                .doOnComplete(() -> recordSuccess(ctx, ctx.getResponseCapture().content()))
+                .transform(stream -> logStreamCancel(stream, ctx));
+    }
+
+    @Override
+    public boolean supportsPassthrough(String type) {
+        return supports(type);
+    }
+
+    @Override
+    public Flux<DataBuffer> executeStreamPassthrough(UpstreamRequest request, ModelGroupConfigItem provider, Map<String, String> queryParams, String type, Integer timeoutMs) {
+        log.debug("Anthropic passthrough stream request: provider={}, model={}", provider.getProviderName(), provider.getModelName());
+        RequestLogContext ctx = createLogContext(request.body(), provider, type, true, queryParams);
+        Flux<DataBuffer> result = streamRequest(request, provider, queryParams)
+                .bodyToFlux(DataBuffer.class);
+        return tapPassthroughStream(result, ctx, timeoutMs);
+    }
+
+    private WebClient.ResponseSpec streamRequest(UpstreamRequest request, ModelGroupConfigItem provider, Map<String, String> queryParams) {
+        return createWebClient(provider).post()
+                .uri(uriBuilder -> {
+                    uriBuilder.path("/v1/messages");
+                    applyQueryParams(uriBuilder, queryParams);
+                    return uriBuilder.build();
+                })
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .bodyValue(request.bytes(objectMapper))
+                .attributes(providerStateAttribute(queryParams))
+                .retrieve();
     }
 }
@@ -3,11 +3,13 @@ package com.lumina.service.impl;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.lumina.dto.ApiKeyUsageDto;
 import com.lumina.entity.ApiKey;
 import com.lumina.mapper.ApiKeyMapper;
+import com.lumina.ratelimit.ApiKeyRateLimiter;
+import com.lumina.ratelimit.TokenRateLimiter;
 import com.lumina.service.ApiKeyService;
 import com.lumina.service.HotPathCacheService;
+import com.lumina.stats.ApiKeySpendLedger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
@@ -25,6 +27,15 @@ public class ApiKeyServiceImpl extends ServiceImpl<ApiKeyMapper, ApiKey> impleme
     @Autowired
     private HotPathCacheService hotPathCacheService;
 
+    @Autowired
+    private ApiKeySpendLedger spendLedger;
+
+    @Autowired
+    private ApiKeyRateLimiter apiKeyRateLimiter;
+
+    @Autowired
+    private TokenRateLimiter tokenRateLimiter;
+
     @Override
     public ApiKey generateApiKey(String name) {
         ApiKey apiKey = new ApiKey();
@@ -66,20 +77,13 @@ public class ApiKeyServiceImpl extends ServiceImpl<ApiKeyMapper, ApiKey> impleme
             return Mono.just(false);
         }
 
-        return Mono.fromCallable(() -> {
-            ApiKeyUsageDto usage = baseMapper.selectApiKeyUsageByKey(apiKey);
-            if (usage == null) {
-                return false;
-            }
-
-            BigDecimal maxAmount = usage.getMaxAmount();
-            if (maxAmount == null) {
-                return true;
-            }
+        Boolean cached = spendLedger.hasAvailableQuota(apiKey);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
 
-            BigDecimal totalCost = usage.getTotalCost() != null ? usage.getTotalCost() : BigDecimal.ZERO;
-            return totalCost.compareTo(maxAmount) < 0;
-        }).subscribeOn(Schedulers.boundedElastic());
+        return Mono.fromCallable(() -> spendLedger.load(apiKey))
+                .subscribeOn(Schedulers.boundedElastic());
     }
 
     @Override
@@ -103,6 +107,7 @@ public class ApiKeyServiceImpl extends ServiceImpl<ApiKeyMapper, ApiKey> impleme
             throw new IllegalArgumentException("Failed to update api key quota");
         }
         hotPathCacheService.invalidateAllApiKeys();
+        spendLedger.invalidateAll();
         return this.getById(id);
     }
 
@@ -111,6 +116,9 @@ public class ApiKeyServiceImpl extends ServiceImpl<ApiKeyMapper, ApiKey> impleme
         boolean saved = super.save(entity);
         if (saved) {
             hotPathCacheService.invalidateAllApiKeys();
+            spendLedger.invalidateAll();
+            apiKeyRateLimiter.invalidateAll();
+            tokenRateLimiter.invalidateAll();
         }
         return saved;
     }
@@ -120,6 +128,9 @@ public class ApiKeyServiceImpl extends ServiceImpl<ApiKeyMapper, ApiKey> impleme
         boolean updated = super.updateById(entity);
         if (updated) {
             hotPathCacheService.invalidateAllApiKeys();
+            spendLedger.invalidateAll();
+            apiKeyRateLimiter.invalidateAll();
+            tokenRateLimiter.invalidateAll();
         }
         return updated;
     }
@@ -129,6 +140,9 @@ public class ApiKeyServiceImpl extends ServiceImpl<ApiKeyMapper, ApiKey> impleme
         boolean removed = super.removeById(id);
         if (removed) {
             hotPathCacheService.invalidateAllApiKeys();
+            spendLedger.invalidateAll();
+            apiKeyRateLimiter.invalidateAll();
+            tokenRateLimiter.invalidateAll();
         }
         return removed;
     }
@@ -3,6 +3,7 @@ package com.lumina.service.impl;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.lumina.dto.ModelGroupConfigItem;
 import com.lumina.logging.RequestLogContext;
+import com.lumina.service.UpstreamRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.MediaType;
@@ -10,7 +11,6 @@ import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.SignalType;
 
 import java.util.Map;
 
@@ -24,8 +24,8 @@ public class GeminiModelsExecutor extends AbstractRequestExecutor {
     }
 
     @Override
-    public Mono<ObjectNode> executeNormal(ObjectNode request, ModelGroupConfigItem provider, Map<String, String> queryParams, String modelAction, String type, Integer timeoutMs) {
-        RequestLogContext ctx = createLogContext(request, provider, type, false, queryParams);
+    public Mono<ObjectNode> executeNormal(UpstreamRequest request, ModelGroupConfigItem provider, Map<String, String> queryParams, String modelAction, String type, Integer timeoutMs) {
+        RequestLogContext ctx = createLogContext(request.body(), provider, type, false, queryParams);
         Mono<ObjectNode> result = createWebClient(provider).post()
                 .uri(uriBuilder -> {
                     uriBuilder.path("/v1beta/models" + (!modelAction.isEmpty() ? "/" + modelAction : ""));
@@ -34,22 +34,24 @@ public class GeminiModelsExecutor extends AbstractRequestExecutor {
                 })
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON)
-                .bodyValue(request)
+                .bodyValue(request.bytes(objectMapper))
+                .attributes(providerStateAttribute(queryParams))
                 .retrieve()
                 .bodyToMono(ObjectNode.class);
 
-        return applyTimeout(result, timeoutMs)
+        return applyTimeout(result, ctx, timeoutMs)
                 .doOnNext(resp -> {
                     handleUsage(ctx, resp);
-                    recordSuccess(ctx, resp.toString());
+                    recordSuccess(ctx, captureResponse(ctx, resp));
                 })
-                .doOnError(err -> recordError(ctx, err));
+                .doOnError(err -> recordError(ctx, err))
+                .doOnCancel(() -> recordCancel(ctx));
     }
 
     @Override
-    public Flux<ServerSentEvent<String>> executeStream(ObjectNode request, ModelGroupConfigItem provider, Map<String, String> queryParams, String modelAction, String type, Integer timeoutMs) {
+    public Flux<ServerSentEvent<String>> executeStream(UpstreamRequest request, ModelGroupConfigItem provider, Map<String, String> queryParams, String modelAction, String type, Integer timeoutMs) {
         log.debug("Gemini stream request: provider={}, model={}", provider.getProviderName(), provider.getModelName());
-        RequestLogContext ctx = createLogContext(request, provider, type, true, queryParams);
+        RequestLogContext ctx = createLogContext(request.body(), provider, type, true, queryParams);
         Flux<ServerSentEvent<String>> result = createWebClient(provider).post()
                 .uri(uriBuilder -> {
                     uriBuilder.path("/v1beta/models" + (!modelAction.isEmpty() ? "/" + modelAction : ""));
@@ -58,30 +60,21 @@ public class GeminiModelsExecutor extends AbstractRequestExecutor {
                 })
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.TEXT_EVENT_STREAM)
-                .bodyValue(request)
+                .bodyValue(request.bytes(objectMapper))
+                .attributes(providerStateAttribute(queryParams))
                 .retrieve()
                 .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<String>>() {});
 
-        return applyTimeout(result, timeoutMs)
+        return applyTimeout(result, ctx, timeoutMs)
                 .doOnNext(event -> {
                     String data = event.data();
                     if (data == null) return;
-                    if (ctx.getFirstTokenArrived().compareAndSet(false, true)) {
-                        ctx.setFirstTokenMs((int) ((System.nanoTime() - ctx.getStartNano()) / 1_000_000));
-                    }
+                    boolean first = markFirstToken(ctx);
                     appendResponseChunk(ctx, data);
-
-                    try {
-                        handleUsage(ctx, objectMapper.readTree(data));
-                    } catch (Exception ignored) {
-                    }
+                    handleStreamUsage(ctx, data, first);
                 })
                 .doOnError(err -> recordError(ctx, err))
-                .doOnComplete(() -> recordSuccess(ctx, ctx.getResponseBuffer().toString()))
-                .doFinally(signalType -> {
-                    if (signalType == SignalType.CANCEL) {
-                        recordStreamCancel(ctx);
-                    }
-                });
+                .doOnComplete(() -> recordSuccess(ctx, ctx.getResponseCapture().content()))
+                .transform(stream -> logStreamCancel(stream, ctx));
     }
 }
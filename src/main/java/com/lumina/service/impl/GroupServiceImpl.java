@@ -10,6 +10,7 @@ import com.lumina.mapper.GroupMapper;
 import com.lumina.service.GroupItemService;
 import com.lumina.service.GroupService;
 import com.lumina.service.HotPathCacheService;
+import com.lumina.state.RoutingPlanCompiler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -31,6 +32,9 @@ public class GroupServiceImpl extends ServiceImpl<GroupMapper, Group> implements
     @Autowired
     private GroupItemService groupItemService;
 
+    @Autowired
+    private RoutingPlanCompiler routingPlanCompiler;
+
     @Override
     public Page<Group> getGroupsByPage(Page<Object> page, String name) {
         return baseMapper.getGroupsByPage(page, name);
@@ -164,7 +168,7 @@ public class GroupServiceImpl extends ServiceImpl<GroupMapper, Group> implements
     private ModelGroupConfig loadModelGroupConfig(String modelGroupName) {
         return hotPathCacheService.getGroupConfig(
                 modelGroupName,
-                () -> baseMapper.getModelGroupByName(modelGroupName)
+                () -> routingPlanCompiler.attach(baseMapper.getModelGroupByName(modelGroupName))
         );
     }
 }
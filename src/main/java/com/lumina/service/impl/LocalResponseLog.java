@@ -0,0 +1,60 @@
+package com.lumina.service.impl;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.lumina.logging.LogWriter;
+import com.lumina.logging.RequestLogContext;
+import com.lumina.util.SnowflakeIdGenerator;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 网关本地应答（合并请求、缓存命中）的请求日志
+ *
+ * 不经过执行器，因此没有 PROCESSING 初始记录；费用为 0、不记 token，
+ * 避免统计和 API Key 消费重复计算，来源通过 response_source 区分。
+ */
+final class LocalResponseLog {
+
+    private LocalResponseLog() {
+    }
+
+    static RequestLogContext create(SnowflakeIdGenerator snowflakeIdGenerator, LogWriter logWriter,
+                                    String type, boolean stream, ObjectNode params,
+                                    Map<String, String> enrichedParams, String responseSource, long startNano) {
+        RequestLogContext ctx = new RequestLogContext();
+        ctx.setId(String.valueOf(snowflakeIdGenerator.nextId()));
+        ctx.setRequestId(UUID.randomUUID().toString());
+        ctx.setStartNano(startNano);
+        ctx.setRequestTime(System.currentTimeMillis() / 1000);
+        ctx.setRequestType(type);
+        ctx.setStream(stream);
+        ctx.setRequestModel(enrichedParams.get(AbstractRequestExecutor.INTERNAL_REQUEST_MODEL_PARAM));
+        ctx.setApiKey(enrichedParams.get(AbstractRequestExecutor.INTERNAL_API_KEY_PARAM));
+        ctx.setRequestIp(enrichedParams.get("_lumina_request_ip"));
+        ctx.setRequestNode(params);
+        ctx.setPayloadSampled(logWriter.samplePayloads());
+        ctx.setResponseSource(responseSource);
+        return ctx;
+    }
+
+    static void succeed(LogWriter logWriter, RequestLogContext ctx, Integer firstTokenMs) {
+        int elapsedMs = elapsedMs(ctx);
+        ctx.setStatus("SUCCESS");
+        ctx.setTotalTimeMs(elapsedMs);
+        ctx.setFirstTokenMs(firstTokenMs != null ? firstTokenMs : elapsedMs);
+        logWriter.submit(ctx);
+    }
+
+    static void fail(LogWriter logWriter, RequestLogContext ctx, String errorStage, Throwable err) {
+        ctx.setStatus("FAIL");
+        ctx.setErrorStage(errorStage);
+        ctx.setErrorMessage(err.getMessage());
+        ctx.setTotalTimeMs(elapsedMs(ctx));
+        logWriter.submit(ctx);
+    }
+
+    private static int elapsedMs(RequestLogContext ctx) {
+        return (int) ((System.nanoTime() - ctx.getStartNano()) / 1_000_000);
+    }
+}
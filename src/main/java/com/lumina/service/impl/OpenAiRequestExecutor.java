@@ -1,18 +1,21 @@
 package com.lumina.service.impl;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.lumina.dto.ModelGroupConfigItem;
 import com.lumina.logging.RequestLogContext;
+import com.lumina.service.UpstreamRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.SignalType;
 
 import java.util.Locale;
 import java.util.Map;
@@ -33,10 +36,10 @@ public class OpenAiRequestExecutor extends AbstractRequestExecutor {
     }
 
     @Override
-    public Mono<ObjectNode> executeNormal(ObjectNode request, ModelGroupConfigItem provider, Map<String, String> queryParams, String modelAction, String type, Integer timeoutMs) {
-        prepareRequestForProvider(request, provider, type);
-        logRelayRequest(request, provider, type, false);
-        RequestLogContext ctx = createLogContext(request, provider, type, false, queryParams);
+    public Mono<ObjectNode> executeNormal(UpstreamRequest request, ModelGroupConfigItem provider, Map<String, String> queryParams, String modelAction, String type, Integer timeoutMs) {
+        request = request.withBody(prepareRequestForProvider(request.body(), provider, type));
+        logRelayRequest(request.body(), provider, type, false);
+        RequestLogContext ctx = createLogContext(request.body(), provider, type, false, queryParams);
         Mono<ObjectNode> result = createWebClient(provider).post()
                 .uri(uriBuilder -> {
                     uriBuilder.path(URI_MAP.get(type));
@@ -45,7 +48,8 @@ public class OpenAiRequestExecutor extends AbstractRequestExecutor {
                 })
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON)
-                .bodyValue(request)
+                .bodyValue(request.bytes(objectMapper))
+                .attributes(providerStateAttribute(queryParams))
                 .retrieve()
                 .onStatus(HttpStatusCode::isError, response ->
                         response.bodyToMono(String.class)
@@ -57,20 +61,58 @@ public class OpenAiRequestExecutor extends AbstractRequestExecutor {
                                 }))
                 .bodyToMono(ObjectNode.class);
 
-        return applyTimeout(result, timeoutMs)
+        return applyTimeout(result, ctx, timeoutMs)
                 .doOnNext(resp -> {
                     handleUsage(ctx, resp);
-                    recordSuccess(ctx, resp.toString());
+                    recordSuccess(ctx, captureResponse(ctx, resp));
                 })
-                .doOnError(err -> recordError(ctx, err));
+                .doOnError(err -> recordError(ctx, err))
+                .doOnCancel(() -> recordCancel(ctx));
     }
 
     @Override
-    public Flux<ServerSentEvent<String>> executeStream(ObjectNode request, ModelGroupConfigItem provider, Map<String, String> queryParams, String modelAction, String type, Integer timeoutMs) {
-        prepareRequestForProvider(request, provider, type);
-        logRelayRequest(request, provider, type, true);
-        RequestLogContext ctx = createLogContext(request, provider, type, true, queryParams);
-        Flux<ServerSentEvent<String>> result = createWebClient(provider).post()
+    public Flux<ServerSentEvent<String>> executeStream(UpstreamRequest request, ModelGroupConfigItem provider, Map<String, String> queryParams, String modelAction, String type, Integer timeoutMs) {
+        request = request.withBody(prepareRequestForProvider(request.body(), provider, type));
+        logRelayRequest(request.body(), provider, type, true);
+        RequestLogContext ctx = createLogContext(request.body(), provider, type, true, queryParams);
+        Flux<ServerSentEvent<String>> result = streamRequest(request, provider, queryParams, type)
+                .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<String>>() {});
+
+        return applyTimeout(result, ctx, timeoutMs)
+                .doOnNext(event -> {
+                    String data = event.data();
+                    if (data == null) return;
+                    boolean first = markFirstToken(ctx);
+                    if (!"[DONE]".equals(data)) {
+                        appendResponseChunk(ctx, data);
+                        handleStreamUsage(ctx, data, first);
+                    } else {
+                        recordSuccess(ctx, ctx.getResponseCapture().content());
+                    }
+                })
+                // 中断提示由 FailoverService 统一补发，这里直接抛出错误以便首包前 Failover 和中途续写
+                .doOnError(err -> recordError(ctx, err))
+                .doOnComplete(() -> recordSuccess(ctx, ctx.getResponseCapture().content()))
+                .transform(stream -> logStreamCancel(stream, ctx));
+    }
+
+    @Override
+    public boolean supportsPassthrough(String type) {
+        return "openai_chat_completions".equals(type) || "openai_responses".equals(type);
+    }
+
+    @Override
+    public Flux<DataBuffer> executeStreamPassthrough(UpstreamRequest request, ModelGroupConfigItem provider, Map<String, String> queryParams, String type, Integer timeoutMs) {
+        request = request.withBody(prepareRequestForProvider(request.body(), provider, type));
+        logRelayRequest(request.body(), provider, type, true);
+        RequestLogContext ctx = createLogContext(request.body(), provider, type, true, queryParams);
+        Flux<DataBuffer> result = streamRequest(request, provider, queryParams, type)
+                .bodyToFlux(DataBuffer.class);
+        return tapPassthroughStream(result, ctx, timeoutMs);
+    }
+
+    private WebClient.ResponseSpec streamRequest(UpstreamRequest request, ModelGroupConfigItem provider, Map<String, String> queryParams, String type) {
+        return createWebClient(provider).post()
                 .uri(uriBuilder -> {
                     uriBuilder.path(URI_MAP.get(type));
                     applyQueryParams(uriBuilder, queryParams);
@@ -78,7 +120,9 @@ public class OpenAiRequestExecutor extends AbstractRequestExecutor {
                 })
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.TEXT_EVENT_STREAM)
-                .bodyValue(request).retrieve()
+                .bodyValue(request.bytes(objectMapper))
+                .attributes(providerStateAttribute(queryParams))
+                .retrieve()
                 .onStatus(HttpStatusCode::isError, response ->
                         response.bodyToMono(String.class)
                                 .flatMap(body -> {
@@ -86,53 +130,24 @@ public class OpenAiRequestExecutor extends AbstractRequestExecutor {
                                             response.statusCode(), provider.getProviderName(), provider.getModelName(), body == null ? 0 : body.length());
                                     return Mono.error(new RuntimeException(
                                             "HTTP " + response.statusCode() + " from provider " + provider.getProviderName()));
-                                }))
-                .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<String>>() {});
-
-        return applyTimeout(result, timeoutMs)
-                .doOnNext(event -> {
-                    String data = event.data();
-                    if (data == null) return;
-                    if (ctx.getFirstTokenArrived().compareAndSet(false, true)) {
-                        ctx.setFirstTokenMs((int) ((System.nanoTime() - ctx.getStartNano()) / 1_000_000));
-                    }
-                    if (!"[DONE]".equals(data)) {
-                        appendResponseChunk(ctx, data);
-                        try {
-                            handleUsage(ctx, objectMapper.readTree(data));
-                        } catch (Exception ignored) {
-                        }
-                    } else {
-                        recordSuccess(ctx, ctx.getResponseBuffer().toString());
-                    }
-                })
-                .onErrorResume(err -> {
-                    recordError(ctx, err);
-                    String errorMessage = "{\"error\": {\"message\": \"网关传输中途发生网络异常中断，请稍后重试。\"}}";
-                    return Flux.just(ServerSentEvent.<String>builder()
-                            .data(errorMessage)
-                            .build())
-                            .concatWith(Flux.error(err));
-                })
-                .doOnComplete(() -> recordSuccess(ctx, ctx.getResponseBuffer().toString()))
-                .doFinally(signalType -> {
-                    if (signalType == SignalType.CANCEL) {
-                        recordStreamCancel(ctx);
-                    }
-                });
+                                }));
     }
 
-    static void prepareRequestForProvider(ObjectNode request, ModelGroupConfigItem provider, String type) {
+    /**
+     * 按 Provider 调整请求；需要调整时返回顶层浅拷贝，不修改传入的共享请求树
+     */
+    static ObjectNode prepareRequestForProvider(ObjectNode request, ModelGroupConfigItem provider, String type) {
         if (request == null || provider == null || !"openai_chat_completions".equals(type)) {
-            return;
+            return request;
         }
         if (request.has("thinking") || !isDeepSeekRequest(request, provider) || !hasAssistantHistoryMissingReasoning(request)) {
-            return;
+            return request;
         }
 
-        ObjectNode thinking = request.putObject("thinking");
+        ObjectNode thinking = JsonNodeFactory.instance.objectNode();
         thinking.put("type", "disabled");
         log.debug("DeepSeek assistant history is missing reasoning_content; disabling thinking mode for this request.");
+        return UpstreamRequest.overlay(request, "thinking", thinking);
     }
 
     private static boolean isDeepSeekRequest(ObjectNode request, ModelGroupConfigItem provider) {
@@ -1,24 +1,38 @@
 package com.lumina.service.impl;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.lumina.config.LuminaProperties;
 import com.lumina.converter.ProtocolConverter;
 import com.lumina.converter.ProtocolConverterRegistry;
 import com.lumina.converter.ProtocolType;
 import com.lumina.dto.ModelGroupConfig;
 import com.lumina.dto.ModelGroupConfigItem;
+import com.lumina.dto.PassthroughStreamBody;
 import com.lumina.entity.Group;
 import com.lumina.entity.LlmModel;
+import com.lumina.ratelimit.TokenRateLimiter;
+import com.lumina.ratelimit.TokenReservation;
 import com.lumina.service.FailoverService;
 import com.lumina.service.GroupService;
 import com.lumina.service.LlmModelService;
 import com.lumina.service.LlmRequestExecutor;
 import com.lumina.service.RelayService;
+import com.lumina.service.TokenCountService;
+import com.lumina.service.UpstreamRequest;
+import com.lumina.state.BalanceMode;
+import com.lumina.state.RouteContext;
+import com.lumina.state.RoutingPlanCompiler;
+import com.lumina.state.RoutingTarget;
+import com.lumina.state.TokenEstimate;
+import com.lumina.util.PromptPrefix;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.codec.ServerSentEvent;
@@ -27,10 +41,13 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 @Slf4j
 @Service
@@ -54,6 +71,24 @@ public class RelayServiceImpl implements RelayService {
     @Autowired
     private LlmModelService llmModelService;
 
+    @Autowired
+    private RoutingPlanCompiler routingPlanCompiler;
+
+    @Autowired
+    private TokenRateLimiter tokenRateLimiter;
+
+    @Autowired
+    private RequestCoalescer requestCoalescer;
+
+    @Autowired
+    private ResponseCacheHandler responseCacheHandler;
+
+    @Autowired
+    private LuminaProperties luminaProperties;
+
+    @Autowired
+    private TokenCountService tokenCountService;
+
     private LlmRequestExecutor getExecutor(String type) {
         return executors.stream()
                 .filter(e -> e.supports(type))
@@ -70,13 +105,36 @@ public class RelayServiceImpl implements RelayService {
             enrichedParams.put("_lumina_api_key", apiKey);
         }
         enrichedParams.put("_lumina_request_model", modelGroupName);
+
+        String cacheKey = responseCacheHandler.keyFor(type, modelGroupName, params, queryParams, apiKey);
+        if (cacheKey == null) {
+            return relayUpstream(type, params, queryParams, apiKey, modelGroupName, enrichedParams, null);
+        }
+        return responseCacheHandler.lookup(cacheKey, type, params, enrichedParams)
+                .switchIfEmpty(Mono.defer(() -> {
+                    enrichedParams.put(ResponseCacheHandler.INTERNAL_CACHE_KEY_PARAM, cacheKey);
+                    return relayUpstream(type, params, queryParams, apiKey, modelGroupName, enrichedParams, cacheKey);
+                }));
+    }
+
+    /**
+     * 发往上游的 relay；cacheKey 不为空时采集响应写入缓存
+     */
+    private Mono<ResponseEntity<?>> relayUpstream(String type, ObjectNode params, Map<String, String> queryParams,
+                                                  String apiKey, String modelGroupName,
+                                                  Map<String, String> enrichedParams, String cacheKey) {
+        boolean stream = params.has("stream") && params.get("stream").asBoolean();
         return groupService.getModelGroupConfigAsync(modelGroupName)
                 .switchIfEmpty(Mono.defer(() -> {
                     log.warn("Model group not found: modelGroupName={}, requestType={}, requestIp={}",
                             modelGroupName, type, enrichedParams.get("_lumina_request_ip"));
                     return Mono.error(new RuntimeException("模型分组不存在: " + modelGroupName));
                 }))
-                .flatMap(modelGroupConfig -> {
+                .flatMap(modelGroupConfig -> reserveTokens(apiKey, modelGroupName, params, enrichedParams)
+                        .flatMap(reservation -> routeFor(modelGroupConfig, params, enrichedParams, stream, reservation))
+                        .map(route -> new RoutedGroup(modelGroupConfig, route)))
+                .flatMap(routed -> {
+                    ModelGroupConfig modelGroupConfig = routed.modelGroupConfig();
                     if (modelGroupConfig == null) {
                         log.warn("Model group config is null: modelGroupName={}, requestType={}, requestIp={}",
                                 modelGroupName, type, enrichedParams.get("_lumina_request_ip"));
@@ -84,59 +142,72 @@ public class RelayServiceImpl implements RelayService {
                     }
 
                     Integer timeoutMs = modelGroupConfig.getFirstTokenTimeout();
-                    boolean stream = params.has("stream") && params.get("stream").asBoolean();
+                    RouteContext route = routed.route();
                     ProtocolType inboundType = ProtocolType.fromRequestType(type);
-
-                    if (stream) {
-                        Flux<?> body = failoverService.executeWithFailoverFlux(
-                                (provider) -> {
-                                    ProtocolType outboundType = resolveOutboundType(inboundType, provider);
-                                    provider.setBaseUrl(resolveBaseUrl(outboundType, provider));
-                                    Optional<ProtocolConverter> converter = converterRegistry.getConverter(inboundType, outboundType);
-
-                                    ObjectNode requestParams = params.deepCopy();
-                                    requestParams.put("model", provider.getModelName());
-
-                                    ObjectNode finalRequest = converter.map(c -> c.convertRequest(requestParams)).orElse(requestParams);
-                                    String executorType = converter.isPresent() ? outboundType.toRequestType() : type;
-                                    LlmRequestExecutor executor = getExecutor(executorType);
-
-                                    Map<String, String> execParams = new java.util.HashMap<>(enrichedParams);
-                                    if (converter.isPresent()) {
-                                        log.debug("Protocol conversion applied: {}→{}, modelGroup={}, stream=true",
-                                                inboundType, outboundType, modelGroupName);
-                                        execParams.put("_lumina_protocol_conversion", inboundType.name() + "→" + outboundType.name());
-                                    }
-
-                                    Flux<ServerSentEvent<String>> upstream = executor.executeStream(
-                                            finalRequest, provider, execParams, "", executorType, timeoutMs
+                    Map<String, UpstreamRequest> variants = new ConcurrentHashMap<>();
+
+                    // 可缓存的流式请求走解码路径，以便按 SSE 事件采集响应
+                    if (stream && cacheKey == null && canPassthrough(modelGroupConfig, inboundType, type)) {
+                        LlmRequestExecutor executor = getExecutor(type);
+                        Flux<DataBuffer> buffers = failoverService.executeWithFailoverFlux(
+                                (target) -> {
+                                    ModelGroupConfigItem provider = target.itemFor(inboundType);
+                                    UpstreamRequest request = upstreamRequest(variants, params, inboundType,
+                                            provider.getModelName(), Optional.empty());
+                                    return executor.executeStreamPassthrough(
+                                            request, provider, attemptParams(enrichedParams, target), type, timeoutMs
                                     );
-
-                                    return converter.map(c -> c.convertStreamResponse(upstream)).orElse(upstream);
                                 },
                                 modelGroupConfig,
-                                timeoutMs
+                                timeoutMs,
+                                // 中断前的原始字节可能停在半行，先用空行结束它，错误帧才能被单独解析
+                                data -> DefaultDataBufferFactory.sharedInstance.wrap(
+                                        ("\n\ndata: " + data + "\n\n").getBytes(StandardCharsets.UTF_8)),
+                                route
+                        ).doFinally(signal -> releaseTokens(enrichedParams));
+
+                        return Mono.just(ResponseEntity.ok()
+                                .contentType(MediaType.TEXT_EVENT_STREAM)
+                                .body(new PassthroughStreamBody(buffers)));
+                    }
+
+                    if (stream) {
+                        StreamContinuation continuation = StreamContinuation.create(objectMapper, inboundType, params,
+                                resumeParams -> {
+                                    Map<String, UpstreamRequest> resumeVariants = new ConcurrentHashMap<>();
+                                    return target -> streamFrom(target, resumeParams, resumeVariants, inboundType, type,
+                                            enrichedParams, timeoutMs, modelGroupName);
+                                });
+                        Flux<ServerSentEvent<String>> body = failoverService.executeWithFailoverFlux(
+                                (target) -> streamFrom(target, params, variants, inboundType, type,
+                                        enrichedParams, timeoutMs, modelGroupName),
+                                modelGroupConfig,
+                                timeoutMs,
+                                continuation,
+                                route
                         );
+                        if (cacheKey != null) {
+                            body = responseCacheHandler.capture(cacheKey, body);
+                        }
+                        body = body.doFinally(signal -> releaseTokens(enrichedParams));
 
                         return Mono.just(ResponseEntity.ok()
                                 .contentType(MediaType.TEXT_EVENT_STREAM)
                                 .body(body));
                     }
 
-                    return failoverService.executeWithFailoverMono(
-                            (provider) -> {
-                                ProtocolType outboundType = resolveOutboundType(inboundType, provider);
-                                provider.setBaseUrl(resolveBaseUrl(outboundType, provider));
+                    Supplier<Mono<ObjectNode>> call = () -> failoverService.executeWithFailoverMono(
+                            (target) -> {
+                                ProtocolType outboundType = target.resolveOutboundType(inboundType);
+                                ModelGroupConfigItem provider = target.itemFor(outboundType);
                                 Optional<ProtocolConverter> converter = converterRegistry.getConverter(inboundType, outboundType);
 
-                                ObjectNode requestParams = params.deepCopy();
-                                requestParams.put("model", provider.getModelName());
-
-                                ObjectNode finalRequest = converter.map(c -> c.convertRequest(requestParams)).orElse(requestParams);
+                                UpstreamRequest finalRequest = upstreamRequest(variants, params, outboundType,
+                                        provider.getModelName(), converter);
                                 String executorType = converter.isPresent() ? outboundType.toRequestType() : type;
                                 LlmRequestExecutor executor = getExecutor(executorType);
 
-                                Map<String, String> execParams = new java.util.HashMap<>(enrichedParams);
+                                Map<String, String> execParams = attemptParams(enrichedParams, target);
                                 if (converter.isPresent()) {
                                     log.debug("Protocol conversion applied: {}→{}, modelGroup={}, stream=false",
                                             inboundType, outboundType, modelGroupName);
@@ -148,8 +219,18 @@ public class RelayServiceImpl implements RelayService {
                                 ).map(resp -> converter.map(c -> c.convertResponse(resp)).orElse(resp));
                             },
                             modelGroupConfig,
-                            timeoutMs
-                    ).map(ResponseEntity::ok);
+                            timeoutMs,
+                            route
+                    );
+
+                    String coalesceKey = requestCoalescer.keyFor(type, modelGroupName, params, queryParams);
+                    Mono<ObjectNode> response = coalesceKey != null
+                            ? requestCoalescer.coalesce(coalesceKey, type, params, enrichedParams, call)
+                            : call.get();
+                    if (cacheKey != null) {
+                        response = responseCacheHandler.capture(cacheKey, response);
+                    }
+                    return response.doFinally(signal -> releaseTokens(enrichedParams)).map(ResponseEntity::ok);
                 });
     }
 
@@ -158,6 +239,7 @@ public class RelayServiceImpl implements RelayService {
         String[] parts = modelAction.split(":", 2);
         String modelGroupName = parts[0];
         String action = parts.length > 1 ? parts[1] : "";
+        boolean stream = action.equalsIgnoreCase("streamGenerateContent");
         Map<String, String> enrichedParams = new java.util.HashMap<>(queryParams);
         if (apiKey != null) {
             enrichedParams.put("_lumina_api_key", apiKey);
@@ -166,31 +248,39 @@ public class RelayServiceImpl implements RelayService {
 
         return groupService.getModelGroupConfigAsync(modelGroupName)
                 .switchIfEmpty(Mono.error(new RuntimeException("模型分组不存在")))
-                .flatMap(modelGroupConfig -> {
+                .flatMap(modelGroupConfig -> reserveTokens(apiKey, modelGroupName, params, enrichedParams)
+                        .flatMap(reservation -> routeFor(modelGroupConfig, params, enrichedParams, stream, reservation))
+                        .map(route -> new RoutedGroup(modelGroupConfig, route)))
+                .flatMap(routed -> {
+                    ModelGroupConfig modelGroupConfig = routed.modelGroupConfig();
                     if (modelGroupConfig == null) {
                         return Mono.error(new RuntimeException("模型分组不存在"));
                     }
 
                     Integer timeoutMs = modelGroupConfig.getFirstTokenTimeout();
-                    boolean stream = action.equalsIgnoreCase("streamGenerateContent");
+                    RouteContext route = routed.route();
                     LlmRequestExecutor executor = getExecutor(type);
+                    // Gemini 的模型在路径中，请求体在各次尝试间完全相同
+                    UpstreamRequest request = UpstreamRequest.of(params);
 
                     if (stream) {
                         Flux<String> body = failoverService.executeWithFailoverFlux(
-                                (provider) -> {
-                                    ObjectNode requestParams = params.deepCopy();
+                                (target) -> {
+                                    ModelGroupConfigItem provider = target.itemFor(ProtocolType.GEMINI);
                                     return executor.executeStream(
-                                            requestParams,
+                                            request,
                                             provider,
-                                            enrichedParams,
+                                            attemptParams(enrichedParams, target),
                                             provider.getModelName() + ":" + action,
                                             type,
                                             timeoutMs
                                     );
                                 },
                                 modelGroupConfig,
-                                timeoutMs
-                        ).map(sse -> " " + sse.data());
+                                timeoutMs,
+                                data -> ServerSentEvent.<String>builder().data(data).build(),
+                                route
+                        ).doFinally(signal -> releaseTokens(enrichedParams)).map(sse -> " " + sse.data());
 
                         return Mono.just(ResponseEntity.ok()
                                 .contentType(MediaType.TEXT_EVENT_STREAM)
@@ -198,23 +288,201 @@ public class RelayServiceImpl implements RelayService {
                     }
 
                     return failoverService.executeWithFailoverMono(
-                            (provider) -> {
-                                ObjectNode requestParams = params.deepCopy();
+                            (target) -> {
+                                ModelGroupConfigItem provider = target.itemFor(ProtocolType.GEMINI);
                                 return executor.executeNormal(
-                                        requestParams,
+                                        request,
                                         provider,
-                                        enrichedParams,
+                                        attemptParams(enrichedParams, target),
                                         provider.getModelName() + ":" + action,
                                         type,
                                         timeoutMs
                                 );
                             },
                             modelGroupConfig,
-                            timeoutMs
-                    ).map(ResponseEntity::ok);
+                            timeoutMs,
+                            route
+                    ).doFinally(signal -> releaseTokens(enrichedParams)).map(ResponseEntity::ok);
+                });
+    }
+
+    /**
+     * 按分组负载均衡模式生成路由上下文；亲和模式下计算提示词前缀哈希，成本模式下估计输入和输出 token，
+     * 并记录模式供按模式统计 prompt cache 命中。API Key 作为租户，用于舱壁全满时的公平排队；
+     * 有请求级截止时间时一并带上，供 Failover 各次尝试和执行器共享剩余预算
+     */
+    private Mono<RouteContext> routeFor(ModelGroupConfig modelGroupConfig, ObjectNode params,
+                                        Map<String, String> enrichedParams, boolean stream,
+                                        TokenReservation reservation) {
+        return balanceRoute(modelGroupConfig, params, enrichedParams, stream, reservation)
+                .map(route -> {
+                    long deadlineAt = deadlineAt(modelGroupConfig, enrichedParams);
+                    if (deadlineAt <= 0) {
+                        return route;
+                    }
+                    enrichedParams.put(AbstractRequestExecutor.INTERNAL_DEADLINE_PARAM, String.valueOf(deadlineAt));
+                    return route.withDeadline(deadlineAt);
                 });
     }
 
+    /**
+     * 请求级截止时间：客户端请求头给出的截止时间与分组预算取较早者，都没有时返回 0
+     */
+    private long deadlineAt(ModelGroupConfig modelGroupConfig, Map<String, String> enrichedParams) {
+        LuminaProperties.Deadline properties = luminaProperties.getDeadline();
+        long budgetMs = properties.getGroups().getOrDefault(modelGroupConfig.getName(), properties.getDefaultMs());
+        long deadlineAt = budgetMs > 0 ? System.currentTimeMillis() + budgetMs : 0;
+        String client = enrichedParams.get(AbstractRequestExecutor.INTERNAL_DEADLINE_PARAM);
+        if (client != null) {
+            try {
+                long clientDeadline = Long.parseLong(client);
+                deadlineAt = deadlineAt > 0 ? Math.min(deadlineAt, clientDeadline) : clientDeadline;
+            } catch (NumberFormatException e) {
+                log.debug("忽略无法解析的截止时间: {}", client);
+            }
+        }
+        return deadlineAt;
+    }
+
+    private Mono<RouteContext> balanceRoute(ModelGroupConfig modelGroupConfig, ObjectNode params,
+                                            Map<String, String> enrichedParams, boolean stream,
+                                            TokenReservation reservation) {
+        BalanceMode mode = BalanceMode.of(modelGroupConfig.getBalanceMode());
+        enrichedParams.put(AbstractRequestExecutor.INTERNAL_ROUTING_MODE_PARAM, mode.getMetricName());
+        String tenant = enrichedParams.get(AbstractRequestExecutor.INTERNAL_API_KEY_PARAM);
+        if (mode == BalanceMode.COST) {
+            return inputTokens(modelGroupConfig.getName(), params, reservation)
+                    .map(inputTokens -> RouteContext.of(tenant, null,
+                            new TokenEstimate(inputTokens, maxOutputTokens(params), stream)));
+        }
+        if (mode != BalanceMode.AFFINITY) {
+            return Mono.just(RouteContext.of(tenant, null));
+        }
+        return Mono.just(RouteContext.of(tenant,
+                PromptPrefix.affinityHash(params, luminaProperties.getFailover().getAffinityPrefixMessages())));
+    }
+
+    /**
+     * 成本模式的输入 token 估算：TPM 已预扣时沿用预扣时的计数，否则在 boundedElastic 上计数，避免大请求体阻塞事件循环
+     */
+    private Mono<Integer> inputTokens(String modelGroupName, ObjectNode params, TokenReservation reservation) {
+        if (reservation.getId() != null) {
+            return Mono.just((int) reservation.getEstimate());
+        }
+        return Mono.fromCallable(() -> tokenCountService.countTokens(modelGroupName, params))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    log.warn("估算输入 token 失败，按 0 处理: modelGroup={}, error={}", modelGroupName, e.getMessage());
+                    return Mono.just(0);
+                });
+    }
+
+    /**
+     * 请求声明的输出上限：OpenAI max_tokens / max_completion_tokens、Responses max_output_tokens、
+     * Anthropic max_tokens、Gemini generationConfig.maxOutputTokens
+     */
+    private static Integer maxOutputTokens(ObjectNode params) {
+        for (String field : new String[]{"max_completion_tokens", "max_tokens", "max_output_tokens"}) {
+            JsonNode value = params.get(field);
+            if (value != null && value.canConvertToInt()) {
+                return value.asInt();
+            }
+        }
+        JsonNode gemini = params.path("generationConfig").path("maxOutputTokens");
+        return gemini.canConvertToInt() ? gemini.asInt() : null;
+    }
+
+    /**
+     * 单次尝试的内部参数：在请求级参数上附加本次尝试的 Provider 运行态 ID，执行器据此回写输出长度和速度
+     */
+    private static Map<String, String> attemptParams(Map<String, String> enrichedParams, RoutingTarget target) {
+        Map<String, String> params = new java.util.HashMap<>(enrichedParams);
+        params.put(AbstractRequestExecutor.INTERNAL_PROVIDER_STATE_PARAM, target.getProviderId());
+        return params;
+    }
+
+    /**
+     * 解码路径的单次流式调用：按 Provider 协议转换请求，并把响应流转换回入站协议
+     */
+    private Flux<ServerSentEvent<String>> streamFrom(RoutingTarget target, ObjectNode params,
+                                                     Map<String, UpstreamRequest> variants, ProtocolType inboundType,
+                                                     String type, Map<String, String> enrichedParams,
+                                                     Integer timeoutMs, String modelGroupName) {
+        ProtocolType outboundType = target.resolveOutboundType(inboundType);
+        ModelGroupConfigItem provider = target.itemFor(outboundType);
+        Optional<ProtocolConverter> converter = converterRegistry.getConverter(inboundType, outboundType);
+
+        UpstreamRequest finalRequest = upstreamRequest(variants, params, outboundType,
+                provider.getModelName(), converter);
+        String executorType = converter.isPresent() ? outboundType.toRequestType() : type;
+        LlmRequestExecutor executor = getExecutor(executorType);
+
+        Map<String, String> execParams = attemptParams(enrichedParams, target);
+        if (converter.isPresent()) {
+            log.debug("Protocol conversion applied: {}→{}, modelGroup={}, stream=true",
+                    inboundType, outboundType, modelGroupName);
+            execParams.put("_lumina_protocol_conversion", inboundType.name() + "→" + outboundType.name());
+        }
+
+        Flux<ServerSentEvent<String>> upstream = executor.executeStream(
+                finalRequest, provider, execParams, "", executorType, timeoutMs
+        );
+
+        return converter.map(c -> c.convertStreamResponse(upstream)).orElse(upstream);
+    }
+
+    /**
+     * TPM 预扣，预扣记录 ID 通过内部参数传给执行器，在 recordSuccess 时结算；预扣时的输入 token 计数供成本模式路由复用
+     */
+    private Mono<TokenReservation> reserveTokens(String apiKey, String modelGroupName, ObjectNode params,
+                                                 Map<String, String> enrichedParams) {
+        return tokenRateLimiter.reserve(apiKey, modelGroupName, params)
+                .doOnNext(reservation -> {
+                    if (reservation.getId() != null) {
+                        enrichedParams.put(AbstractRequestExecutor.INTERNAL_TOKEN_RESERVATION_PARAM, reservation.getId());
+                    }
+                });
+    }
+
+    /** 模型分组配置及本次请求的路由上下文 */
+    private record RoutedGroup(ModelGroupConfig modelGroupConfig, RouteContext route) {
+    }
+
+    private void releaseTokens(Map<String, String> enrichedParams) {
+        tokenRateLimiter.release(enrichedParams.get(AbstractRequestExecutor.INTERNAL_TOKEN_RESERVATION_PARAM));
+    }
+
+    /**
+     * 同一次 relay 内按出站协议和模型缓存上游请求，协议和模型相同的 Provider 复用同一份请求及其序列化字节。
+     * 无需转换时只覆盖顶层 model 字段；转换器可能修改输入子树，因此每个转换结果只深拷贝一次。
+     */
+    private UpstreamRequest upstreamRequest(Map<String, UpstreamRequest> variants, ObjectNode params,
+                                            ProtocolType outboundType, String modelName,
+                                            Optional<ProtocolConverter> converter) {
+        return variants.computeIfAbsent(outboundType.name() + "|" + modelName, key -> {
+            UpstreamRequest base = UpstreamRequest.of(params).withField("model", TextNode.valueOf(modelName));
+            return converter
+                    .map(c -> UpstreamRequest.of(c.convertRequest(base.body().deepCopy())))
+                    .orElse(base);
+        });
+    }
+
+    /**
+     * 同协议透传条件：分组内所有 Provider 都无需协议转换，且执行器支持透传。
+     * 只要有一个 Provider 需要转换，Failover 过程中元素类型就可能不一致，整组走解码路径。
+     */
+    private boolean canPassthrough(ModelGroupConfig modelGroupConfig, ProtocolType inboundType, String type) {
+        if (!getExecutor(type).supportsPassthrough(type)) {
+            return false;
+        }
+        for (RoutingTarget target : routingPlanCompiler.planFor(modelGroupConfig).getTargets()) {
+            if (converterRegistry.getConverter(inboundType, target.resolveOutboundType(inboundType)).isPresent()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public Mono<ResponseEntity<?>> models() {
         return Mono.fromCallable(groupService::list)
@@ -242,43 +510,4 @@ public class RelayServiceImpl implements RelayService {
                     return ResponseEntity.ok(response);
                 });
     }
-
-    /**
-     * 如果供应商支持入站协议类型，直接使用入站类型，避免不必要的协议转换。
-     * 否则回退到配置的默认类型。
-     */
-    private ProtocolType resolveOutboundType(ProtocolType inboundType, ModelGroupConfigItem provider) {
-        String supportedTypes = provider.getSupportedTypes();
-        if (supportedTypes != null && !supportedTypes.isEmpty()) {
-            int inboundCode = inboundType.getCode();
-            for (String code : supportedTypes.split(",")) {
-                if (Integer.parseInt(code.trim()) == inboundCode) {
-                    return inboundType;
-                }
-            }
-        }
-        return ProtocolType.fromCode(provider.getProviderType());
-    }
-
-    /**
-     * 从 endpointsJson 中查找匹配协议类型的 baseUrl。
-     * 如果找不到，回退到 provider 的默认 baseUrl。
-     */
-    private String resolveBaseUrl(ProtocolType protocolType, ModelGroupConfigItem provider) {
-        String endpointsJson = provider.getEndpointsJson();
-        if (endpointsJson != null && !endpointsJson.isEmpty()) {
-            try {
-                Map<String, String> endpoints = objectMapper.readValue(
-                        endpointsJson, new TypeReference<Map<String, String>>() {});
-                String url = endpoints.get(String.valueOf(protocolType.getCode()));
-                if (url != null && !url.isEmpty()) {
-                    return url;
-                }
-            } catch (Exception e) {
-                log.warn("Failed to parse endpoints JSON for provider {}: {}",
-                        provider.getProviderName(), e.getMessage());
-            }
-        }
-        return provider.getBaseUrl();
-    }
 }
@@ -0,0 +1,136 @@
+package com.lumina.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.lumina.config.LuminaProperties;
+import com.lumina.logging.LogWriter;
+import com.lumina.logging.RequestLogContext;
+import com.lumina.metrics.RelayMetrics;
+import com.lumina.util.RequestFingerprint;
+import com.lumina.util.SnowflakeIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 相同在途请求合并（single-flight）
+ *
+ * 启用合并的分组中，temperature=0 的非流式请求按规范化请求指纹合并：
+ * 第一个请求（领头请求）正常发往上游，指纹相同的后续请求在领头请求完成前到达时直接挂到同一个在途 Mono 上。
+ * 每个跟随请求单独记一条请求日志，Provider/模型取自领头请求，费用为 0，response_source 为 COALESCED。
+ */
+@Slf4j
+@Component
+public class RequestCoalescer {
+
+    public static final String RESPONSE_SOURCE_COALESCED = "COALESCED";
+
+    static final String INTERNAL_COALESCE_KEY_PARAM = "_lumina_coalesce_key";
+
+    private final LuminaProperties luminaProperties;
+    private final LogWriter logWriter;
+    private final SnowflakeIdGenerator snowflakeIdGenerator;
+    private final RelayMetrics relayMetrics;
+
+    private final ConcurrentHashMap<String, InFlight> inFlight = new ConcurrentHashMap<>();
+
+    public RequestCoalescer(LuminaProperties luminaProperties, LogWriter logWriter,
+                            SnowflakeIdGenerator snowflakeIdGenerator, RelayMetrics relayMetrics) {
+        this.luminaProperties = luminaProperties;
+        this.logWriter = logWriter;
+        this.snowflakeIdGenerator = snowflakeIdGenerator;
+        this.relayMetrics = relayMetrics;
+    }
+
+    /**
+     * 计算合并键
+     * @return 分组未启用、流式请求或输出不确定（temperature 不为 0）时返回 null
+     */
+    public String keyFor(String type, String modelGroupName, ObjectNode params, Map<String, String> queryParams) {
+        if (!luminaProperties.getCoalescing().getGroups().contains(modelGroupName)) {
+            return null;
+        }
+        if (params.path("stream").asBoolean(false)) {
+            return null;
+        }
+        JsonNode temperature = params.get("temperature");
+        if (temperature == null || !temperature.isNumber() || temperature.doubleValue() != 0.0) {
+            return null;
+        }
+        return RequestFingerprint.of(type, params, queryParams);
+    }
+
+    /**
+     * 领头请求直接执行 call 并共享结果；已有相同在途请求时挂到该请求上
+     *
+     * @param enrichedParams 当前请求的内部参数，领头请求会写入合并键供执行器回传请求上下文
+     */
+    public Mono<ObjectNode> coalesce(String key, String type, ObjectNode params, Map<String, String> enrichedParams,
+                                     Supplier<Mono<ObjectNode>> call) {
+        InFlight candidate = new InFlight(key, call);
+        InFlight existing = inFlight.putIfAbsent(key, candidate);
+        if (existing == null) {
+            enrichedParams.put(INTERNAL_COALESCE_KEY_PARAM, key);
+            return candidate.response;
+        }
+
+        relayMetrics.recordCoalesced();
+        long startNano = System.nanoTime();
+        return existing.response
+                .map(ObjectNode::deepCopy)
+                .doOnNext(resp -> recordFollower(existing, type, params, enrichedParams, startNano, null))
+                .doOnError(err -> recordFollower(existing, type, params, enrichedParams, startNano, err));
+    }
+
+    /**
+     * 执行器记录领头请求成功时回调，跟随请求的日志沿用其 Provider 和模型
+     */
+    public void onLeaderSuccess(RequestLogContext ctx) {
+        InFlight flight = inFlight.get(ctx.getCoalesceKey());
+        if (flight != null && flight.leader == null) {
+            flight.leader = ctx;
+        }
+    }
+
+    int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private void recordFollower(InFlight flight, String type, ObjectNode params, Map<String, String> enrichedParams,
+                                long startNano, Throwable err) {
+        try {
+            RequestLogContext ctx = LocalResponseLog.create(snowflakeIdGenerator, logWriter, type, false, params,
+                    enrichedParams, RESPONSE_SOURCE_COALESCED, startNano);
+            RequestLogContext leader = flight.leader;
+            if (leader != null) {
+                ctx.setProviderId(leader.getProviderId());
+                ctx.setProviderName(leader.getProviderName());
+                ctx.setActualModel(leader.getActualModel());
+                ctx.setProtocolConversion(leader.getProtocolConversion());
+            }
+            if (err == null) {
+                LocalResponseLog.succeed(logWriter, ctx, null);
+            } else {
+                LocalResponseLog.fail(logWriter, ctx, "COALESCED", err);
+            }
+        } catch (Exception e) {
+            log.error("记录合并请求日志失败: type={}", type, e);
+        }
+    }
+
+    private final class InFlight {
+        private final Mono<ObjectNode> response;
+        private volatile RequestLogContext leader;
+
+        private InFlight(String key, Supplier<Mono<ObjectNode>> call) {
+            // 所有订阅者都取消时 share 会取消上游；无论如何结束都移出在途表，之后的相同请求重新发往上游
+            this.response = Mono.defer(call)
+                    .doFinally(signal -> inFlight.remove(key, this))
+                    .share();
+        }
+    }
+}
@@ -61,6 +61,8 @@ public class RequestLogServiceImpl extends ServiceImpl<RequestLogMapper, Request
                         RequestLog::getRetryCount,
                         RequestLog::getRequestIp,
                         RequestLog::getProtocolConversion,
+                        RequestLog::getResponseSource,
+                        RequestLog::getFirstTokenTimeoutMs,
                         RequestLog::getCreatedAt
                 ));
         if (log == null) {
@@ -92,6 +94,8 @@ public class RequestLogServiceImpl extends ServiceImpl<RequestLogMapper, Request
         dto.setRetryCount(log.getRetryCount());
         dto.setRequestIp(log.getRequestIp());
         dto.setProtocolConversion(log.getProtocolConversion());
+        dto.setResponseSource(log.getResponseSource());
+        dto.setFirstTokenTimeoutMs(log.getFirstTokenTimeoutMs());
         dto.setCreatedAt(log.getCreatedAt());
         return dto;
     }
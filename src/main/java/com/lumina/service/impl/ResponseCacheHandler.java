@@ -0,0 +1,236 @@
+package com.lumina.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.lumina.cache.CachedResponse;
+import com.lumina.cache.ResponseCache;
+import com.lumina.config.LuminaProperties;
+import com.lumina.logging.LogWriter;
+import com.lumina.logging.RequestLogContext;
+import com.lumina.util.RequestFingerprint;
+import com.lumina.util.SnowflakeIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 响应缓存在 Relay 中的接入：可缓存判断、命中回放与日志、未命中时采集上游响应
+ *
+ * 分组或 API Key 启用缓存后，temperature=0 的请求（或请求头 X-Lumina-Cache: true 显式要求）按请求指纹缓存；
+ * X-Lumina-Cache: false 跳过缓存。只按 API Key 启用时缓存键包含 API Key，不同 Key 之间不共享。
+ * 命中记一条 response_source 为 CACHE、费用为 0 的请求日志，Provider/模型沿用产生该响应的上游。
+ */
+@Slf4j
+@Component
+public class ResponseCacheHandler {
+
+    public static final String RESPONSE_SOURCE_CACHE = "CACHE";
+
+    static final String INTERNAL_CACHE_KEY_PARAM = "_lumina_cache_key";
+    /** 请求头 X-Lumina-Cache 的值 */
+    public static final String INTERNAL_CACHE_DIRECTIVE_PARAM = "_lumina_cache";
+
+    private final LuminaProperties luminaProperties;
+    private final ResponseCache responseCache;
+    private final LogWriter logWriter;
+    private final SnowflakeIdGenerator snowflakeIdGenerator;
+    private final ObjectMapper objectMapper;
+
+    /** 缓存键 → 最近一次成功的上游请求上下文，写入缓存时取走 */
+    private final ConcurrentHashMap<String, RequestLogContext> origins = new ConcurrentHashMap<>();
+    /** 正在采集响应的缓存键 → 在途采集数；只接受这些键的上游回调，其他键（如客户端伪造的）一律忽略 */
+    private final ConcurrentHashMap<String, Integer> capturing = new ConcurrentHashMap<>();
+
+    public ResponseCacheHandler(LuminaProperties luminaProperties, ResponseCache responseCache, LogWriter logWriter,
+                                SnowflakeIdGenerator snowflakeIdGenerator, ObjectMapper objectMapper) {
+        this.luminaProperties = luminaProperties;
+        this.responseCache = responseCache;
+        this.logWriter = logWriter;
+        this.snowflakeIdGenerator = snowflakeIdGenerator;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 计算缓存键
+     * @return 未启用缓存、显式跳过或输出不确定时返回 null
+     */
+    public String keyFor(String type, String modelGroupName, ObjectNode params, Map<String, String> queryParams,
+                         String apiKey) {
+        LuminaProperties.ResponseCache properties = luminaProperties.getResponseCache();
+        boolean groupEnabled = properties.getGroups().contains(modelGroupName);
+        boolean apiKeyEnabled = apiKey != null && properties.getApiKeys().contains(apiKey);
+        if (!groupEnabled && !apiKeyEnabled) {
+            return null;
+        }
+        String directive = queryParams.get(INTERNAL_CACHE_DIRECTIVE_PARAM);
+        if ("false".equalsIgnoreCase(directive)) {
+            return null;
+        }
+        if (!"true".equalsIgnoreCase(directive) && !isZeroTemperature(params)) {
+            return null;
+        }
+        return RequestFingerprint.of(groupEnabled ? null : apiKey, type, params, queryParams);
+    }
+
+    /**
+     * 查找并回放缓存的响应，未命中时为空
+     */
+    public Mono<ResponseEntity<?>> lookup(String key, String type, ObjectNode params, Map<String, String> enrichedParams) {
+        long startNano = System.nanoTime();
+        return responseCache.get(key).map(entry -> {
+            RequestLogContext ctx = LocalResponseLog.create(snowflakeIdGenerator, logWriter, type, entry.isStream(),
+                    params, enrichedParams, RESPONSE_SOURCE_CACHE, startNano);
+            ctx.setProviderId(entry.getProviderId());
+            ctx.setProviderName(entry.getProviderName());
+            ctx.setActualModel(entry.getActualModel());
+            if (entry.isStream()) {
+                return ResponseEntity.ok()
+                        .contentType(MediaType.TEXT_EVENT_STREAM)
+                        .body(replay(entry, ctx));
+            }
+            try {
+                JsonNode body = objectMapper.readTree(entry.getBody());
+                LocalResponseLog.succeed(logWriter, ctx, null);
+                return ResponseEntity.ok(body);
+            } catch (Exception e) {
+                throw new IllegalStateException("缓存的响应无法解析: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * 按原始分片回放流式响应；replayPacing 大于 0 时按原始分片间隔的倍数等待
+     */
+    private Flux<ServerSentEvent<String>> replay(CachedResponse entry, RequestLogContext ctx) {
+        double pacing = luminaProperties.getResponseCache().getReplayPacing();
+        List<CachedResponse.Chunk> chunks = entry.getChunks();
+        return Flux.range(0, chunks.size())
+                .concatMap(i -> {
+                    CachedResponse.Chunk chunk = chunks.get(i);
+                    ServerSentEvent<String> event = ServerSentEvent.<String>builder()
+                            .event(chunk.getEvent())
+                            .data(chunk.getData())
+                            .build();
+                    long gapMs = i == 0 ? 0 : chunk.getOffsetMs() - chunks.get(i - 1).getOffsetMs();
+                    long delayMs = (long) (gapMs * pacing);
+                    return delayMs > 0 ? Mono.just(event).delayElement(Duration.ofMillis(delayMs)) : Mono.just(event);
+                })
+                .doOnNext(event -> {
+                    if (ctx.getFirstTokenArrived().compareAndSet(false, true)) {
+                        ctx.setFirstTokenMs((int) ((System.nanoTime() - ctx.getStartNano()) / 1_000_000));
+                    }
+                })
+                .doFinally(signal -> {
+                    if (signal == SignalType.CANCEL) {
+                        ctx.setStatus("FAIL");
+                        ctx.setErrorStage("CLIENT");
+                        ctx.setErrorMessage("Client cancelled stream during cache replay");
+                        ctx.setTotalTimeMs((int) ((System.nanoTime() - ctx.getStartNano()) / 1_000_000));
+                        logWriter.submit(ctx);
+                    } else {
+                        LocalResponseLog.succeed(logWriter, ctx, ctx.getFirstTokenMs());
+                    }
+                });
+    }
+
+    /**
+     * 上游成功后缓存非流式响应
+     */
+    public Mono<ObjectNode> capture(String key, Mono<ObjectNode> response) {
+        return Mono.defer(() -> {
+            beginCapture(key);
+            return response
+                    .doOnNext(resp -> store(key, false, resp.toString(), List.of()))
+                    .doFinally(signal -> endCapture(key));
+        });
+    }
+
+    /**
+     * 流式响应正常结束后按原始分片缓存；中途失败、被取消或超过单条上限的流不缓存
+     */
+    public Flux<ServerSentEvent<String>> capture(String key, Flux<ServerSentEvent<String>> stream) {
+        long maxChars = luminaProperties.getResponseCache().getMaxEntryKb() * 1024L;
+        return Flux.defer(() -> {
+            beginCapture(key);
+            List<CachedResponse.Chunk> chunks = new ArrayList<>();
+            long[] state = {0L, -1L}; // 已采集字符数、首个事件时间
+            return stream
+                    .doOnNext(event -> {
+                        if (event.data() == null || state[0] > maxChars) {
+                            return;
+                        }
+                        long now = System.nanoTime();
+                        if (state[1] < 0) {
+                            state[1] = now;
+                        }
+                        chunks.add(CachedResponse.Chunk.of(event.event(), event.data(), (now - state[1]) / 1_000_000));
+                        state[0] += event.data().length();
+                    })
+                    .doOnComplete(() -> {
+                        if (state[0] <= maxChars && !chunks.isEmpty()) {
+                            store(key, true, null, chunks);
+                        }
+                    })
+                    .doFinally(signal -> endCapture(key));
+        });
+    }
+
+    /**
+     * 执行器记录上游成功时回调，保存产生响应的 Provider 和模型
+     */
+    public void onUpstreamSuccess(RequestLogContext ctx) {
+        capturing.computeIfPresent(ctx.getCacheKey(), (key, count) -> {
+            origins.put(key, ctx);
+            return count;
+        });
+    }
+
+    private void beginCapture(String key) {
+        capturing.merge(key, 1, Integer::sum);
+    }
+
+    private void endCapture(String key) {
+        capturing.computeIfPresent(key, (k, count) -> {
+            origins.remove(k);
+            return count > 1 ? count - 1 : null;
+        });
+    }
+
+    private void store(String key, boolean stream, String body, List<CachedResponse.Chunk> chunks) {
+        RequestLogContext origin = origins.remove(key);
+        if (origin == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        CachedResponse entry = new CachedResponse();
+        entry.setKey(key);
+        entry.setStream(stream);
+        entry.setBody(body);
+        entry.setChunks(chunks);
+        entry.setProviderId(origin.getProviderId());
+        entry.setProviderName(origin.getProviderName());
+        entry.setActualModel(origin.getActualModel());
+        entry.setFirstTokenMs(origin.getFirstTokenMs() != null ? origin.getFirstTokenMs() : 0);
+        entry.setTotalTimeMs(origin.getTotalTimeMs() != null ? origin.getTotalTimeMs() : 0);
+        entry.setCreatedAt(now);
+        entry.setExpiresAt(now + responseCache.ttlMs());
+        responseCache.put(entry);
+    }
+
+    private static boolean isZeroTemperature(ObjectNode params) {
+        JsonNode temperature = params.get("temperature");
+        return temperature != null && temperature.isNumber() && temperature.doubleValue() == 0.0;
+    }
+}
@@ -0,0 +1,77 @@
+package com.lumina.service.impl;
+
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * SSE 字节级旁路解析器
+ *
+ * 只读取 DataBuffer 的可读区间，不移动读指针，透传的字节保持不变；
+ * 按行切分后只把 data 行解码为字符串交给回调，其余行（event、注释、空行）直接丢弃。
+ * 跨 DataBuffer 的半行会暂存在复用的行缓冲区中。
+ */
+final class SseDataTap {
+
+    interface Listener {
+        void onData(String data);
+
+        void onDone();
+    }
+
+    private static final byte[] DATA_PREFIX = "data:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DONE = "[DONE]".getBytes(StandardCharsets.US_ASCII);
+
+    private final Listener listener;
+    private byte[] line = new byte[256];
+    private int length;
+
+    SseDataTap(Listener listener) {
+        this.listener = listener;
+    }
+
+    void accept(DataBuffer buffer) {
+        int end = buffer.writePosition();
+        for (int i = buffer.readPosition(); i < end; i++) {
+            byte b = buffer.getByte(i);
+            if (b == '\n') {
+                processLine();
+                length = 0;
+            } else {
+                append(b);
+            }
+        }
+    }
+
+    private void append(byte b) {
+        if (length == line.length) {
+            line = Arrays.copyOf(line, line.length * 2);
+        }
+        line[length++] = b;
+    }
+
+    private void processLine() {
+        int len = length;
+        if (len > 0 && line[len - 1] == '\r') {
+            len--;
+        }
+        if (!startsWith(DATA_PREFIX, len)) {
+            return;
+        }
+        int offset = DATA_PREFIX.length;
+        if (offset < len && line[offset] == ' ') {
+            offset++;
+        }
+        int dataLength = len - offset;
+        if (dataLength == DONE.length && Arrays.equals(line, offset, len, DONE, 0, DONE.length)) {
+            listener.onDone();
+            return;
+        }
+        listener.onData(new String(line, offset, dataLength, StandardCharsets.UTF_8));
+    }
+
+    private boolean startsWith(byte[] prefix, int len) {
+        return len >= prefix.length && Arrays.equals(line, 0, prefix.length, prefix, 0, prefix.length);
+    }
+}
@@ -0,0 +1,410 @@
+package com.lumina.service.impl;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.lumina.converter.ProtocolType;
+import com.lumina.service.StreamResumer;
+import com.lumina.state.RoutingTarget;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.util.function.Function;
+
+/**
+ * 流式中途失败的续写（入站为 OpenAI Chat 或 Anthropic Messages）
+ *
+ * 记录已经发给客户端的助手文本，续写时把它作为末尾的 assistant 消息（prefill）重新发起请求；
+ * 续写流按入站协议改写后拼接：OpenAI 沿用首个分片的 id/created/model，
+ * Anthropic 丢弃新的 message_start 并把内容块 index 接到已发出的内容块之后。
+ * 只续写纯文本输出，出现工具调用、推理内容或多候选时放弃续写；已发出文本超过 {@link #MAX_TRACKED_CHARS} 时同样放弃。
+ * 跟踪已发出的分片时只按顶层字段流式扫描，不为每个分片构建完整 JSON 树。
+ *
+ * 注意：OpenAI Chat 协议没有 prefill 语义，上游收到末尾的 assistant 消息时通常把它当作历史轮次，
+ * 重新生成一条完整回复而不是接着写，客户端可能看到重复的开头。Anthropic 上游会按 prefill 续写。
+ */
+@Slf4j
+final class StreamContinuation implements StreamResumer<ServerSentEvent<String>> {
+
+    private final ObjectMapper objectMapper;
+    private final ProtocolType protocol;
+    private final ObjectNode params;
+    private final Function<ObjectNode, Function<RoutingTarget, Flux<ServerSentEvent<String>>>> callFactory;
+
+    /** 续写最多跟踪的已发出文本（字符），更长的回复重发成本高且容易超出上下文，直接放弃续写 */
+    static final int MAX_TRACKED_CHARS = 32 * 1024;
+
+    private final StringBuilder text = new StringBuilder();
+    private boolean resumable = true;
+    private boolean finished;
+
+    // OpenAI Chat：首个分片的标识
+    private JsonNode chunkId;
+    private JsonNode chunkCreated;
+    private JsonNode chunkModel;
+
+    // Anthropic：内容块位置
+    private int lastBlockIndex = -1;
+    private boolean blockOpen;
+
+    private StreamContinuation(ObjectMapper objectMapper, ProtocolType protocol, ObjectNode params,
+                               Function<ObjectNode, Function<RoutingTarget, Flux<ServerSentEvent<String>>>> callFactory) {
+        this.objectMapper = objectMapper;
+        this.protocol = protocol;
+        this.params = params;
+        this.callFactory = callFactory;
+    }
+
+    /**
+     * @param callFactory 根据续写请求体构造调用函数（续写请求同样经过协议转换）
+     * @return 协议不支持续写时返回 null
+     */
+    static StreamContinuation create(ObjectMapper objectMapper, ProtocolType protocol, ObjectNode params,
+                                     Function<ObjectNode, Function<RoutingTarget, Flux<ServerSentEvent<String>>>> callFactory) {
+        if (protocol != ProtocolType.OPENAI_CHAT && protocol != ProtocolType.ANTHROPIC) {
+            return null;
+        }
+        if (!params.path("messages").isArray() || params.path("n").asInt(1) > 1) {
+            return null;
+        }
+        return new StreamContinuation(objectMapper, protocol, params, callFactory);
+    }
+
+    @Override
+    public void onDelivered(ServerSentEvent<String> event) {
+        String data = event.data();
+        if (!resumable || finished || data == null) {
+            return;
+        }
+        if ("[DONE]".equals(data)) {
+            finished = true;
+            return;
+        }
+        try (JsonParser parser = objectMapper.createParser(data)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+            if (protocol == ProtocolType.OPENAI_CHAT) {
+                observeChatChunk(parser);
+            } else {
+                observeAnthropicEvent(parser);
+            }
+        } catch (Exception e) {
+            log.debug("续写跟踪解析失败，放弃续写: {}", e.getMessage());
+            resumable = false;
+        }
+    }
+
+    @Override
+    public Function<RoutingTarget, Flux<ServerSentEvent<String>>> resume() {
+        if (!resumable || finished) {
+            return null;
+        }
+        ObjectNode resumeParams = params.deepCopy();
+        // 上游（尤其 Anthropic）不接受以空白结尾的 assistant prefill，尾部空白交给续写重新生成
+        String prefill = text.toString().stripTrailing();
+        if (!prefill.isEmpty()) {
+            ArrayNode messages = (ArrayNode) resumeParams.get("messages");
+            messages.addObject().put("role", "assistant").put("content", prefill);
+        }
+
+        Function<RoutingTarget, Flux<ServerSentEvent<String>>> call = callFactory.apply(resumeParams);
+        if (protocol == ProtocolType.OPENAI_CHAT) {
+            JsonNode id = chunkId;
+            JsonNode created = chunkCreated;
+            JsonNode model = chunkModel;
+            return target -> call.apply(target).handle((event, sink) -> {
+                ServerSentEvent<String> spliced = spliceChatChunk(event, id, created, model);
+                if (spliced != null) {
+                    sink.next(spliced);
+                }
+            });
+        }
+        boolean continueOpenBlock = blockOpen;
+        int indexOffset = blockOpen ? lastBlockIndex : lastBlockIndex + 1;
+        return target -> call.apply(target).handle((event, sink) -> {
+            ServerSentEvent<String> spliced = spliceAnthropicEvent(event, continueOpenBlock, indexOffset);
+            if (spliced != null) {
+                sink.next(spliced);
+            }
+        });
+    }
+
+    private void observeChatChunk(JsonParser parser) throws IOException {
+        JsonNode id = null;
+        JsonNode created = null;
+        JsonNode model = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id", "created", "model" -> {
+                    if (chunkId != null || value == JsonToken.VALUE_NULL) {
+                        parser.skipChildren();
+                        continue;
+                    }
+                    JsonNode node = parser.readValueAsTree();
+                    switch (field) {
+                        case "id" -> id = node;
+                        case "created" -> created = node;
+                        default -> model = node;
+                    }
+                }
+                case "choices" -> {
+                    if (value == JsonToken.START_ARRAY) {
+                        observeChatChoices(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        if (chunkId == null && id != null) {
+            chunkId = id;
+            chunkCreated = created;
+            chunkModel = model;
+        }
+    }
+
+    /**
+     * 只跟踪第一个候选，其余候选直接跳过
+     */
+    private void observeChatChoices(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("delta".equals(field) && value == JsonToken.START_OBJECT) {
+                    observeChatDelta(parser);
+                } else {
+                    if ("finish_reason".equals(field) && value != JsonToken.VALUE_NULL) {
+                        finished = true;
+                    }
+                    parser.skipChildren();
+                }
+            }
+            token = parser.nextToken();
+        }
+        while (token != null && token != JsonToken.END_ARRAY) {
+            parser.skipChildren();
+            token = parser.nextToken();
+        }
+    }
+
+    private void observeChatDelta(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "tool_calls", "function_call", "reasoning_content" -> {
+                    if (value != JsonToken.VALUE_NULL) {
+                        resumable = false;
+                    }
+                    parser.skipChildren();
+                }
+                case "content" -> {
+                    if (value == JsonToken.VALUE_STRING) {
+                        appendText(parser.getText());
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private void observeAnthropicEvent(JsonParser parser) throws IOException {
+        String type = null;
+        int index = 0;
+        EventPart block = null;
+        EventPart delta = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "type" -> type = value == JsonToken.VALUE_STRING ? parser.getText() : null;
+                case "index" -> index = value == JsonToken.VALUE_NUMBER_INT ? parser.getIntValue() : index;
+                case "content_block" -> block = readEventPart(parser, value);
+                case "delta" -> delta = readEventPart(parser, value);
+                default -> parser.skipChildren();
+            }
+        }
+        if (type == null) {
+            return;
+        }
+        switch (type) {
+            case "content_block_start" -> {
+                if (block == null || !"text".equals(block.type())) {
+                    resumable = false;
+                    return;
+                }
+                lastBlockIndex = index;
+                blockOpen = true;
+                appendText(block.text());
+            }
+            case "content_block_delta" -> {
+                if (delta == null || !"text_delta".equals(delta.type())) {
+                    resumable = false;
+                    return;
+                }
+                appendText(delta.text());
+            }
+            case "content_block_stop" -> blockOpen = false;
+            case "message_delta" -> {
+                if (delta != null && delta.stopped()) {
+                    finished = true;
+                }
+            }
+            case "message_stop" -> finished = true;
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * 读取 content_block / delta 里续写关心的标量字段，其余子树跳过
+     */
+    private static EventPart readEventPart(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String type = null;
+        String text = null;
+        boolean stopped = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "type" -> type = token == JsonToken.VALUE_STRING ? parser.getText() : null;
+                case "text" -> text = token == JsonToken.VALUE_STRING ? parser.getText() : null;
+                case "stop_reason" -> stopped = token != JsonToken.VALUE_NULL;
+                default -> parser.skipChildren();
+            }
+        }
+        return new EventPart(type, text, stopped);
+    }
+
+    private void appendText(String fragment) {
+        if (fragment == null || fragment.isEmpty()) {
+            return;
+        }
+        if (text.length() + fragment.length() > MAX_TRACKED_CHARS) {
+            log.debug("续写跟踪的文本超过 {} 字符，放弃续写", MAX_TRACKED_CHARS);
+            resumable = false;
+            text.setLength(0);
+            text.trimToSize();
+            return;
+        }
+        text.append(fragment);
+    }
+
+    private ServerSentEvent<String> spliceChatChunk(ServerSentEvent<String> event, JsonNode id, JsonNode created, JsonNode model) {
+        String data = event.data();
+        if (data == null || "[DONE]".equals(data)) {
+            return event;
+        }
+        try {
+            JsonNode node = objectMapper.readTree(data);
+            if (!(node instanceof ObjectNode chunk)) {
+                return event;
+            }
+            if (id != null) {
+                chunk.set("id", id);
+            }
+            if (created != null) {
+                chunk.set("created", created);
+            }
+            if (model != null) {
+                chunk.set("model", model);
+            }
+            JsonNode choices = chunk.path("choices");
+            if (choices.isArray() && !choices.isEmpty() && choices.get(0).path("delta") instanceof ObjectNode delta) {
+                // 客户端已经收到过 role，续写流开头只有 role 的分片直接丢弃
+                delta.remove("role");
+                if (delta.isEmpty() && !choices.get(0).hasNonNull("finish_reason") && !chunk.hasNonNull("usage")) {
+                    return null;
+                }
+            }
+            return rebuild(event, chunk);
+        } catch (Exception e) {
+            return event;
+        }
+    }
+
+    private ServerSentEvent<String> spliceAnthropicEvent(ServerSentEvent<String> event, boolean continueOpenBlock, int indexOffset) {
+        String data = event.data();
+        if (data == null) {
+            return event;
+        }
+        try {
+            // 只有 message_start 和内容块事件需要改写，其余事件（message_delta、ping 等）不构建 JSON 树
+            String type = topLevelType(data);
+            if (type == null || !(type.equals("message_start") || type.startsWith("content_block_"))) {
+                return event;
+            }
+            JsonNode node = objectMapper.readTree(data);
+            if (!(node instanceof ObjectNode payload)) {
+                return event;
+            }
+            switch (payload.path("type").asText()) {
+                case "message_start" -> {
+                    return null;
+                }
+                case "content_block_start" -> {
+                    int index = payload.path("index").asInt();
+                    if (continueOpenBlock && index == 0) {
+                        return null;
+                    }
+                    payload.put("index", index + indexOffset);
+                    return rebuild(event, payload);
+                }
+                case "content_block_delta", "content_block_stop" -> {
+                    payload.put("index", payload.path("index").asInt() + indexOffset);
+                    return rebuild(event, payload);
+                }
+                default -> {
+                    return event;
+                }
+            }
+        } catch (Exception e) {
+            return event;
+        }
+    }
+
+    private String topLevelType(String data) throws IOException {
+        try (JsonParser parser = objectMapper.createParser(data)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("type".equals(field)) {
+                    return value == JsonToken.VALUE_STRING ? parser.getText() : null;
+                }
+                parser.skipChildren();
+            }
+            return null;
+        }
+    }
+
+    private ServerSentEvent<String> rebuild(ServerSentEvent<String> event, JsonNode data) throws Exception {
+        return ServerSentEvent.<String>builder()
+                .id(event.id())
+                .event(event.event())
+                .data(objectMapper.writeValueAsString(data))
+                .build();
+    }
+
+    private record EventPart(String type, String text, boolean stopped) {
+    }
+}
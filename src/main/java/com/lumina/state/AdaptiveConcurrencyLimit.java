@@ -0,0 +1,95 @@
+package com.lumina.state;
+
+import com.lumina.config.LuminaProperties;
+
+/**
+ * Provider 自适应并发上限（Gradient 算法）
+ *
+ * 维护短期 RTT 和长期 RTT 两条 EMA：短期 RTT 没有高于长期 RTT 的 tolerance 倍时认为上游未排队，
+ * 上限按 sqrt(limit) 逐步放大；RTT 膨胀时按 长期/短期 的比值（不低于 0.5）收缩。
+ * 429 和超时直接按 backoffRatio 乘性下调。在途请求不足上限一半时不放大，避免空闲期上限无限增长。
+ */
+public class AdaptiveConcurrencyLimit {
+
+    /** 上限变化方向：1 上调，-1 下调，0 不变 */
+    public static final int UNCHANGED = 0;
+
+    private double limit = -1;
+    private double shortRttMs;
+    private double longRttMs;
+    private long samples;
+
+    /**
+     * 当前上限；首次使用时以静态配置值作为初始值
+     */
+    public synchronized int limit(int configured, LuminaProperties.AdaptiveConcurrency properties) {
+        if (limit < 0) {
+            limit = clamp(configured, properties);
+        }
+        return (int) limit;
+    }
+
+    /**
+     * 记录一次成功请求的 RTT
+     *
+     * @param inFlight 请求开始时该 Provider 的在途请求数（含本次）
+     * @return 上限变化方向
+     */
+    public synchronized int onSample(long rttMs, int inFlight, LuminaProperties.AdaptiveConcurrency properties) {
+        if (limit < 0 || rttMs <= 0) {
+            return UNCHANGED;
+        }
+        double rtt = rttMs;
+        if (samples++ == 0) {
+            shortRttMs = rtt;
+            longRttMs = rtt;
+            return UNCHANGED;
+        }
+        shortRttMs += (rtt - shortRttMs) * 2.0 / (properties.getShortWindow() + 1);
+        longRttMs += (rtt - longRttMs) * 2.0 / (properties.getLongWindow() + 1);
+        // 长期 RTT 明显偏高时（如上游扩容后变快）加速回落，防止长期基线一直压住上限
+        if (longRttMs > shortRttMs * 2) {
+            longRttMs *= 0.95;
+        }
+        if (inFlight < limit / 2) {
+            return UNCHANGED;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, properties.getTolerance() * longRttMs / shortRttMs));
+        double target = limit * gradient + Math.sqrt(limit);
+        double smoothing = properties.getSmoothing();
+        return update(limit * (1 - smoothing) + target * smoothing, properties);
+    }
+
+    /**
+     * 上游返回 429 或超时，乘性下调上限
+     */
+    public synchronized int onOverload(LuminaProperties.AdaptiveConcurrency properties) {
+        if (limit < 0) {
+            return UNCHANGED;
+        }
+        return update(limit * properties.getBackoffRatio(), properties);
+    }
+
+    public synchronized double getShortRttMs() {
+        return shortRttMs;
+    }
+
+    public synchronized double getLongRttMs() {
+        return longRttMs;
+    }
+
+    public synchronized int getLimit() {
+        return (int) Math.max(0, limit);
+    }
+
+    private int update(double newLimit, LuminaProperties.AdaptiveConcurrency properties) {
+        int before = (int) limit;
+        limit = clamp(newLimit, properties);
+        return Integer.compare((int) limit, before);
+    }
+
+    private static double clamp(double value, LuminaProperties.AdaptiveConcurrency properties) {
+        return Math.max(properties.getMinLimit(), Math.min(properties.getMaxLimit(), value));
+    }
+}
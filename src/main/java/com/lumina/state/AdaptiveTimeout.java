@@ -0,0 +1,36 @@
+package com.lumina.state;
+
+import com.lumina.config.LuminaProperties;
+
+/**
+ * 按 Provider 近期延迟分布学习首包超时
+ *
+ * 流式请求取首包延迟（TTFT）p99，非流式取总延迟 p99，乘以放大系数后限制在 [minTimeoutMs, 分组静态超时] 之间。
+ * 分组静态超时作为上限：没有配置静态超时、样本不足或未启用时原样返回静态值。
+ */
+public final class AdaptiveTimeout {
+
+    private AdaptiveTimeout() {
+    }
+
+    /**
+     * @param ceilingMs 分组配置的 firstTokenTimeout
+     * @return 本次尝试使用的首包超时（毫秒），null 表示不设超时
+     */
+    public static Integer resolve(ProviderRuntimeState state, Integer ceilingMs, boolean stream,
+                                  LuminaProperties.AdaptiveTimeout config) {
+        if (!config.isEnabled() || state == null || ceilingMs == null || ceilingMs <= 0) {
+            return ceilingMs;
+        }
+        LatencyHistogram histogram = stream ? state.getTtftHistogram() : state.getLatencyHistogram();
+        if (histogram.count() < config.getMinSamples()) {
+            return ceilingMs;
+        }
+        long p99 = histogram.percentile(0.99);
+        if (p99 <= 0) {
+            return ceilingMs;
+        }
+        long learned = Math.max(config.getMinTimeoutMs(), Math.round(p99 * config.getFactor()));
+        return (int) Math.min(learned, ceilingMs);
+    }
+}
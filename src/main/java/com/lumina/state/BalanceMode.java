@@ -0,0 +1,45 @@
+package com.lumina.state;
+
+/**
+ * 分组负载均衡模式（groups.balance_mode）
+ *
+ * 前端保留的 2/3/4 等历史取值未单独实现，按 SAPR 处理。
+ */
+public enum BalanceMode {
+
+    ROUND_ROBIN(1, "round_robin"),
+    SAPR(5, "sapr"),
+    /** 按稳定提示词前缀做 rendezvous 哈希，把相同前缀固定到同一 Provider 以提高上游 prompt cache 命中 */
+    AFFINITY(6, "affinity"),
+    /** 按健康分加权抽取两个候选，取按 weight 归一化后在途请求更少的一个（power of two choices） */
+    P2C(7, "p2c"),
+    /** 选择预估费用最低且近期延迟、错误率满足分组 SLO 的 Provider，便宜的 Provider 劣化时溢出到更贵的 */
+    COST(8, "cost");
+
+    private final int code;
+    private final String metricName;
+
+    BalanceMode(int code, String metricName) {
+        this.code = code;
+        this.metricName = metricName;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getMetricName() {
+        return metricName;
+    }
+
+    public static BalanceMode of(Integer code) {
+        if (code != null) {
+            for (BalanceMode mode : values()) {
+                if (mode.code == code) {
+                    return mode;
+                }
+            }
+        }
+        return SAPR;
+    }
+}
@@ -0,0 +1,137 @@
+package com.lumina.state;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 分组级公平等待队列（按 API Key 加权公平排队）
+ *
+ * 分组内所有 Provider 舱壁都满时请求在此等待。每个请求按 start-time fair queueing 打上虚拟完成时间：
+ * max(当前虚拟时间, 该租户上一个请求的完成时间) + 1 / weight，舱壁释放时唤醒完成时间最小的请求。
+ * 同一租户短时间内涌入的大量请求完成时间依次后移，不会挤占其他租户的排队位置。
+ * 每个请求的等待截止时间在入队时确定；被唤醒后没抢到配额的请求以原来的完成时间重新入队，截止时间不变。
+ */
+public class FairWaitQueue {
+
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>(
+            Comparator.comparingDouble((Waiter w) -> w.finishTag).thenComparingLong(w -> w.sequence));
+    private final Map<String, Double> lastFinish = new HashMap<>();
+    private double virtualTime;
+    private long sequence;
+
+    /**
+     * 加入队列
+     * @param maxWait 该请求总的排队时间上限，包括被唤醒后重新入队的等待
+     * @return 队列已满时返回 null
+     */
+    public synchronized Waiter enqueue(String tenant, double weight, int capacity, Duration maxWait) {
+        if (waiters.size() >= capacity) {
+            return null;
+        }
+        String key = tenant != null ? tenant : "";
+        double start = Math.max(virtualTime, lastFinish.getOrDefault(key, 0.0));
+        double finish = start + 1.0 / Math.max(weight, 0.001);
+        lastFinish.put(key, finish);
+        Waiter waiter = new Waiter(finish, sequence++, System.nanoTime() + maxWait.toNanos());
+        waiters.add(waiter);
+        return waiter;
+    }
+
+    /**
+     * 有舱壁配额释放时唤醒排在最前的请求（跳过已超时或取消的请求）
+     */
+    public void signal() {
+        while (true) {
+            Waiter next;
+            synchronized (this) {
+                next = waiters.poll();
+                if (next == null) {
+                    return;
+                }
+                virtualTime = Math.max(virtualTime, next.finishTag);
+                if (waiters.isEmpty()) {
+                    // 队列清空后各租户重新开始计数，避免 lastFinish 无限增长
+                    lastFinish.clear();
+                }
+            }
+            if (next.grant()) {
+                return;
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return waiters.size();
+    }
+
+    private synchronized void remove(Waiter waiter) {
+        waiters.remove(waiter);
+    }
+
+    public final class Waiter {
+        private final double finishTag;
+        private final long sequence;
+        private final long deadlineNanos;
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        private volatile boolean abandoned;
+        private volatile Sinks.Empty<Void> granted = Sinks.empty();
+
+        private Waiter(double finishTag, long sequence, long deadlineNanos) {
+            this.finishTag = finishTag;
+            this.sequence = sequence;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * 等待被唤醒，最多等到入队时确定的截止时间；超时后移出队列并以 onTimeout 提供的异常结束
+         */
+        public Mono<Void> await(Supplier<? extends Throwable> onTimeout) {
+            Sinks.Empty<Void> sink = granted;
+            Duration remaining = Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+            return sink.asMono()
+                    .timeout(remaining, Mono.defer(() -> abandon() ? Mono.error(onTimeout.get()) : sink.asMono()))
+                    .doOnCancel(this::abandon);
+        }
+
+        /**
+         * 被唤醒后仍没抢到舱壁配额时，以原来的完成时间重新排队
+         * @return 已取消或排队时间已用完时返回 false
+         */
+        public boolean requeue() {
+            if (abandoned || System.nanoTime() >= deadlineNanos) {
+                return false;
+            }
+            synchronized (FairWaitQueue.this) {
+                granted = Sinks.empty();
+                done.set(false);
+                waiters.add(this);
+            }
+            return true;
+        }
+
+        private boolean grant() {
+            if (done.compareAndSet(false, true)) {
+                granted.tryEmitEmpty();
+                return true;
+            }
+            return false;
+        }
+
+        private boolean abandon() {
+            if (done.compareAndSet(false, true)) {
+                abandoned = true;
+                remove(this);
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.lumina.state;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 滚动延迟直方图（对数-线性桶，无锁）
+ *
+ * 0~15ms 每毫秒一个桶，之后每个 2 的幂区间再等分 8 个子桶，相对误差约 12.5%。
+ * 保留当前窗口和上一个窗口，分位数基于两个窗口合并计算，窗口到期时用 CAS 轮转。
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR_LIMIT = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 30;
+    static final int BUCKET_COUNT = LINEAR_LIMIT + (MAX_EXPONENT - 4 + 1) * SUB_BUCKETS;
+
+    private final long windowMs;
+    private final AtomicReference<Window> current;
+
+    private static final class Window {
+        final long startMs;
+        final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+        volatile Window previous;
+
+        Window(long startMs, Window previous) {
+            this.startMs = startMs;
+            this.previous = previous;
+        }
+    }
+
+    /**
+     * @param windowMs 单个窗口时长，分位数覆盖最近 1~2 个窗口
+     */
+    public LatencyHistogram(long windowMs) {
+        this.windowMs = windowMs;
+        this.current = new AtomicReference<>(new Window(System.currentTimeMillis(), null));
+    }
+
+    public void record(long latencyMs) {
+        currentWindow(System.currentTimeMillis()).counts.incrementAndGet(indexOf(Math.max(0, latencyMs)));
+    }
+
+    /**
+     * 最近窗口内的样本数
+     */
+    public long count() {
+        long total = 0;
+        long[] merged = snapshot();
+        for (long c : merged) {
+            total += c;
+        }
+        return total;
+    }
+
+    /**
+     * 分位数（返回所在桶的上界，毫秒）；没有样本时返回 -1
+     * @param quantile 0~1，例如 0.95
+     */
+    public long percentile(double quantile) {
+        return percentiles(quantile)[0];
+    }
+
+    /**
+     * 基于同一份快照计算多个分位数，避免多次合并窗口；没有样本时对应位置为 -1
+     */
+    public long[] percentiles(double... quantiles) {
+        long[] merged = snapshot();
+        long total = 0;
+        for (long c : merged) {
+            total += c;
+        }
+        long[] result = new long[quantiles.length];
+        for (int q = 0; q < quantiles.length; q++) {
+            result[q] = total == 0 ? -1 : valueAt(merged, total, quantiles[q]);
+        }
+        return result;
+    }
+
+    private static long valueAt(long[] merged, long total, double quantile) {
+        long rank = Math.max(1, (long) Math.ceil(Math.min(1.0, Math.max(0.0, quantile)) * total));
+        long acc = 0;
+        for (int i = 0; i < merged.length; i++) {
+            acc += merged[i];
+            if (acc >= rank && merged[i] > 0) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(merged.length - 1);
+    }
+
+    public void reset() {
+        current.set(new Window(System.currentTimeMillis(), null));
+    }
+
+    private long[] snapshot() {
+        long now = System.currentTimeMillis();
+        Window window = currentWindow(now);
+        long[] merged = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            merged[i] = window.counts.get(i);
+        }
+        Window previous = window.previous;
+        if (previous != null && now - previous.startMs < 2 * windowMs) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                merged[i] += previous.counts.get(i);
+            }
+        }
+        return merged;
+    }
+
+    private Window currentWindow(long now) {
+        while (true) {
+            Window window = current.get();
+            if (now - window.startMs < windowMs) {
+                return window;
+            }
+            // 跨越多个窗口时上一个窗口已过期，直接丢弃
+            Window previous = now - window.startMs < 2 * windowMs ? window : null;
+            Window next = new Window(now, previous);
+            if (current.compareAndSet(window, next)) {
+                window.previous = null;
+                return next;
+            }
+        }
+    }
+
+    static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return LINEAR_LIMIT + (exponent - 4) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int offset = index - LINEAR_LIMIT;
+        int exponent = offset / SUB_BUCKETS + 4;
+        int subBucket = offset % SUB_BUCKETS;
+        long base = 1L << exponent;
+        long step = base >>> SUB_BUCKET_BITS;
+        return base + (subBucket + 1) * step - 1;
+    }
+}
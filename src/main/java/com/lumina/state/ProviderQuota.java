@@ -0,0 +1,228 @@
+package com.lumina.state;
+
+import org.springframework.http.HttpHeaders;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * 上游配额模型：从每个响应的限流头中解析剩余请求数、剩余 token 数和重置时间
+ *
+ * 支持 OpenAI 风格的 x-ratelimit-{limit,remaining,reset}-{requests,tokens}（重置时间为 "6m0s" 形式的时长）、
+ * Anthropic 的 anthropic-ratelimit-{requests,tokens,input-tokens}-{limit,remaining,reset}（RFC 3339 时间），
+ * 以及 429/503 响应的 retry-after / retry-after-ms。
+ * 字段各自 volatile，读到的是最近一次响应的快照；过了重置时间的剩余量视为已恢复。
+ */
+public class ProviderQuota {
+
+    private static final long UNKNOWN = -1;
+
+    private volatile long requestLimit = UNKNOWN;
+    private volatile long requestRemaining = UNKNOWN;
+    private volatile long requestResetAt;
+    private volatile long tokenLimit = UNKNOWN;
+    private volatile long tokenRemaining = UNKNOWN;
+    private volatile long tokenResetAt;
+    private volatile long cooldownUntil;
+
+    /**
+     * 根据响应头更新配额
+     *
+     * @param status 响应状态码
+     * @param maxCooldownMs retry-after 冷却时间上限
+     */
+    public void observe(HttpHeaders headers, int status, long nowMs, long maxCooldownMs) {
+        boolean anthropic = headers.getFirst("anthropic-ratelimit-requests-remaining") != null
+                || headers.getFirst("anthropic-ratelimit-tokens-remaining") != null
+                || headers.getFirst("anthropic-ratelimit-input-tokens-remaining") != null;
+        if (anthropic) {
+            observeRequests(headers, "anthropic-ratelimit-requests-limit", "anthropic-ratelimit-requests-remaining",
+                    "anthropic-ratelimit-requests-reset", nowMs);
+            String tokens = headers.getFirst("anthropic-ratelimit-tokens-remaining") != null ? "tokens" : "input-tokens";
+            observeTokens(headers, "anthropic-ratelimit-" + tokens + "-limit", "anthropic-ratelimit-" + tokens + "-remaining",
+                    "anthropic-ratelimit-" + tokens + "-reset", nowMs);
+        } else {
+            observeRequests(headers, "x-ratelimit-limit-requests", "x-ratelimit-remaining-requests",
+                    "x-ratelimit-reset-requests", nowMs);
+            observeTokens(headers, "x-ratelimit-limit-tokens", "x-ratelimit-remaining-tokens",
+                    "x-ratelimit-reset-tokens", nowMs);
+        }
+
+        if (status == 429 || status == 503) {
+            long retryAfterMs = retryAfterMs(headers, nowMs);
+            if (retryAfterMs < 0 && status == 429) {
+                // 没有 retry-after 时，配额耗尽的一侧按其重置时间冷却
+                long resetAt = Math.max(requestRemaining == 0 ? requestResetAt : 0, tokenRemaining == 0 ? tokenResetAt : 0);
+                retryAfterMs = resetAt > nowMs ? resetAt - nowMs : -1;
+            }
+            if (retryAfterMs >= 0) {
+                cooldownUntil = nowMs + Math.min(retryAfterMs, maxCooldownMs);
+            }
+        }
+    }
+
+    /**
+     * 是否处于 retry-after 冷却期
+     */
+    public boolean isCoolingDown(long nowMs) {
+        return nowMs < cooldownUntil;
+    }
+
+    /**
+     * 冷却中，或剩余请求数 / token 数已经耗尽且尚未到重置时间
+     */
+    public boolean isExhausted(long nowMs) {
+        return isCoolingDown(nowMs)
+                || (requestRemaining == 0 && nowMs < requestResetAt)
+                || (tokenRemaining == 0 && nowMs < tokenResetAt);
+    }
+
+    /**
+     * 剩余配额比例（请求数和 token 数取较小值），未知或已过重置时间时为 1
+     */
+    public double remainingFraction(long nowMs) {
+        return Math.min(fraction(requestRemaining, requestLimit, requestResetAt, nowMs),
+                fraction(tokenRemaining, tokenLimit, tokenResetAt, nowMs));
+    }
+
+    public long getCooldownUntil() {
+        return cooldownUntil;
+    }
+
+    public long getRequestRemaining() {
+        return requestRemaining;
+    }
+
+    public long getTokenRemaining() {
+        return tokenRemaining;
+    }
+
+    private void observeRequests(HttpHeaders headers, String limitHeader, String remainingHeader, String resetHeader,
+                                 long nowMs) {
+        long remaining = parseLong(headers.getFirst(remainingHeader));
+        if (remaining == UNKNOWN) {
+            return;
+        }
+        requestLimit = parseLong(headers.getFirst(limitHeader));
+        requestResetAt = parseResetAt(headers.getFirst(resetHeader), nowMs);
+        requestRemaining = remaining;
+    }
+
+    private void observeTokens(HttpHeaders headers, String limitHeader, String remainingHeader, String resetHeader,
+                               long nowMs) {
+        long remaining = parseLong(headers.getFirst(remainingHeader));
+        if (remaining == UNKNOWN) {
+            return;
+        }
+        tokenLimit = parseLong(headers.getFirst(limitHeader));
+        tokenResetAt = parseResetAt(headers.getFirst(resetHeader), nowMs);
+        tokenRemaining = remaining;
+    }
+
+    private static double fraction(long remaining, long limit, long resetAt, long nowMs) {
+        if (remaining == UNKNOWN || limit <= 0 || nowMs >= resetAt) {
+            return 1.0;
+        }
+        return Math.min(1.0, (double) remaining / limit);
+    }
+
+    /**
+     * retry-after-ms（毫秒）优先，其次 retry-after（秒数或 HTTP 日期）；没有时返回 -1
+     */
+    static long retryAfterMs(HttpHeaders headers, long nowMs) {
+        String millis = headers.getFirst("retry-after-ms");
+        if (millis != null) {
+            try {
+                return Math.max(0, (long) Double.parseDouble(millis.trim()));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        String value = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (value == null || value.isBlank()) {
+            return -1;
+        }
+        try {
+            return Math.max(0, (long) (Double.parseDouble(value.trim()) * 1000));
+        } catch (NumberFormatException ignored) {
+        }
+        try {
+            return Math.max(0, ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+                    .toInstant().toEpochMilli() - nowMs);
+        } catch (DateTimeParseException ignored) {
+            return -1;
+        }
+    }
+
+    /**
+     * 重置时间：RFC 3339 时间戳，或 "1h2m3.5s" / "20ms" / 纯秒数形式的时长；无法解析时视为立即重置
+     */
+    static long parseResetAt(String value, long nowMs) {
+        if (value == null || value.isBlank()) {
+            return nowMs;
+        }
+        String text = value.trim();
+        if (text.length() > 10 && text.charAt(4) == '-') {
+            try {
+                return Instant.parse(text).toEpochMilli();
+            } catch (DateTimeParseException e) {
+                return nowMs;
+            }
+        }
+        long duration = parseDurationMs(text);
+        return duration >= 0 ? nowMs + duration : nowMs;
+    }
+
+    static long parseDurationMs(String text) {
+        double total = 0;
+        int i = 0;
+        boolean matched = false;
+        while (i < text.length()) {
+            int start = i;
+            while (i < text.length() && (Character.isDigit(text.charAt(i)) || text.charAt(i) == '.')) {
+                i++;
+            }
+            if (start == i) {
+                return -1;
+            }
+            double number;
+            try {
+                number = Double.parseDouble(text.substring(start, i));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+            if (text.startsWith("ms", i)) {
+                total += number;
+                i += 2;
+            } else if (i < text.length() && text.charAt(i) == 'h') {
+                total += number * 3_600_000;
+                i++;
+            } else if (i < text.length() && text.charAt(i) == 'm') {
+                total += number * 60_000;
+                i++;
+            } else if (i < text.length() && text.charAt(i) == 's') {
+                total += number * 1000;
+                i++;
+            } else if (i == text.length() && !matched) {
+                // 纯数字按秒处理
+                total += number * 1000;
+            } else {
+                return -1;
+            }
+            matched = true;
+        }
+        return (long) total;
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return UNKNOWN;
+        }
+        try {
+            return Math.max(0, (long) Double.parseDouble(value.trim()));
+        } catch (NumberFormatException e) {
+            return UNKNOWN;
+        }
+    }
+}
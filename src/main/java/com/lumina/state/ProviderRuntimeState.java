@@ -28,9 +28,24 @@ public class ProviderRuntimeState {
     // 延迟 EMA（指数滑动平均）
     private volatile double latencyEmaMs = 0;
 
+    // 成功请求的滚动总延迟分布（最近 1~2 分钟）
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram(60_000);
+
+    // 流式请求的滚动首包延迟（TTFT）分布，总延迟主要取决于输出长度，单独统计
+    private final LatencyHistogram ttftHistogram = new LatencyHistogram(60_000);
+
+    // 流式响应相邻分片之间的间隔分布
+    private final LatencyHistogram chunkGapHistogram = new LatencyHistogram(60_000);
+
+    // 流式响应首包之后的输出速度分布（token/s），直方图只用来存放数值
+    private final LatencyHistogram outputThroughputHistogram = new LatencyHistogram(60_000);
+
     // 成功率 EMA
     private volatile double successRateEma = 1.0;
 
+    // 成功响应输出 token 数的 EMA，成本模式据此预估输出费用；没有样本时为 0
+    private volatile double outputTokensEma = 0;
+
     // 当前评分（0 ~ 100）
     private volatile double score = 100;
 
@@ -101,6 +116,18 @@ public class ProviderRuntimeState {
     // Provider 级别并发控制
     private final ProviderBulkhead bulkhead;
 
+    // 输出 token 数 EMA 的平滑系数，输出长度波动大，取较小值
+    private static final double OUTPUT_TOKENS_ALPHA = 0.1;
+
+    // 参与输出速度统计的最少输出 token 数
+    static final int MIN_THROUGHPUT_OUTPUT_TOKENS = 20;
+
+    // 上游限流头解析出的配额和 retry-after 冷却
+    private final ProviderQuota quota = new ProviderQuota();
+
+    // 自适应并发上限，启用时替代静态的 maxConcurrentRequestsPerProvider
+    private final AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit();
+
     // 脏标记：仅脏状态参与批量落盘
     private final AtomicBoolean dirty = new AtomicBoolean(false);
 
@@ -137,6 +164,29 @@ public class ProviderRuntimeState {
         slidingWindowMetrics.record(success, isSlow);
     }
 
+    /**
+     * 记录一次流式响应的输出速度；输出过短时首包之后的耗时主要是网络抖动，不计入
+     * @param outputTokens 输出 token 数
+     * @param generationMs 首包到结束的耗时（毫秒）
+     */
+    public void recordOutputThroughput(long outputTokens, long generationMs) {
+        if (outputTokens < MIN_THROUGHPUT_OUTPUT_TOKENS || generationMs <= 0) {
+            return;
+        }
+        outputThroughputHistogram.record(outputTokens * 1000 / generationMs);
+    }
+
+    /**
+     * 记录一次成功响应的输出 token 数
+     */
+    public void recordOutputTokens(int outputTokens) {
+        if (outputTokens <= 0) {
+            return;
+        }
+        double old = outputTokensEma;
+        outputTokensEma = old == 0 ? outputTokens : OUTPUT_TOKENS_ALPHA * outputTokens + (1 - OUTPUT_TOKENS_ALPHA) * old;
+    }
+
     /**
      * 获取滑动窗口错误率
      */
@@ -15,6 +15,11 @@ public class ProviderScoreCalculator {
     private static final double ALPHA = 0.4;
     private static final double LATENCY_SAFE_THRESHOLD_MS = 5000.0;
     private static final double LATENCY_MAX_THRESHOLD_MS = 30000.0;
+    private static final double TTFT_SAFE_THRESHOLD_MS = 2000.0;
+    private static final double TTFT_MAX_THRESHOLD_MS = 15000.0;
+    private static final double THROUGHPUT_SAFE_TPS = 30.0;
+    private static final double THROUGHPUT_MIN_TPS = 5.0;
+    private static final int MIN_THROUGHPUT_SAMPLES = 5;
     private static final int MIN_REQUESTS_FOR_SCORE = 15;  // 最少请求数
 
     /**
@@ -24,8 +29,20 @@ public class ProviderScoreCalculator {
      * @param latencyMs 延迟（毫秒）
      */
     public void update(ProviderRuntimeState stats, FailureType failureType, long latencyMs) {
+        update(stats, failureType, latencyMs, -1);
+    }
+
+    /**
+     * 更新统计数据（流式请求）
+     * 流式请求的总时长主要取决于输出长度，慢调用按首包延迟判断
+     * @param ttftMs 首包延迟（毫秒），首包未到达或非流式请求为 -1
+     */
+    public void update(ProviderRuntimeState stats, FailureType failureType, long latencyMs, long ttftMs) {
         boolean success = (failureType == FailureType.SUCCESS);
-        boolean isSlow = latencyMs >= config.getSlowCallThresholdMs();
+        boolean isSlow = (ttftMs >= 0 ? ttftMs : latencyMs) >= config.getSlowCallThresholdMs();
+        if (ttftMs >= 0) {
+            stats.getTtftHistogram().record(ttftMs);
+        }
         update(stats, success, latencyMs, isSlow);
     }
 
@@ -92,6 +109,10 @@ public class ProviderScoreCalculator {
                 oldLatency == 0 ? latencyMs : ALPHA * latencyMs + (1 - ALPHA) * oldLatency
         );
 
+        if (success) {
+            stats.getLatencyHistogram().record(latencyMs);
+        }
+
         // 成功率 EMA
         double currentSuccess = success ? 1.0 : 0.0;
         double oldSuccessRate = stats.getSuccessRateEma();
@@ -128,17 +149,8 @@ public class ProviderScoreCalculator {
             return;
         }
 
-        // 1. 延迟惩罚
-        double currentLatency = stats.getLatencyEmaMs();
-        double latencyPenalty = 0;
-
-        if (currentLatency > LATENCY_SAFE_THRESHOLD_MS) {
-            latencyPenalty = Math.min(
-                    (currentLatency - LATENCY_SAFE_THRESHOLD_MS) /
-                            (LATENCY_MAX_THRESHOLD_MS - LATENCY_SAFE_THRESHOLD_MS),
-                    1.0
-            );
-        }
+        // 1. 延迟惩罚：按总延迟和首包延迟的 p50/p95/p99 计算，取较重的一项
+        double latencyPenalty = latencyPenalty(stats);
 
         // 2. 从新的滑动窗口获取错误率（O(1) 操作，替代旧的 stream 遍历）
         double recentErrorRate = stats.getWindowErrorRate();
@@ -147,14 +159,67 @@ public class ProviderScoreCalculator {
         double slowRate = stats.getWindowSlowRate();
         double slowPenalty = slowRate * 0.5;  // 慢调用率的一半作为惩罚
 
-        // 4. 最终评分
+        // 4. 输出速度惩罚：首包很快但之后输出缓慢的流式 Provider
+        double throughputPenalty = throughputPenalty(stats);
+
+        // 5. 最终评分
         double score =
                 stats.getSuccessRateEma() * 70
                         - latencyPenalty * 20
                         - recentErrorRate * 10
-                        - slowPenalty * 10;
+                        - slowPenalty * 10
+                        - throughputPenalty * 15;
 
         stats.setScore(Math.max(1.0, Math.min(100, score)));
         stats.markDirty();
     }
+
+    /**
+     * 延迟惩罚（0~1）
+     * 分位数同时计入 p95/p99，少量快速请求无法掩盖长尾；总延迟样本不足时回退到 EMA
+     */
+    double latencyPenalty(ProviderRuntimeState stats) {
+        double penalty;
+        LatencyHistogram total = stats.getLatencyHistogram();
+        if (total.count() >= MIN_REQUESTS_FOR_SCORE) {
+            penalty = percentilePenalty(total, LATENCY_SAFE_THRESHOLD_MS, LATENCY_MAX_THRESHOLD_MS);
+        } else {
+            penalty = ramp(stats.getLatencyEmaMs(), LATENCY_SAFE_THRESHOLD_MS, LATENCY_MAX_THRESHOLD_MS);
+        }
+        LatencyHistogram ttft = stats.getTtftHistogram();
+        if (ttft.count() >= MIN_REQUESTS_FOR_SCORE) {
+            penalty = Math.max(penalty, percentilePenalty(ttft, TTFT_SAFE_THRESHOLD_MS, TTFT_MAX_THRESHOLD_MS));
+        }
+        return penalty;
+    }
+
+    /**
+     * 输出速度惩罚（0~1）：流式输出速度中位数低于 30 token/s 开始扣分，5 token/s 及以下扣满；
+     * 样本不足（非流式或输出都很短）时不扣分
+     */
+    double throughputPenalty(ProviderRuntimeState stats) {
+        LatencyHistogram throughput = stats.getOutputThroughputHistogram();
+        if (throughput.count() < MIN_THROUGHPUT_SAMPLES) {
+            return 0;
+        }
+        long medianTps = throughput.percentile(0.5);
+        if (medianTps >= THROUGHPUT_SAFE_TPS) {
+            return 0;
+        }
+        return Math.min((THROUGHPUT_SAFE_TPS - medianTps) / (THROUGHPUT_SAFE_TPS - THROUGHPUT_MIN_TPS), 1.0);
+    }
+
+    private static double percentilePenalty(LatencyHistogram histogram, double safeMs, double maxMs) {
+        long[] p = histogram.percentiles(0.5, 0.95, 0.99);
+        return 0.5 * ramp(p[0], safeMs, maxMs)
+                + 0.3 * ramp(p[1], safeMs, maxMs)
+                + 0.2 * ramp(p[2], safeMs, maxMs);
+    }
+
+    private static double ramp(double latencyMs, double safeMs, double maxMs) {
+        if (latencyMs <= safeMs) {
+            return 0;
+        }
+        return Math.min((latencyMs - safeMs) / (maxMs - safeMs), 1.0);
+    }
 }
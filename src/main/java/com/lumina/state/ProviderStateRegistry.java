@@ -11,6 +11,7 @@ import org.springframework.stereotype.Component;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 @Component
@@ -20,6 +21,8 @@ public class ProviderStateRegistry {
     private final ProviderRuntimeStatsMapper mapper;
     private final CircuitBreakerConfig config;
     private final ConcurrentHashMap<String, ProviderRuntimeState> stateMap = new ConcurrentHashMap<>();
+    /** 移除运行态时递增，持有状态引用的路由计划据此判断是否需要重新编译 */
+    private final AtomicLong generation = new AtomicLong();
 
     @PostConstruct
     public void loadFromDb() {
@@ -94,6 +97,11 @@ public class ProviderStateRegistry {
 
     public void clear() {
         stateMap.clear();
+        generation.incrementAndGet();
+    }
+
+    public long getGeneration() {
+        return generation.get();
     }
 
     /**
@@ -101,7 +109,9 @@ public class ProviderStateRegistry {
      * @param providerId Provider ID
      */
     public void remove(String providerId) {
-        stateMap.remove(providerId);
+        if (stateMap.remove(providerId) != null) {
+            generation.incrementAndGet();
+        }
     }
 
     /**
@@ -110,6 +120,7 @@ public class ProviderStateRegistry {
      */
     public void removeAll(Collection<String> providerIds) {
         providerIds.forEach(stateMap::remove);
+        generation.incrementAndGet();
     }
 
     private boolean isTableNotExists(Throwable e) {
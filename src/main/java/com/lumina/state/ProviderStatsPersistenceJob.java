@@ -135,10 +135,7 @@ public class ProviderStatsPersistenceJob {
      * @return Provider ID
      */
     private String generateProviderId(ModelGroupConfigItem item) {
-        return String.format("%s_%s_%s",
-                item.getBaseUrl(),
-                item.getApiKey() != null ? item.getApiKey().hashCode() : "null",
-                item.getModelName());
+        return RoutingPlanCompiler.providerIdOf(item);
     }
 
     private boolean shouldRunCleanup() {
@@ -0,0 +1,56 @@
+package com.lumina.state;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 竞速请求预算
+ * 每个流式请求存入 ratio 个额度，每次竞速消耗 1 个，额外上游请求数被限制在请求量的 ratio 倍以内
+ */
+public class RaceBudget {
+
+    private static final long SCALE = 1000;
+
+    private final double ratio;
+    private final long depositPerRequest;
+    private final long capacity;
+    private final AtomicLong balance;
+
+    /**
+     * 构造函数
+     * @param ratio 每个请求存入的额度（0.1 表示最多 10% 的请求发起竞速）
+     * @param maxBurst 最多累积的竞速次数
+     */
+    public RaceBudget(double ratio, int maxBurst) {
+        this.ratio = ratio;
+        this.depositPerRequest = Math.round(Math.max(0, ratio) * SCALE);
+        this.capacity = Math.max(1, maxBurst) * SCALE;
+        this.balance = new AtomicLong(capacity);
+    }
+
+    public double getRatio() {
+        return ratio;
+    }
+
+    /**
+     * 记录一个请求，存入额度
+     */
+    public void deposit() {
+        balance.accumulateAndGet(depositPerRequest, (current, delta) -> Math.min(capacity, current + delta));
+    }
+
+    /**
+     * 尝试消耗一次竞速额度
+     * @return 额度不足时返回 false
+     */
+    public boolean tryWithdraw() {
+        while (true) {
+            long current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+}
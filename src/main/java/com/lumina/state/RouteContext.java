@@ -0,0 +1,42 @@
+package com.lumina.state;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 单次请求的路由上下文，在同一请求的所有 Failover 尝试间保持不变
+ *
+ * @param requestHash 灰度配置解析用的请求哈希
+ * @param affinityHash 稳定提示词前缀的哈希，亲和模式下用于 rendezvous 选路；为 null 时不做亲和
+ * @param tenant 发起请求的 API Key，舱壁全满排队时按其公平调度；为 null 时归入匿名租户
+ * @param tokens 请求的 token 估计，成本模式下用于预估各 Provider 的费用；其它模式为 null
+ * @param deadlineAt 请求级截止时间（epoch 毫秒），所有 Failover 尝试和排队共享这一预算；0 表示不限
+ */
+public record RouteContext(int requestHash, Long affinityHash, String tenant, TokenEstimate tokens, long deadlineAt) {
+
+    public static RouteContext random() {
+        return of(null, null);
+    }
+
+    public static RouteContext of(String tenant, Long affinityHash) {
+        return of(tenant, affinityHash, null);
+    }
+
+    public static RouteContext of(String tenant, Long affinityHash, TokenEstimate tokens) {
+        return new RouteContext(ThreadLocalRandom.current().nextInt(), affinityHash, tenant, tokens, 0);
+    }
+
+    public RouteContext withDeadline(long deadlineAt) {
+        return new RouteContext(requestHash, affinityHash, tenant, tokens, deadlineAt);
+    }
+
+    public boolean hasDeadline() {
+        return deadlineAt > 0;
+    }
+
+    /**
+     * 剩余预算（毫秒），没有截止时间时为 {@link Long#MAX_VALUE}
+     */
+    public long remainingMs(long nowMs) {
+        return hasDeadline() ? deadlineAt - nowMs : Long.MAX_VALUE;
+    }
+}
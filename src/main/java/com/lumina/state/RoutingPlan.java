@@ -0,0 +1,54 @@
+package com.lumina.state;
+
+import com.lumina.config.EffectiveCircuitBreakerConfig;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分组级预编译路由计划（不可变）
+ * 由 {@link RoutingPlanCompiler} 在分组配置加载时构建，随分组配置缓存一起失效
+ */
+public final class RoutingPlan {
+
+    private final List<RoutingTarget> targets;
+    private final EffectiveCircuitBreakerConfig groupConfig;
+    private final long stateGeneration;
+    private final AtomicInteger roundRobinCounter = new AtomicInteger(0);
+
+    RoutingPlan(List<RoutingTarget> targets, EffectiveCircuitBreakerConfig groupConfig, long stateGeneration) {
+        this.targets = List.copyOf(targets);
+        this.groupConfig = groupConfig;
+        this.stateGeneration = stateGeneration;
+    }
+
+    public List<RoutingTarget> getTargets() {
+        return targets;
+    }
+
+    public int size() {
+        return targets.size();
+    }
+
+    public RoutingTarget get(int index) {
+        return targets.get(index);
+    }
+
+    /**
+     * Group 级生效配置（maxFailoverAttempts 等）
+     */
+    public EffectiveCircuitBreakerConfig getGroupConfig() {
+        return groupConfig;
+    }
+
+    /**
+     * 构建时 {@link ProviderStateRegistry} 的代数，用于发现运行态被清理后的过期引用
+     */
+    public long getStateGeneration() {
+        return stateGeneration;
+    }
+
+    public AtomicInteger getRoundRobinCounter() {
+        return roundRobinCounter;
+    }
+}
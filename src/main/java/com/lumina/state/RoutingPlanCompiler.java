@@ -0,0 +1,161 @@
+package com.lumina.state;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lumina.config.CircuitBreakerConfigResolver;
+import com.lumina.config.EffectiveCircuitBreakerConfig;
+import com.lumina.config.OverrideCircuitBreakerConfig;
+import com.lumina.converter.ProtocolType;
+import com.lumina.dto.ModelGroupConfig;
+import com.lumina.dto.ModelGroupConfigItem;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 路由计划编译器
+ * 分组配置从数据库加载时编译一次 {@link RoutingPlan}，热路径只读取预解析结果
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RoutingPlanCompiler {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<String, String>> ENDPOINTS_TYPE = new TypeReference<>() {};
+
+    private final ProviderStateRegistry providerStateRegistry;
+    private final CircuitBreakerConfigResolver configResolver;
+
+    /**
+     * 生成 Provider ID（所有模块共用，保证运行态、持久化和管理接口使用同一个 key）
+     */
+    public static String providerIdOf(ModelGroupConfigItem item) {
+        return item.getBaseUrl() + "_"
+                + (item.getApiKey() != null ? String.valueOf(item.getApiKey().hashCode()) : "null") + "_"
+                + item.getModelName();
+    }
+
+    /**
+     * 编译路由计划并挂载到分组配置上，返回原分组配置便于作为缓存加载器使用
+     */
+    public ModelGroupConfig attach(ModelGroupConfig group) {
+        if (group != null) {
+            group.setRoutingPlan(compile(group));
+        }
+        return group;
+    }
+
+    /**
+     * 获取分组的路由计划；未编译或运行态注册表已发生清理时重新编译
+     */
+    public RoutingPlan planFor(ModelGroupConfig group) {
+        RoutingPlan plan = group.getRoutingPlan();
+        if (plan == null || plan.getStateGeneration() != providerStateRegistry.getGeneration()) {
+            plan = compile(group);
+            group.setRoutingPlan(plan);
+        }
+        return plan;
+    }
+
+    public RoutingPlan compile(ModelGroupConfig group) {
+        long generation = providerStateRegistry.getGeneration();
+        EffectiveCircuitBreakerConfig groupConfig = configResolver.resolve(group.getId(), group.getCircuitBreakerConfig());
+        List<ModelGroupConfigItem> items = group.getItems() != null ? group.getItems() : Collections.emptyList();
+        boolean groupGrayscale = isPartialGrayscale(group.getCircuitBreakerConfig());
+
+        List<RoutingTarget> targets = new ArrayList<>(items.size());
+        for (ModelGroupConfigItem item : items) {
+            String providerId = providerIdOf(item).intern();
+
+            ProviderRuntimeState state = providerStateRegistry.get(providerId);
+            if (state.getProviderName() == null) {
+                state.setProviderName(item.getProviderName());
+            }
+            if (state.getModelName() == null) {
+                state.setModelName(item.getModelName());
+            }
+
+            // 部分灰度时生效配置依赖请求哈希，只能在请求时解析
+            EffectiveCircuitBreakerConfig breakerConfig = groupGrayscale || isPartialGrayscale(item.getCircuitBreakerConfig())
+                    ? null
+                    : configResolver.resolve(group.getId(), group.getCircuitBreakerConfig(),
+                            providerId, item.getCircuitBreakerConfig(), 0);
+
+            targets.add(new RoutingTarget(item, providerId, parseProtocolMask(item),
+                    resolveItemsByProtocol(item), breakerConfig, state));
+        }
+        return new RoutingPlan(targets, groupConfig, generation);
+    }
+
+    private int parseProtocolMask(ModelGroupConfigItem item) {
+        int mask = 0;
+        String supportedTypes = item.getSupportedTypes();
+        if (supportedTypes == null || supportedTypes.isEmpty()) {
+            return mask;
+        }
+        for (String code : supportedTypes.split(",")) {
+            try {
+                int value = Integer.parseInt(code.trim());
+                if (value >= 0 && value < Integer.SIZE) {
+                    mask |= 1 << value;
+                }
+            } catch (NumberFormatException e) {
+                log.warn("供应商 {} 的协议类型配置无效: {}", item.getProviderName(), supportedTypes);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * 按协议预生成配置项副本，baseUrl 替换为 endpointsJson 中对应协议的端点；不修改共享的原始配置项
+     */
+    private ModelGroupConfigItem[] resolveItemsByProtocol(ModelGroupConfigItem item) {
+        ModelGroupConfigItem[] resolved = new ModelGroupConfigItem[ProtocolType.values().length];
+        String endpointsJson = item.getEndpointsJson();
+        if (endpointsJson == null || endpointsJson.isEmpty()) {
+            return resolved;
+        }
+        try {
+            Map<String, String> endpoints = OBJECT_MAPPER.readValue(endpointsJson, ENDPOINTS_TYPE);
+            for (ProtocolType type : ProtocolType.values()) {
+                String url = endpoints.get(String.valueOf(type.getCode()));
+                if (url != null && !url.isEmpty() && !url.equals(item.getBaseUrl())) {
+                    resolved[type.ordinal()] = copyWithBaseUrl(item, url);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to parse endpoints JSON for provider {}: {}",
+                    item.getProviderName(), e.getMessage());
+        }
+        return resolved;
+    }
+
+    private ModelGroupConfigItem copyWithBaseUrl(ModelGroupConfigItem item, String baseUrl) {
+        ModelGroupConfigItem copy = new ModelGroupConfigItem();
+        copy.setProviderId(item.getProviderId());
+        copy.setProviderName(item.getProviderName());
+        copy.setModelName(item.getModelName());
+        copy.setWeight(item.getWeight());
+        copy.setApiKey(item.getApiKey());
+        copy.setBaseUrl(baseUrl);
+        copy.setProviderType(item.getProviderType());
+        copy.setSupportedTypes(item.getSupportedTypes());
+        copy.setEndpointsJson(item.getEndpointsJson());
+        copy.setCircuitBreakerConfig(item.getCircuitBreakerConfig());
+        return copy;
+    }
+
+    private boolean isPartialGrayscale(OverrideCircuitBreakerConfig override) {
+        if (override == null || !override.isEffectivelyEnabled()) {
+            return false;
+        }
+        Integer percent = override.getGrayscalePercent();
+        return percent != null && percent > 0 && percent < 100;
+    }
+}
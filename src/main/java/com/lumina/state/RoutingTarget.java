@@ -0,0 +1,102 @@
+package com.lumina.state;
+
+import com.lumina.config.EffectiveCircuitBreakerConfig;
+import com.lumina.converter.ProtocolType;
+import com.lumina.dto.ModelGroupConfigItem;
+
+/**
+ * 预编译的路由目标（不可变）
+ *
+ * 在分组配置加载时一次性解析 providerId、支持的协议、各协议端点和熔断配置，
+ * 并直接持有 {@link ProviderRuntimeState} 引用，选路时无需再做字符串拼接、JSON 解析或 Map 查找。
+ */
+public final class RoutingTarget {
+
+    private final ModelGroupConfigItem item;
+    private final String providerId;
+    private final int protocolMask;
+    private final ProtocolType defaultProtocol;
+    private final ModelGroupConfigItem[] itemsByProtocol;
+    private final EffectiveCircuitBreakerConfig breakerConfig;
+    private final ProviderRuntimeState state;
+    private final int weight;
+    private final double logWeight;
+
+    RoutingTarget(ModelGroupConfigItem item,
+                  String providerId,
+                  int protocolMask,
+                  ModelGroupConfigItem[] itemsByProtocol,
+                  EffectiveCircuitBreakerConfig breakerConfig,
+                  ProviderRuntimeState state) {
+        this.item = item;
+        this.providerId = providerId;
+        this.protocolMask = protocolMask;
+        this.defaultProtocol = ProtocolType.fromCode(item.getProviderType());
+        this.itemsByProtocol = itemsByProtocol;
+        this.breakerConfig = breakerConfig;
+        this.state = state;
+        this.weight = Math.max(1, item.getWeight() == null ? 1 : item.getWeight());
+        this.logWeight = Math.log(weight);
+    }
+
+    /**
+     * 原始分组配置项（默认端点）
+     */
+    public ModelGroupConfigItem getItem() {
+        return item;
+    }
+
+    /**
+     * 指定协议对应的配置项，baseUrl 已替换为该协议的端点
+     */
+    public ModelGroupConfigItem itemFor(ProtocolType protocolType) {
+        ModelGroupConfigItem resolved = itemsByProtocol[protocolType.ordinal()];
+        return resolved != null ? resolved : item;
+    }
+
+    public boolean supports(ProtocolType protocolType) {
+        return (protocolMask & (1 << protocolType.getCode())) != 0;
+    }
+
+    /**
+     * 供应商支持入站协议时直接透传，否则回退到配置的默认协议
+     */
+    public ProtocolType resolveOutboundType(ProtocolType inboundType) {
+        return supports(inboundType) ? inboundType : defaultProtocol;
+    }
+
+    public String getProviderId() {
+        return providerId;
+    }
+
+    public int getProtocolMask() {
+        return protocolMask;
+    }
+
+    /**
+     * 预解析的熔断配置；当覆盖配置启用了部分灰度时为 null，需要按请求哈希实时解析
+     */
+    public EffectiveCircuitBreakerConfig getBreakerConfig() {
+        return breakerConfig;
+    }
+
+    public ProviderRuntimeState getState() {
+        return state;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public double getLogWeight() {
+        return logWeight;
+    }
+
+    public String getProviderName() {
+        return item.getProviderName();
+    }
+
+    public String getModelName() {
+        return item.getModelName();
+    }
+}
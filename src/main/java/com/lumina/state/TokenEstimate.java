@@ -0,0 +1,11 @@
+package com.lumina.state;
+
+/**
+ * 路由前对请求的 token 估计
+ *
+ * @param inputTokens 本地分词得到的输入 token 数
+ * @param maxOutputTokens 请求声明的输出上限（max_tokens 等），未声明时为 null
+ * @param stream 是否为流式请求，流式请求的延迟 SLO 按首包延迟判断
+ */
+public record TokenEstimate(int inputTokens, Integer maxOutputTokens, boolean stream) {
+}
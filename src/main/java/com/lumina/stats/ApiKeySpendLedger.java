@@ -0,0 +1,172 @@
+package com.lumina.stats;
+
+import com.lumina.dto.ApiKeyUsageDto;
+import com.lumina.entity.RequestLog;
+import com.lumina.mapper.ApiKeyMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * API Key 消费账本
+ *
+ * 内存中维护每个 Key 的累计消费，最终日志落库后由 {@link StatsAccumulator} 增量累加，
+ * 额度检查直接读内存，不再每次请求都对 request_logs 做 SUM。
+ * 首次检查某个 Key 时从数据库加载基线，之后定期与数据库对账，修正日志清理等带来的偏差。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ApiKeySpendLedger {
+
+    private final ApiKeyMapper apiKeyMapper;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * 内存中的额度判断；Key 尚未加载时返回 null，调用方需先 {@link #load}
+     */
+    public Boolean hasAvailableQuota(String apiKey) {
+        Entry entry = entries.get(apiKey);
+        if (entry == null || !entry.loaded) {
+            return null;
+        }
+        return entry.hasQuota();
+    }
+
+    /**
+     * 从数据库加载 Key 的消费基线（阻塞调用，需在 boundedElastic 上执行）
+     */
+    public boolean load(String apiKey) {
+        Entry entry = entries.computeIfAbsent(apiKey, k -> new Entry());
+        BigDecimal pendingAtStart = entry.pendingDelta();
+        ApiKeyUsageDto usage = apiKeyMapper.selectApiKeyUsageByKey(apiKey);
+        entry.reconcile(usage, pendingAtStart);
+        return entry.hasQuota();
+    }
+
+    /**
+     * 最终日志落库后累加消费；未加载的 Key 忽略，加载时的数据库基线已包含这部分
+     */
+    public void record(Collection<RequestLog> batch) {
+        if (batch == null || batch.isEmpty() || entries.isEmpty()) {
+            return;
+        }
+        for (RequestLog logEntry : batch) {
+            String apiKey = logEntry.getApiKey();
+            BigDecimal cost = logEntry.getCost();
+            if (apiKey == null || cost == null || cost.signum() == 0) {
+                continue;
+            }
+            Entry entry = entries.get(apiKey);
+            if (entry != null) {
+                entry.add(cost);
+            }
+        }
+    }
+
+    /**
+     * Key 配置变更（额度、启停、删除）后丢弃缓存，下次检查时重新加载
+     */
+    public void invalidate(String apiKey) {
+        if (apiKey != null) {
+            entries.remove(apiKey);
+        }
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    @Scheduled(fixedDelay = 60_000) // 每分钟与数据库对账一次
+    public void reconcile() {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        Map<String, BigDecimal> pendingAtStart = new HashMap<>();
+        entries.forEach((apiKey, entry) -> pendingAtStart.put(apiKey, entry.pendingDelta()));
+
+        List<ApiKeyUsageDto> usages;
+        try {
+            usages = apiKeyMapper.selectApiKeyUsageList();
+        } catch (Exception e) {
+            log.warn("API Key 消费对账失败: {}", e.getMessage());
+            return;
+        }
+
+        Map<String, ApiKeyUsageDto> byKey = new HashMap<>();
+        for (ApiKeyUsageDto usage : usages) {
+            byKey.put(usage.getApiKey(), usage);
+        }
+
+        int reconciled = 0;
+        for (Map.Entry<String, BigDecimal> snapshot : pendingAtStart.entrySet()) {
+            Entry entry = entries.get(snapshot.getKey());
+            if (entry == null) {
+                continue;
+            }
+            ApiKeyUsageDto usage = byKey.get(snapshot.getKey());
+            if (usage == null) {
+                // Key 已被删除
+                entries.remove(snapshot.getKey(), entry);
+                continue;
+            }
+            entry.reconcile(usage, snapshot.getValue());
+            reconciled++;
+        }
+        log.debug("API Key 消费对账完成: {} 个", reconciled);
+    }
+
+    private static final class Entry {
+        /** 上次对账时数据库中的累计消费 */
+        private BigDecimal baseline = BigDecimal.ZERO;
+        /** 上次对账之后累加的消费 */
+        private BigDecimal delta = BigDecimal.ZERO;
+        private BigDecimal maxAmount;
+        private boolean exists;
+        private volatile boolean loaded;
+
+        synchronized void add(BigDecimal cost) {
+            delta = delta.add(cost);
+        }
+
+        synchronized BigDecimal pendingDelta() {
+            return delta;
+        }
+
+        /**
+         * 用数据库结果替换基线；查询期间新累加的部分保留在 delta 中
+         */
+        synchronized void reconcile(ApiKeyUsageDto usage, BigDecimal pendingAtStart) {
+            exists = usage != null;
+            if (usage != null) {
+                baseline = usage.getTotalCost() != null ? usage.getTotalCost() : BigDecimal.ZERO;
+                maxAmount = usage.getMaxAmount();
+            } else {
+                baseline = BigDecimal.ZERO;
+                maxAmount = null;
+            }
+            delta = delta.subtract(pendingAtStart);
+            loaded = true;
+        }
+
+        synchronized boolean hasQuota() {
+            if (!exists) {
+                return false;
+            }
+            if (maxAmount == null) {
+                return true;
+            }
+            return baseline.add(delta).compareTo(maxAmount) < 0;
+        }
+    }
+}
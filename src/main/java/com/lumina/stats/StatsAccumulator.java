@@ -27,6 +27,7 @@ public class StatsAccumulator {
     private final StatsDailyMapper statsDailyMapper;
     private final StatsHourlyMapper statsHourlyMapper;
     private final RedisTemplate<String, String> redisTemplate;
+    private final ApiKeySpendLedger spendLedger;
 
     private static final String REDIS_PREFIX = "lumina:stats:";
     private static final DateTimeFormatter HOUR_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:00:00");
@@ -69,6 +70,7 @@ public class StatsAccumulator {
 
         flushToDb(hourlyAgg, dailyAgg);
         flushToRedis(batch);
+        spendLedger.record(batch);
     }
 
     private void flushToDb(Map<String, AggregateKey> hourlyAgg, Map<String, AggregateKey> dailyAgg) {
@@ -0,0 +1,76 @@
+package com.lumina.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * 提示词稳定前缀：上游 prompt cache 按前缀命中的部分
+ *
+ * 取 system / instructions / tools 等系统级字段，加上 messages（Responses 为 input，Gemini 为 contents）
+ * 中所有 system/developer 消息和开头若干条其余消息，规范化后哈希。
+ * 对话后续轮次只在末尾追加消息，前缀哈希保持不变。
+ */
+public final class PromptPrefix {
+
+    private static final String[] SYSTEM_FIELDS = {
+            "system", "instructions", "tools", "tool_choice", "systemInstruction", "system_instruction"
+    };
+    private static final String[] MESSAGE_FIELDS = {"messages", "input", "contents"};
+
+    private PromptPrefix() {
+    }
+
+    /**
+     * @param leadingMessages 参与哈希的开头非系统消息条数
+     * @return 请求中没有可用作前缀的内容时返回 null
+     */
+    public static Long affinityHash(JsonNode request, int leadingMessages) {
+        if (request == null || !request.isObject()) {
+            return null;
+        }
+        ObjectNode prefix = JsonNodeFactory.instance.objectNode();
+        for (String field : SYSTEM_FIELDS) {
+            JsonNode value = request.get(field);
+            if (value != null && !value.isNull()) {
+                prefix.set(field, value);
+            }
+        }
+        for (String field : MESSAGE_FIELDS) {
+            JsonNode value = request.get(field);
+            if (value == null || value.isNull()) {
+                continue;
+            }
+            if (value.isArray()) {
+                ArrayNode kept = leadingMessages(value, leadingMessages);
+                if (!kept.isEmpty()) {
+                    prefix.set(field, kept);
+                }
+            } else if (leadingMessages > 0) {
+                // Responses 的 input 可以是单个字符串
+                prefix.set(field, value);
+            }
+        }
+        if (prefix.isEmpty()) {
+            return null;
+        }
+        String fingerprint = RequestFingerprint.of("prefix", prefix, null);
+        return Long.parseUnsignedLong(fingerprint.substring(0, 16), 16);
+    }
+
+    private static ArrayNode leadingMessages(JsonNode messages, int leadingMessages) {
+        ArrayNode kept = JsonNodeFactory.instance.arrayNode();
+        int others = 0;
+        for (JsonNode message : messages) {
+            String role = message.path("role").asText("");
+            if ("system".equals(role) || "developer".equals(role)) {
+                kept.add(message);
+            } else if (others < leadingMessages) {
+                kept.add(message);
+                others++;
+            }
+        }
+        return kept;
+    }
+}
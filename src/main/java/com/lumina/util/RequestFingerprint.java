@@ -0,0 +1,110 @@
+package com.lumina.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 请求指纹：请求体的规范化哈希
+ *
+ * 对象字段按名称排序、数字按数值规范化后计算 SHA-256，
+ * 字段顺序或数字写法（1 / 1.0）不同但语义相同的请求得到相同的指纹。
+ * 以 _lumina_ 开头的内部参数不参与计算。
+ */
+public final class RequestFingerprint {
+
+    private RequestFingerprint() {
+    }
+
+    public static String of(String requestType, JsonNode body, Map<String, String> queryParams) {
+        return of(null, requestType, body, queryParams);
+    }
+
+    /**
+     * @param scope 指纹作用域（如 API Key），作用域不同的相同请求得到不同的指纹
+     */
+    public static String of(String scope, String requestType, JsonNode body, Map<String, String> queryParams) {
+        StringBuilder canonical = new StringBuilder(256);
+        if (scope != null) {
+            canonical.append(scope).append('\n');
+        }
+        canonical.append(requestType).append('\n');
+        if (queryParams != null) {
+            new TreeMap<>(queryParams).forEach((key, value) -> {
+                if (key != null && !key.startsWith("_lumina_")) {
+                    canonical.append(key).append('=').append(value).append('&');
+                }
+            });
+        }
+        canonical.append('\n');
+        appendCanonical(canonical, body);
+        return sha256(canonical.toString());
+    }
+
+    private static void appendCanonical(StringBuilder out, JsonNode node) {
+        if (node == null || node.isNull() || node.isMissingNode()) {
+            out.append("null");
+        } else if (node.isObject()) {
+            List<String> names = new ArrayList<>(node.size());
+            Iterator<String> iterator = node.fieldNames();
+            while (iterator.hasNext()) {
+                names.add(iterator.next());
+            }
+            names.sort(null);
+            out.append('{');
+            for (int i = 0; i < names.size(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                appendString(out, names.get(i));
+                out.append(':');
+                appendCanonical(out, node.get(names.get(i)));
+            }
+            out.append('}');
+        } else if (node.isArray()) {
+            out.append('[');
+            for (int i = 0; i < node.size(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                appendCanonical(out, node.get(i));
+            }
+            out.append(']');
+        } else if (node.isNumber()) {
+            out.append(node.decimalValue().stripTrailingZeros().toPlainString());
+        } else if (node.isTextual()) {
+            appendString(out, node.textValue());
+        } else {
+            out.append(node.asText());
+        }
+    }
+
+    private static void appendString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.lumina.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.codec.ServerSentEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * 判断流式分片是否携带模型输出（文本、推理内容或工具调用）
+ *
+ * 首包竞速按它决定胜者：只有角色声明、message_start、ping、注释保活或错误帧的分片不算首包。
+ * 支持解码后的 ServerSentEvent 和透传的原始 DataBuffer；DataBuffer 按 data 行解析，跨分片的半行会暂存。
+ * 每条流一个实例，非线程安全。
+ */
+public final class StreamContentDetector {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    /** 值为非空字符串时视为输出内容的字段（OpenAI Chat / Responses、Anthropic、Gemini） */
+    private static final Set<String> TEXT_FIELDS = Set.of(
+            "content", "text", "delta", "partial_json", "arguments", "thinking", "reasoning_content", "refusal");
+    /** 出现即视为输出内容的工具调用字段 */
+    private static final Set<String> CALL_FIELDS = Set.of("tool_calls", "function_call", "functionCall");
+    /** type 为这些值的内容块（Anthropic tool_use、Responses function_call）同样算作输出 */
+    private static final Set<String> CALL_TYPES = Set.of("tool_use", "function_call");
+
+    private final StringBuilder partialLine = new StringBuilder();
+
+    public boolean carriesContent(Object chunk) {
+        if (chunk instanceof ServerSentEvent<?> event) {
+            return !"error".equals(event.event()) && event.data() instanceof String data && isContentData(data);
+        }
+        if (chunk instanceof DataBuffer buffer) {
+            return scanLines(buffer.toString(buffer.readPosition(), buffer.readableByteCount(), StandardCharsets.UTF_8));
+        }
+        return true;
+    }
+
+    private boolean scanLines(String text) {
+        boolean found = false;
+        int start = 0;
+        for (int end = text.indexOf('\n'); end >= 0; end = text.indexOf('\n', start)) {
+            partialLine.append(text, start, end);
+            found |= isContentLine(partialLine);
+            partialLine.setLength(0);
+            start = end + 1;
+        }
+        partialLine.append(text, start, text.length());
+        return found;
+    }
+
+    private static boolean isContentLine(CharSequence line) {
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r') {
+            length--;
+        }
+        if (length < 5 || !"data:".contentEquals(line.subSequence(0, 5))) {
+            return false;
+        }
+        return isContentData(line.subSequence(5, length).toString().trim());
+    }
+
+    /**
+     * @param data 单个 SSE 事件的 data 内容
+     */
+    public static boolean isContentData(String data) {
+        if (data.isEmpty() || "[DONE]".equals(data)) {
+            return false;
+        }
+        try (JsonParser parser = JSON_FACTORY.createParser(data)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return false;
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token != JsonToken.FIELD_NAME) {
+                    continue;
+                }
+                String field = parser.currentName();
+                JsonStreamContext parent = parser.getParsingContext().getParent();
+                JsonToken value = parser.nextToken();
+                if ("error".equals(field) && value != JsonToken.VALUE_NULL && parent != null && parent.inRoot()) {
+                    return false;
+                }
+                if (CALL_FIELDS.contains(field) && value != JsonToken.VALUE_NULL) {
+                    return true;
+                }
+                if (value == JsonToken.VALUE_STRING) {
+                    String text = parser.getText();
+                    if (TEXT_FIELDS.contains(field) && !text.isEmpty()) {
+                        return true;
+                    }
+                    if ("type".equals(field) && CALL_TYPES.contains(text)) {
+                        return true;
+                    }
+                }
+            }
+        } catch (Exception ignored) {
+            // 半截或非 JSON 的 data 不算内容
+        }
+        return false;
+    }
+}
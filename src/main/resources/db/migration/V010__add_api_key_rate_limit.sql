@@ -0,0 +1,2 @@
+-- Migration V010: Add per API key request rate limit
+ALTER TABLE `api_keys` ADD COLUMN `rate_limit_rpm` int DEFAULT NULL COMMENT '每分钟请求数限制，NULL使用全局默认值，0表示不限制';
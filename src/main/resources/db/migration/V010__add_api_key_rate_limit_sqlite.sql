@@ -0,0 +1,2 @@
+-- Migration V010: Add per API key request rate limit for SQLite
+ALTER TABLE `api_keys` ADD COLUMN `rate_limit_rpm` INTEGER DEFAULT NULL;
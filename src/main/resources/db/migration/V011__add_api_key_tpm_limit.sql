@@ -0,0 +1,2 @@
+-- Migration V011: Add per API key tokens-per-minute limit
+ALTER TABLE `api_keys` ADD COLUMN `tpm_limit` bigint DEFAULT NULL COMMENT '每分钟token数限制，NULL使用全局默认值，0表示不限制';
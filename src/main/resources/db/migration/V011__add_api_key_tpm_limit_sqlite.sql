@@ -0,0 +1,2 @@
+-- Migration V011: Add per API key tokens-per-minute limit for SQLite
+ALTER TABLE `api_keys` ADD COLUMN `tpm_limit` INTEGER DEFAULT NULL;
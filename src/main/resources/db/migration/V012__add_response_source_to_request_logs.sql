@@ -0,0 +1,2 @@
+-- Migration V012: Record where a response came from (NULL = upstream provider)
+ALTER TABLE `request_logs` ADD COLUMN `response_source` varchar(16) DEFAULT NULL COMMENT '响应来源：NULL 上游，COALESCED 合并到相同的在途请求';
@@ -0,0 +1,2 @@
+-- Migration V012: Record where a response came from for SQLite
+ALTER TABLE `request_logs` ADD COLUMN `response_source` TEXT DEFAULT NULL;
@@ -0,0 +1,2 @@
+-- Migration V013: Record the first-token timeout chosen for each attempt
+ALTER TABLE `request_logs` ADD COLUMN `first_token_timeout_ms` int DEFAULT NULL COMMENT '本次尝试使用的首包超时（毫秒）';
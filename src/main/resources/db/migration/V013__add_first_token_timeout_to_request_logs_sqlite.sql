@@ -0,0 +1,2 @@
+-- Migration V013: Record the first-token timeout chosen for each attempt for SQLite
+ALTER TABLE `request_logs` ADD COLUMN `first_token_timeout_ms` INTEGER DEFAULT NULL;
@@ -47,6 +47,8 @@ CREATE TABLE `api_keys` (
   `is_enabled` tinyint(1) NOT NULL DEFAULT '1' COMMENT '是否启用：0-禁用，1-启用',
   `expired_at` bigint DEFAULT NULL COMMENT '过期时间戳（秒），NULL表示永不过期',
   `max_amount` decimal(10,4) DEFAULT NULL COMMENT '最大消费额度，NULL表示无限制',
+  `rate_limit_rpm` int DEFAULT NULL COMMENT '每分钟请求数限制，NULL使用全局默认值，0表示不限制',
+  `tpm_limit` bigint DEFAULT NULL COMMENT '每分钟token数限制，NULL使用全局默认值，0表示不限制',
   `supported_models` text COLLATE utf8mb4_unicode_ci COMMENT '支持的模型列表（逗号分隔），NULL表示无限制',
   `created_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `updated_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
@@ -204,6 +206,8 @@ CREATE TABLE `request_logs` (
   `api_key` varchar(255) DEFAULT NULL COMMENT '客户端API密钥',
   `request_ip` varchar(64) DEFAULT NULL COMMENT '请求客户端IP',
   `protocol_conversion` varchar(64) DEFAULT NULL COMMENT '协议转换路径，如 OPENAI_RESPONSES→ANTHROPIC',
+  `response_source` varchar(16) DEFAULT NULL COMMENT '响应来源：NULL 上游，COALESCED 合并到相同的在途请求，CACHE 响应缓存命中',
+  `first_token_timeout_ms` int DEFAULT NULL COMMENT '本次尝试使用的首包超时（毫秒）',
   `created_at` datetime DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   PRIMARY KEY (`id`),
   KEY `idx_request_time` (`request_time`),
@@ -40,6 +40,8 @@ CREATE TABLE IF NOT EXISTS `api_keys` (
   `is_enabled` INTEGER NOT NULL DEFAULT 1,
   `expired_at` INTEGER,
   `max_amount` REAL,
+  `rate_limit_rpm` INTEGER,
+  `tpm_limit` INTEGER,
   `supported_models` TEXT,
   `created_at` DATETIME NOT NULL DEFAULT (datetime('now')),
   `updated_at` DATETIME NOT NULL DEFAULT (datetime('now'))
@@ -2,21 +2,18 @@ package com.lumina;
 
 import com.lumina.config.LuminaProperties;
 import com.lumina.filter.RateLimitFilter;
+import com.lumina.ratelimit.ApiKeyRateLimiter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
-import org.springframework.data.redis.core.ReactiveValueOperations;
 import org.springframework.http.HttpStatus;
 import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
 import org.springframework.mock.web.server.MockServerWebExchange;
 import org.springframework.web.server.WebFilterChain;
 import reactor.core.publisher.Mono;
 
-import java.time.Duration;
-
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
@@ -30,10 +27,7 @@ public class RateLimitFilterTest {
     private LuminaProperties.RateLimit rateLimit;
 
     @Mock
-    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
-
-    @Mock
-    private ReactiveValueOperations<String, String> valueOperations;
+    private ApiKeyRateLimiter apiKeyRateLimiter;
 
     @Mock
     private WebFilterChain filterChain;
@@ -45,7 +39,6 @@ public class RateLimitFilterTest {
     void setUp() {
         MockitoAnnotations.openMocks(this);
         when(luminaProperties.getRateLimit()).thenReturn(rateLimit);
-        when(reactiveStringRedisTemplate.opsForValue()).thenReturn(valueOperations);
         when(filterChain.filter(any())).thenReturn(Mono.empty());
     }
 
@@ -58,15 +51,13 @@ public class RateLimitFilterTest {
         rateLimitFilter.filter(exchange, filterChain).block();
 
         verify(filterChain, times(1)).filter(exchange);
-        verify(reactiveStringRedisTemplate, never()).opsForValue();
+        verify(apiKeyRateLimiter, never()).tryAcquire(anyString());
     }
 
     @Test
     void testRateLimitEnabledBelowLimit() {
         when(rateLimit.isEnabled()).thenReturn(true);
-        when(rateLimit.getRequestsPerMinute()).thenReturn(5);
-        when(valueOperations.increment(anyString())).thenReturn(Mono.just(1L));
-        when(reactiveStringRedisTemplate.expire(anyString(), any(Duration.class))).thenReturn(Mono.just(true));
+        when(apiKeyRateLimiter.tryAcquire("test-key")).thenReturn(Mono.just(true));
 
         MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/v1/models"));
         exchange.getAttributes().put("API_KEY", "test-key");
@@ -74,15 +65,13 @@ public class RateLimitFilterTest {
         rateLimitFilter.filter(exchange, filterChain).block();
 
         verify(filterChain, times(1)).filter(exchange);
-        verify(valueOperations, times(1)).increment(anyString());
-        verify(reactiveStringRedisTemplate, times(1)).expire(anyString(), any(Duration.class));
+        verify(apiKeyRateLimiter, times(1)).tryAcquire("test-key");
     }
 
     @Test
     void testRateLimitExceeded() {
         when(rateLimit.isEnabled()).thenReturn(true);
-        when(rateLimit.getRequestsPerMinute()).thenReturn(5);
-        when(valueOperations.increment(anyString())).thenReturn(Mono.just(6L));
+        when(apiKeyRateLimiter.tryAcquire("test-key")).thenReturn(Mono.just(false));
 
         MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/v1/models"));
         exchange.getAttributes().put("API_KEY", "test-key");
@@ -92,4 +81,17 @@ public class RateLimitFilterTest {
         verify(filterChain, never()).filter(exchange);
         assert exchange.getResponse().getStatusCode() == HttpStatus.TOO_MANY_REQUESTS;
     }
+
+    @Test
+    void testLimiterErrorFailsOpen() {
+        when(rateLimit.isEnabled()).thenReturn(true);
+        when(apiKeyRateLimiter.tryAcquire("test-key")).thenReturn(Mono.error(new IllegalStateException("redis down")));
+
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/v1/models"));
+        exchange.getAttributes().put("API_KEY", "test-key");
+
+        rateLimitFilter.filter(exchange, filterChain).block();
+
+        verify(filterChain, times(1)).filter(exchange);
+    }
 }
@@ -0,0 +1,105 @@
+package com.lumina.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lumina.config.LuminaProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseCacheTest {
+
+    @Test
+    void leastRecentlyUsedEntryIsEvictedWhenFull() {
+        ResponseCache cache = cache(2, null);
+        cache.put(entry("a", 60_000));
+        cache.put(entry("b", 60_000));
+        assertNotNull(cache.get("a").block());
+
+        // c 被访问过两次，频率高于最久未使用的 b，才能被准入
+        cache.get("c").block();
+        cache.get("c").block();
+        cache.put(entry("c", 60_000));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a").block());
+        assertNull(cache.get("b").block());
+        assertNotNull(cache.get("c").block());
+    }
+
+    @Test
+    void coldEntryIsNotAdmittedOverHotEntry() {
+        ResponseCache cache = cache(1, null);
+        cache.put(entry("hot", 60_000));
+        for (int i = 0; i < 5; i++) {
+            cache.get("hot").block();
+        }
+
+        cache.put(entry("cold", 60_000));
+
+        assertNotNull(cache.get("hot").block());
+        assertNull(cache.get("cold").block());
+    }
+
+    @Test
+    void expiredEntryIsNotReturned() {
+        ResponseCache cache = cache(10, null);
+        cache.put(entry("a", -1));
+
+        assertNull(cache.get("a").block());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void diskTierServesEntriesMissingFromMemory() throws Exception {
+        Path directory = Files.createTempDirectory("response-cache");
+        ResponseCache writer = cache(10, directory);
+        CachedResponse stream = entry("s", 60_000);
+        stream.setStream(true);
+        stream.setBody(null);
+        stream.setChunks(List.of(CachedResponse.Chunk.of(null, "{\"x\":1}", 0), CachedResponse.Chunk.of(null, "[DONE]", 12)));
+        writer.put(stream);
+
+        Path file = directory.resolve("s.json");
+        for (int i = 0; i < 50 && !Files.exists(file); i++) {
+            Thread.sleep(20);
+        }
+        assertTrue(Files.exists(file));
+
+        ResponseCache reader = cache(10, directory);
+        CachedResponse loaded = reader.get("s").block();
+        assertNotNull(loaded);
+        assertTrue(loaded.isStream());
+        assertEquals(2, loaded.getChunks().size());
+        assertEquals(12, loaded.getChunks().get(1).getOffsetMs());
+        assertEquals(1, reader.size());
+    }
+
+    private static ResponseCache cache(int maxEntries, Path directory) {
+        LuminaProperties properties = new LuminaProperties();
+        properties.getResponseCache().setMaxEntries(maxEntries);
+        if (directory != null) {
+            properties.getResponseCache().getDisk().setEnabled(true);
+            properties.getResponseCache().getDisk().setDirectory(directory.toString());
+        }
+        return new ResponseCache(properties, new ObjectMapper(), new SimpleMeterRegistry());
+    }
+
+    private static CachedResponse entry(String key, long ttlMs) {
+        CachedResponse entry = new CachedResponse();
+        entry.setKey(key);
+        entry.setBody("{\"id\":\"" + key + "\"}");
+        entry.setProviderId(1L);
+        entry.setProviderName("p");
+        entry.setCreatedAt(System.currentTimeMillis());
+        entry.setExpiresAt(System.currentTimeMillis() + ttlMs);
+        return entry;
+    }
+}
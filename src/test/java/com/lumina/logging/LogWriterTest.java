@@ -0,0 +1,108 @@
+package com.lumina.logging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.lumina.config.LuminaProperties;
+import com.lumina.entity.RequestLog;
+import com.lumina.service.RequestLogService;
+import com.lumina.stats.StatsAccumulator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class LogWriterTest {
+
+    private RequestLogService requestLogService;
+    private LogWriter logWriter;
+
+    @BeforeEach
+    void setUp() {
+        requestLogService = mock(RequestLogService.class);
+        logWriter = new LogWriter(requestLogService, new LuminaProperties(),
+                new SimpleMeterRegistry(), mock(StatsAccumulator.class));
+    }
+
+    @Test
+    void recordStartDoesNotTouchDatabase() {
+        logWriter.recordStart(context("1"));
+
+        verifyNoInteractions(requestLogService);
+    }
+
+    @Test
+    void finalStateMergesWithUnflushedStartRecord() {
+        RequestLogContext ctx = context("1");
+        logWriter.recordStart(ctx);
+        ctx.setStatus("SUCCESS");
+
+        logWriter.submit(ctx);
+        logWriter.flushPendingStarts();
+
+        verify(requestLogService, never()).saveBatchLogs(any());
+        ArgumentCaptor<Collection<RequestLog>> captor = captor();
+        verify(requestLogService).updateBatchLogs(captor.capture());
+        assertEquals("SUCCESS", List.copyOf(captor.getValue()).get(0).getStatus());
+    }
+
+    @Test
+    void flushedStartRecordIsInsertedAsProcessing() {
+        logWriter.recordStart(context("1"));
+
+        logWriter.flushPendingStarts();
+
+        ArgumentCaptor<Collection<RequestLog>> captor = captor();
+        verify(requestLogService).saveBatchLogs(captor.capture());
+        RequestLog inserted = List.copyOf(captor.getValue()).get(0);
+        assertEquals("1", inserted.getId());
+        assertEquals("PROCESSING", inserted.getStatus());
+    }
+
+    @Test
+    void requestContentIsSerializedCompactlyOnlyWhenPayloadsAreKept() {
+        ObjectNode request = new ObjectMapper().createObjectNode().put("model", "gpt-test");
+
+        RequestLogContext unsampled = context("1");
+        unsampled.setRequestNode(request);
+        unsampled.setPayloadSampled(false);
+        unsampled.setStatus("SUCCESS");
+        logWriter.submit(unsampled);
+
+        RequestLogContext failed = context("2");
+        failed.setRequestNode(request);
+        failed.setPayloadSampled(false);
+        failed.setStatus("FAIL");
+        logWriter.submit(failed);
+
+        ArgumentCaptor<Collection<RequestLog>> captor = captor();
+        verify(requestLogService, times(2)).updateBatchLogs(captor.capture());
+        assertNull(unsampled.getRequestContent());
+        assertNull(List.copyOf(captor.getAllValues().get(0)).get(0).getRequestContent());
+        assertEquals("{\"model\":\"gpt-test\"}", List.copyOf(captor.getAllValues().get(1)).get(0).getRequestContent());
+    }
+
+    private RequestLogContext context(String id) {
+        RequestLogContext ctx = new RequestLogContext();
+        ctx.setId(id);
+        ctx.setRequestId("req-" + id);
+        ctx.setStartNano(System.nanoTime());
+        return ctx;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ArgumentCaptor<Collection<RequestLog>> captor() {
+        return ArgumentCaptor.forClass(Collection.class);
+    }
+}
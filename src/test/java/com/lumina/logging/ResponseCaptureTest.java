@@ -0,0 +1,38 @@
+package com.lumina.logging;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ResponseCaptureTest {
+
+    @Test
+    void keepsEverythingBelowLimit() {
+        ResponseCapture capture = ResponseCapture.bounded(10);
+        capture.append("abc");
+        capture.append("def");
+
+        assertEquals("abcdef", capture.content());
+    }
+
+    @Test
+    void keepsHeadAndTailWithTruncationMarker() {
+        ResponseCapture capture = ResponseCapture.bounded(6);
+        capture.append("abcdef");
+        capture.append("ghijkl");
+        capture.append("mn");
+
+        assertEquals("abc\n...[truncated 8 chars]...\nlmn", capture.content());
+        assertEquals(14, capture.getTotalChars());
+    }
+
+    @Test
+    void disabledCaptureOnlyCounts() {
+        ResponseCapture capture = ResponseCapture.disabled();
+        capture.append("abcdef");
+
+        assertNull(capture.content());
+        assertEquals(6, capture.getTotalChars());
+    }
+}
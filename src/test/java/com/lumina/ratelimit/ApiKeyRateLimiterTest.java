@@ -0,0 +1,93 @@
+package com.lumina.ratelimit;
+
+import com.lumina.config.LuminaProperties;
+import com.lumina.entity.ApiKey;
+import com.lumina.mapper.ApiKeyMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ApiKeyRateLimiterTest {
+
+    private ApiKeyMapper mapper;
+    private LuminaProperties properties;
+    private AtomicLong remote;
+    private AtomicInteger leaseCalls;
+    private ApiKeyRateLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        mapper = mock(ApiKeyMapper.class);
+        properties = new LuminaProperties();
+        properties.getRateLimit().setLeaseTtlMs(60_000);
+        remote = new AtomicLong();
+        leaseCalls = new AtomicInteger();
+        TokenLeaseClient leaseClient = new TokenLeaseClient(properties, null) {
+            @Override
+            protected Mono<Long> requestLease(String redisKey, LeasedTokenBucket bucket, long requested) {
+                leaseCalls.incrementAndGet();
+                long granted = Math.min(requested, remote.get());
+                remote.addAndGet(-granted);
+                return Mono.just(granted);
+            }
+        };
+        limiter = new ApiKeyRateLimiter(properties, leaseClient, mapper);
+    }
+
+    @Test
+    void localTokensServeRequestsWithoutRedisRoundTrips() {
+        keyLimit(600); // 容量 100，单次租借 20
+        remote.set(100);
+
+        for (int i = 0; i < 15; i++) {
+            assertTrue(limiter.tryAcquire("sk-1").block());
+        }
+
+        assertEquals(1, leaseCalls.get());
+    }
+
+    @Test
+    void rejectsWhenRemoteBucketIsEmpty() {
+        keyLimit(600);
+        remote.set(3);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire("sk-1").block());
+        }
+        assertFalse(limiter.tryAcquire("sk-1").block());
+    }
+
+    @Test
+    void zeroLimitIsUnlimited() {
+        keyLimit(0);
+
+        assertTrue(limiter.tryAcquire("sk-1").block());
+        assertEquals(0, leaseCalls.get());
+    }
+
+    @Test
+    void fallsBackToGlobalLimitWhenKeyHasNone() {
+        when(mapper.selectOne(any())).thenReturn(new ApiKey());
+        properties.getRateLimit().setRequestsPerMinute(6); // 容量 1，单次租借 1
+        remote.set(1);
+
+        assertTrue(limiter.tryAcquire("sk-1").block());
+        assertFalse(limiter.tryAcquire("sk-1").block());
+    }
+
+    private void keyLimit(int rpm) {
+        ApiKey key = new ApiKey();
+        key.setRateLimitRpm(rpm);
+        when(mapper.selectOne(any())).thenReturn(key);
+    }
+}
@@ -0,0 +1,118 @@
+package com.lumina.ratelimit;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.lumina.config.LuminaProperties;
+import com.lumina.entity.ApiKey;
+import com.lumina.exception.TokenRateLimitExceededException;
+import com.lumina.mapper.ApiKeyMapper;
+import com.lumina.service.TokenCountService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TokenRateLimiterTest {
+
+    private static final ObjectNode PARAMS = JsonNodeFactory.instance.objectNode();
+
+    private ApiKeyMapper mapper;
+    private TokenCountService tokenCountService;
+    private LuminaProperties properties;
+    private AtomicLong remote;
+    private TokenRateLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        mapper = mock(ApiKeyMapper.class);
+        tokenCountService = mock(TokenCountService.class);
+        properties = new LuminaProperties();
+        properties.getRateLimit().setEnabled(true);
+        properties.getRateLimit().setLeaseTtlMs(60_000);
+        remote = new AtomicLong();
+        TokenLeaseClient leaseClient = new TokenLeaseClient(properties, null) {
+            @Override
+            protected Mono<Long> requestLease(String redisKey, LeasedTokenBucket bucket, long requested) {
+                long granted = Math.min(requested, remote.get());
+                remote.addAndGet(-granted);
+                return Mono.just(granted);
+            }
+        };
+        limiter = new TokenRateLimiter(properties, leaseClient, mapper, tokenCountService);
+    }
+
+    @Test
+    void noLimitsSkipsEstimation() {
+        when(mapper.selectOne(any())).thenReturn(new ApiKey());
+
+        TokenReservation reservation = limiter.reserve("sk-1", "gpt-4o", PARAMS).block();
+
+        assertNull(reservation.getId());
+    }
+
+    @Test
+    void rejectsWhenEstimateExceedsRemainingBudget() {
+        keyLimit(1000);
+        remote.set(1000);
+        when(tokenCountService.countTokens(anyString(), any())).thenReturn(800);
+
+        assertNotNull(limiter.reserve("sk-1", "gpt-4o", PARAMS).block().getId());
+        assertThrows(TokenRateLimitExceededException.class,
+                () -> limiter.reserve("sk-1", "gpt-4o", PARAMS).block());
+    }
+
+    @Test
+    void settlementRefundsOverestimate() {
+        keyLimit(1000);
+        remote.set(1000);
+        when(tokenCountService.countTokens(anyString(), any())).thenReturn(800);
+
+        TokenReservation first = limiter.reserve("sk-1", "gpt-4o", PARAMS).block();
+        limiter.settle(first.getId(), 100);
+        limiter.release(first.getId());
+
+        // 实际只用了 100，剩余 900 足够再预扣 800
+        assertNotNull(limiter.reserve("sk-1", "gpt-4o", PARAMS).block().getId());
+    }
+
+    @Test
+    void failedRequestRefundsReservation() {
+        keyLimit(1000);
+        remote.set(1000);
+        when(tokenCountService.countTokens(anyString(), any())).thenReturn(800);
+
+        TokenReservation first = limiter.reserve("sk-1", "gpt-4o", PARAMS).block();
+        limiter.release(first.getId());
+
+        assertNotNull(limiter.reserve("sk-1", "gpt-4o", PARAMS).block().getId());
+    }
+
+    @Test
+    void groupLimitAppliesAcrossKeys() {
+        when(mapper.selectOne(any())).thenReturn(new ApiKey());
+        properties.getRateLimit().getGroupTokensPerMinute().put("gpt-4o", 1000L);
+        remote.set(1000);
+        when(tokenCountService.countTokens(anyString(), any())).thenReturn(600);
+
+        assertNotNull(limiter.reserve("sk-1", "gpt-4o", PARAMS).block().getId());
+        TokenRateLimitExceededException ex = assertThrows(TokenRateLimitExceededException.class,
+                () -> limiter.reserve("sk-2", "gpt-4o", PARAMS).block());
+        assertEquals("model_group", ex.getScope());
+    }
+
+    private void keyLimit(long tpm) {
+        ApiKey key = new ApiKey();
+        key.setTpmLimit(tpm);
+        when(mapper.selectOne(any())).thenReturn(key);
+    }
+}
@@ -7,25 +7,43 @@ import com.lumina.config.CircuitBreakerConfigResolver;
 import com.lumina.config.LuminaProperties;
 import com.lumina.dto.ModelGroupConfig;
 import com.lumina.dto.ModelGroupConfigItem;
+import com.lumina.entity.LlmModel;
+import com.lumina.exception.DeadlineExceededException;
 import com.lumina.mapper.ProviderRuntimeStatsMapper;
 import com.lumina.metrics.RelayMetrics;
+import com.lumina.state.BalanceMode;
 import com.lumina.state.CircuitBreaker;
+import com.lumina.state.ProviderRuntimeState;
 import com.lumina.state.ProviderScoreCalculator;
 import com.lumina.state.ProviderStateRegistry;
+import com.lumina.state.RouteContext;
+import com.lumina.state.RoutingPlanCompiler;
+import com.lumina.state.TokenEstimate;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.math.BigDecimal;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class FailoverServiceTest {
@@ -46,12 +64,19 @@ class FailoverServiceTest {
     @Mock
     private ProviderRuntimeStatsMapper providerRuntimeStatsMapper;
 
+    @Mock
+    private LlmModelService llmModelService;
+
     private FailoverService failoverService;
 
+    private ProviderStateRegistry providerStateRegistry;
+
+    private final LuminaProperties luminaProperties = new LuminaProperties();
+
     @BeforeEach
     void setUp() {
         CircuitBreakerConfig circuitBreakerConfig = new CircuitBreakerConfig();
-        ProviderStateRegistry providerStateRegistry = new ProviderStateRegistry(providerRuntimeStatsMapper, circuitBreakerConfig);
+        providerStateRegistry = new ProviderStateRegistry(providerRuntimeStatsMapper, circuitBreakerConfig);
         CircuitBreakerConfigResolver configResolver = new CircuitBreakerConfigResolver(circuitBreakerConfig);
 
         failoverService = new FailoverService(
@@ -60,7 +85,9 @@ class FailoverServiceTest {
                 circuitBreaker,
                 configResolver,
                 relayMetrics,
-                new LuminaProperties()
+                luminaProperties,
+                new RoutingPlanCompiler(providerStateRegistry, configResolver),
+                new CostEstimator(llmModelService, luminaProperties)
         );
     }
 
@@ -100,6 +127,284 @@ class FailoverServiceTest {
         verifyNoInteractions(scoreCalculator, circuitBreaker);
     }
 
+    @Test
+    void slowPrimaryIsHedgedAndCancelled() {
+        ModelGroupConfig group = roundRobinGroup("hedge-group");
+        group.setBalanceMode(null);
+        luminaProperties.getHedging().getGroups().add("hedge-group");
+        luminaProperties.getHedging().setMinDelayMs(20);
+        when(circuitBreaker.allowRequest(any(), any())).thenReturn(true);
+        for (ModelGroupConfigItem item : group.getItems()) {
+            ProviderRuntimeState state = providerStateRegistry.get(RoutingPlanCompiler.providerIdOf(item));
+            for (int i = 0; i < 30; i++) {
+                state.getLatencyHistogram().record(10);
+            }
+        }
+
+        AtomicInteger calls = new AtomicInteger();
+        AtomicBoolean primaryCancelled = new AtomicBoolean();
+        ObjectNode actual = failoverService.executeWithFailoverMono(
+                provider -> {
+                    if (calls.getAndIncrement() == 0) {
+                        return Mono.<ObjectNode>never().doOnCancel(() -> primaryCancelled.set(true));
+                    }
+                    return Mono.just(mapper.createObjectNode().put("provider", provider.getProviderName()));
+                },
+                group,
+                5000
+        ).block(Duration.ofSeconds(2));
+
+        assertEquals(2, calls.get());
+        assertTrue(primaryCancelled.get());
+        assertTrue(actual.has("provider"));
+        for (ModelGroupConfigItem item : group.getItems()) {
+            ProviderRuntimeState state = providerStateRegistry.get(RoutingPlanCompiler.providerIdOf(item));
+            assertEquals(0, state.getBulkhead().getCurrentConcurrent());
+        }
+        verify(relayMetrics).recordHedge("launched");
+        verify(relayMetrics).recordHedge("hedge_won");
+    }
+
+    @Test
+    void fastPrimaryFailureIsNotHeldBackByHedgeDelay() {
+        ModelGroupConfig group = roundRobinGroup("hedge-fail-group");
+        group.setBalanceMode(null);
+        luminaProperties.getHedging().getGroups().add("hedge-fail-group");
+        luminaProperties.getHedging().setMinDelayMs(2000);
+        when(circuitBreaker.allowRequest(any(), any())).thenReturn(true);
+        for (ModelGroupConfigItem item : group.getItems()) {
+            ProviderRuntimeState state = providerStateRegistry.get(RoutingPlanCompiler.providerIdOf(item));
+            for (int i = 0; i < 30; i++) {
+                state.getLatencyHistogram().record(10);
+            }
+        }
+
+        long start = System.nanoTime();
+        assertThrows(RuntimeException.class, () -> failoverService.executeWithFailoverMono(
+                provider -> Mono.<ObjectNode>error(new RuntimeException("upstream rejected")),
+                group,
+                5000
+        ).block(Duration.ofSeconds(5)));
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 1000);
+        verify(relayMetrics, times(0)).recordHedge("launched");
+    }
+
+    @Test
+    void streamRaceCommitsToFirstChunkAndCancelsLoser() {
+        ModelGroupConfig group = roundRobinGroup("race-group");
+        luminaProperties.getRacing().getGroupBudgets().put("race-group", 0.5);
+
+        AtomicInteger calls = new AtomicInteger();
+        AtomicBoolean slowCancelled = new AtomicBoolean();
+        List<String> chunks = failoverService.executeWithFailoverFlux(
+                provider -> {
+                    if (calls.getAndIncrement() == 0) {
+                        return Flux.<String>never().doOnCancel(() -> slowCancelled.set(true));
+                    }
+                    return Flux.just("chunk-1", "chunk-2");
+                },
+                group,
+                5000,
+                data -> data
+        ).collectList().block(Duration.ofSeconds(1));
+
+        assertEquals(List.of("chunk-1", "chunk-2"), chunks);
+        assertEquals(2, calls.get());
+        assertTrue(slowCancelled.get());
+        for (ModelGroupConfigItem item : group.getItems()) {
+            ProviderRuntimeState state = providerStateRegistry.get(RoutingPlanCompiler.providerIdOf(item));
+            assertEquals(0, state.getBulkhead().getCurrentConcurrent());
+        }
+        verify(relayMetrics).recordStreamRace("started");
+        verify(relayMetrics).recordStreamRace("secondary_won");
+    }
+
+    @Test
+    void streamRaceIgnoresRoleOnlyChunksWhenPickingWinner() {
+        ModelGroupConfig group = roundRobinGroup("race-role-group");
+        luminaProperties.getRacing().getGroupBudgets().put("race-role-group", 0.5);
+
+        AtomicInteger calls = new AtomicInteger();
+        AtomicBoolean primaryCancelled = new AtomicBoolean();
+        List<String> chunks = failoverService.executeWithFailoverFlux(
+                provider -> {
+                    if (calls.getAndIncrement() == 0) {
+                        // 主请求先发出只有 role 的分片，随后卡住
+                        return Flux.concat(Flux.just(sse("{\"choices\":[{\"delta\":{\"role\":\"assistant\"}}]}")),
+                                        Flux.<ServerSentEvent<String>>never())
+                                .doOnCancel(() -> primaryCancelled.set(true));
+                    }
+                    return Flux.just(sse("{\"choices\":[{\"delta\":{\"content\":\"Hi\"}}]}"), sse("[DONE]"))
+                            .delaySubscription(Duration.ofMillis(50));
+                },
+                group,
+                5000,
+                FailoverServiceTest::sse
+        ).map(ServerSentEvent::data).collectList().block(Duration.ofSeconds(1));
+
+        assertEquals(List.of("{\"choices\":[{\"delta\":{\"content\":\"Hi\"}}]}", "[DONE]"), chunks);
+        assertTrue(primaryCancelled.get());
+        verify(relayMetrics).recordStreamRace("secondary_won");
+    }
+
+    @Test
+    void streamRaceMarksLoserThatAlreadySentPreambleBeforeCancelling() {
+        ModelGroupConfig group = roundRobinGroup("race-loser-group");
+        luminaProperties.getRacing().getGroupBudgets().put("race-loser-group", 0.5);
+
+        AtomicInteger calls = new AtomicInteger();
+        List<Boolean> lostAtCancel = new ArrayList<>();
+        List<Boolean> winnerLost = new ArrayList<>();
+        List<String> chunks = failoverService.executeWithFailoverFlux(
+                provider -> {
+                    if (calls.getAndIncrement() == 0) {
+                        // 主请求已经发出 role 分片，执行器会认为首包已到达
+                        return Flux.concat(Flux.just(sse("{\"choices\":[{\"delta\":{\"role\":\"assistant\"}}]}")),
+                                        Flux.<ServerSentEvent<String>>never())
+                                .transformDeferredContextual((flux, context) -> {
+                                    AtomicBoolean lost = context.get(FailoverService.STREAM_RACE_LOST_KEY);
+                                    return flux.doOnCancel(() -> lostAtCancel.add(lost.get()));
+                                });
+                    }
+                    return Flux.just(sse("{\"choices\":[{\"delta\":{\"content\":\"Hi\"}}]}"), sse("[DONE]"))
+                            .delaySubscription(Duration.ofMillis(50))
+                            .transformDeferredContextual((flux, context) -> {
+                                AtomicBoolean lost = context.get(FailoverService.STREAM_RACE_LOST_KEY);
+                                return flux.doOnComplete(() -> winnerLost.add(lost.get()));
+                            });
+                },
+                group,
+                5000,
+                FailoverServiceTest::sse
+        ).map(ServerSentEvent::data).collectList().block(Duration.ofSeconds(1));
+
+        assertEquals(2, chunks.size());
+        assertEquals(List.of(true), lostAtCancel);
+        assertEquals(List.of(false), winnerLost);
+    }
+
+    @Test
+    void twoChoicesPrefersProviderWithFewerOutstandingRequests() {
+        ModelGroupConfig group = roundRobinGroup("p2c-group");
+        group.setBalanceMode(BalanceMode.P2C.getCode());
+        when(circuitBreaker.allowRequest(any(), any())).thenReturn(true);
+        ProviderRuntimeState busy = providerStateRegistry.get(RoutingPlanCompiler.providerIdOf(group.getItems().get(0)));
+        for (int i = 0; i < 5; i++) {
+            busy.getBulkhead().tryAcquire();
+        }
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals("provider-b", failoverService.selectAvailableProvider(group).getProviderName());
+        }
+        verify(relayMetrics, times(20)).recordSelection("p2c");
+    }
+
+    @Test
+    void costModePicksCheapestProviderAndSpillsWhenItBreaksSlo() {
+        ModelGroupConfig group = roundRobinGroup("cost-group");
+        group.setBalanceMode(BalanceMode.COST.getCode());
+        group.getItems().get(0).setModelName("pricey-model");
+        group.getItems().get(1).setModelName("cheap-model");
+        when(circuitBreaker.allowRequest(any(), any())).thenReturn(true);
+        when(llmModelService.findLatestByModelName("pricey-model")).thenReturn(price(5));
+        when(llmModelService.findLatestByModelName("cheap-model")).thenReturn(price(1));
+        RouteContext route = RouteContext.of(null, null, new TokenEstimate(1000, 200, false));
+
+        assertEquals("provider-b", selectWith(group, route));
+
+        ProviderRuntimeState cheap = providerStateRegistry.get(RoutingPlanCompiler.providerIdOf(group.getItems().get(1)));
+        for (int i = 0; i < 20; i++) {
+            cheap.getLatencyHistogram().record(30_000);
+        }
+
+        assertEquals("provider-a", selectWith(group, route));
+        verify(relayMetrics).recordCostRouting("cheapest");
+        verify(relayMetrics).recordCostRouting(eq("spill"));
+    }
+
+    @Test
+    void costTiesAreMeasuredAgainstTheCheapestProvider() {
+        ModelGroupConfig group = roundRobinGroup("cost-tie-group");
+        group.setBalanceMode(BalanceMode.COST.getCode());
+        group.setItems(List.of(provider("provider-a"), provider("provider-b"), provider("provider-c")));
+        String[] models = {"model-100", "model-100.9", "model-101.8"};
+        double[] scores = {50, 60, 70};
+        for (int i = 0; i < models.length; i++) {
+            ModelGroupConfigItem item = group.getItems().get(i);
+            item.setModelName(models[i]);
+            when(llmModelService.findLatestByModelName(models[i]))
+                    .thenReturn(price(new BigDecimal(models[i].substring("model-".length()))));
+            providerStateRegistry.get(RoutingPlanCompiler.providerIdOf(item)).setScore(scores[i]);
+        }
+        when(circuitBreaker.allowRequest(any(), any())).thenReturn(true);
+        RouteContext route = RouteContext.of(null, null, new TokenEstimate(1000, 200, false));
+
+        // c 与 b 相差不到 1%，但比最便宜的 a 贵 1.8%，不能算同价
+        assertEquals("provider-b", selectWith(group, route));
+    }
+
+    @Test
+    void expiredDeadlineStopsFailoverWithoutCallingProviders() {
+        AtomicInteger calls = new AtomicInteger();
+        RouteContext route = RouteContext.random().withDeadline(System.currentTimeMillis() + 200);
+
+        Mono<ObjectNode> result = failoverService.executeWithFailoverMono(
+                provider -> {
+                    calls.incrementAndGet();
+                    return Mono.just(mapper.createObjectNode());
+                },
+                roundRobinGroup("deadline-group"),
+                1000,
+                route
+        );
+
+        assertThrows(DeadlineExceededException.class, () -> result.block(Duration.ofSeconds(1)));
+        assertEquals(0, calls.get());
+        verify(relayMetrics).recordDeadlineExceeded(false);
+    }
+
+    @Test
+    void failoverStopsOnceRemainingBudgetIsSpent() {
+        luminaProperties.getDeadline().setMinAttemptMs(50);
+        AtomicInteger calls = new AtomicInteger();
+        RouteContext route = RouteContext.random().withDeadline(System.currentTimeMillis() + 150);
+
+        Mono<ObjectNode> result = failoverService.executeWithFailoverMono(
+                provider -> {
+                    calls.incrementAndGet();
+                    return Mono.delay(Duration.ofMillis(120))
+                            .then(Mono.<ObjectNode>error(new RuntimeException("slow provider failed")));
+                },
+                roundRobinGroup("deadline-failover"),
+                1000,
+                route
+        );
+
+        assertThrows(DeadlineExceededException.class, () -> result.block(Duration.ofSeconds(1)));
+        assertEquals(1, calls.get());
+    }
+
+    private String selectWith(ModelGroupConfig group, RouteContext route) {
+        return failoverService.executeWithFailoverMono(
+                target -> Mono.just(mapper.createObjectNode().put("provider", target.getItem().getProviderName())),
+                group,
+                1000,
+                route
+        ).block(Duration.ofSeconds(1)).get("provider").asText();
+    }
+
+    private static LlmModel price(int perMillionTokens) {
+        return price(BigDecimal.valueOf(perMillionTokens));
+    }
+
+    private static LlmModel price(BigDecimal perMillionTokens) {
+        LlmModel model = new LlmModel();
+        model.setInputPrice(perMillionTokens);
+        model.setOutputPrice(perMillionTokens.multiply(BigDecimal.valueOf(4)));
+        return model;
+    }
+
     private ModelGroupConfig roundRobinGroup(String id) {
         ModelGroupConfig group = new ModelGroupConfig();
         group.setId(id);
@@ -117,4 +422,8 @@ class FailoverServiceTest {
         item.setApiKey(name + "-key");
         return item;
     }
+
+    private static ServerSentEvent<String> sse(String data) {
+        return ServerSentEvent.<String>builder().data(data).build();
+    }
 }
@@ -0,0 +1,35 @@
+package com.lumina.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class UpstreamRequestTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void overlayKeepsSharedTreeUntouchedAndSharesSubtrees() throws Exception {
+        ObjectNode params = (ObjectNode) mapper.readTree("{\"model\":\"group\",\"messages\":[{\"role\":\"user\",\"content\":\"hi\"}]}");
+
+        UpstreamRequest request = UpstreamRequest.of(params).withField("model", TextNode.valueOf("gpt-test"));
+
+        assertEquals("group", params.get("model").asText());
+        assertEquals("gpt-test", request.body().get("model").asText());
+        assertSame(params.get("messages"), request.body().get("messages"));
+    }
+
+    @Test
+    void serializedBytesAreReused() {
+        UpstreamRequest request = UpstreamRequest.of(mapper.createObjectNode().put("model", "gpt-test"));
+
+        byte[] first = request.bytes(mapper);
+
+        assertSame(first, request.bytes(mapper));
+        assertSame(request, request.withField("model", TextNode.valueOf("gpt-test")));
+    }
+}
@@ -4,6 +4,9 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.lumina.dto.ModelGroupConfigItem;
 import com.lumina.logging.LogWriter;
 import com.lumina.logging.RequestLogContext;
+import com.lumina.ratelimit.TokenRateLimiter;
+import com.lumina.service.FailoverService;
+import com.lumina.service.UpstreamRequest;
 import com.lumina.util.SnowflakeIdGenerator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -11,14 +14,17 @@ import org.mockito.ArgumentCaptor;
 import org.springframework.http.codec.ServerSentEvent;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
 
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 
 class AbstractRequestExecutorLoggingTest {
 
@@ -88,7 +94,7 @@ class AbstractRequestExecutorLoggingTest {
     void streamCancelAfterFirstTokenRecordsSuccessOnce() {
         RequestLogContext ctx = context();
         ctx.getFirstTokenArrived().set(true);
-        ctx.getResponseBuffer().append("{\"delta\":\"hello\"}");
+        ctx.getResponseCapture().append("{\"delta\":\"hello\"}");
 
         executor.recordStreamCancel(ctx);
         executor.recordSuccess(ctx, "complete");
@@ -111,6 +117,45 @@ class AbstractRequestExecutorLoggingTest {
         assertEquals("CLIENT", ctx.getErrorStage());
     }
 
+    @Test
+    void cancelledRaceLoserIsLoggedAsCancelledEvenAfterFirstToken() {
+        RequestLogContext ctx = context();
+        ctx.setTokenReservationId("reservation-1");
+        TokenRateLimiter tokenRateLimiter = mock(TokenRateLimiter.class);
+        executor.tokenRateLimiter = tokenRateLimiter;
+        AtomicBoolean raceLost = new AtomicBoolean(false);
+
+        executor.logStreamCancel(Flux.concat(Flux.just("role"), Flux.<String>never()), ctx)
+                .doOnNext(chunk -> {
+                    ctx.getFirstTokenArrived().set(true);
+                    raceLost.set(true);
+                })
+                .contextWrite(Context.of(FailoverService.STREAM_RACE_LOST_KEY, raceLost))
+                .take(1)
+                .blockLast();
+
+        verify(logWriter, times(1)).submit(any(RequestLogContext.class));
+        verifyNoInteractions(tokenRateLimiter);
+        assertEquals("FAIL", ctx.getStatus());
+        assertEquals("CANCELLED", ctx.getErrorStage());
+    }
+
+    @Test
+    void streamUsageReadsTopLevelAndNestedUsageOnly() {
+        RequestLogContext ctx = context();
+
+        executor.handleStreamUsage(ctx,
+                "{\"type\":\"message_start\",\"message\":{\"model\":\"claude-test\",\"content\":[{\"usage\":{\"input_tokens\":99}}],"
+                        + "\"usage\":{\"input_tokens\":12,\"cache_read_input_tokens\":3}}}", true);
+        executor.handleStreamUsage(ctx, "{\"choices\":[{\"delta\":{\"content\":\"hi\"}}],\"usage\":null}", false);
+        executor.handleStreamUsage(ctx, "{\"type\":\"message_delta\",\"usage\":{\"output_tokens\":7}}", false);
+
+        assertEquals("claude-test", ctx.getActualModel());
+        assertEquals(12, ctx.getInputTokens());
+        assertEquals(7, ctx.getOutputTokens());
+        assertEquals(3, ctx.getCacheReadTokens());
+    }
+
     private RequestLogContext context() {
         RequestLogContext ctx = new RequestLogContext();
         ctx.setStartNano(System.nanoTime());
@@ -124,14 +169,14 @@ class AbstractRequestExecutorLoggingTest {
         }
 
         @Override
-        public Mono<ObjectNode> executeNormal(ObjectNode request, ModelGroupConfigItem provider,
+        public Mono<ObjectNode> executeNormal(UpstreamRequest request, ModelGroupConfigItem provider,
                                               Map<String, String> queryParams, String modelAction,
                                               String type, Integer timeoutMs) {
             return Mono.empty();
         }
 
         @Override
-        public Flux<ServerSentEvent<String>> executeStream(ObjectNode request, ModelGroupConfigItem provider,
+        public Flux<ServerSentEvent<String>> executeStream(UpstreamRequest request, ModelGroupConfigItem provider,
                                                            Map<String, String> queryParams, String modelAction,
                                                            String type, Integer timeoutMs) {
             return Flux.empty();
@@ -2,12 +2,27 @@ package com.lumina.service.impl;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.lumina.config.CircuitBreakerConfig;
+import com.lumina.config.LuminaProperties;
 import com.lumina.dto.ModelGroupConfigItem;
+import com.lumina.logging.LogWriter;
+import com.lumina.logging.RequestLogContext;
+import com.lumina.mapper.ProviderRuntimeStatsMapper;
+import com.lumina.state.ProviderRuntimeState;
+import com.lumina.state.ProviderStateRegistry;
 import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
 
 class OpenAiRequestExecutorTest {
 
@@ -20,6 +35,43 @@ class OpenAiRequestExecutorTest {
         assertTrue(executor.supports("openai_images_generations"));
     }
 
+    @Test
+    void streamGapsAreBoundedByRequestDeadline() {
+        OpenAiRequestExecutor executor = new OpenAiRequestExecutor();
+        executor.luminaProperties = new LuminaProperties();
+        RequestLogContext ctx = new RequestLogContext();
+        ctx.setStream(true);
+        ctx.setDeadlineAt(System.currentTimeMillis() + 300);
+
+        // 首包立即到达，之后的间隔远小于分组超时，但超过了请求截止时间
+        Flux<Integer> stream = executor.applyTimeout(Flux.just(1).concatWith(Flux.never()), ctx, 5000);
+
+        Throwable error = stream.then().flux().materialize().blockFirst(Duration.ofSeconds(2)).getThrowable();
+        assertTrue(error instanceof TimeoutException);
+    }
+
+    @Test
+    void passthroughChunkGapsAreRecordedPerSseEvent() {
+        OpenAiRequestExecutor executor = new OpenAiRequestExecutor();
+        executor.luminaProperties = new LuminaProperties();
+        executor.logWriter = mock(LogWriter.class);
+        executor.providerStateRegistry = new ProviderStateRegistry(
+                mock(ProviderRuntimeStatsMapper.class), new CircuitBreakerConfig());
+        ProviderRuntimeState state = executor.providerStateRegistry.get("provider-a");
+        RequestLogContext ctx = new RequestLogContext();
+        ctx.setStartNano(System.nanoTime());
+        ctx.setStream(true);
+        ctx.setProviderStateId("provider-a");
+
+        // 三个事件合并在一个 DataBuffer 中，第四个事件被拆成两个 DataBuffer
+        executor.tapPassthroughStream(Flux.just(
+                buffer("data: {\"n\":1}\n\ndata: {\"n\":2}\n\ndata: {\"n\":3}\n\n"),
+                buffer("data: {\"n\""),
+                buffer(":4}\n\n")), ctx, 5000).blockLast(Duration.ofSeconds(1));
+
+        assertEquals(3, state.getChunkGapHistogram().count());
+    }
+
     @Test
     void disablesDeepSeekThinkingWhenToolCallHistoryLacksReasoning() throws Exception {
         ObjectNode request = (ObjectNode) mapper.readTree("""
@@ -49,7 +101,7 @@ class OpenAiRequestExecutorTest {
                 }
                 """);
 
-        OpenAiRequestExecutor.prepareRequestForProvider(request, deepSeekProvider(), "openai_chat_completions");
+        request = OpenAiRequestExecutor.prepareRequestForProvider(request, deepSeekProvider(), "openai_chat_completions");
 
         assertEquals("disabled", request.get("thinking").get("type").asText());
     }
@@ -76,7 +128,7 @@ class OpenAiRequestExecutorTest {
         provider.setBaseUrl("https://opencode.ai/zen/go");
         provider.setModelName("deepseek-v4-flash");
 
-        OpenAiRequestExecutor.prepareRequestForProvider(request, provider, "openai_chat_completions");
+        request = OpenAiRequestExecutor.prepareRequestForProvider(request, provider, "openai_chat_completions");
 
         assertEquals("disabled", request.get("thinking").get("type").asText());
     }
@@ -105,7 +157,7 @@ class OpenAiRequestExecutorTest {
                 }
                 """);
 
-        OpenAiRequestExecutor.prepareRequestForProvider(request, deepSeekProvider(), "openai_chat_completions");
+        request = OpenAiRequestExecutor.prepareRequestForProvider(request, deepSeekProvider(), "openai_chat_completions");
 
         assertFalse(request.has("thinking"));
     }
@@ -125,7 +177,7 @@ class OpenAiRequestExecutorTest {
                 }
                 """);
 
-        OpenAiRequestExecutor.prepareRequestForProvider(request, deepSeekProvider(), "openai_chat_completions");
+        request = OpenAiRequestExecutor.prepareRequestForProvider(request, deepSeekProvider(), "openai_chat_completions");
 
         assertFalse(request.has("thinking"));
     }
@@ -156,7 +208,7 @@ class OpenAiRequestExecutorTest {
         provider.setProviderName("OpenAI");
         provider.setBaseUrl("https://api.openai.com");
 
-        OpenAiRequestExecutor.prepareRequestForProvider(request, provider, "openai_chat_completions");
+        request = OpenAiRequestExecutor.prepareRequestForProvider(request, provider, "openai_chat_completions");
 
         assertFalse(request.has("thinking"));
     }
@@ -185,7 +237,7 @@ class OpenAiRequestExecutorTest {
                 }
                 """);
 
-        OpenAiRequestExecutor.prepareRequestForProvider(request, deepSeekProvider(), "openai_chat_completions");
+        request = OpenAiRequestExecutor.prepareRequestForProvider(request, deepSeekProvider(), "openai_chat_completions");
 
         assertEquals("enabled", request.get("thinking").get("type").asText());
     }
@@ -196,4 +248,8 @@ class OpenAiRequestExecutorTest {
         provider.setBaseUrl("https://api.deepseek.com");
         return provider;
     }
+
+    private static DataBuffer buffer(String text) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
 }
@@ -0,0 +1,154 @@
+package com.lumina.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.lumina.config.LuminaProperties;
+import com.lumina.logging.LogWriter;
+import com.lumina.logging.RequestLogContext;
+import com.lumina.metrics.RelayMetrics;
+import com.lumina.util.SnowflakeIdGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestCoalescerTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<RequestLogContext> submitted = new CopyOnWriteArrayList<>();
+    private SimpleMeterRegistry meterRegistry;
+    private RequestCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        LuminaProperties properties = new LuminaProperties();
+        properties.getCoalescing().getGroups().add("gpt");
+        meterRegistry = new SimpleMeterRegistry();
+        LogWriter logWriter = new LogWriter(null, properties, meterRegistry, null) {
+            @Override
+            public void submit(RequestLogContext ctx) {
+                submitted.add(ctx);
+            }
+        };
+        coalescer = new RequestCoalescer(properties, logWriter, new SnowflakeIdGenerator(1, 1),
+                new RelayMetrics(meterRegistry));
+    }
+
+    @Test
+    void onlyDeterministicNonStreamRequestsOfEnabledGroupsHaveKey() {
+        ObjectNode request = chatRequest();
+        assertNotNull(coalescer.keyFor("chat", "gpt", request, Map.of()));
+
+        assertNull(coalescer.keyFor("chat", "other", request, Map.of()));
+        assertNull(coalescer.keyFor("chat", "gpt", request.deepCopy().put("temperature", 0.7), Map.of()));
+        assertNull(coalescer.keyFor("chat", "gpt", request.deepCopy().put("stream", true), Map.of()));
+        ObjectNode noTemperature = request.deepCopy();
+        noTemperature.remove("temperature");
+        assertNull(coalescer.keyFor("chat", "gpt", noTemperature, Map.of()));
+    }
+
+    @Test
+    void keyIgnoresFieldOrderAndInternalParams() throws Exception {
+        ObjectNode a = (ObjectNode) mapper.readTree("{\"model\":\"gpt\",\"temperature\":0,\"messages\":[{\"role\":\"user\",\"content\":\"hi\"}]}");
+        ObjectNode b = (ObjectNode) mapper.readTree("{\"messages\":[{\"content\":\"hi\",\"role\":\"user\"}],\"temperature\":0.0,\"model\":\"gpt\"}");
+        ObjectNode c = (ObjectNode) mapper.readTree("{\"model\":\"gpt\",\"temperature\":0,\"messages\":[{\"role\":\"user\",\"content\":\"hello\"}]}");
+
+        assertEquals(coalescer.keyFor("chat", "gpt", a, Map.of("_lumina_request_ip", "1.1.1.1")),
+                coalescer.keyFor("chat", "gpt", b, Map.of("_lumina_request_ip", "2.2.2.2")));
+        assertNotEquals(coalescer.keyFor("chat", "gpt", a, Map.of()), coalescer.keyFor("chat", "gpt", c, Map.of()));
+        assertNotEquals(coalescer.keyFor("chat", "gpt", a, Map.of()), coalescer.keyFor("responses", "gpt", a, Map.of()));
+    }
+
+    @Test
+    void concurrentDuplicatesShareOneUpstreamCall() {
+        Sinks.One<ObjectNode> upstream = Sinks.one();
+        AtomicInteger calls = new AtomicInteger();
+        ObjectNode request = chatRequest();
+        String key = coalescer.keyFor("chat", "gpt", request, Map.of());
+
+        Map<String, String> leaderParams = params("leader-key");
+        Map<String, String> followerParams = params("follower-key");
+        Mono<ObjectNode> leader = coalescer.coalesce(key, "chat", request, leaderParams, () -> {
+            calls.incrementAndGet();
+            return upstream.asMono();
+        });
+        Mono<ObjectNode> follower = coalescer.coalesce(key, "chat", request, followerParams, () -> {
+            calls.incrementAndGet();
+            return upstream.asMono();
+        });
+
+        List<ObjectNode> results = new CopyOnWriteArrayList<>();
+        leader.subscribe(results::add);
+        follower.subscribe(results::add);
+
+        RequestLogContext leaderCtx = new RequestLogContext();
+        leaderCtx.setCoalesceKey(leaderParams.get(RequestCoalescer.INTERNAL_COALESCE_KEY_PARAM));
+        leaderCtx.setProviderId(7L);
+        leaderCtx.setProviderName("primary");
+        leaderCtx.setActualModel("gpt-4o");
+        coalescer.onLeaderSuccess(leaderCtx);
+        upstream.tryEmitValue(mapper.createObjectNode().put("id", "resp"));
+
+        assertEquals(1, calls.get());
+        assertEquals(2, results.size());
+        assertEquals("resp", results.get(1).get("id").asText());
+        assertEquals(0, coalescer.inFlightCount());
+        assertNull(followerParams.get(RequestCoalescer.INTERNAL_COALESCE_KEY_PARAM));
+
+        assertEquals(1, submitted.size());
+        RequestLogContext followerLog = submitted.get(0);
+        assertEquals("follower-key", followerLog.getApiKey());
+        assertEquals("primary", followerLog.getProviderName());
+        assertEquals("gpt-4o", followerLog.getActualModel());
+        assertEquals(RequestCoalescer.RESPONSE_SOURCE_COALESCED, followerLog.getResponseSource());
+        assertEquals("SUCCESS", followerLog.getStatus());
+        assertEquals(0, BigDecimal.ZERO.compareTo(followerLog.getCost()));
+        assertEquals(1.0, meterRegistry.counter("lumina_coalesced_requests_total").count());
+    }
+
+    @Test
+    void completedRequestIsNotReused() {
+        ObjectNode request = chatRequest();
+        String key = coalescer.keyFor("chat", "gpt", request, Map.of());
+        AtomicInteger calls = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+            coalescer.coalesce(key, "chat", request, params("k"), () -> {
+                calls.incrementAndGet();
+                return Mono.just(mapper.createObjectNode());
+            }).block();
+        }
+
+        assertEquals(2, calls.get());
+        assertTrue(submitted.isEmpty());
+    }
+
+    private ObjectNode chatRequest() {
+        ObjectNode request = mapper.createObjectNode();
+        request.put("model", "gpt");
+        request.put("temperature", 0);
+        request.putArray("messages").addObject().put("role", "user").put("content", "hi");
+        return request;
+    }
+
+    private static Map<String, String> params(String apiKey) {
+        Map<String, String> params = new HashMap<>();
+        params.put("_lumina_api_key", apiKey);
+        params.put("_lumina_request_model", "gpt");
+        return params;
+    }
+}
@@ -0,0 +1,139 @@
+package com.lumina.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.lumina.cache.ResponseCache;
+import com.lumina.config.LuminaProperties;
+import com.lumina.logging.LogWriter;
+import com.lumina.logging.RequestLogContext;
+import com.lumina.util.SnowflakeIdGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ResponseCacheHandlerTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<RequestLogContext> submitted = new CopyOnWriteArrayList<>();
+    private LuminaProperties properties;
+    private ResponseCacheHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        properties = new LuminaProperties();
+        properties.getResponseCache().getGroups().add("gpt");
+        properties.getResponseCache().getApiKeys().add("key-a");
+        properties.getResponseCache().getApiKeys().add("key-b");
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        LogWriter logWriter = new LogWriter(null, properties, meterRegistry, null) {
+            @Override
+            public void submit(RequestLogContext ctx) {
+                submitted.add(ctx);
+            }
+        };
+        handler = new ResponseCacheHandler(properties, new ResponseCache(properties, mapper, meterRegistry),
+                logWriter, new SnowflakeIdGenerator(1, 1), mapper);
+    }
+
+    @Test
+    void cacheabilityFollowsOptInTemperatureAndHeader() {
+        ObjectNode request = request(0);
+        assertNotNull(handler.keyFor("chat", "gpt", request, Map.of(), null));
+        assertNull(handler.keyFor("chat", "other", request, Map.of(), null));
+        assertNull(handler.keyFor("chat", "gpt", request(0.7), Map.of(), null));
+        assertNotNull(handler.keyFor("chat", "gpt", request(0.7), Map.of("_lumina_cache", "true"), null));
+        assertNull(handler.keyFor("chat", "gpt", request, Map.of("_lumina_cache", "false"), null));
+
+        // 只按 API Key 启用时缓存不跨 Key 共享
+        assertNotEquals(handler.keyFor("chat", "other", request, Map.of(), "key-a"),
+                handler.keyFor("chat", "other", request, Map.of(), "key-b"));
+    }
+
+    @Test
+    void streamIsReplayedWithOriginalChunksAndLoggedAsCacheHit() {
+        String key = handler.keyFor("chat", "gpt", request(0), Map.of(), null);
+        handler.capture(key, Flux.defer(() -> {
+                    handler.onUpstreamSuccess(upstreamContext(key));
+                    return Flux.just(sse("{\"delta\":\"Hel\"}"), sse("{\"delta\":\"lo\"}"), sse("[DONE]"));
+                }))
+                .blockLast();
+
+        ResponseEntity<?> hit = handler.lookup(key, "chat", request(0), params("caller")).block();
+        assertNotNull(hit);
+        @SuppressWarnings("unchecked")
+        List<ServerSentEvent<String>> replayed = ((Flux<ServerSentEvent<String>>) hit.getBody()).collectList().block();
+
+        assertEquals(3, replayed.size());
+        assertEquals("{\"delta\":\"lo\"}", replayed.get(1).data());
+        assertEquals(1, submitted.size());
+        RequestLogContext log = submitted.get(0);
+        assertEquals(ResponseCacheHandler.RESPONSE_SOURCE_CACHE, log.getResponseSource());
+        assertEquals("caller", log.getApiKey());
+        assertEquals("provider", log.getProviderName());
+        assertEquals("SUCCESS", log.getStatus());
+    }
+
+    @Test
+    void failedResponseIsNotCached() {
+        String key = handler.keyFor("chat", "gpt", request(0), Map.of(), null);
+        handler.capture(key, Mono.defer(() -> {
+                    handler.onUpstreamSuccess(upstreamContext(key));
+                    return Mono.<ObjectNode>error(new RuntimeException("boom"));
+                }))
+                .onErrorResume(e -> Mono.empty())
+                .block();
+
+        assertNull(handler.lookup(key, "chat", request(0), params("caller")).block());
+    }
+
+    @Test
+    void upstreamCallbackForUnknownKeyIsIgnored() {
+        // 客户端伪造的缓存键没有对应的采集，不应留在内存中，也不会写入缓存
+        handler.onUpstreamSuccess(upstreamContext("forged"));
+        handler.capture("forged", Mono.just(request(0))).block();
+
+        assertNull(handler.lookup("forged", "chat", request(0), params("caller")).block());
+    }
+
+    private ObjectNode request(double temperature) {
+        ObjectNode request = mapper.createObjectNode();
+        request.put("model", "gpt");
+        request.put("temperature", temperature);
+        request.putArray("messages").addObject().put("role", "user").put("content", "hi");
+        return request;
+    }
+
+    private static RequestLogContext upstreamContext(String key) {
+        RequestLogContext ctx = new RequestLogContext();
+        ctx.setCacheKey(key);
+        ctx.setProviderId(3L);
+        ctx.setProviderName("provider");
+        ctx.setActualModel("gpt-4o");
+        return ctx;
+    }
+
+    private static Map<String, String> params(String apiKey) {
+        Map<String, String> params = new HashMap<>();
+        params.put("_lumina_api_key", apiKey);
+        params.put("_lumina_request_model", "gpt");
+        return params;
+    }
+
+    private static ServerSentEvent<String> sse(String data) {
+        return ServerSentEvent.<String>builder().data(data).build();
+    }
+}
@@ -0,0 +1,45 @@
+package com.lumina.service.impl;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SseDataTapTest {
+
+    @Test
+    void extractsDataLinesAcrossBufferBoundariesWithoutConsumingBytes() {
+        List<String> data = new ArrayList<>();
+        List<String> done = new ArrayList<>();
+        SseDataTap tap = new SseDataTap(new SseDataTap.Listener() {
+            @Override
+            public void onData(String value) {
+                data.add(value);
+            }
+
+            @Override
+            public void onDone() {
+                done.add("done");
+            }
+        });
+
+        DataBuffer first = buffer(": keep-alive\r\n\r\nevent: message\ndata: {\"a\":\"你");
+        DataBuffer second = buffer("好\"}\n\ndata:{\"b\":1}\n\ndata: [DONE]\n\n");
+        tap.accept(first);
+        tap.accept(second);
+
+        assertEquals(List.of("{\"a\":\"你好\"}", "{\"b\":1}"), data);
+        assertEquals(1, done.size());
+        assertEquals(0, first.readPosition());
+        assertEquals(0, second.readPosition());
+    }
+
+    private DataBuffer buffer(String value) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
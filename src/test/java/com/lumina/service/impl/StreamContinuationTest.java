@@ -0,0 +1,117 @@
+package com.lumina.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.lumina.converter.ProtocolType;
+import com.lumina.state.RoutingTarget;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class StreamContinuationTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void chatContinuationPrefillsEmittedTextAndKeepsChunkIdentity() throws Exception {
+        AtomicReference<ObjectNode> resumeRequest = new AtomicReference<>();
+        StreamContinuation continuation = StreamContinuation.create(mapper, ProtocolType.OPENAI_CHAT,
+                chatRequest(), params -> {
+                    resumeRequest.set(params);
+                    return target -> Flux.just(
+                            sse("{\"id\":\"new\",\"created\":2,\"model\":\"other\",\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\"}}]}"),
+                            sse("{\"id\":\"new\",\"created\":2,\"model\":\"other\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\" world\"}}]}"),
+                            sse("[DONE]"));
+                });
+
+        continuation.onDelivered(sse("{\"id\":\"orig\",\"created\":1,\"model\":\"gpt\",\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"Hello\"}}]}"));
+        continuation.onDelivered(sse("{\"id\":\"orig\",\"created\":1,\"model\":\"gpt\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\", \"}}]}"));
+
+        Function<RoutingTarget, Flux<ServerSentEvent<String>>> resume = continuation.resume();
+        List<ServerSentEvent<String>> spliced = resume.apply(null).collectList().block();
+
+        JsonNode lastMessage = resumeRequest.get().get("messages").get(1);
+        assertEquals("assistant", lastMessage.get("role").asText());
+        assertEquals("Hello,", lastMessage.get("content").asText());
+
+        assertEquals(2, spliced.size());
+        JsonNode chunk = mapper.readTree(spliced.get(0).data());
+        assertEquals("orig", chunk.get("id").asText());
+        assertEquals(1, chunk.get("created").asInt());
+        assertEquals("gpt", chunk.get("model").asText());
+        assertFalse(chunk.get("choices").get(0).get("delta").has("role"));
+        assertEquals("[DONE]", spliced.get(1).data());
+    }
+
+    @Test
+    void anthropicContinuationMergesIntoOpenTextBlock() throws Exception {
+        StreamContinuation continuation = StreamContinuation.create(mapper, ProtocolType.ANTHROPIC,
+                chatRequest(), params -> target -> Flux.just(
+                        sse("message_start", "{\"type\":\"message_start\",\"message\":{\"id\":\"msg_new\"}}"),
+                        sse("content_block_start", "{\"type\":\"content_block_start\",\"index\":0,\"content_block\":{\"type\":\"text\",\"text\":\"\"}}"),
+                        sse("content_block_delta", "{\"type\":\"content_block_delta\",\"index\":0,\"delta\":{\"type\":\"text_delta\",\"text\":\"rest\"}}"),
+                        sse("content_block_stop", "{\"type\":\"content_block_stop\",\"index\":0}")));
+
+        continuation.onDelivered(sse("message_start", "{\"type\":\"message_start\",\"message\":{\"id\":\"msg_orig\"}}"));
+        continuation.onDelivered(sse("content_block_start", "{\"type\":\"content_block_start\",\"index\":0,\"content_block\":{\"type\":\"text\",\"text\":\"\"}}"));
+        continuation.onDelivered(sse("content_block_delta", "{\"type\":\"content_block_delta\",\"index\":0,\"delta\":{\"type\":\"text_delta\",\"text\":\"partial\"}}"));
+
+        List<ServerSentEvent<String>> spliced = continuation.resume().apply(null).collectList().block();
+
+        assertEquals(2, spliced.size());
+        assertEquals("content_block_delta", spliced.get(0).event());
+        assertEquals(0, mapper.readTree(spliced.get(0).data()).get("index").asInt());
+        assertEquals("content_block_stop", spliced.get(1).event());
+    }
+
+    @Test
+    void toolCallsAreNotResumed() {
+        StreamContinuation continuation = StreamContinuation.create(mapper, ProtocolType.OPENAI_CHAT,
+                chatRequest(), params -> target -> Flux.empty());
+
+        continuation.onDelivered(sse("{\"id\":\"orig\",\"choices\":[{\"index\":0,\"delta\":{\"tool_calls\":[{\"index\":0}]}}]}"));
+
+        assertNull(continuation.resume());
+    }
+
+    @Test
+    void overlongTextStopsTracking() {
+        StreamContinuation continuation = StreamContinuation.create(mapper, ProtocolType.OPENAI_CHAT,
+                chatRequest(), params -> target -> Flux.empty());
+        String content = "x".repeat(StreamContinuation.MAX_TRACKED_CHARS / 2 + 1);
+
+        continuation.onDelivered(sse("{\"id\":\"orig\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\"" + content + "\"}}]}"));
+        continuation.onDelivered(sse("{\"id\":\"orig\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\"" + content + "\"}}]}"));
+
+        assertNull(continuation.resume());
+    }
+
+    @Test
+    void unsupportedProtocolHasNoContinuation() {
+        assertNull(StreamContinuation.create(mapper, ProtocolType.OPENAI_RESPONSES, chatRequest(), params -> target -> Flux.empty()));
+    }
+
+    private ObjectNode chatRequest() {
+        ObjectNode request = mapper.createObjectNode();
+        request.put("model", "gpt");
+        request.putArray("messages").addObject().put("role", "user").put("content", "hi");
+        return request;
+    }
+
+    private static ServerSentEvent<String> sse(String data) {
+        return ServerSentEvent.<String>builder().data(data).build();
+    }
+
+    private static ServerSentEvent<String> sse(String event, String data) {
+        return ServerSentEvent.<String>builder().event(event).data(data).build();
+    }
+}
@@ -0,0 +1,65 @@
+package com.lumina.state;
+
+import com.lumina.config.LuminaProperties;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimitTest {
+
+    private final LuminaProperties.AdaptiveConcurrency properties = new LuminaProperties.AdaptiveConcurrency();
+
+    @Test
+    void limitGrowsWhileLatencyStaysFlat() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit();
+        assertEquals(20, limit.limit(20, properties));
+
+        for (int i = 0; i < 50; i++) {
+            limit.onSample(100, limit.getLimit(), properties);
+        }
+
+        assertTrue(limit.getLimit() > 20);
+    }
+
+    @Test
+    void limitShrinksWhenLatencyInflates() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit();
+        limit.limit(100, properties);
+        for (int i = 0; i < 20; i++) {
+            limit.onSample(100, 100, properties);
+        }
+        int beforeInflation = limit.getLimit();
+
+        for (int i = 0; i < 20; i++) {
+            limit.onSample(400, limit.getLimit(), properties);
+        }
+
+        assertTrue(limit.getLimit() < beforeInflation);
+    }
+
+    @Test
+    void idleProviderDoesNotGrowLimit() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit();
+        limit.limit(20, properties);
+
+        for (int i = 0; i < 50; i++) {
+            limit.onSample(100, 1, properties);
+        }
+
+        assertEquals(20, limit.getLimit());
+    }
+
+    @Test
+    void overloadBacksOffMultiplicativelyDownToMinimum() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit();
+        limit.limit(50, properties);
+
+        assertEquals(-1, limit.onOverload(properties));
+        assertEquals(45, limit.getLimit());
+        for (int i = 0; i < 100; i++) {
+            limit.onOverload(properties);
+        }
+        assertEquals(properties.getMinLimit(), limit.getLimit());
+    }
+}
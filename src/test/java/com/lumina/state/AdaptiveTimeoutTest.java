@@ -0,0 +1,63 @@
+package com.lumina.state;
+
+import com.lumina.config.LuminaProperties;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveTimeoutTest {
+
+    private final LuminaProperties.AdaptiveTimeout config = new LuminaProperties.AdaptiveTimeout();
+
+    AdaptiveTimeoutTest() {
+        config.setEnabled(true);
+    }
+
+    @Test
+    void usesStaticTimeoutUntilEnoughSamples() {
+        ProviderRuntimeState state = new ProviderRuntimeState("p1");
+        for (int i = 0; i < config.getMinSamples() - 1; i++) {
+            state.getTtftHistogram().record(500);
+        }
+
+        int timeout = AdaptiveTimeout.resolve(state, 60_000, true, config);
+        assertEquals(60_000, timeout);
+    }
+
+    @Test
+    void learnsFromTtftP99AndClampsToBounds() {
+        ProviderRuntimeState fast = new ProviderRuntimeState("fast");
+        ProviderRuntimeState slow = new ProviderRuntimeState("slow");
+        for (int i = 0; i < 100; i++) {
+            fast.getTtftHistogram().record(200);
+            slow.getTtftHistogram().record(4_000);
+        }
+
+        int fastTimeout = AdaptiveTimeout.resolve(fast, 60_000, true, config);
+        assertEquals(config.getMinTimeoutMs(), fastTimeout);
+
+        int slowTimeout = AdaptiveTimeout.resolve(slow, 60_000, true, config);
+        assertTrue(slowTimeout >= 12_000 && slowTimeout < 60_000, "slowTimeout=" + slowTimeout);
+
+        int capped = AdaptiveTimeout.resolve(slow, 10_000, true, config);
+        assertEquals(10_000, capped);
+    }
+
+    @Test
+    void nonStreamingUsesTotalLatencyAndDisabledKeepsStatic() {
+        ProviderRuntimeState state = new ProviderRuntimeState("p1");
+        for (int i = 0; i < 100; i++) {
+            state.getTtftHistogram().record(200);
+            state.getLatencyHistogram().record(8_000);
+        }
+
+        assertTrue(AdaptiveTimeout.resolve(state, 120_000, false, config) >= 24_000);
+
+        config.setEnabled(false);
+        int timeout = AdaptiveTimeout.resolve(state, 120_000, false, config);
+        assertEquals(120_000, timeout);
+        assertNull(AdaptiveTimeout.resolve(state, null, true, config));
+    }
+}
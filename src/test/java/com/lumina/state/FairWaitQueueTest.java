@@ -0,0 +1,100 @@
+package com.lumina.state;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FairWaitQueueTest {
+
+    @Test
+    void noisyTenantDoesNotStarveOthers() {
+        FairWaitQueue queue = new FairWaitQueue();
+        List<String> admitted = new CopyOnWriteArrayList<>();
+        for (String request : List.of("a1", "a2", "a3", "b1")) {
+            queue.enqueue(request.substring(0, 1), 1.0, 10, Duration.ofSeconds(5))
+                    .await(TimeoutException::new)
+                    .doOnSuccess(v -> admitted.add(request))
+                    .subscribe();
+        }
+
+        for (int i = 0; i < 4; i++) {
+            queue.signal();
+        }
+
+        assertEquals(List.of("a1", "b1", "a2", "a3"), admitted);
+    }
+
+    @Test
+    void heavierTenantIsAdmittedMoreOften() {
+        FairWaitQueue queue = new FairWaitQueue();
+        List<String> admitted = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            for (String tenant : List.of("light", "heavy")) {
+                queue.enqueue(tenant, tenant.equals("heavy") ? 2.0 : 1.0, 10, Duration.ofSeconds(5))
+                        .await(TimeoutException::new)
+                        .doOnSuccess(v -> admitted.add(tenant))
+                        .subscribe();
+            }
+        }
+
+        for (int i = 0; i < 3; i++) {
+            queue.signal();
+        }
+
+        assertEquals(List.of("heavy", "light", "heavy"), admitted);
+    }
+
+    @Test
+    void timedOutWaiterLeavesQueueAndIsSkipped() {
+        FairWaitQueue queue = new FairWaitQueue();
+        Mono<Void> expiring = queue.enqueue("a", 1.0, 10, Duration.ofMillis(20)).await(TimeoutException::new);
+        FairWaitQueue.Waiter next = queue.enqueue("b", 1.0, 10, Duration.ofSeconds(1));
+
+        assertThrows(RuntimeException.class, () -> expiring.block(Duration.ofSeconds(1)));
+        assertEquals(1, queue.size());
+
+        queue.signal();
+        assertNull(next.await(TimeoutException::new).block(Duration.ofSeconds(1)));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void requeuedWaiterKeepsItsPlaceAndDeadline() {
+        FairWaitQueue queue = new FairWaitQueue();
+        FairWaitQueue.Waiter first = queue.enqueue("a", 1.0, 10, Duration.ofMillis(200));
+        queue.signal();
+        assertNull(first.await(TimeoutException::new).block(Duration.ofSeconds(1)));
+
+        // 被唤醒后没抢到配额，期间其他租户入队
+        FairWaitQueue.Waiter later = queue.enqueue("b", 1.0, 10, Duration.ofSeconds(5));
+        assertTrue(first.requeue());
+        queue.signal();
+        assertNull(first.await(TimeoutException::new).block(Duration.ofSeconds(1)));
+        assertEquals(1, queue.size());
+
+        // 截止时间沿用第一次入队时的值，不会因重新入队而延长
+        assertTrue(first.requeue());
+        assertThrows(RuntimeException.class, () -> first.await(TimeoutException::new).block(Duration.ofSeconds(1)));
+        assertFalse(first.requeue());
+        assertEquals(1, queue.size());
+        later.await(TimeoutException::new).subscribe();
+    }
+
+    @Test
+    void fullQueueRejects() {
+        FairWaitQueue queue = new FairWaitQueue();
+        queue.enqueue("a", 1.0, 1, Duration.ofSeconds(1));
+
+        assertNull(queue.enqueue("b", 1.0, 1, Duration.ofSeconds(1)));
+    }
+}
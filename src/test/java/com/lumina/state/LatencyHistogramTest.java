@@ -0,0 +1,50 @@
+package com.lumina.state;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    void emptyHistogramHasNoPercentile() {
+        LatencyHistogram histogram = new LatencyHistogram(60_000);
+
+        assertEquals(0, histogram.count());
+        assertEquals(-1, histogram.percentile(0.95));
+    }
+
+    @Test
+    void percentileStaysWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram(60_000);
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(1000, histogram.count());
+        long p50 = histogram.percentile(0.5);
+        long p95 = histogram.percentile(0.95);
+        assertTrue(p50 >= 500 && p50 <= 500 * 1.125, "p50=" + p50);
+        assertTrue(p95 >= 950 && p95 <= 950 * 1.125, "p95=" + p95);
+    }
+
+    @Test
+    void bucketBoundsAreContiguous() {
+        for (int i = 1; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long lower = LatencyHistogram.upperBoundOf(i - 1) + 1;
+            assertEquals(i, LatencyHistogram.indexOf(lower));
+            assertEquals(i, LatencyHistogram.indexOf(LatencyHistogram.upperBoundOf(i)));
+        }
+    }
+
+    @Test
+    void expiredWindowsAreDropped() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram(20);
+        histogram.record(100);
+
+        Thread.sleep(60);
+
+        assertEquals(0, histogram.count());
+    }
+}
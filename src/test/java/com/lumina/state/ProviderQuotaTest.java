@@ -0,0 +1,75 @@
+package com.lumina.state;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProviderQuotaTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    void parsesOpenAiHeadersAndRecoversAfterReset() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("x-ratelimit-limit-requests", "100");
+        headers.set("x-ratelimit-remaining-requests", "5");
+        headers.set("x-ratelimit-reset-requests", "1m30s");
+        headers.set("x-ratelimit-limit-tokens", "10000");
+        headers.set("x-ratelimit-remaining-tokens", "9000");
+        headers.set("x-ratelimit-reset-tokens", "250ms");
+
+        ProviderQuota quota = new ProviderQuota();
+        quota.observe(headers, 200, NOW, 300_000);
+
+        assertEquals(5, quota.getRequestRemaining());
+        assertEquals(0.05, quota.remainingFraction(NOW), 1e-9);
+        assertFalse(quota.isExhausted(NOW));
+        assertEquals(1.0, quota.remainingFraction(NOW + 90_000), 1e-9);
+    }
+
+    @Test
+    void exhaustedAnthropicQuotaIsShedUntilReset() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("anthropic-ratelimit-requests-limit", "50");
+        headers.set("anthropic-ratelimit-requests-remaining", "0");
+        headers.set("anthropic-ratelimit-requests-reset", "2023-11-14T22:13:40Z");
+
+        ProviderQuota quota = new ProviderQuota();
+        quota.observe(headers, 200, NOW, 300_000);
+
+        assertTrue(quota.isExhausted(NOW));
+        assertFalse(quota.isCoolingDown(NOW));
+        assertFalse(quota.isExhausted(NOW + 21_000));
+    }
+
+    @Test
+    void retryAfterSetsCappedCooldownOnlyOn429() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "20");
+
+        ProviderQuota quota = new ProviderQuota();
+        quota.observe(headers, 200, NOW, 300_000);
+        assertFalse(quota.isCoolingDown(NOW));
+
+        quota.observe(headers, 429, NOW, 300_000);
+        assertTrue(quota.isCoolingDown(NOW + 19_000));
+        assertFalse(quota.isCoolingDown(NOW + 20_000));
+
+        headers.set("retry-after-ms", "900000");
+        quota.observe(headers, 429, NOW, 60_000);
+        assertEquals(NOW + 60_000, quota.getCooldownUntil());
+    }
+
+    @Test
+    void parsesDurations() {
+        assertEquals(6 * 60_000, ProviderQuota.parseDurationMs("6m0s"));
+        assertEquals(1500, ProviderQuota.parseDurationMs("1.5s"));
+        assertEquals(20, ProviderQuota.parseDurationMs("20ms"));
+        assertEquals(3_723_000, ProviderQuota.parseDurationMs("1h2m3s"));
+        assertEquals(7000, ProviderQuota.parseDurationMs("7"));
+        assertEquals(-1, ProviderQuota.parseDurationMs("soon"));
+    }
+}
@@ -0,0 +1,69 @@
+package com.lumina.state;
+
+import com.lumina.config.CircuitBreakerConfig;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProviderScoreCalculatorTest {
+
+    private final ProviderScoreCalculator calculator = new ProviderScoreCalculator(new CircuitBreakerConfig());
+
+    @Test
+    void fatTailIsPenalizedEvenWhenRecentCallsAreFast() {
+        ProviderRuntimeState steady = new ProviderRuntimeState("steady");
+        ProviderRuntimeState tailed = new ProviderRuntimeState("tailed");
+        for (int i = 0; i < 100; i++) {
+            calculator.update(steady, FailureType.SUCCESS, 1000);
+            // 10% 的请求耗时 25 秒，但最近几次都很快，EMA 已回落
+            calculator.update(tailed, FailureType.SUCCESS, i % 10 == 0 && i < 90 ? 25_000 : 1000);
+        }
+
+        assertEquals(0.0, calculator.latencyPenalty(steady));
+        assertTrue(tailed.getLatencyEmaMs() < 5000, "ema=" + tailed.getLatencyEmaMs());
+        assertTrue(calculator.latencyPenalty(tailed) > 0.1, "penalty=" + calculator.latencyPenalty(tailed));
+        assertTrue(tailed.getScore() < steady.getScore());
+    }
+
+    @Test
+    void streamingCallIsSlowOnlyWhenFirstTokenIsSlow() {
+        ProviderRuntimeState state = new ProviderRuntimeState("stream");
+        for (int i = 0; i < 20; i++) {
+            // 输出很长但首包很快，不算慢调用
+            calculator.update(state, FailureType.SUCCESS, 60_000, 500);
+        }
+        assertEquals(0.0, state.getWindowSlowRate());
+        assertEquals(20, state.getTtftHistogram().count());
+
+        calculator.update(state, FailureType.SUCCESS, 9000, 8000);
+        assertTrue(state.getWindowSlowRate() > 0);
+    }
+
+    @Test
+    void slowOutputAfterFastFirstTokenLowersScore() {
+        ProviderRuntimeState fast = new ProviderRuntimeState("fast");
+        ProviderRuntimeState trickle = new ProviderRuntimeState("trickle");
+        for (int i = 0; i < 20; i++) {
+            fast.recordOutputThroughput(500, 10_000);
+            trickle.recordOutputThroughput(50, 10_000);
+            calculator.update(fast, FailureType.SUCCESS, 10_300, 300);
+            calculator.update(trickle, FailureType.SUCCESS, 10_300, 300);
+        }
+
+        assertEquals(0.0, calculator.throughputPenalty(fast));
+        assertEquals(1.0, calculator.throughputPenalty(trickle));
+        assertTrue(trickle.getScore() < fast.getScore() - 10);
+    }
+
+    @Test
+    void shortOutputsAreNotThroughputSamples() {
+        ProviderRuntimeState state = new ProviderRuntimeState("short");
+        for (int i = 0; i < 20; i++) {
+            state.recordOutputThroughput(3, 2000);
+        }
+
+        assertEquals(0, state.getOutputThroughputHistogram().count());
+        assertEquals(0.0, calculator.throughputPenalty(state));
+    }
+}
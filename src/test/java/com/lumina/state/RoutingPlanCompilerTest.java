@@ -0,0 +1,78 @@
+package com.lumina.state;
+
+import com.lumina.config.CircuitBreakerConfig;
+import com.lumina.config.CircuitBreakerConfigResolver;
+import com.lumina.converter.ProtocolType;
+import com.lumina.dto.ModelGroupConfig;
+import com.lumina.dto.ModelGroupConfigItem;
+import com.lumina.mapper.ProviderRuntimeStatsMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+
+class RoutingPlanCompilerTest {
+
+    private ProviderStateRegistry registry;
+    private RoutingPlanCompiler compiler;
+
+    @BeforeEach
+    void setUp() {
+        CircuitBreakerConfig config = new CircuitBreakerConfig();
+        registry = new ProviderStateRegistry(mock(ProviderRuntimeStatsMapper.class), config);
+        compiler = new RoutingPlanCompiler(registry, new CircuitBreakerConfigResolver(config));
+    }
+
+    @Test
+    void resolvesEndpointPerProtocolWithoutMutatingItem() {
+        ModelGroupConfigItem item = item();
+        RoutingTarget target = compiler.compile(group(item)).get(0);
+
+        assertEquals(ProtocolType.ANTHROPIC, target.resolveOutboundType(ProtocolType.ANTHROPIC));
+        assertEquals(ProtocolType.OPENAI_CHAT, target.resolveOutboundType(ProtocolType.GEMINI));
+        assertEquals("https://api.example.com/anthropic", target.itemFor(ProtocolType.ANTHROPIC).getBaseUrl());
+        assertSame(item, target.itemFor(ProtocolType.OPENAI_CHAT));
+        assertEquals("https://api.example.com", item.getBaseUrl());
+    }
+
+    @Test
+    void holdsRegistryStateAndRecompilesAfterRemoval() {
+        ModelGroupConfig group = group(item());
+        RoutingPlan plan = compiler.attach(group).getRoutingPlan();
+        RoutingTarget target = plan.get(0);
+
+        assertSame(registry.get(target.getProviderId()), target.getState());
+        assertSame(plan, compiler.planFor(group));
+
+        registry.remove(target.getProviderId());
+
+        RoutingPlan recompiled = compiler.planFor(group);
+        assertNotSame(plan, recompiled);
+        assertSame(registry.getIfExists(target.getProviderId()), recompiled.get(0).getState());
+    }
+
+    private ModelGroupConfig group(ModelGroupConfigItem item) {
+        ModelGroupConfig group = new ModelGroupConfig();
+        group.setId("1");
+        group.setName("group");
+        group.setItems(List.of(item));
+        return group;
+    }
+
+    private ModelGroupConfigItem item() {
+        ModelGroupConfigItem item = new ModelGroupConfigItem();
+        item.setProviderName("provider");
+        item.setModelName("model");
+        item.setApiKey("key");
+        item.setBaseUrl("https://api.example.com");
+        item.setProviderType(0);
+        item.setSupportedTypes("0,2");
+        item.setEndpointsJson("{\"0\":\"https://api.example.com\",\"2\":\"https://api.example.com/anthropic\"}");
+        return item;
+    }
+}
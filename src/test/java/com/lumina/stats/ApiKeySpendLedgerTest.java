@@ -0,0 +1,95 @@
+package com.lumina.stats;
+
+import com.lumina.dto.ApiKeyUsageDto;
+import com.lumina.entity.RequestLog;
+import com.lumina.mapper.ApiKeyMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ApiKeySpendLedgerTest {
+
+    private ApiKeyMapper mapper;
+    private ApiKeySpendLedger ledger;
+
+    @BeforeEach
+    void setUp() {
+        mapper = mock(ApiKeyMapper.class);
+        ledger = new ApiKeySpendLedger(mapper);
+    }
+
+    @Test
+    void unknownKeyRequiresLoad() {
+        assertNull(ledger.hasAvailableQuota("sk-1"));
+    }
+
+    @Test
+    void recordedSpendExhaustsQuotaWithoutQueryingAgain() {
+        when(mapper.selectApiKeyUsageByKey("sk-1")).thenReturn(usage("sk-1", "9.5", "10"));
+
+        assertTrue(ledger.load("sk-1"));
+        ledger.record(List.of(log("sk-1", "0.3")));
+        assertEquals(Boolean.TRUE, ledger.hasAvailableQuota("sk-1"));
+
+        ledger.record(List.of(log("sk-1", "0.2"), log("sk-2", "5")));
+        assertEquals(Boolean.FALSE, ledger.hasAvailableQuota("sk-1"));
+        verify(mapper, times(1)).selectApiKeyUsageByKey("sk-1");
+    }
+
+    @Test
+    void reconcileReplacesBaselineWithDatabaseTotal() {
+        when(mapper.selectApiKeyUsageByKey("sk-1")).thenReturn(usage("sk-1", "0", "1"));
+        ledger.load("sk-1");
+        ledger.record(List.of(log("sk-1", "2")));
+        assertEquals(Boolean.FALSE, ledger.hasAvailableQuota("sk-1"));
+
+        // 日志被清理后数据库总额回落
+        when(mapper.selectApiKeyUsageList()).thenReturn(List.of(usage("sk-1", "0.5", "1")));
+        ledger.reconcile();
+
+        assertEquals(Boolean.TRUE, ledger.hasAvailableQuota("sk-1"));
+    }
+
+    @Test
+    void deletedKeyIsDroppedOnReconcile() {
+        when(mapper.selectApiKeyUsageByKey("sk-1")).thenReturn(usage("sk-1", "0", null));
+        ledger.load("sk-1");
+        when(mapper.selectApiKeyUsageList()).thenReturn(List.of());
+
+        ledger.reconcile();
+
+        assertNull(ledger.hasAvailableQuota("sk-1"));
+    }
+
+    @Test
+    void missingKeyHasNoQuota() {
+        assertFalse(ledger.load("sk-missing"));
+        assertEquals(Boolean.FALSE, ledger.hasAvailableQuota("sk-missing"));
+    }
+
+    private static ApiKeyUsageDto usage(String apiKey, String totalCost, String maxAmount) {
+        ApiKeyUsageDto usage = new ApiKeyUsageDto();
+        usage.setApiKey(apiKey);
+        usage.setTotalCost(new BigDecimal(totalCost));
+        usage.setMaxAmount(maxAmount != null ? new BigDecimal(maxAmount) : null);
+        return usage;
+    }
+
+    private static RequestLog log(String apiKey, String cost) {
+        RequestLog log = new RequestLog();
+        log.setApiKey(apiKey);
+        log.setCost(new BigDecimal(cost));
+        return log;
+    }
+}
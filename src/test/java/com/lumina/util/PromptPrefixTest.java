@@ -0,0 +1,51 @@
+package com.lumina.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PromptPrefixTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void laterTurnsKeepTheSamePrefixHash() throws Exception {
+        ObjectNode first = (ObjectNode) mapper.readTree("""
+                {"model":"gpt","messages":[
+                  {"role":"system","content":"You are helpful"},
+                  {"role":"user","content":"hi"}]}""");
+        ObjectNode later = (ObjectNode) mapper.readTree("""
+                {"model":"gpt","temperature":0.3,"messages":[
+                  {"role":"system","content":"You are helpful"},
+                  {"role":"user","content":"hi"},
+                  {"role":"assistant","content":"hello"},
+                  {"role":"user","content":"tell me more"}]}""");
+
+        assertEquals(PromptPrefix.affinityHash(first, 1), PromptPrefix.affinityHash(later, 1));
+    }
+
+    @Test
+    void differentSystemPromptOrToolsChangeTheHash() throws Exception {
+        ObjectNode base = (ObjectNode) mapper.readTree("""
+                {"system":"A","messages":[{"role":"user","content":"hi"}]}""");
+        ObjectNode otherSystem = (ObjectNode) mapper.readTree("""
+                {"system":"B","messages":[{"role":"user","content":"hi"}]}""");
+        ObjectNode withTools = (ObjectNode) mapper.readTree("""
+                {"system":"A","tools":[{"name":"search"}],"messages":[{"role":"user","content":"hi"}]}""");
+
+        assertNotEquals(PromptPrefix.affinityHash(base, 1), PromptPrefix.affinityHash(otherSystem, 1));
+        assertNotEquals(PromptPrefix.affinityHash(base, 1), PromptPrefix.affinityHash(withTools, 1));
+    }
+
+    @Test
+    void requestWithoutPrefixHasNoHash() throws Exception {
+        ObjectNode request = (ObjectNode) mapper.readTree("""
+                {"model":"gpt","messages":[{"role":"user","content":"hi"}]}""");
+
+        assertNull(PromptPrefix.affinityHash(request, 0));
+    }
+}
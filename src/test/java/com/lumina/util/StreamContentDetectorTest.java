@@ -0,0 +1,44 @@
+package com.lumina.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamContentDetectorTest {
+
+    @Test
+    void preambleAndErrorFramesAreNotContent() {
+        assertFalse(StreamContentDetector.isContentData("{\"choices\":[{\"delta\":{\"role\":\"assistant\",\"content\":\"\"}}]}"));
+        assertFalse(StreamContentDetector.isContentData("{\"type\":\"message_start\",\"message\":{\"id\":\"msg\",\"content\":[]}}"));
+        assertFalse(StreamContentDetector.isContentData("{\"type\":\"content_block_start\",\"index\":0,\"content_block\":{\"type\":\"text\",\"text\":\"\"}}"));
+        assertFalse(StreamContentDetector.isContentData("{\"type\":\"ping\"}"));
+        assertFalse(StreamContentDetector.isContentData("{\"error\":{\"message\":\"overloaded\"}}"));
+        assertFalse(StreamContentDetector.isContentData("[DONE]"));
+    }
+
+    @Test
+    void textAndToolOutputAreContent() {
+        assertTrue(StreamContentDetector.isContentData("{\"choices\":[{\"delta\":{\"content\":\"Hi\"}}]}"));
+        assertTrue(StreamContentDetector.isContentData("{\"choices\":[{\"delta\":{\"tool_calls\":[{\"index\":0}]}}]}"));
+        assertTrue(StreamContentDetector.isContentData("{\"type\":\"content_block_delta\",\"delta\":{\"type\":\"text_delta\",\"text\":\"Hi\"}}"));
+        assertTrue(StreamContentDetector.isContentData("{\"type\":\"response.output_text.delta\",\"delta\":\"Hi\"}"));
+        assertTrue(StreamContentDetector.isContentData("{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"Hi\"}]}}]}"));
+    }
+
+    @Test
+    void rawBuffersAreScannedLineByLineAcrossChunks() {
+        StreamContentDetector detector = new StreamContentDetector();
+
+        assertFalse(detector.carriesContent(buffer(": keep-alive\n\ndata: {\"choices\":[{\"delta\":{\"role\":\"assistant\"}}]}\n\n")));
+        assertFalse(detector.carriesContent(buffer("data: {\"choices\":[{\"delta\":")));
+        assertTrue(detector.carriesContent(buffer("{\"content\":\"Hi\"}}]}\n\n")));
+    }
+
+    private static Object buffer(String text) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+}